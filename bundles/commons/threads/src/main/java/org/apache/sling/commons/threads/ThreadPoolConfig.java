@@ -40,6 +40,27 @@ public interface ThreadPoolConfig {
         MAX
     };
 
+    /**
+     * The thread pool types.
+     * <ul>
+     * <li>{@code DEFAULT}: A thread pool executor using the configured pool
+     * and queue sizes, block policy and max thread age.</li>
+     * <li>{@code WORK_STEALING}: A work-stealing fork join pool with a
+     * parallelism of the max pool size. The queue size, block policy, keep
+     * alive time, max thread age and thread factory are not used.</li>
+     * <li>{@code VIRTUAL}: A new virtual thread is started for each task. The
+     * pool and queue sizes, block policy, keep alive time, max thread age,
+     * priority, daemon flag and thread factory are not used. If the runtime does not
+     * support virtual threads, a {@code DEFAULT} pool is created instead.</li>
+     * </ul>
+     * @since 3.5.0
+     */
+    public enum ThreadPoolType {
+        DEFAULT,
+        WORK_STEALING,
+        VIRTUAL
+    };
+
     /**
      * Return the minimum pool size.
      * @return The minimum pool size.
@@ -107,4 +128,11 @@ public interface ThreadPoolConfig {
      * @return <code>true</code> if daemon threads should be created.
      */
     boolean isDaemon();
+
+    /**
+     * Return the type of the thread pool.
+     * @return The type of the thread pool.
+     * @since 3.5.0
+     */
+    ThreadPoolType getType();
 }
\ No newline at end of file
@@ -16,9 +16,12 @@
  */
 package org.apache.sling.commons.threads.impl;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -31,6 +34,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolType;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +47,9 @@ import org.slf4j.LoggerFactory;
 public class DefaultThreadPool
     implements ThreadPool {
 
+    /** The maximum parallelism supported by a fork join pool. */
+    private static final int MAX_FORK_JOIN_PARALLELISM = 0x7fff;
+
     /** By default we use the logger for this class. */
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -50,10 +57,13 @@ public class DefaultThreadPool
     protected final String name;
 
     /** The executor. */
-    protected ThreadPoolExecutor executor;
+    protected ExecutorService executor;
 
     protected final ModifiableThreadPoolConfig configuration;
 
+    /** The queue wait and execution time statistics. */
+    protected final ThreadPoolStatistics statistics = new ThreadPoolStatistics();
+
     /**
      * Create a new thread pool.
      * @param name - The name of the thread pool. If null {@link DefaultThreadPoolManager#DEFAULT_THREADPOOL_NAME}
@@ -72,6 +82,17 @@ public class DefaultThreadPool
 
         this.configuration = new ModifiableThreadPoolConfig(origConfig);
 
+        if (this.configuration.getType() == ThreadPoolType.VIRTUAL) {
+            this.executor = createVirtualThreadExecutor(this.name);
+            if (this.executor != null) {
+                this.logger.info("Thread pool [{}] initialized.", name);
+                return;
+            }
+            this.logger.warn("Virtual threads are not supported by this runtime. Thread pool [{}] falls back to type {}.",
+                    this.name, ThreadPoolType.DEFAULT);
+            this.configuration.setType(ThreadPoolType.DEFAULT);
+        }
+
         // factory
         final ThreadFactory delegateThreadFactory;
         if (this.configuration.getFactory() == null) {
@@ -99,6 +120,16 @@ public class DefaultThreadPool
                 this.configuration.isDaemon()
         );
 
+        if (this.configuration.getType() == ThreadPoolType.WORK_STEALING) {
+            // use the max pool size as parallelism, bounded by the fork join pool limit
+            final int parallelism = this.configuration.getMaxPoolSize() == Integer.MAX_VALUE
+                    ? Runtime.getRuntime().availableProcessors()
+                    : Math.min(Math.max(this.configuration.getMaxPoolSize(), 1), MAX_FORK_JOIN_PARALLELISM);
+            this.executor = new ForkJoinPool(parallelism, threadFactory.getForkJoinWorkerThreadFactory(), null, true);
+            this.logger.info("Thread pool [{}] initialized.", name);
+            return;
+        }
+
         // Keep alive time
         if (this.configuration.getKeepAliveTime() < 0) {
             this.configuration.setKeepAliveTime(1000);
@@ -145,6 +176,28 @@ public class DefaultThreadPool
         this.logger.info("Thread pool [{}] initialized.", name);
     }
 
+    /**
+     * Create an executor starting a new virtual thread for each task.
+     * As the bundle is built for older runtimes, the executor is created
+     * reflectively.
+     * @return The executor or {@code null} if the runtime does not support
+     *         virtual threads.
+     */
+    static ExecutorService createVirtualThreadExecutor(final String name) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "sling-" + ExtendedThreadFactory.normalizeName(name) + "-", 1L);
+            final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (final Exception e) {
+            // not supported by this runtime
+            return null;
+        }
+    }
+
     /**
      * @see org.apache.sling.commons.threads.ThreadPool#getName()
      */
@@ -169,7 +222,7 @@ public class DefaultThreadPool
             if ( logger.isDebugEnabled() ) {
                 logOperation("Executing runnable: ", runnable);
             }
-            executor.execute(runnable);
+            executor.execute(statistics.wrap(runnable));
         }
     }
 
@@ -181,7 +234,7 @@ public class DefaultThreadPool
         if ( logger.isDebugEnabled() ) {
             logOperation("Submitting callable: ", callable);
         }
-        return executor.submit(callable);
+        return executor.submit(statistics.wrap(callable));
     }
 
     /**
@@ -192,7 +245,7 @@ public class DefaultThreadPool
         if ( logger.isDebugEnabled() ) {
             logOperation("Submitting runnable: ", runnable);
         }
-        return executor.submit(runnable);
+        return executor.submit(statistics.wrap(runnable));
     }
 
     /**
@@ -224,8 +277,34 @@ public class DefaultThreadPool
         this.logger.info("Thread pool [{}] is shut down.", this.name);
     }
 
+    /**
+     * Return the thread pool executor.
+     * @return The executor or {@code null} if the pool is shut down or is
+     *         not of type {@link ThreadPoolType#DEFAULT}.
+     */
     public ThreadPoolExecutor getExecutor() {
-        return this.executor;
+        final ExecutorService es = this.executor;
+        if ( es instanceof ThreadPoolExecutor ) {
+            return (ThreadPoolExecutor) es;
+        }
+        return null;
+    }
+
+    /**
+     * Return the fork join pool.
+     * @return The fork join pool or {@code null} if the pool is shut down or
+     *         is not of type {@link ThreadPoolType#WORK_STEALING}.
+     */
+    public ForkJoinPool getForkJoinPool() {
+        final ExecutorService es = this.executor;
+        if ( es instanceof ForkJoinPool ) {
+            return (ForkJoinPool) es;
+        }
+        return null;
+    }
+
+    public ThreadPoolStatistics getStatistics() {
+        return this.statistics;
     }
 
     private void checkExecutor() {
@@ -235,11 +314,19 @@ public class DefaultThreadPool
     }
 
     private void logOperation(final String msg, final Object obj) {
-        logger.debug("{} {}, pool={}, active={}, corePoolSize={}, maxPoolSize={}, queueSize={}",
-                new Object[] {msg, obj, name,
-                        executor.getActiveCount(),
-                        executor.getCorePoolSize(),
-                        executor.getMaximumPoolSize(),
-                        executor.getQueue().size()});
+        final ThreadPoolExecutor tpe = this.getExecutor();
+        if ( tpe != null ) {
+            logger.debug("{} {}, pool={}, active={}, corePoolSize={}, maxPoolSize={}, queueSize={}",
+                    new Object[] {msg, obj, name,
+                            tpe.getActiveCount(),
+                            tpe.getCorePoolSize(),
+                            tpe.getMaximumPoolSize(),
+                            tpe.getQueue().size()});
+        } else {
+            logger.debug("{} {}, pool={}, type={}, active={}",
+                    new Object[] {msg, obj, name,
+                            configuration.getType(),
+                            statistics.getActiveCount()});
+        }
     }
 }
@@ -21,12 +21,14 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolConfig;
 import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolPolicy;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolType;
 import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPriority;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.apache.sling.commons.threads.jmx.ThreadPoolMBean;
@@ -119,6 +121,9 @@ public class DefaultThreadPoolManager
         if ( props.get(ModifiableThreadPoolConfig.PROPERTY_DAEMON) != null ) {
             config.setDaemon((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_DAEMON));
         }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_TYPE) != null ) {
+            config.setType(ThreadPoolType.valueOf(props.get(ModifiableThreadPoolConfig.PROPERTY_TYPE).toString()));
+        }
         return config;
     }
 
@@ -407,6 +412,22 @@ public class DefaultThreadPoolManager
             return null;
         }
 
+        public ForkJoinPool getForkJoinPool() {
+            final ThreadPoolFacade pool = this.pool;
+            if ( pool != null ) {
+                return pool.getForkJoinPool();
+            }
+            return null;
+        }
+
+        public ThreadPoolStatistics getStatistics() {
+            final ThreadPoolFacade pool = this.pool;
+            if ( pool != null ) {
+                return pool.getStatistics();
+            }
+            return null;
+        }
+
         protected void unregisterMBean() {
             if ( this.mbeanRegistration != null ) {
                 this.mbeanRegistration.unregister();
@@ -17,6 +17,8 @@
 package org.apache.sling.commons.threads.impl;
 
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,7 +28,6 @@ import org.apache.sling.commons.threads.ThreadPoolConfig;
 /**
  * This class is responsible to create new Thread instances.
  * It's a very basic implementation.
- *
  */
 public final class ExtendedThreadFactory implements ThreadFactory {
 
@@ -66,7 +67,7 @@ public final class ExtendedThreadFactory implements ThreadFactory {
         this.threadCounter = new AtomicInteger(1);
     }
 
-    private String normalizeName(final String name) {
+    static String normalizeName(final String name) {
         final String n = name.toLowerCase(Locale.ENGLISH).replaceAll("\\s+", "-");
         return stripPrefixes(n, "apache-sling-", "sling-");
     }
@@ -91,7 +92,24 @@ public final class ExtendedThreadFactory implements ThreadFactory {
      * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
      */
     public Thread newThread( final Runnable command ) {
-        final Thread thread = this.factory.newThread(command);
+        return this.configure(this.factory.newThread(command));
+    }
+
+    /**
+     * Return a factory for the worker threads of a work-stealing pool which
+     * sets the name, daemon flag and priority like this factory. The wrapped
+     * thread factory is not used for these.
+     */
+    ForkJoinPool.ForkJoinWorkerThreadFactory getForkJoinWorkerThreadFactory() {
+        return new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+            public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                return configure(new ForkJoinWorkerThread(pool) {});
+            }
+        };
+    }
+
+    private <T extends Thread> T configure(final T thread) {
         thread.setName(nextThreadName());
         thread.setPriority( this.priority );
         thread.setDaemon( this.isDaemon );
@@ -17,6 +17,7 @@
 package org.apache.sling.commons.threads.impl;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -103,4 +104,12 @@ public final class ThreadPoolFacade implements ThreadPool {
     public ThreadPoolExecutor getExecutor() {
         return this.delegatee.getExecutor();
     }
+
+    public ForkJoinPool getForkJoinPool() {
+        return this.delegatee.getForkJoinPool();
+    }
+
+    public ThreadPoolStatistics getStatistics() {
+        return this.delegatee.getStatistics();
+    }
 }
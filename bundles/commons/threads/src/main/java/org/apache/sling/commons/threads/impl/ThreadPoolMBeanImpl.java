@@ -16,6 +16,7 @@
  */
 package org.apache.sling.commons.threads.impl;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.management.NotCompliantMBeanException;
@@ -41,6 +42,10 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         final ThreadPoolExecutor tpe = this.entry.getExecutor();
         if ( tpe != null ) {
             return tpe.getActiveCount();
+        }
+        final ThreadPoolStatistics statistics = this.entry.getStatistics();
+        if ( statistics != null ) {
+            return statistics.getActiveCount();
         } else {
             return -1;
         }
@@ -50,6 +55,10 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         final ThreadPoolExecutor tpe = this.entry.getExecutor();
         if ( tpe != null ) {
             return tpe.getCompletedTaskCount();
+        }
+        final ThreadPoolStatistics statistics = this.entry.getStatistics();
+        if ( statistics != null ) {
+            return statistics.getCompletedCount();
         } else {
             return -1;
         }
@@ -59,6 +68,10 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         final ThreadPoolExecutor tpe = this.entry.getExecutor();
         if ( tpe != null ) {
             return tpe.getCorePoolSize();
+        }
+        final ForkJoinPool fjp = this.entry.getForkJoinPool();
+        if ( fjp != null ) {
+            return fjp.getParallelism();
         } else {
             return -1;
         }
@@ -77,6 +90,10 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         final ThreadPoolExecutor tpe = this.entry.getExecutor();
         if ( tpe != null ) {
             return tpe.getMaximumPoolSize();
+        }
+        final ForkJoinPool fjp = this.entry.getForkJoinPool();
+        if ( fjp != null ) {
+            return fjp.getParallelism();
         } else {
             return -1;
         }
@@ -86,6 +103,10 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         final ThreadPoolExecutor tpe = this.entry.getExecutor();
         if ( tpe != null ) {
             return tpe.getPoolSize();
+        }
+        final ForkJoinPool fjp = this.entry.getForkJoinPool();
+        if ( fjp != null ) {
+            return fjp.getPoolSize();
         } else {
             return -1;
         }
@@ -95,6 +116,10 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         final ThreadPoolExecutor tpe = this.entry.getExecutor();
         if ( tpe != null ) {
             return tpe.getTaskCount();
+        }
+        final ThreadPoolStatistics statistics = this.entry.getStatistics();
+        if ( statistics != null ) {
+            return statistics.getSubmittedCount();
         } else {
             return -1;
         }
@@ -148,4 +173,30 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         return this.entry.isUsed();
     }
 
+    public String getType() {
+        return this.entry.getConfig().getType().name();
+    }
+
+    public long[] getHistogramBucketLimitsMs() {
+        return ThreadPoolStatistics.BUCKET_LIMITS_MS.clone();
+    }
+
+    public long[] getQueueWaitTimeHistogram() {
+        final ThreadPoolStatistics statistics = this.entry.getStatistics();
+        if ( statistics != null ) {
+            return statistics.getQueueWaitTimeHistogram();
+        } else {
+            return null;
+        }
+    }
+
+    public long[] getExecutionTimeHistogram() {
+        final ThreadPoolStatistics statistics = this.entry.getStatistics();
+        if ( statistics != null ) {
+            return statistics.getExecutionTimeHistogram();
+        } else {
+            return null;
+        }
+    }
+
 }
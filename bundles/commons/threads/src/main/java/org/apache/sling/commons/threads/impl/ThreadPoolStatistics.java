@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the queue wait time and the execution time of the tasks run
+ * by a thread pool. Tasks are wrapped when they are handed to the executor,
+ * so this works the same for all pool types.
+ * <p>
+ * The times are recorded in histograms with fixed bucket limits given by
+ * {@link #BUCKET_LIMITS_MS}: bucket {@code i} counts the tasks taking less
+ * than {@code BUCKET_LIMITS_MS[i]} milliseconds (and at least the limit of the
+ * previous bucket), the additional last bucket counts all longer tasks.
+ */
+final class ThreadPoolStatistics {
+
+    /** The upper (exclusive) limits of the histogram buckets in milliseconds. */
+    static final long[] BUCKET_LIMITS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private static final long[] BUCKET_LIMITS_NANOS = new long[BUCKET_LIMITS_MS.length];
+    static {
+        for (int i = 0; i < BUCKET_LIMITS_MS.length; i++) {
+            BUCKET_LIMITS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_LIMITS_MS[i]);
+        }
+    }
+
+    private final AtomicLongArray queueWaitTimes = new AtomicLongArray(BUCKET_LIMITS_MS.length + 1);
+
+    private final AtomicLongArray executionTimes = new AtomicLongArray(BUCKET_LIMITS_MS.length + 1);
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong completedCount = new AtomicLong();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+
+    /**
+     * Wrap the runnable to record its times.
+     */
+    Runnable wrap(final Runnable runnable) {
+        this.submittedCount.incrementAndGet();
+        return new TimedRunnable(runnable);
+    }
+
+    /**
+     * Wrap the callable to record its times.
+     */
+    <T> Callable<T> wrap(final Callable<T> callable) {
+        this.submittedCount.incrementAndGet();
+        return new TimedCallable<T>(callable);
+    }
+
+    /**
+     * Return the limits of the histogram buckets in milliseconds.
+     */
+    public long[] getBucketLimitsMs() {
+        return BUCKET_LIMITS_MS.clone();
+    }
+
+    /**
+     * Return a snapshot of the queue wait time histogram.
+     */
+    public long[] getQueueWaitTimeHistogram() {
+        return snapshot(this.queueWaitTimes);
+    }
+
+    /**
+     * Return a snapshot of the execution time histogram.
+     */
+    public long[] getExecutionTimeHistogram() {
+        return snapshot(this.executionTimes);
+    }
+
+    /**
+     * Return the number of tasks currently running.
+     */
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    /**
+     * Return the number of tasks which have completed execution.
+     */
+    public long getCompletedCount() {
+        return this.completedCount.get();
+    }
+
+    /**
+     * Return the number of tasks which have been submitted.
+     */
+    public long getSubmittedCount() {
+        return this.submittedCount.get();
+    }
+
+    private static long[] snapshot(final AtomicLongArray histogram) {
+        final long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    private static void record(final AtomicLongArray histogram, final long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_NANOS.length && nanos >= BUCKET_LIMITS_NANOS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    private long started(final long queuedNanos) {
+        final long now = System.nanoTime();
+        record(this.queueWaitTimes, now - queuedNanos);
+        this.activeCount.incrementAndGet();
+        return now;
+    }
+
+    private void finished(final long startedNanos) {
+        record(this.executionTimes, System.nanoTime() - startedNanos);
+        this.activeCount.decrementAndGet();
+        this.completedCount.incrementAndGet();
+    }
+
+    private final class TimedRunnable implements Runnable {
+
+        private final Runnable delegatee;
+
+        private final long queued = System.nanoTime();
+
+        TimedRunnable(final Runnable delegatee) {
+            this.delegatee = delegatee;
+        }
+
+        public void run() {
+            final long start = started(this.queued);
+            try {
+                this.delegatee.run();
+            } finally {
+                finished(start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.delegatee.toString();
+        }
+    }
+
+    private final class TimedCallable<T> implements Callable<T> {
+
+        private final Callable<T> delegatee;
+
+        private final long queued = System.nanoTime();
+
+        TimedCallable(final Callable<T> delegatee) {
+            this.delegatee = delegatee;
+        }
+
+        public T call() throws Exception {
+            final long start = started(this.queued);
+            try {
+                return this.delegatee.call();
+            } finally {
+                finished(start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.delegatee.toString();
+        }
+    }
+}
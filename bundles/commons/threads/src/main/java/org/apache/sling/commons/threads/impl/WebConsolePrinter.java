@@ -104,6 +104,8 @@ public class WebConsolePrinter {
                 pw.println(config.getShutdownWaitTimeMs());
                 pw.print("- daemon : ");
                 pw.println(config.isDaemon());
+                pw.print("- type : ");
+                pw.println(config.getType());
                 final ThreadPoolExecutor tpe = entry.getExecutor();
                 if ( tpe != null ) {
                     pw.print("- active count : ");
@@ -121,10 +123,30 @@ public class WebConsolePrinter {
                     pw.print("- task count : ");
                     pw.println(tpe.getTaskCount());
                 }
+                final ThreadPoolStatistics statistics = entry.getStatistics();
+                if ( statistics != null ) {
+                    pw.print("- queue wait time histogram : ");
+                    printHistogram(pw, statistics.getQueueWaitTimeHistogram());
+                    pw.print("- execution time histogram : ");
+                    printHistogram(pw, statistics.getExecutionTimeHistogram());
+                }
                 pw.println();
             }
         } else {
             pw.println("No pools configured.");
         }
     }
+
+    private void printHistogram(final PrintWriter pw, final long[] histogram) {
+        final long[] limits = ThreadPoolStatistics.BUCKET_LIMITS_MS;
+        for (int i = 0; i < histogram.length; i++) {
+            if ( i > 0 ) {
+                pw.print(", ");
+            }
+            pw.print(i < limits.length ? "<" + limits[i] : ">=" + limits[limits.length - 1]);
+            pw.print("ms: ");
+            pw.print(histogram[i]);
+        }
+        pw.println();
+    }
 }
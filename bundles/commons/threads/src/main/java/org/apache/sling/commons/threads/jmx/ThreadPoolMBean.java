@@ -166,4 +166,41 @@ public interface ThreadPoolMBean {
      */
     boolean isUsed();
 
+    /**
+     * Return the configured type of the thread pool.
+     *
+     * @return The type of the pool.
+     * @since 1.2.0
+     */
+    String getType();
+
+    /**
+     * Return the upper (exclusive) limits in milliseconds of the buckets of
+     * the queue wait time and execution time histograms. The histograms have
+     * one more bucket than limits, counting all tasks above the last limit.
+     *
+     * @return The bucket limits in milliseconds.
+     * @since 1.2.0
+     */
+    long[] getHistogramBucketLimitsMs();
+
+    /**
+     * Return the histogram of the times tasks waited before they were
+     * executed.
+     *
+     * @return The number of tasks per bucket or {@code null} if the thread
+     *         pool is not in use.
+     * @since 1.2.0
+     */
+    long[] getQueueWaitTimeHistogram();
+
+    /**
+     * Return the histogram of the execution times of the tasks.
+     *
+     * @return The number of tasks per bucket or {@code null} if the thread
+     *         pool is not in use.
+     * @since 1.2.0
+     */
+    long[] getExecutionTimeHistogram();
+
 }
@@ -14,7 +14,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@Version("1.1.1")
+@Version("1.2.0")
 package org.apache.sling.commons.threads.jmx;
 
 import org.osgi.annotation.versioning.Version;
\ No newline at end of file
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolType;
+import org.junit.After;
+import org.junit.Test;
+
+public class DefaultThreadPoolTest {
+
+    private DefaultThreadPool pool;
+
+    @After
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void defaultPool() throws Exception {
+        pool = new DefaultThreadPool("Test Pool", new ModifiableThreadPoolConfig());
+        assertNotNull(pool.getExecutor());
+        assertNull(pool.getForkJoinPool());
+
+        assertTrue(pool.submit(threadName()).get().startsWith("sling-test-pool-"));
+        assertStatistics(1);
+    }
+
+    @Test
+    public void workStealingPool() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setType(ThreadPoolType.WORK_STEALING);
+        config.setMaxPoolSize(3);
+        config.setDaemon(true);
+        pool = new DefaultThreadPool("Test Pool", config);
+        assertNull(pool.getExecutor());
+        assertNotNull(pool.getForkJoinPool());
+        assertEquals(3, pool.getForkJoinPool().getParallelism());
+
+        assertTrue(pool.submit(threadName()).get().startsWith("sling-test-pool-"));
+
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        pool.getForkJoinPool().awaitQuiescence(10, TimeUnit.SECONDS);
+        assertStatistics(11);
+    }
+
+    @Test
+    public void virtualThreadPool() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setType(ThreadPoolType.VIRTUAL);
+        pool = new DefaultThreadPool("Test Pool", config);
+
+        if (DefaultThreadPool.createVirtualThreadExecutor("test") == null) {
+            // runtime without virtual threads, a default pool is used
+            assertEquals(ThreadPoolType.DEFAULT, pool.getConfiguration().getType());
+            assertNotNull(pool.getExecutor());
+        } else {
+            assertEquals(ThreadPoolType.VIRTUAL, pool.getConfiguration().getType());
+            assertNull(pool.getExecutor());
+            assertNull(pool.getForkJoinPool());
+        }
+        assertTrue(pool.submit(threadName()).get().startsWith("sling-test-pool-"));
+        assertStatistics(1);
+    }
+
+    @Test
+    public void histogramBuckets() throws Exception {
+        pool = new DefaultThreadPool("Test Pool", new ModifiableThreadPoolConfig());
+        pool.submit(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(25);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).get();
+
+        final long[] histogram = waitForCompletion(1).getExecutionTimeHistogram();
+        assertEquals(ThreadPoolStatistics.BUCKET_LIMITS_MS.length + 1, histogram.length);
+        // 25ms is counted in the bucket below 50ms or later
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, histogram[i]);
+        }
+        long total = 0;
+        for (final long count : histogram) {
+            total += count;
+        }
+        assertEquals(1, total);
+    }
+
+    private void assertStatistics(final long tasks) throws InterruptedException {
+        final ThreadPoolStatistics statistics = waitForCompletion(tasks);
+        assertEquals(tasks, statistics.getSubmittedCount());
+        assertEquals(0, statistics.getActiveCount());
+        long waits = 0;
+        for (final long count : statistics.getQueueWaitTimeHistogram()) {
+            waits += count;
+        }
+        assertEquals(tasks, waits);
+    }
+
+    /**
+     * The future completes before the statistics are updated, so wait a bit.
+     */
+    private ThreadPoolStatistics waitForCompletion(final long tasks) throws InterruptedException {
+        final ThreadPoolStatistics statistics = pool.getStatistics();
+        final long end = System.currentTimeMillis() + 10000;
+        while (statistics.getCompletedCount() < tasks && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(tasks, statistics.getCompletedCount());
+        return statistics;
+    }
+
+    private static Callable<String> threadName() {
+        return new Callable<String>() {
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        };
+    }
+}
@@ -58,6 +58,7 @@ import org.apache.sling.engine.impl.helper.RequestListenerManager;
 import org.apache.sling.engine.impl.helper.SlingServletContext;
 import org.apache.sling.engine.impl.request.RequestData;
 import org.apache.sling.engine.impl.request.RequestHistoryConsolePlugin;
+import org.apache.sling.engine.impl.request.SlingRequestProgressTracker;
 import org.apache.sling.engine.jmx.RequestProcessorMBean;
 import org.apache.sling.engine.servlets.ErrorHandler;
 import org.osgi.framework.BundleContext;
@@ -102,6 +103,16 @@ public class SlingMainServlet extends GenericServlet {
     @Property(unbounded=PropertyUnbounded.ARRAY)
     private static final String PROP_TRACK_PATTERNS_REQUESTS = "sling.store.pattern.requests";
 
+    private static final int DEFAULT_TRACKING_SAMPLE_RATE = 1;
+
+    @Property(intValue = DEFAULT_TRACKING_SAMPLE_RATE)
+    private static final String PROP_TRACKING_SAMPLE_RATE = "sling.tracking.sample.rate";
+
+    private static final long DEFAULT_TRACKING_SLOW_THRESHOLD = 0;
+
+    @Property(longValue = DEFAULT_TRACKING_SLOW_THRESHOLD)
+    private static final String PROP_TRACKING_SLOW_THRESHOLD = "sling.tracking.slow.threshold";
+
     private static final String PROP_DEFAULT_PARAMETER_ENCODING = "sling.default.parameter.encoding";
 
     @Property
@@ -382,6 +393,11 @@ public class SlingMainServlet extends GenericServlet {
             RequestData.DEFAULT_MAX_CALL_COUNTER));
         RequestData.setSlingMainServlet(this);
 
+        // configure which requests record a full progress tracker trace
+        SlingRequestProgressTracker.setSampling(
+            PropertiesUtil.toInteger(componentConfig.get(PROP_TRACKING_SAMPLE_RATE), DEFAULT_TRACKING_SAMPLE_RATE),
+            PropertiesUtil.toLong(componentConfig.get(PROP_TRACKING_SLOW_THRESHOLD), DEFAULT_TRACKING_SLOW_THRESHOLD));
+
         // Warn about the obsolete parameter encoding configuration
         if (componentConfig.get(PROP_DEFAULT_PARAMETER_ENCODING) != null) {
             log.warn("Please configure the default request parameter encoding using "
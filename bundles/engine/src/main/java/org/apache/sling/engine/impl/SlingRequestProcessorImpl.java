@@ -48,7 +48,7 @@ import org.apache.sling.api.servlets.ServletResolver;
 import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
 import org.apache.sling.engine.SlingRequestProcessor;
 import org.apache.sling.engine.impl.filter.AbstractSlingFilterChain;
-import org.apache.sling.engine.impl.filter.FilterHandle;
+import org.apache.sling.engine.impl.filter.FilterDispatchTable;
 import org.apache.sling.engine.impl.filter.RequestSlingFilterChain;
 import org.apache.sling.engine.impl.filter.ServletFilterManager;
 import org.apache.sling.engine.impl.filter.ServletFilterManager.FilterChainType;
@@ -140,7 +140,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             Resource resource = requestData.initResource(resourceResolver);
             requestData.initServlet(resource, sr);
 
-            FilterHandle[] filters = filterManager.getFilters(FilterChainType.REQUEST);
+            FilterDispatchTable filters = filterManager.getDispatchTable(FilterChainType.REQUEST);
             if (filters != null) {
                 FilterChain processor = new RequestSlingFilterChain(this,
                     filters);
@@ -226,6 +226,8 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             handleError(t, request, response);
 
         } finally {
+            // completes the tracker, which may drop the trace of unsampled fast requests
+            request.getRequestProgressTracker().done();
             if (mbean != null) {
                 mbean.addRequestData(requestData);
             }
@@ -273,7 +275,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             final FilterChainType filterChainType) throws IOException,
             ServletException {
 
-        FilterHandle filters[] = filterManager.getFilters(filterChainType);
+        FilterDispatchTable filters = filterManager.getDispatchTable(filterChainType);
         if (filters != null) {
 
             FilterChain processor = new SlingComponentFilterChain(filters);
@@ -335,8 +337,8 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         // the response output stream if reset does not reset this
         response = new ErrorResponseWrapper(response);
 
-        FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR);
-        if (filters != null && filters.length > 0) {
+        FilterDispatchTable filters = filterManager.getDispatchTable(FilterChainType.ERROR);
+        if (filters != null && filters.getFilters().length > 0) {
             FilterChain processor = new AbstractSlingFilterChain(filters) {
 
                 @Override
@@ -367,8 +369,8 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         // the response output stream if reset does not reset this
         response = new ErrorResponseWrapper(response);
 
-        FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR);
-        if (filters != null && filters.length > 0) {
+        FilterDispatchTable filters = filterManager.getDispatchTable(FilterChainType.ERROR);
+        if (filters != null && filters.getFilters().length > 0) {
             FilterChain processor = new AbstractSlingFilterChain(filters) {
 
                 @Override
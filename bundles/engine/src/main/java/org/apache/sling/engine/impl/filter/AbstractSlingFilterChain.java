@@ -19,6 +19,7 @@
 package org.apache.sling.engine.impl.filter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -32,23 +33,34 @@ import org.apache.sling.engine.impl.request.RequestData;
 
 public abstract class AbstractSlingFilterChain implements FilterChain {
 
-    private FilterHandle[] filters;
+    private final FilterDispatchTable dispatchTable;
+
+    private final FilterHandle[] filters;
 
     private int current;
 
     private long[] times;
 
+    /** Filters not applying to the request, these are not tracked */
+    private boolean[] skipped;
+
     protected AbstractSlingFilterChain(FilterHandle[] filters) {
-        this.filters = filters;
+        this(new FilterDispatchTable(filters));
+    }
+
+    protected AbstractSlingFilterChain(FilterDispatchTable dispatchTable) {
+        this.dispatchTable = dispatchTable;
+        this.filters = dispatchTable.getFilters();
         this.current = -1;
-        this.times = (filters != null) ? new long[filters.length + 1] : null;
+        this.times = new long[filters.length + 1];
+        this.skipped = new boolean[filters.length];
     }
 
     public void doFilter(ServletRequest request, ServletResponse response)
             throws ServletException, IOException {
 
-        final int filterIdx = ++this.current;
-        final long start = System.currentTimeMillis();
+        final int previous = this.current;
+        final long start = System.nanoTime();
 
         // the previous filter may have wrapped non-Sling request and response
         // wrappers (e.g. WebCastellum does this), so we have to make
@@ -56,30 +68,30 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
         SlingHttpServletRequest slingRequest = toSlingRequest(request);
         SlingHttpServletResponse slingResponse = toSlingResponse(response);
 
+        // select the next filter against the request as wrapped by the
+        // previous filters, skipping the filters not applying to it
+        final int filterIdx = dispatchTable.next(slingRequest.getPathInfo(), previous);
+        for (int i = previous + 1; i < filterIdx; i++) {
+            skipped[i] = true;
+        }
+        this.current = filterIdx;
+
         try {
 
-            if (this.current < this.filters.length) {
+            if (filterIdx < this.filters.length) {
 
                 // continue filtering with the next filter
-                FilterHandle filter = this.filters[this.current];
-                
-                if (filter.select(slingRequest)) {
-                    trackFilter(slingRequest, filter);
-                    filter.getFilter().doFilter(slingRequest, slingResponse, this);
-                } else {
-                    if (this.current == this.filters.length-1) {
-                        this.render(slingRequest, slingResponse);
-                    } else {
-                       doFilter(slingRequest, slingResponse);
-                    }
-                }
+                FilterHandle filter = this.filters[filterIdx];
+                trackFilter(slingRequest, filter);
+                filter.getFilter().doFilter(slingRequest, slingResponse, this);
+
             } else {
                 this.render(slingRequest, slingResponse);
             }
 
         } finally {
-            times[filterIdx] = System.currentTimeMillis() - start;
-            if (filterIdx == 0) {
+            times[filterIdx] = System.nanoTime() - start;
+            if (previous == -1) {
                 consolidateFilterTimings(slingRequest);
             }
         }
@@ -102,20 +114,29 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
     }
 
     private void consolidateFilterTimings(ServletRequest request) {
-        if (filters != null) {
-            RequestData data = RequestData.getRequestData(request);
-            RequestProgressTracker tracker = (data != null) ? data.getRequestProgressTracker() : null;
-
-            for (int i = filters.length - 1; i > 0; i--) {
-                filters[i].trackTime(times[i] - times[i + 1]);
-                if (tracker != null) {
-                    tracker.log("Filter timing: filter={0}, inner={1}, total={2}, outer={3}",
-                        filters[i].getFilter().getClass().getName(), times[i + 1], times[i], (times[i] - times[i + 1]));
-                }
+        RequestData data = RequestData.getRequestData(request);
+        RequestProgressTracker tracker = (data != null) ? data.getRequestProgressTracker() : null;
+
+        // filters after the last one called have not been reached
+        long inner = (current == filters.length) ? times[current] : 0;
+        for (int i = Math.min(current, filters.length - 1); i >= 0; i--) {
+            if (skipped[i]) {
+                continue;
             }
+            filters[i].trackTime(times[i] - inner);
+            if (tracker != null) {
+                tracker.log("Filter timing: filter={0}, inner={1}, total={2}, outer={3}",
+                    filters[i].getFilter().getClass().getName(), toMillis(inner), toMillis(times[i]),
+                    toMillis(times[i] - inner));
+            }
+            inner = times[i];
         }
     }
 
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     private SlingHttpServletRequest toSlingRequest(ServletRequest request) {
         if (request instanceof SlingHttpServletRequest) {
             return (SlingHttpServletRequest) request;
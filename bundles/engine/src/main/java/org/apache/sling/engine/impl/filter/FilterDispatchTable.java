@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>FilterDispatchTable</code> selects the next filter of a chain
+ * applying to a request path. It is built once whenever the filters of a
+ * chain change so that selecting the filters does not require evaluating the
+ * pattern of each filter on each request:
+ * <ul>
+ * <li>If no filter has a pattern, all filters apply.</li>
+ * <li>Filters whose pattern starts with a literal first path segment, e.g.
+ * <code>/content/.*</code>, are only considered for paths starting with
+ * this segment. The candidates are looked up by the first segment of the
+ * request path.</li>
+ * <li>The pattern of a candidate is only evaluated if the path starts with
+ * the literal prefix of the pattern.</li>
+ * </ul>
+ * The chain consults the table at each step with the path of the request as
+ * wrapped by the previous filters, so a filter changing the path info
+ * changes which of the later filters apply.
+ * <p>
+ * Instances are immutable.
+ */
+public final class FilterDispatchTable {
+
+    static final FilterDispatchTable EMPTY = new FilterDispatchTable(new FilterHandle[0]);
+
+    private final FilterHandle[] filters;
+
+    private final boolean unconditional;
+
+    /** Candidate filter indexes for paths whose first segment is not in {@link #bySegment} */
+    private final int[] defaultCandidates;
+
+    /** Candidate filter indexes by the first path segment */
+    private final Map<String, int[]> bySegment;
+
+    FilterDispatchTable(final FilterHandle[] filters) {
+        this.filters = (filters != null) ? filters : new FilterHandle[0];
+
+        final List<Integer> common = new ArrayList<Integer>();
+        final Map<String, List<Integer>> segments = new HashMap<String, List<Integer>>();
+        boolean hasPatterns = false;
+        for (int i = 0; i < this.filters.length; i++) {
+            hasPatterns |= this.filters[i].hasPattern();
+            final String segment = firstSegment(this.filters[i].getPathPrefix(), true);
+            if (segment == null) {
+                common.add(i);
+            } else {
+                List<Integer> list = segments.get(segment);
+                if (list == null) {
+                    list = new ArrayList<Integer>();
+                    segments.put(segment, list);
+                }
+                list.add(i);
+            }
+        }
+
+        this.unconditional = !hasPatterns;
+        this.defaultCandidates = toArray(common);
+        this.bySegment = new HashMap<String, int[]>();
+        for (final Map.Entry<String, List<Integer>> entry : segments.entrySet()) {
+            this.bySegment.put(entry.getKey(), toArray(entry.getValue(), common));
+        }
+    }
+
+    /**
+     * Returns all filters of the chain in order.
+     */
+    public FilterHandle[] getFilters() {
+        return filters;
+    }
+
+    /**
+     * Returns the index of the next filter after <code>after</code> which
+     * applies to the given path or the number of filters if no further
+     * filter applies.
+     *
+     * @param path The request path info, <code>null</code> is treated as the
+     *            root path
+     * @param after The index of the current filter, <code>-1</code> to
+     *            start the chain
+     */
+    int next(String path, final int after) {
+        if (unconditional) {
+            return Math.min(after + 1, filters.length);
+        }
+        if (path == null) {
+            path = "/";
+        }
+
+        int[] candidates = null;
+        if (!bySegment.isEmpty()) {
+            final String segment = firstSegment(path, false);
+            if (segment != null) {
+                candidates = bySegment.get(segment);
+            }
+        }
+        if (candidates == null) {
+            candidates = defaultCandidates;
+        }
+
+        int pos = Arrays.binarySearch(candidates, after + 1);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        for (; pos < candidates.length; pos++) {
+            if (filters[candidates[pos]].select(path)) {
+                return candidates[pos];
+            }
+        }
+        return filters.length;
+    }
+
+    /**
+     * Returns the first segment of the path or <code>null</code> if the path
+     * does not start with a slash or, if <code>complete</code> is set, if the
+     * segment is not terminated by a slash.
+     */
+    private static String firstSegment(final String path, final boolean complete) {
+        if (path.length() < 2 || path.charAt(0) != '/') {
+            return null;
+        }
+        final int end = path.indexOf('/', 1);
+        if (end == -1) {
+            return complete ? null : path.substring(1);
+        }
+        return path.substring(1, end);
+    }
+
+    /** Merges the sorted index lists into a sorted array */
+    private static int[] toArray(final List<Integer> first, final List<Integer> second) {
+        final List<Integer> all = new ArrayList<Integer>(first.size() + second.size());
+        all.addAll(first);
+        all.addAll(second);
+        final int[] result = toArray(all);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+}
@@ -18,19 +18,21 @@
  */
 package org.apache.sling.engine.impl.filter;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.servlet.Filter;
 
-import org.apache.sling.api.SlingHttpServletRequest;
-
 public class FilterHandle implements Comparable<FilterHandle> {
 
     private final Filter filter;
     
     private final Pattern regex;
 
+    /** Literal prefix of all paths matched by the regex, empty if unknown */
+    private final String pathPrefix;
+
     private final Long filterId;
 
     private final int order;
@@ -39,18 +41,21 @@ public class FilterHandle implements Comparable<FilterHandle> {
 
     private AtomicLong calls;
 
+    /** The accumulated processing time in nanoseconds */
     private AtomicLong time;
-    
+
     FilterProcessorMBeanImpl mbean;
 
     FilterHandle(Filter filter, String pattern, Long filterId, int order, final String orderSource, FilterProcessorMBeanImpl mbean) {
         this.filter = filter;
         if (pattern != null && pattern.length() > 0) {
             this.regex = Pattern.compile(pattern);
+            this.pathPrefix = getLiteralPrefix(pattern);
         } else {
             this.regex = null;
+            this.pathPrefix = "";
         }
-        
+
         this.filterId = filterId;
         this.order = order;
         this.orderSource = orderSource;
@@ -75,41 +80,84 @@ public class FilterHandle implements Comparable<FilterHandle> {
         return orderSource;
     }
     
-    boolean select(SlingHttpServletRequest slingHttpServletRequest) {
-        boolean select = true;        
-        if (regex != null) {
-            String uri = slingHttpServletRequest.getPathInfo();
-            // assume root if uri is null
-            if (uri == null)
-            {
-                uri = "/";
-            }
-            select = this.regex.matcher(uri).matches();
-        }        
-        return select;
+    boolean hasPattern() {
+        return regex != null;
+    }
+
+    String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * Returns whether the filter applies to the given request path info. The
+     * pattern is only evaluated if the path starts with its literal prefix.
+     */
+    boolean select(String path) {
+        if (regex == null) {
+            return true;
+        }
+        // assume root if path is null
+        if (path == null) {
+            path = "/";
+        }
+        return path.startsWith(pathPrefix) && regex.matcher(path).matches();
     }
 
     public long getCalls() {
         return calls.get();
     }
 
+    /**
+     * Returns the accumulated processing time in milliseconds.
+     */
     public long getTime() {
-        return time.get();
+        return TimeUnit.NANOSECONDS.toMillis(time.get());
     }
 
+    /**
+     * Returns the mean processing time per call in microseconds or -1 if
+     * the filter has not been called yet.
+     */
     public long getTimePerCall() {
-        return (getCalls() > 0) ? (1000L * getTime() / getCalls()) : -1;
+        return (getCalls() > 0) ? (TimeUnit.NANOSECONDS.toMicros(time.get()) / getCalls()) : -1;
     }
 
     void track() {
         calls.incrementAndGet();
     }
 
+    /**
+     * Adds the processing time of a call in nanoseconds.
+     */
     void trackTime(long time) {
         this.time.addAndGet(time);
         if (mbean != null) {
-            mbean.addFilterHandle(this);
+            mbean.addFilterCall(time);
+        }
+    }
+
+    /**
+     * Returns the literal prefix of the strings matched by the regular
+     * expression, stopping at the first special character. An empty string
+     * is returned for patterns with alternatives.
+     */
+    static String getLiteralPrefix(final String pattern) {
+        if (pattern.indexOf('|') != -1) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int i = (pattern.startsWith("^") ? 1 : 0); i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if ("\\[](){}.*+?^$".indexOf(c) != -1) {
+                // the previous character is optional
+                if ((c == '?' || c == '*' || c == '{') && sb.length() > 0) {
+                    sb.setLength(sb.length() - 1);
+                }
+                break;
+            }
+            sb.append(c);
         }
+        return sb.toString();
     }
 
     /**
@@ -16,6 +16,10 @@
  */
 package org.apache.sling.engine.impl.filter;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
 
@@ -23,38 +27,81 @@ import org.apache.sling.engine.jmx.FilterProcessorMBean;
 
 /**
  * This is the implementation of the management interface for the
- * FilterProcessorMBean.
+ * FilterProcessorMBean. One instance is registered per filter and
+ * collects the invocations of the filter in all of its scopes.
  */
 public class FilterProcessorMBeanImpl extends StandardMBean implements FilterProcessorMBean{
-    
+
+    /** The upper (exclusive) limits of the histogram buckets in milliseconds. */
+    static final long[] BUCKET_LIMITS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private static final long[] BUCKET_LIMITS_NANOS = new long[BUCKET_LIMITS_MS.length];
+    static {
+        for (int i = 0; i < BUCKET_LIMITS_MS.length; i++) {
+            BUCKET_LIMITS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_LIMITS_MS[i]);
+        }
+    }
+
     // number of filter invocations
-    private volatile long n;
-    
-    private volatile double meanDuration;
-    
+    private final AtomicLong n = new AtomicLong();
+
+    // accumulated duration in nanoseconds
+    private final AtomicLong duration = new AtomicLong();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_LIMITS_MS.length + 1);
+
     public FilterProcessorMBeanImpl() throws NotCompliantMBeanException{
         super(FilterProcessorMBean.class);
         resetStatistics();
     }
 
-    void addFilterHandle(FilterHandle filterHandle) {        
-        this.n = filterHandle.getCalls();        
-        this.meanDuration = (double)filterHandle.getTimePerCall()/1000;
+    /**
+     * Records a filter invocation taking the given number of nanoseconds.
+     */
+    void addFilterCall(final long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_NANOS.length && nanos >= BUCKET_LIMITS_NANOS[bucket]) {
+            bucket++;
+        }
+        this.histogram.incrementAndGet(bucket);
+        this.duration.addAndGet(nanos);
+        this.n.incrementAndGet();
     }
 
     @Override
     public long getInvocationsCount() {
-        return this.n;
+        return this.n.get();
     }
 
     @Override
     public double getMeanFilterDurationMsec() {
-        return this.meanDuration;
+        final long count = this.n.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) this.duration.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
     }
-    
+
+    @Override
+    public long[] getFilterDurationHistogramBucketLimitsMsec() {
+        return BUCKET_LIMITS_MS.clone();
+    }
+
+    @Override
+    public long[] getFilterDurationHistogram() {
+        final long[] result = new long[this.histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = this.histogram.get(i);
+        }
+        return result;
+    }
+
     @Override
     public void resetStatistics() {
-        this.n = 0;
-        this.meanDuration = 0;
+        this.n.set(0);
+        this.duration.set(0);
+        for (int i = 0; i < this.histogram.length(); i++) {
+            this.histogram.set(i, 0);
+        }
     }
 }
@@ -43,6 +43,11 @@ public class RequestSlingFilterChain extends AbstractSlingFilterChain {
         this.handler = handler;
     }
 
+    public RequestSlingFilterChain(SlingRequestProcessorImpl handler, FilterDispatchTable dispatchTable) {
+        super(dispatchTable);
+        this.handler = handler;
+    }
+
     protected void render(SlingHttpServletRequest request,
             SlingHttpServletResponse response) throws ServletException,
             IOException {
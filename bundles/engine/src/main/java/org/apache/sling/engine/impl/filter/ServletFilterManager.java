@@ -120,6 +120,10 @@ public class ServletFilterManager extends ServiceTracker<Filter, Filter> {
         return getFilterChain(chain).getFilters();
     }
 
+    public FilterDispatchTable getDispatchTable(final FilterChainType chain) {
+        return getFilterChain(chain).getDispatchTable();
+    }
+
     @Override
     public Filter addingService(ServiceReference<Filter> reference) {
         if ( this.excludeFilter(reference) ) {
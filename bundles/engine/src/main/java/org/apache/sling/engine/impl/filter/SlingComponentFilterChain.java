@@ -38,6 +38,10 @@ public class SlingComponentFilterChain extends AbstractSlingFilterChain {
         super(filters);
     }
 
+    public SlingComponentFilterChain(FilterDispatchTable dispatchTable) {
+        super(dispatchTable);
+    }
+
     protected void render(SlingHttpServletRequest request,
             SlingHttpServletResponse response) throws IOException,
             ServletException {
@@ -30,14 +30,15 @@ import javax.servlet.Filter;
  * ordering, each filter is optionally registered with an ordering index. If
  * none is provided the default ordering index is Integer.MAX_VALUE to append
  * the filter to the end of the list.
+ * <p>
+ * Whenever the filters change a {@link FilterDispatchTable} is built to
+ * select the filters applying to a request.
  */
 public class SlingFilterChainHelper {
 
-    private static final FilterHandle[] EMPTY_FILTER_ARRAY = new FilterHandle[0];
-
     private SortedSet<FilterHandle> filterList;
 
-    private FilterHandle[] filters = EMPTY_FILTER_ARRAY;
+    private volatile FilterDispatchTable dispatchTable = FilterDispatchTable.EMPTY;
 
     SlingFilterChainHelper() {
     }
@@ -48,7 +49,7 @@ public class SlingFilterChainHelper {
             filterList = new TreeSet<FilterHandle>();
         }
         filterList.add(new FilterHandle(filter, pattern, filterId, order, orderSource, mbean));
-        filters = getFiltersInternal();
+        dispatchTable = createDispatchTable();
         return filter;
     }
 
@@ -60,7 +61,7 @@ public class SlingFilterChainHelper {
                     || (test.getFilterId() != null && test.getFilterId().equals(
                         filterId))) {
                     fi.remove();
-                    filters = getFiltersInternal();
+                    dispatchTable = createDispatchTable();
                     return true;
                 }
             }
@@ -71,18 +72,26 @@ public class SlingFilterChainHelper {
     }
 
     /**
-     * Returns the list of <code>Filter</code>s added to this instance
-     * or <code>null</code> if no filters have been added.
-     * This method doesn't need to be synced as it is called from synced methods.
+     * Returns the list of <code>Filter</code>s added to this instance.
+     * This method doesn't need to be synced as the dispatch table is
+     * immutable and replaced on changes.
      */
     public FilterHandle[] getFilters() {
-        return filters;
+        return dispatchTable.getFilters();
+    }
+
+    /**
+     * Returns the dispatch table used by the filter chains to select the
+     * filters applying to a request.
+     */
+    public FilterDispatchTable getDispatchTable() {
+        return dispatchTable;
     }
 
-    private FilterHandle[] getFiltersInternal() {
+    private FilterDispatchTable createDispatchTable() {
         if (filterList == null || filterList.isEmpty()) {
-            return EMPTY_FILTER_ARRAY;
+            return FilterDispatchTable.EMPTY;
         }
-        return filterList.toArray(new FilterHandle[filterList.size()]);
+        return new FilterDispatchTable(filterList.toArray(new FilterHandle[filterList.size()]));
     }
 }
\ No newline at end of file
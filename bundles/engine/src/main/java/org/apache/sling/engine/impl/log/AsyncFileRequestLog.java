@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.engine.RequestLog;
+
+/**
+ * The <code>AsyncFileRequestLog</code> class is an implementation of the
+ * {@link RequestLog} interface writing the log messages to a plain file
+ * asynchronously. Like the {@link FileRequestLog} the files are shared between
+ * the log formatters writing to the same file. Each file has an
+ * {@link AsyncLogFileWriter} which is closed when the last log using it has
+ * been closed.
+ * <p>
+ * To ensure no writer threads are left running, the
+ * {@link RequestLoggerFilter} object calls {@link #dispose()} when it is being
+ * deactivated.
+ */
+class AsyncFileRequestLog implements RequestLog {
+
+    // The map of shared writers and the number of logs using them
+    private static final Map<String, AsyncLogFileWriter> logFiles = new HashMap<String, AsyncLogFileWriter>();
+
+    private static final Map<AsyncLogFileWriter, Integer> useCounts = new HashMap<AsyncLogFileWriter, Integer>();
+
+    // Dispose class by closing all writers
+    static void dispose() {
+        synchronized (logFiles) {
+            for (final AsyncLogFileWriter w : logFiles.values()) {
+                w.close();
+            }
+            logFiles.clear();
+            useCounts.clear();
+        }
+    }
+
+    // The writer used by this instance to write the messages
+    private volatile AsyncLogFileWriter output;
+
+    /**
+     * @see AsyncLogFileWriter#AsyncLogFileWriter(File, int, boolean, long, long)
+     */
+    AsyncFileRequestLog(File logFile, int bufferSize, boolean dropOnOverflow, long rotationSize, long rotationInterval)
+    throws IOException {
+        synchronized (logFiles) {
+            final String fileName = logFile.getAbsolutePath();
+            AsyncLogFileWriter writer = logFiles.get(fileName);
+            if (writer == null) {
+                writer = new AsyncLogFileWriter(logFile, bufferSize, dropOnOverflow, rotationSize, rotationInterval);
+                writer.start();
+                logFiles.put(fileName, writer);
+                useCounts.put(writer, 1);
+            } else {
+                useCounts.put(writer, useCounts.get(writer) + 1);
+            }
+            this.output = writer;
+        }
+    }
+
+    /**
+     * @see org.apache.sling.engine.RequestLog#write(java.lang.String)
+     */
+    public void write(String message) {
+        final AsyncLogFileWriter writer = this.output;
+        if (writer != null) {
+            writer.write(message);
+        }
+    }
+
+    /**
+     * Writes the message for the request formatted directly into the buffer
+     * of the writer.
+     */
+    void write(CustomLogFormat format, RequestLoggerRequest request, RequestLoggerResponse response) {
+        final AsyncLogFileWriter writer = this.output;
+        if (writer != null) {
+            writer.write(format, request, response);
+        }
+    }
+
+    public void close() {
+        synchronized (logFiles) {
+            final AsyncLogFileWriter writer = this.output;
+            this.output = null;
+            final Integer count = writer == null ? null : useCounts.get(writer);
+            if (count != null) {
+                if (count > 1) {
+                    useCounts.put(writer, count - 1);
+                } else {
+                    useCounts.remove(writer);
+                    logFiles.values().remove(writer);
+                    writer.close();
+                }
+            }
+        }
+    }
+}
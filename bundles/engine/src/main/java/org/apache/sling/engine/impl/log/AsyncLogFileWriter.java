@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AsyncLogFileWriter</code> writes log messages to a file from a
+ * background thread.
+ * <p>
+ * Request threads format their messages into the slots of a
+ * {@link LogRingBuffer} and return immediately. The writer thread takes the
+ * messages in batches, encodes them into a byte buffer and writes the buffer
+ * to the file channel when it is full or when no more messages are pending.
+ * <p>
+ * If the ring buffer is full, messages are either dropped or the request
+ * thread waits until the writer has made room, depending on the overflow
+ * policy. A request thread waits at most {@link #MAX_OVERFLOW_WAIT_NANOS}
+ * and never if the writer thread has stopped, the message is dropped then.
+ * The number of dropped messages is logged whenever the writer flushes. The
+ * file can be rotated when it exceeds a maximum size and/or after
+ * a time interval. The rotated file gets the rotation time appended to its
+ * name.
+ */
+class AsyncLogFileWriter implements Runnable, LogRingBuffer.Consumer {
+
+    /** default logger */
+    private final Logger log = LoggerFactory.getLogger(AsyncLogFileWriter.class);
+
+    /** Size of the byte buffer collecting the encoded messages */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /** Maximum time the writer sleeps if there are no messages */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Time a producer waits for the writer if the ring buffer is full */
+    private static final long OVERFLOW_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /** Maximum time a producer waits for room before dropping its message */
+    static final long MAX_OVERFLOW_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final char[] LINE_SEPARATOR = System.getProperty("line.separator", "\n").toCharArray();
+
+    private final File file;
+
+    private final LogRingBuffer ring;
+
+    private final boolean dropOnOverflow;
+
+    private final long rotationSize;
+
+    private final long rotationInterval;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Set by the writer thread before it parks for lack of messages */
+    private final AtomicBoolean writerWaiting = new AtomicBoolean();
+
+    private volatile boolean running;
+
+    private volatile Thread writerThread;
+
+    // the following fields are only accessed by the writer thread
+
+    private final CharsetEncoder encoder;
+
+    private final ByteBuffer bytes = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    private FileChannel channel;
+
+    private long fileSize;
+
+    private long nextRotation;
+
+    private long reportedDropped;
+
+    /**
+     * @param file The log file, messages are appended.
+     * @param bufferSize The number of messages which can be pending.
+     * @param dropOnOverflow Whether messages are dropped if too many are
+     *            pending or the request thread has to wait.
+     * @param rotationSize The size in bytes after which the file is rotated,
+     *            0 for no size based rotation.
+     * @param rotationInterval The time in milliseconds after which the file is
+     *            rotated, 0 for no time based rotation.
+     */
+    AsyncLogFileWriter(final File file, final int bufferSize, final boolean dropOnOverflow,
+            final long rotationSize, final long rotationInterval) {
+        this.file = file;
+        this.ring = new LogRingBuffer(bufferSize);
+        this.dropOnOverflow = dropOnOverflow;
+        this.rotationSize = rotationSize;
+        this.rotationInterval = rotationInterval;
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Opens the file and starts the writer thread.
+     */
+    void start() throws IOException {
+        this.open();
+        this.running = true;
+        final Thread t = new Thread(this, "Apache Sling Request Log Writer (" + this.file.getName() + ")");
+        t.setDaemon(true);
+        this.writerThread = t;
+        t.start();
+    }
+
+    /**
+     * Stops the writer thread after it has written the pending messages and
+     * closes the file.
+     */
+    void close() {
+        this.running = false;
+        final Thread t = this.writerThread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            this.writerThread = null;
+        }
+    }
+
+    /**
+     * Queues a preformatted message.
+     */
+    void write(final String message) {
+        final long position = this.claim();
+        if (position != -1) {
+            this.ring.getBuffer(position).append(message);
+            this.publish(position);
+        }
+    }
+
+    /**
+     * Formats the message for the request directly into the ring buffer and
+     * queues it.
+     */
+    void write(final CustomLogFormat format, final RequestLoggerRequest request, final RequestLoggerResponse response) {
+        final long position = this.claim();
+        if (position != -1) {
+            try {
+                format.format(this.ring.getBuffer(position), request, response);
+            } finally {
+                // always publish as the writer waits for each claimed slot
+                this.publish(position);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages dropped because too many were pending.
+     */
+    long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    private long claim() {
+        long position = this.ring.claim();
+        if (position != -1) {
+            return position;
+        }
+        final long deadline = System.nanoTime() + MAX_OVERFLOW_WAIT_NANOS;
+        while (position == -1) {
+            if (this.dropOnOverflow || !this.running || System.nanoTime() - deadline >= 0) {
+                this.dropped.incrementAndGet();
+                return -1;
+            }
+            this.wakeUpWriter();
+            LockSupport.parkNanos(OVERFLOW_PARK_NANOS);
+            position = this.ring.claim();
+        }
+        return position;
+    }
+
+    private void publish(final long position) {
+        this.ring.publish(position);
+        this.wakeUpWriter();
+    }
+
+    private void wakeUpWriter() {
+        if (this.writerWaiting.get() && this.writerWaiting.compareAndSet(true, false)) {
+            LockSupport.unpark(this.writerThread);
+        }
+    }
+
+    // ---------- writer thread
+
+    @Override
+    public void run() {
+        try {
+            while (this.running || !this.ring.isEmpty()) {
+                final int count = this.ring.drain(this, this.ring.capacity());
+                this.checkRotationInterval();
+                if (count == 0) {
+                    // nothing pending, write out what we have and wait
+                    this.flush();
+                    this.writerWaiting.set(true);
+                    if (this.running && this.ring.isEmpty()) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    this.writerWaiting.set(false);
+                }
+            }
+            this.flush();
+        } catch (final RuntimeException re) {
+            log.error("Request log writer for " + this.file + " failed, dropping further messages", re);
+        } finally {
+            // don't let request threads wait for a writer which is gone
+            this.running = false;
+            this.closeChannel();
+        }
+    }
+
+    @Override
+    public void consume(final StringBuilder message) {
+        final int length = message.length();
+        if (this.chars.capacity() < length + LINE_SEPARATOR.length) {
+            this.chars = CharBuffer.allocate(length + LINE_SEPARATOR.length + 256);
+        }
+        final CharBuffer buffer = this.chars;
+        buffer.clear();
+        message.getChars(0, length, buffer.array(), 0);
+        buffer.position(length);
+        buffer.put(LINE_SEPARATOR);
+        buffer.flip();
+
+        this.encoder.reset();
+        for (;;) {
+            final CoderResult result = this.encoder.encode(buffer, this.bytes, true);
+            if (result.isOverflow()) {
+                this.flush();
+            } else {
+                break;
+            }
+        }
+        while (this.encoder.flush(this.bytes).isOverflow()) {
+            this.flush();
+        }
+    }
+
+    private void flush() {
+        this.reportDropped();
+        if (this.bytes.position() == 0) {
+            return;
+        }
+        this.bytes.flip();
+        try {
+            if (this.channel == null) {
+                this.open();
+            }
+            if (this.rotationSize > 0 && this.fileSize > 0 && this.fileSize + this.bytes.remaining() > this.rotationSize) {
+                this.rotate();
+            }
+            while (this.bytes.hasRemaining()) {
+                this.fileSize += this.channel.write(this.bytes);
+            }
+        } catch (final IOException ioe) {
+            log.error("Cannot write request log file " + this.file + ", dropping messages", ioe);
+            this.closeChannel();
+        } finally {
+            this.bytes.clear();
+        }
+    }
+
+    private void checkRotationInterval() {
+        if (this.rotationInterval > 0 && System.currentTimeMillis() >= this.nextRotation) {
+            this.flush();
+            if (this.fileSize > 0) {
+                try {
+                    this.rotate();
+                } catch (final IOException ioe) {
+                    log.error("Cannot rotate request log file " + this.file, ioe);
+                    this.closeChannel();
+                }
+            } else {
+                this.nextRotation = System.currentTimeMillis() + this.rotationInterval;
+            }
+        }
+    }
+
+    private void reportDropped() {
+        final long current = this.dropped.get();
+        if (current != this.reportedDropped) {
+            log.warn("Dropped {} messages for request log file {} as too many were pending",
+                current - this.reportedDropped, this.file);
+            this.reportedDropped = current;
+        }
+    }
+
+    private void open() throws IOException {
+        this.file.getAbsoluteFile().getParentFile().mkdirs();
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.fileSize = this.channel.size();
+        this.nextRotation = System.currentTimeMillis() + this.rotationInterval;
+    }
+
+    private void rotate() throws IOException {
+        this.closeChannel();
+        final String suffix = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File target = new File(this.file.getPath() + "." + suffix);
+        for (int i = 1; target.exists(); i++) {
+            target = new File(this.file.getPath() + "." + suffix + "." + i);
+        }
+        if (!this.file.renameTo(target)) {
+            log.warn("Cannot rotate request log file {} to {}, continuing with the current file", this.file, target);
+        }
+        this.open();
+    }
+
+    private void closeChannel() {
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (final IOException ioe) {
+                // don't care
+            }
+            this.channel = null;
+        }
+    }
+}
@@ -55,6 +55,17 @@ class CustomLogFormat {
      */
     Parameter[] logParameters;
 
+    /**
+     * Per thread buffer used by {@link #format(RequestLoggerRequest, RequestLoggerResponse)}
+     * to not grow a new buffer for each message.
+     */
+    private static final ThreadLocal<StringBuilder> FORMAT_BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
     /**
      * Creates a new instance from of this class parsing the log format pattern.
      *
@@ -81,17 +92,41 @@ class CustomLogFormat {
      *         pattern.
      */
     String format(RequestLoggerRequest request, RequestLoggerResponse response) {
-        if (this.logParameters != null) {
-            StringBuilder buf = new StringBuilder();
-            for (int i = 0; i < this.logParameters.length; i++) {
-                this.logParameters[i].print(buf, request, response);
-            }
+        final StringBuilder buf = FORMAT_BUFFER.get();
+        buf.setLength(0);
+        if (this.format(buf, request, response)) {
             return buf.toString();
         }
 
         return null;
     }
 
+    /**
+     * Appends the log message for the given <code>request</code> and
+     * <code>response</code> objects to the <code>dest</code> buffer. This
+     * allows callers to format into reusable buffers.
+     *
+     * @param dest The buffer to append the log message to.
+     * @param request The {@link RequestLoggerRequest} used to extract values
+     *            for the log message.
+     * @param response The {@link RequestLoggerResponse} used to extract values
+     *            for the log message.
+     * @return <code>true</code> if the message has been appended,
+     *         <code>false</code> if this log formatter has not been
+     *         initialized with a valid log format pattern.
+     */
+    boolean format(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+        final Parameter[] parameters = this.logParameters;
+        if (parameters != null) {
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i].print(dest, request, response);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Returns a string representation of this log format instance. The returned
      * String is actually rebuilt from the parsed format string and may be used
@@ -411,11 +446,20 @@ class CustomLogFormat {
 
         public final void print(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
             if (this.printOk(response.getStatus())) {
-                String value = this.isRequest ? this.getValue(request) : this.getValue(response);
-                dest.append((value == null) ? "-" : value);
+                this.printValue(dest, request, response);
             }
         }
 
+        /**
+         * Appends the value of this parameter to the buffer. Parameters with
+         * numeric values overwrite this to append the number without creating
+         * a string first.
+         */
+        protected void printValue(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+            String value = this.isRequest ? this.getValue(request) : this.getValue(response);
+            dest.append((value == null) ? "-" : value);
+        }
+
         protected boolean printOk(int status) {
             if (this.statusLimits == null) {
                 return true;
@@ -602,6 +646,16 @@ class CustomLogFormat {
 
             return String.valueOf(count);
         }
+
+        @Override
+        protected void printValue(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+            int count = response.getCount();
+            if (count == 0) {
+                dest.append((this.getParName() == 'b') ? '-' : '0');
+            } else {
+                dest.append(count);
+            }
+        }
     }
 
     static class TimeParameter extends BaseParameter {
@@ -685,6 +739,15 @@ class CustomLogFormat {
             }
             return String.valueOf(time);
         }
+
+        @Override
+        protected void printValue(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+            long time = response.getRequestDuration();
+            if (this.seconds) {
+                time /= 1000;
+            }
+            dest.append(time);
+        }
     }
 
     static class RemoteIPParameter extends BaseParameter {
@@ -741,6 +804,11 @@ class CustomLogFormat {
         protected String getValue(RequestLoggerResponse response) {
             return null;
         }
+
+        @Override
+        protected void printValue(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+            dest.append(request.getServerPort());
+        }
     }
 
     static class ServerNameParameter extends BaseParameter {
@@ -891,6 +959,11 @@ class CustomLogFormat {
         protected String getValue(RequestLoggerResponse response) {
             return String.valueOf(response.getStatus());
         }
+
+        @Override
+        protected void printValue(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+            dest.append(response.getStatus());
+        }
     }
 
     static class CookieParameter extends BaseParameter {
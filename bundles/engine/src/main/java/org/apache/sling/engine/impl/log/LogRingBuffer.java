@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>LogRingBuffer</code> is a bounded, lock-free queue of log
+ * messages with any number of producers and a single consumer.
+ * <p>
+ * The buffer consists of a fixed number of slots, each holding a reusable
+ * <code>StringBuilder</code>. A producer first {@link #claim() claims} a
+ * slot, formats its message directly into the slot's buffer and then
+ * {@link #publish(long) publishes} it. The consumer reads published slots in
+ * order and releases them for reuse. Each slot carries a sequence number which
+ * tells producers and the consumer whether the slot is free, in use or
+ * published, so no locks are needed.
+ */
+class LogRingBuffer {
+
+    /**
+     * The <code>Consumer</code> receives the messages taken from the buffer.
+     */
+    interface Consumer {
+
+        /**
+         * Called for each message in order. The message must not be used after
+         * this method returns as its buffer is reused.
+         */
+        void consume(StringBuilder message);
+    }
+
+    /** Initial capacity of the slot buffers */
+    private static final int INITIAL_MESSAGE_CAPACITY = 256;
+
+    /** Slot buffers grown larger than this are replaced after use */
+    private static final int MAX_RETAINED_MESSAGE_CAPACITY = 16 * 1024;
+
+    private final int mask;
+
+    private final StringBuilder[] messages;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong producerPosition = new AtomicLong();
+
+    /** Only accessed by the consumer thread */
+    private long consumerPosition;
+
+    /**
+     * @param capacity The number of slots, rounded up to the next power of two.
+     */
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.messages = new StringBuilder[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.messages[i] = new StringBuilder(INITIAL_MESSAGE_CAPACITY);
+            this.sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return this.messages.length;
+    }
+
+    /**
+     * Claims the next free slot.
+     *
+     * @return The position of the claimed slot or -1 if the buffer is full.
+     */
+    long claim() {
+        for (;;) {
+            final long position = this.producerPosition.get();
+            final long difference = this.sequences.get((int) position & this.mask) - position;
+            if (difference == 0) {
+                if (this.producerPosition.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (difference < 0) {
+                // the consumer has not released this slot yet
+                return -1;
+            }
+            // else another producer claimed the slot, retry with the new position
+        }
+    }
+
+    /**
+     * Returns the empty buffer of the claimed slot to format the message into.
+     */
+    StringBuilder getBuffer(long position) {
+        final StringBuilder buffer = this.messages[(int) position & this.mask];
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /**
+     * Publishes the message of the claimed slot to the consumer.
+     */
+    void publish(long position) {
+        this.sequences.lazySet((int) position & this.mask, position + 1);
+    }
+
+    /**
+     * Returns <code>true</code> if there is no published message.
+     */
+    boolean isEmpty() {
+        final long position = this.consumerPosition;
+        return this.sequences.get((int) position & this.mask) != position + 1;
+    }
+
+    /**
+     * Passes the published messages in order to the consumer and releases
+     * their slots. Must only be called by a single thread.
+     *
+     * @param consumer The consumer of the messages.
+     * @param max The maximum number of messages to take.
+     * @return The number of messages taken.
+     */
+    int drain(Consumer consumer, int max) {
+        int count = 0;
+        while (count < max) {
+            final long position = this.consumerPosition;
+            final int index = (int) position & this.mask;
+            if (this.sequences.get(index) != position + 1) {
+                break;
+            }
+            final StringBuilder message = this.messages[index];
+            try {
+                consumer.consume(message);
+            } finally {
+                if (message.capacity() > MAX_RETAINED_MESSAGE_CAPACITY) {
+                    this.messages[index] = new StringBuilder(INITIAL_MESSAGE_CAPACITY);
+                }
+                this.consumerPosition = position + 1;
+                this.sequences.lazySet(index, position + this.messages.length);
+            }
+            count++;
+        }
+        return count;
+    }
+}
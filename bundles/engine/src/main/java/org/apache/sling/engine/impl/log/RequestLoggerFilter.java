@@ -79,6 +79,7 @@ public final class RequestLoggerFilter implements Filter {
     @Override
     public void destroy() {
         FileRequestLog.dispose();
+        AsyncFileRequestLog.dispose();
     }
 
     // ---------- SCR Integration ----------------------------------------------
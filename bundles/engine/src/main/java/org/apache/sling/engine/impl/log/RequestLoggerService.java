@@ -21,6 +21,7 @@ package org.apache.sling.engine.impl.log;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -66,6 +67,30 @@ public class RequestLoggerService {
     @Property(boolValue = false)
     public static final String PARAM_ON_ENTRY = "request.log.service.onentry";
 
+    @Property(boolValue = false)
+    public static final String PARAM_ASYNC = "request.log.service.async";
+
+    @Property(intValue = RequestLoggerService.DEFAULT_ASYNC_BUFFER_SIZE)
+    public static final String PARAM_ASYNC_BUFFER_SIZE = "request.log.service.async.buffersize";
+
+    @Property(value = RequestLoggerService.OVERFLOW_BLOCK, options = {
+        @PropertyOption(name = RequestLoggerService.OVERFLOW_BLOCK, value = "Wait"),
+        @PropertyOption(name = RequestLoggerService.OVERFLOW_DROP, value = "Drop Messages")
+    })
+    public static final String PARAM_ASYNC_OVERFLOW = "request.log.service.async.overflow";
+
+    @Property(longValue = 0)
+    public static final String PARAM_ROTATION_SIZE = "request.log.service.rotation.size";
+
+    @Property(longValue = 0)
+    public static final String PARAM_ROTATION_INTERVAL = "request.log.service.rotation.interval";
+
+    private static final int DEFAULT_ASYNC_BUFFER_SIZE = 4096;
+
+    private static final String OVERFLOW_BLOCK = "block";
+
+    private static final String OVERFLOW_DROP = "drop";
+
     private static final int OUTPUT_TYPE_LOGGER = 0;
 
     private static final int OUTPUT_TYPE_FILE = 1;
@@ -103,7 +128,7 @@ public class RequestLoggerService {
         final String output = PropertiesUtil.toString(configuration.get(PARAM_OUTPUT), null);
         if (output != null) {
             final int outputType = PropertiesUtil.toInteger(configuration.get(PARAM_OUTPUT_TYPE), OUTPUT_TYPE_LOGGER);
-            this.log = this.getLog(bundleContext, output, outputType);
+            this.log = this.getLog(bundleContext, output, outputType, configuration);
         }
     }
 
@@ -118,8 +143,14 @@ public class RequestLoggerService {
     }
 
     void log(RequestLoggerRequest request, RequestLoggerResponse response) {
-        if (this.log != null && this.logFormat != null) {
-            this.log.write(this.logFormat.format(request, response));
+        final RequestLog log = this.log;
+        if (log != null && this.logFormat != null) {
+            if (log instanceof AsyncFileRequestLog) {
+                // format directly into the buffer of the asynchronous writer
+                ((AsyncFileRequestLog) log).write(this.logFormat, request, response);
+            } else {
+                log.write(this.logFormat.format(request, response));
+            }
         }
     }
 
@@ -127,7 +158,7 @@ public class RequestLoggerService {
         return this.onEntry;
     }
 
-    private RequestLog getLog(BundleContext bundleContext, String output, int outputType) {
+    private RequestLog getLog(BundleContext bundleContext, String output, int outputType, Map<String, Object> configuration) {
         switch (outputType) {
             case OUTPUT_TYPE_FILE:
                 // file logging
@@ -142,6 +173,16 @@ public class RequestLoggerService {
                         file = file.getAbsoluteFile();
                     }
 
+                    if (PropertiesUtil.toBoolean(configuration.get(PARAM_ASYNC), false)) {
+                        final int bufferSize = PropertiesUtil.toInteger(configuration.get(PARAM_ASYNC_BUFFER_SIZE),
+                            DEFAULT_ASYNC_BUFFER_SIZE);
+                        final boolean drop = OVERFLOW_DROP.equals(PropertiesUtil.toString(
+                            configuration.get(PARAM_ASYNC_OVERFLOW), OVERFLOW_BLOCK));
+                        final long rotationSize = PropertiesUtil.toLong(configuration.get(PARAM_ROTATION_SIZE), 0);
+                        final long rotationInterval = PropertiesUtil.toLong(configuration.get(PARAM_ROTATION_INTERVAL), 0);
+                        return new AsyncFileRequestLog(file, bufferSize, drop, rotationSize,
+                            TimeUnit.MINUTES.toMillis(rotationInterval));
+                    }
                     return new FileRequestLog(file);
                 } catch (IOException ioe) {
                     // TODO: log
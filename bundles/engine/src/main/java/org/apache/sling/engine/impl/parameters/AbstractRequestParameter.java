@@ -24,10 +24,14 @@ abstract class AbstractRequestParameter implements RequestParameter {
 
     private String name;
 
+    /** the name as submitted, before any encoding has been applied */
+    private final String rawName;
+
     private String encoding;
 
     protected AbstractRequestParameter(String name, String encoding) {
         this.name = name;
+        this.rawName = name;
         this.encoding = encoding;
     }
 
@@ -39,6 +43,10 @@ abstract class AbstractRequestParameter implements RequestParameter {
         return this.name;
     }
 
+    String getRawName() {
+        return this.rawName;
+    }
+
     void setEncoding(String encoding) {
         this.encoding = encoding;
     }
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.servlet.http.Part;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemHeadersSupport;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.RequestContext;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>LazyMultipartParameters</code> class parses the body of a
+ * <tt>multipart/form-data</tt> request on demand.
+ * <p>
+ * Instead of reading the complete request body before the servlet is called,
+ * items are read from the request stream only as far as is needed to answer a
+ * parameter lookup. Items read this way are added to the
+ * {@link ParameterMap} as regular {@link MultipartRequestParameter}s, so file
+ * items passed over by a lookup are stored by the {@link FileItemFactory} just
+ * like in the eager case.
+ * <p>
+ * Alternatively the remaining items may be consumed through the
+ * {@link #getPartsIterator() parts iterator}: Form fields are still read and
+ * added to the parameter map, while file items are handed out as one-shot
+ * streams directly reading from the request and are never stored.
+ */
+class LazyMultipartParameters {
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ParameterMap parameters;
+
+    private final FileItemFactory factory;
+
+    /** the streaming iterator over the request body, null once exhausted */
+    private FileItemIterator itemIterator;
+
+    /**
+     * Items read ahead by parameter lookups which have not been returned by
+     * the parts iterator yet.
+     */
+    private final List<MultipartRequestParameter> readAhead = new ArrayList<MultipartRequestParameter>();
+
+    private int readAheadIndex;
+
+    LazyMultipartParameters(final RequestContext requestContext, final ParameterMap parameters,
+            final FileItemFactory factory, final long maxRequestSize, final long maxFileSize) {
+        this.parameters = parameters;
+        this.factory = factory;
+
+        final ServletFileUpload upload = new ServletFileUpload();
+        upload.setSizeMax(maxRequestSize);
+        upload.setFileSizeMax(maxFileSize);
+        try {
+            this.itemIterator = upload.getItemIterator(requestContext);
+        } catch (FileUploadException fue) {
+            this.log.error("LazyMultipartParameters: Error parsing request", fue);
+        } catch (IOException ioe) {
+            this.log.error("LazyMultipartParameters: Error parsing request", ioe);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the complete request body has been read.
+     */
+    boolean isComplete() {
+        return this.itemIterator == null;
+    }
+
+    /**
+     * Reads items from the request body until a parameter of the given name
+     * has been added to the parameter map or the body is exhausted.
+     *
+     * @param name The name of the parameter to look for
+     * @return <code>true</code> if at least one item has been read
+     */
+    boolean parseUntil(final String name) {
+        boolean added = false;
+        while (!this.parameters.containsKey(name)) {
+            final MultipartRequestParameter param = this.readNext();
+            if (param == null) {
+                break;
+            }
+            this.readAhead.add(param);
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * Reads all remaining items from the request body.
+     *
+     * @return <code>true</code> if at least one item has been read
+     */
+    boolean parseAll() {
+        boolean added = false;
+        MultipartRequestParameter param;
+        while ((param = this.readNext()) != null) {
+            this.readAhead.add(param);
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * Returns an iterator over the parts of the request body which have not
+     * been returned by this iterator yet. Parts already read by parameter
+     * lookups are returned first, followed by the parts still to be read from
+     * the request. File parts in the latter group are streamed directly from
+     * the request and can only be read once, before advancing the iterator.
+     */
+    Iterator<Part> getPartsIterator() {
+        return new Iterator<Part>() {
+
+            @Override
+            public boolean hasNext() {
+                if (readAheadIndex < readAhead.size()) {
+                    return true;
+                }
+                return hasNextItem();
+            }
+
+            @Override
+            public Part next() {
+                if (readAheadIndex < readAhead.size()) {
+                    return new SlingPart(readAhead.get(readAheadIndex++));
+                }
+                return nextPart();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not supported on a request stream.");
+            }
+        };
+    }
+
+    private boolean hasNextItem() {
+        if (this.itemIterator != null) {
+            try {
+                if (this.itemIterator.hasNext()) {
+                    return true;
+                }
+            } catch (FileUploadException fue) {
+                this.log.error("hasNextItem: Error parsing request", fue);
+            } catch (IOException ioe) {
+                this.log.error("hasNextItem: Error parsing request", ioe);
+            }
+            this.itemIterator = null;
+        }
+        return false;
+    }
+
+    private Part nextPart() {
+        if (!this.hasNextItem()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            final FileItemStream item = this.itemIterator.next();
+            if (item.isFormField()) {
+                // form fields are small and are made available as parameters, too
+                final MultipartRequestParameter param = this.store(item);
+                this.parameters.addParameter(param, false);
+                Util.fixEncoding(this.parameters);
+                return new SlingPart(param);
+            }
+            return new RequestPartsIterator.StreamedRequestPart(item);
+        } catch (FileUploadException fue) {
+            this.log.error("nextPart: Error parsing request", fue);
+        } catch (IOException ioe) {
+            this.log.error("nextPart: Error parsing request", ioe);
+        }
+        this.itemIterator = null;
+        throw new NoSuchElementException();
+    }
+
+    private MultipartRequestParameter readNext() {
+        if (this.hasNextItem()) {
+            try {
+                final MultipartRequestParameter param = this.store(this.itemIterator.next());
+                this.parameters.addParameter(param, false);
+                return param;
+            } catch (FileUploadException fue) {
+                this.log.error("readNext: Error parsing request", fue);
+            } catch (IOException ioe) {
+                this.log.error("readNext: Error parsing request", ioe);
+            }
+            this.itemIterator = null;
+        }
+        return null;
+    }
+
+    /**
+     * Copies the item into a <code>FileItem</code> created by the factory,
+     * which is what <code>FileUploadBase.parseRequest</code> does for each
+     * item.
+     */
+    private MultipartRequestParameter store(final FileItemStream item) throws IOException {
+        final FileItem fileItem = this.factory.createItem(item.getFieldName(), item.getContentType(),
+            item.isFormField(), item.getName());
+        Streams.copy(item.openStream(), fileItem.getOutputStream(), true);
+        if (fileItem instanceof FileItemHeadersSupport) {
+            ((FileItemHeadersSupport) fileItem).setHeaders(item.getHeaders());
+        }
+        return new MultipartRequestParameter(fileItem);
+    }
+}
@@ -34,6 +34,7 @@ import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.RequestContext;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
@@ -78,6 +79,8 @@ public class ParameterSupport {
     public static final String REQUEST_PARTS_ITERATOR_ATTRIBUTE = "request-parts-iterator";
     /** value of upload mode header/parameter indicating streaming is requested */
     public static final String STREAM_UPLOAD = "stream";
+    /** request attribute that stores the parts iterator when multipart parameters are parsed lazily */
+    public static final String REQUEST_PARTS_LAZY_ITERATOR_ATTRIBUTE = "request-parts-lazy-iterator";
 
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -113,10 +116,19 @@ public class ParameterSupport {
      */
     private static boolean checkForAdditionalParameters = false;
 
+    /**
+     * Whether <tt>multipart/form-data</tt> request bodies are parsed on
+     * demand instead of completely on first parameter access.
+     */
+    private static boolean lazyMultipart = false;
+
     private final HttpServletRequest servletRequest;
 
     private ParameterMap postParameterMap;
 
+    /** on demand parser of the multipart request body, null if not used */
+    private LazyMultipartParameters lazyParameters;
+
     private boolean requestDataUsed;
 
     /**
@@ -155,12 +167,13 @@ public class ParameterSupport {
 
     static void configure(final long maxRequestSize, final String location, final long maxFileSize,
             final int fileSizeThreshold,
-            final boolean checkForAdditionalParameters) {
+            final boolean checkForAdditionalParameters, final boolean lazyMultipart) {
         ParameterSupport.maxRequestSize = (maxRequestSize > 0) ? maxRequestSize : -1;
         ParameterSupport.location = (location != null) ? new File(location) : null;
         ParameterSupport.maxFileSize = (maxFileSize > 0) ? maxFileSize : -1;
         ParameterSupport.fileSizeThreshold = (fileSizeThreshold > 0) ? fileSizeThreshold : 256000;
         ParameterSupport.checkForAdditionalParameters = checkForAdditionalParameters;
+        ParameterSupport.lazyMultipart = lazyMultipart;
     }
 
     private ParameterSupport(HttpServletRequest servletRequest) {
@@ -176,20 +189,20 @@ public class ParameterSupport {
     }
 
     public String getParameter(String name) {
-        return getRequestParameterMapInternal().getStringValue(name);
+        return getRequestParameterMapInternal(name).getStringValue(name);
     }
 
     public String[] getParameterValues(String name) {
-        return getRequestParameterMapInternal().getStringValues(name);
+        return getCompleteRequestParameterMap().getStringValues(name);
     }
 
     public Map<String, String[]> getParameterMap() {
-        return getRequestParameterMapInternal().getStringParameterMap();
+        return getCompleteRequestParameterMap().getStringParameterMap();
     }
 
     public Enumeration<String> getParameterNames() {
         return new Enumeration<String>() {
-            private final Iterator<String> base = ParameterSupport.this.getRequestParameterMapInternal().keySet().iterator();
+            private final Iterator<String> base = ParameterSupport.this.getCompleteRequestParameterMap().keySet().iterator();
 
             @Override
             public boolean hasMoreElements() {
@@ -204,27 +217,56 @@ public class ParameterSupport {
     }
 
     public RequestParameter getRequestParameter(String name) {
-        return getRequestParameterMapInternal().getValue(name);
+        return getRequestParameterMapInternal(name).getValue(name);
     }
 
     public RequestParameter[] getRequestParameters(String name) {
-        return getRequestParameterMapInternal().getValues(name);
+        return getCompleteRequestParameterMap().getValues(name);
     }
 
     public Object getPart(String name) {
-        return getRequestParameterMapInternal().getPart(name);
+        return getRequestParameterMapInternal(name).getPart(name);
     }
 
     public Collection<?> getParts() {
-        return getRequestParameterMapInternal().getParts();
+        return getCompleteRequestParameterMap().getParts();
     }
 
     public RequestParameterMap getRequestParameterMap() {
-        return getRequestParameterMapInternal();
+        return getCompleteRequestParameterMap();
     }
 
     public List<RequestParameter> getRequestParameterList() {
-        return getRequestParameterMapInternal().getRequestParameterList();
+        return getCompleteRequestParameterMap().getRequestParameterList();
+    }
+
+    /**
+     * Returns the parameter map, in which a parameter of the given name is
+     * present if the request has such a parameter. If the multipart request
+     * body is parsed lazily, only as much of the body is read as is required
+     * to find the first value of the parameter. Until the form encoding
+     * parameter has been read, the default encoding is applied; once it is
+     * read, all parameters read so far are decoded again with it.
+     */
+    private ParameterMap getRequestParameterMapInternal(final String name) {
+        final ParameterMap parameters = getRequestParameterMapInternal();
+        if (this.lazyParameters != null && !parameters.containsKey(name) && this.lazyParameters.parseUntil(name)) {
+            Util.fixEncoding(parameters);
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the parameter map containing all parameters of the request. If
+     * the multipart request body is parsed lazily, the rest of the body is
+     * read now.
+     */
+    private ParameterMap getCompleteRequestParameterMap() {
+        final ParameterMap parameters = getRequestParameterMapInternal();
+        if (this.lazyParameters != null && this.lazyParameters.parseAll()) {
+            Util.fixEncoding(parameters);
+        }
+        return parameters;
     }
 
     private ParameterMap getRequestParameterMapInternal() {
@@ -305,6 +347,17 @@ public class ParameterSupport {
                         // must not try and get anything from the request at this point so avoid jumping through the stream.
                         addContainerParameters = false;
                         useFallback = false;
+                    } else if (lazyMultipart) {
+                        // parse the request body on demand only
+                        this.lazyParameters = new LazyMultipartParameters(this.getMultipartRequestContext(),
+                            parameters, this.getFileItemFactory(), ParameterSupport.maxRequestSize,
+                            ParameterSupport.maxFileSize);
+                        this.getServletRequest().setAttribute(REQUEST_PARTS_LAZY_ITERATOR_ATTRIBUTE,
+                            this.lazyParameters.getPartsIterator());
+                        this.requestDataUsed = true;
+                        // the container must not read the body behind our back
+                        addContainerParameters = false;
+                        useFallback = false;
                     } else {
                         this.parseMultiPartPost(parameters);
                         this.requestDataUsed = true;
@@ -382,16 +435,9 @@ public class ParameterSupport {
         ServletFileUpload upload = new ServletFileUpload();
         upload.setSizeMax(ParameterSupport.maxRequestSize);
         upload.setFileSizeMax(ParameterSupport.maxFileSize);
-        upload.setFileItemFactory(new DiskFileItemFactory(ParameterSupport.fileSizeThreshold,
-            ParameterSupport.location));
+        upload.setFileItemFactory(this.getFileItemFactory());
 
-        RequestContext rc = new ServletRequestContext(this.getServletRequest()) {
-            @Override
-            public String getCharacterEncoding() {
-                String enc = super.getCharacterEncoding();
-                return (enc != null) ? enc : Util.ENCODING_DIRECT;
-            }
-        };
+        RequestContext rc = this.getMultipartRequestContext();
 
         // Parse the request
         List<?> /* FileItem */items = null;
@@ -410,4 +456,17 @@ public class ParameterSupport {
         }
     }
 
+    private FileItemFactory getFileItemFactory() {
+        return new DiskFileItemFactory(ParameterSupport.fileSizeThreshold, ParameterSupport.location);
+    }
+
+    private RequestContext getMultipartRequestContext() {
+        return new ServletRequestContext(this.getServletRequest()) {
+            @Override
+            public String getCharacterEncoding() {
+                String enc = super.getCharacterEncoding();
+                return (enc != null) ? enc : Util.ENCODING_DIRECT;
+            }
+        };
+    }
 }
\ No newline at end of file
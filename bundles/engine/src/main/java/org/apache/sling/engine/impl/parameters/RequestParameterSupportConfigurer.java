@@ -95,6 +95,16 @@ public class RequestParameterSupportConfigurer {
             description = "Enable this if you want to include request parameters added through the container, e.g through a valve.")
     private static final String PROP_CHECK_ADDITIONAL_PARAMETERS = "sling.default.parameter.checkForAdditionalContainerParameters";
 
+    @Property(
+            boolValue = false,
+            label = "Lazy Multipart Parsing",
+            description = "Enable this to parse multipart/form-data request bodies on demand. Form fields are only "
+                + "read from the request as far as needed to answer a parameter lookup and the rest of the body is "
+                + "only read if all parameters are requested. File parts not yet read may be consumed as streams "
+                + "through the 'request-parts-lazy-iterator' request attribute without being stored. Parameters "
+                + "added through the container are not available for such requests.")
+    private static final String PROP_LAZY_MULTIPART = "sling.default.parameter.lazyMultipart";
+
     @Reference
     private SlingSettingsService settignsService;
 
@@ -112,6 +122,7 @@ public class RequestParameterSupportConfigurer {
         final long maxFileSize = PropertiesUtil.toLong(props.get(PROP_FILE_SIZE_MAX), -1);
         final int fileSizeThreshold = PropertiesUtil.toInteger(props.get(PROP_FILE_SIZE_THRESHOLD), -1);
         final boolean checkAddParameters = PropertiesUtil.toBoolean(props.get(PROP_CHECK_ADDITIONAL_PARAMETERS), false);
+        final boolean lazyMultipart = PropertiesUtil.toBoolean(props.get(PROP_LAZY_MULTIPART), false);
 
         if (log.isInfoEnabled()) {
             log.info("Default Character Encoding: {}", fixEncoding);
@@ -121,12 +132,13 @@ public class RequestParameterSupportConfigurer {
             log.info("Maximum File Size: {}", maxFileSize);
             log.info("Tempory File Creation Threshold: {}", fileSizeThreshold);
             log.info("Check for additional container parameters: {}", checkAddParameters);
+            log.info("Lazy multipart parsing: {}", lazyMultipart);
         }
 
         Util.setDefaultFixEncoding(fixEncoding);
         ParameterMap.setMaxParameters(maxParams);
         ParameterSupport.configure(maxRequestSize, fileLocation, maxFileSize,
-                fileSizeThreshold, checkAddParameters);
+                fileSizeThreshold, checkAddParameters, lazyMultipart);
     }
 
     private String getFileLocation(final ComponentContext context, String fileLocation) {
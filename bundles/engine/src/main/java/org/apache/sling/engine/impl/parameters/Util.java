@@ -137,9 +137,12 @@ public class Util {
                         param.setEncoding(formEncoding);
 
                         // prepare the parameter for renaming
+                        // always start from the submitted name, as the
+                        // name may already have been fixed with another
+                        // encoding if the parameters are parsed lazily
                         if (parName == null) {
                             parName = paramEntry.getKey();
-                            String name = reencode(parName, formEncoding);
+                            String name = reencode(param.getRawName(), formEncoding);
                             if (!parName.equals(name)) {
                                 renameMap.put(parName, name);
                             }
@@ -19,11 +19,18 @@
 package org.apache.sling.engine.impl.request;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -89,6 +96,22 @@ import org.apache.sling.api.request.RequestProgressTracker;
  * <li>The absolute time of the timer in parenthesis.
  * <li>The entry message
  * </ol>
+ * <p>
+ * <b>Recording and Sampling</b>
+ * <p>
+ * Entries are recorded as events in plain arrays: the time stamp, the
+ * type, the names or message format and the message arguments. Messages
+ * are only formatted once they are actually read through
+ * {@link #getMessages()} or {@link #dump(PrintWriter)}, which most requests
+ * never do. Arguments which might still change are converted to strings
+ * when the message is logged, so that the message shows their values at
+ * that time and the tracker holds no references to them.
+ * <p>
+ * To keep the overhead low on busy systems, full traces may be recorded for
+ * a sample of the requests only, see {@link #setSampling(int, long)}. Requests
+ * not being sampled record nothing unless a slow request threshold is
+ * configured. In that case the trace is recorded but discarded if the
+ * request completes faster than the threshold.
  */
 public class SlingRequestProgressTracker implements RequestProgressTracker {
 
@@ -107,9 +130,55 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
     /** TIMER_END format explanation */
     private static final String TIMER_END_FORMAT = "{<elapsed microseconds>,<timer name>} <optional message>";
 
+    /** Comment recorded for requests which are not tracked */
+    private static final String NOT_SAMPLED_COMMENT = "request not sampled for tracking";
+
+    /** Comment recorded for traces discarded because the request was fast */
+    private static final String DISCARDED_COMMENT = "trace discarded, request was faster than the slow request threshold";
+
     /** The leading nanosecond number is left-padded with white-space to this width. */
     private static final int PADDING_WIDTH = 7;
 
+    /** The initial number of entries to allocate space for. */
+    private static final int INITIAL_CAPACITY = 32;
+
+    private static final byte TYPE_COMMENT = 0;
+
+    private static final byte TYPE_LOG = 1;
+
+    private static final byte TYPE_TIMER_START = 2;
+
+    private static final byte TYPE_TIMER_END = 3;
+
+    /** Record a full trace for every n-th request, 1 tracks all requests. */
+    private static volatile int sampleRate = 1;
+
+    /** Threshold in nanoseconds above which unsampled requests are kept, 0 to disable. */
+    private static volatile long slowRequestThreshold = 0;
+
+    /** Counts the requests to decide which ones are sampled. */
+    private static final AtomicLong requestCounter = new AtomicLong();
+
+    /** Argument types which are kept as they are until the message is formatted. */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+        Float.class, Double.class, BigInteger.class, BigDecimal.class));
+
+    /**
+     * Configures which requests record a full trace.
+     *
+     * @param rate Every <code>rate</code>-th request records a full trace.
+     *            Values less than or equal to one cause all requests to be
+     *            tracked.
+     * @param slowThresholdMillis If larger than zero, requests not being
+     *            sampled record a trace which is only kept if processing the
+     *            request takes at least this number of milliseconds.
+     */
+    public static void setSampling(final int rate, final long slowThresholdMillis) {
+        sampleRate = Math.max(1, rate);
+        slowRequestThreshold = Math.max(0, TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis));
+    }
+
     /**
      * The system time at creation of this instance or the last {@link #reset()}.
      */
@@ -120,17 +189,38 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      */
     private long processingEnd;
 
-    /**
-     * The list of tracking entries.
-     */
-    private final List<TrackingEntry> entries = new ArrayList<TrackingEntry>();
+    /** Whether this request has been selected to always keep its trace. */
+    private final boolean sampled;
+
+    /** Whether entries are recorded at all. */
+    private final boolean recording;
+
+    /** Whether the trace has been discarded after a fast request. */
+    private boolean discarded;
+
+    // the recorded entries as parallel arrays, see add(...)
+    private int size;
+
+    private byte[] types;
+
+    private long[] timeStamps;
+
+    private long[] elapsed;
+
+    private String[] names;
+
+    private String[] formats;
+
+    private Object[][] arguments;
+
     /**
      * Map of named timers indexed by timer name storing the system time of
      * start of the respective timer.
      */
     private final Map<String, Long> namedTimerEntries = new HashMap<String, Long>();
 
-    private final FastMessageFormat messageFormat = new FastMessageFormat();
+    /** Created on demand when messages are read */
+    private FastMessageFormat messageFormat;
 
     /**
      * Creates a new request progress tracker.
@@ -143,6 +233,9 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      * Creates a new request progress tracker and logs initial messages about the supplied request
      */
     public SlingRequestProgressTracker(HttpServletRequest request) {
+        final int rate = sampleRate;
+        this.sampled = rate <= 1 || requestCounter.incrementAndGet() % rate == 0;
+        this.recording = this.sampled || slowRequestThreshold > 0;
         reset();
         if(request != null) {
             log("Method={0}, PathInfo={1}", request.getMethod(), request.getPathInfo());
@@ -155,32 +248,41 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      */
     public void reset() {
         // remove all entries
-        entries.clear();
-        namedTimerEntries.clear();
+        clearEntries();
 
         // enter initial messages
-        processingStart = startTimerInternal(REQUEST_PROCESSING_TIMER);
+        processingStart = System.nanoTime();
         processingEnd = -1;
-
-        entries.add(new TrackingEntry(COMMENT_PREFIX + "timer_end format is " + TIMER_END_FORMAT));
+        discarded = false;
+
+        if (recording) {
+            namedTimerEntries.put(REQUEST_PROCESSING_TIMER, processingStart);
+            add(TYPE_TIMER_START, processingStart, 0, REQUEST_PROCESSING_TIMER, null, null);
+            add(TYPE_COMMENT, processingStart, 0, "timer_end format is " + TIMER_END_FORMAT, null, null);
+        } else {
+            add(TYPE_COMMENT, processingStart, 0, NOT_SAMPLED_COMMENT, null, null);
+        }
     }
 
     /**
      * @see org.apache.sling.api.request.RequestProgressTracker#getMessages()
      */
     public Iterator<String> getMessages() {
+        discardIfFast();
         return new Iterator<String>() {
-            private final Iterator<TrackingEntry> entryIter = entries.iterator();
+            private int index = 0;
 
             public boolean hasNext() {
-                return entryIter.hasNext();
+                return index < size;
             }
 
             public String next() {
-                // throws NoSuchElementException if no entries any more
-                final TrackingEntry entry = entryIter.next();
-                final long offset = entry.getTimeStamp() - getTimeStamp();
-                return formatMessage(offset, entry.getMessage());
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                final int entry = index++;
+                final long offset = timeStamps[entry] - getTimeStamp();
+                return formatMessage(offset, getMessage(entry));
             }
 
             public void remove() {
@@ -189,6 +291,39 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
         };
     }
 
+    private String getMessage(final int entry) {
+        switch (types[entry]) {
+            case TYPE_COMMENT:
+                return COMMENT_PREFIX + names[entry];
+            case TYPE_LOG:
+                return LOG_PREFIX + format(formats[entry], arguments[entry]);
+            case TYPE_TIMER_START:
+                return "TIMER_START{" + names[entry] + "}";
+            default:
+                final StringBuilder sb = new StringBuilder();
+                sb.append("TIMER_END{");
+                sb.append(elapsed[entry] / 1000);
+                sb.append(',');
+                sb.append(names[entry]);
+                sb.append('}');
+                if (formats[entry] != null) {
+                    sb.append(' ');
+                    sb.append(format(formats[entry], arguments[entry]));
+                }
+                return sb.toString();
+        }
+    }
+
+    private String format(final String format, final Object[] args) {
+        if (args == null || args.length == 0) {
+            return format;
+        }
+        if (messageFormat == null) {
+            messageFormat = new FastMessageFormat();
+        }
+        return messageFormat.format(format, args);
+    }
+
     private String formatMessage(long offset, String message) {
         // Set exact length to avoid array copies within StringBuilder
         final StringBuilder sb = new StringBuilder(PADDING_WIDTH + 1 +  message.length() + 1);
@@ -218,13 +353,16 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
 
     /** Creates an entry with the given message. */
     public void log(String message) {
-        entries.add(new TrackingEntry(LOG_PREFIX + message));
+        if (recording) {
+            add(TYPE_LOG, System.nanoTime(), 0, null, message, null);
+        }
     }
 
     /** Creates an entry with the given entry tag and message */
     public void log(String format, Object... args) {
-        String message = messageFormat.format(format, args);
-        entries.add(new TrackingEntry(LOG_PREFIX + message));
+        if (recording) {
+            add(TYPE_LOG, System.nanoTime(), 0, null, format, snapshot(args));
+        }
     }
 
     /**
@@ -232,62 +370,69 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      * reset to the current time.
      */
     public void startTimer(String name) {
-        startTimerInternal(name);
+        if (recording) {
+            final long timer = System.nanoTime();
+            namedTimerEntries.put(name, timer);
+            add(TYPE_TIMER_START, timer, 0, name, null, null);
+        }
     }
 
     /**
-     * Start the named timer and returns the start time in milliseconds.
-     * Logs a message with format
-     * <pre>
-     * TIMER_START{<name>} <optional message>
-     * </pre>
+     * Log a timer entry, including start, end and elapsed time.
      */
-    private long startTimerInternal(String name) {
-        long timer = System.nanoTime();
-        namedTimerEntries.put(name, timer);
-        entries.add(new TrackingEntry(timer, "TIMER_START{" + name + "}"));
-        return timer;
+    public void logTimer(String name) {
+        logTimerInternal(name, null, null);
     }
 
     /**
      * Log a timer entry, including start, end and elapsed time.
      */
-    public void logTimer(String name) {
-        if (namedTimerEntries.containsKey(name)) {
-            logTimerInternal(name, null, namedTimerEntries.get(name));
-        }
+    public void logTimer(String name, String format, Object... args) {
+        logTimerInternal(name, format, args);
     }
 
     /**
-     * Log a timer entry, including start, end and elapsed time.
+     * Log a timer entry, including start, end and elapsed time using TIMER_END_FORMAT
+     * if the named timer has been started.
      */
-    public void logTimer(String name, String format, Object... args) {
-        if (namedTimerEntries.containsKey(name)) {
-            logTimerInternal(name, messageFormat.format(format, args), namedTimerEntries.get(name));
+    private void logTimerInternal(String name, String format, Object[] args) {
+        if (recording) {
+            final Long start = namedTimerEntries.get(name);
+            if (start != null) {
+                final long now = System.nanoTime();
+                add(TYPE_TIMER_END, now, now - start, name, format, snapshot(args));
+            }
         }
     }
 
     /**
-     * Log a timer entry, including start, end and elapsed time using TIMER_END_FORMAT
+     * Returns a copy of the message arguments in which all arguments which
+     * might change until the message is formatted are replaced by their
+     * current string value, or a copy in the case of dates.
      */
-    private void logTimerInternal(String name, String msg, long startTime) {
-        final StringBuilder sb = new StringBuilder();
-        sb.append("TIMER_END{");
-        sb.append((System.nanoTime() - startTime) / 1000);
-        sb.append(',');
-        sb.append(name);
-        sb.append('}');
-        if(msg != null) {
-            sb.append(' ');
-            sb.append(msg);
+    private static Object[] snapshot(final Object[] args) {
+        if (args == null || args.length == 0) {
+            return args;
+        }
+        final Object[] copy = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            final Object arg = args[i];
+            if (arg == null || arg instanceof Enum || IMMUTABLE_TYPES.contains(arg.getClass())) {
+                copy[i] = arg;
+            } else if (arg instanceof Date) {
+                copy[i] = new Date(((Date) arg).getTime());
+            } else {
+                copy[i] = String.valueOf(arg);
+            }
         }
-        entries.add(new TrackingEntry(sb.toString()));
+        return copy;
     }
 
     public void done() {
         if(processingEnd != -1) return;
         logTimer(REQUEST_PROCESSING_TIMER, REQUEST_PROCESSING_TIMER);
         processingEnd = System.nanoTime();
+        discardIfFast();
     }
 
     private long getTimeStamp() {
@@ -301,31 +446,69 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
         return System.nanoTime() - processingStart;
     }
 
-    /** Process tracker entry keeping timestamp, tag and message */
-    private static class TrackingEntry {
-
-        // creation time stamp
-        private final long timeStamp;
-
-        // tracking message
-        private final String message;
-
-        TrackingEntry(String message) {
-            this.timeStamp = System.nanoTime();
-            this.message = message;
-        }
+    /**
+     * Returns <code>true</code> if this request records a full trace
+     * regardless of its duration.
+     */
+    boolean isSampled() {
+        return sampled;
+    }
 
-        TrackingEntry(long timeStamp, String message) {
-            this.timeStamp = timeStamp;
-            this.message = message;
+    /**
+     * Replaces the recorded trace of an unsampled request with a single
+     * comment if the request is completed and has been faster than the
+     * slow request threshold.
+     */
+    private void discardIfFast() {
+        if (!sampled && recording && !discarded && processingEnd != -1
+                && getDuration() < slowRequestThreshold) {
+            final long end = processingEnd;
+            final long duration = getDuration();
+            discarded = true;
+            clearEntries();
+            add(TYPE_COMMENT, processingStart, 0, DISCARDED_COMMENT, null, null);
+            add(TYPE_TIMER_END, end, duration, REQUEST_PROCESSING_TIMER, REQUEST_PROCESSING_TIMER, null);
         }
+    }
 
-        long getTimeStamp() {
-            return timeStamp;
+    private void clearEntries() {
+        size = 0;
+        namedTimerEntries.clear();
+        if (recording) {
+            types = new byte[INITIAL_CAPACITY];
+            timeStamps = new long[INITIAL_CAPACITY];
+            elapsed = new long[INITIAL_CAPACITY];
+            names = new String[INITIAL_CAPACITY];
+            formats = new String[INITIAL_CAPACITY];
+            arguments = new Object[INITIAL_CAPACITY][];
+        } else {
+            types = new byte[1];
+            timeStamps = new long[1];
+            elapsed = new long[1];
+            names = new String[1];
+            formats = new String[1];
+            arguments = new Object[1][];
         }
+    }
 
-        String getMessage() {
-            return message;
+    /** Records an entry, growing the arrays as required. */
+    private void add(final byte type, final long timeStamp, final long elapsedTime, final String name,
+            final String format, final Object[] args) {
+        if (size == types.length) {
+            final int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            timeStamps = Arrays.copyOf(timeStamps, capacity);
+            elapsed = Arrays.copyOf(elapsed, capacity);
+            names = Arrays.copyOf(names, capacity);
+            formats = Arrays.copyOf(formats, capacity);
+            arguments = Arrays.copyOf(arguments, capacity);
         }
+        types[size] = type;
+        timeStamps[size] = timeStamp;
+        elapsed[size] = elapsedTime;
+        names[size] = name;
+        formats[size] = format;
+        arguments[size] = args;
+        size++;
     }
 }
@@ -42,6 +42,28 @@ public interface FilterProcessorMBean {
      */
     double getMeanFilterDurationMsec();
 
+    /**
+     * Returns the upper (exclusive) limits in milliseconds of the buckets of
+     * the {@link #getFilterDurationHistogram() duration histogram}.
+     *
+     * @return The bucket limits
+     * @since 1.2.0
+     */
+    long[] getFilterDurationHistogramBucketLimitsMsec();
+
+    /**
+     * Returns the number of filter invocations by duration since resetting
+     * the statistics. The entry at index <code>i</code> counts the
+     * invocations taking less than the <code>i</code>-th
+     * {@link #getFilterDurationHistogramBucketLimitsMsec() bucket limit}, the
+     * additional last entry counts all longer invocations.
+     *
+     * @return The duration histogram
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    long[] getFilterDurationHistogram();
+
     /**
      * Resets all statistics values and restarts from zero.
      */
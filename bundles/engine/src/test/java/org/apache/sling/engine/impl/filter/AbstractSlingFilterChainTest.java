@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletRequestWrapper;
+import org.apache.sling.engine.impl.SlingHttpServletRequestImpl;
+import org.apache.sling.engine.impl.SlingHttpServletResponseImpl;
+import org.apache.sling.engine.impl.request.RequestData;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests selecting the filters of a chain while it is processed.
+ */
+public class AbstractSlingFilterChainTest {
+
+    private final Mockery context = new Mockery();
+
+    private final List<String> calls = new ArrayList<String>();
+
+    private SlingHttpServletRequest slingRequest;
+
+    private SlingHttpServletResponse slingResponse;
+
+    @Before
+    public void setup() {
+        final HttpServletRequest req = context.mock(HttpServletRequest.class);
+        final HttpServletResponse resp = context.mock(HttpServletResponse.class);
+        context.checking(new Expectations() {{
+            allowing(req).getServletPath();
+            will(returnValue("/content"));
+            allowing(req).getPathInfo();
+            will(returnValue("/page"));
+            allowing(req).getMethod();
+            will(returnValue("GET"));
+            allowing(req).getAttribute(with(any(String.class)));
+            will(returnValue(null));
+            allowing(req).setAttribute(with(any(String.class)), with(any(Object.class)));
+        }});
+        final RequestData requestData = new RequestData(null, req, resp);
+        slingRequest = new SlingHttpServletRequestImpl(requestData, req);
+        slingResponse = new SlingHttpServletResponseImpl(requestData, resp);
+    }
+
+    @Test public void testSelectAgainstWrappedRequest() throws Exception {
+        final FilterHandle[] filters = new FilterHandle[] {
+            new FilterHandle(new WrappingFilter(), null, 1L, 300, "wrap", null),
+            new FilterHandle(new RecordingFilter("original"), "/content/.*", 2L, 200, "original", null),
+            new FilterHandle(new RecordingFilter("wrapped"), "/wrapped/.*", 3L, 100, "wrapped", null)
+        };
+        new AbstractSlingFilterChain(filters) {
+            @Override
+            protected void render(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+                calls.add("render " + request.getPathInfo());
+            }
+        }.doFilter(slingRequest, slingResponse);
+
+        assertEquals(Arrays.asList("wrap", "wrapped", "render /wrapped/page"), calls);
+        assertEquals(1, filters[0].getCalls());
+        assertEquals(0, filters[1].getCalls());
+        assertEquals(1, filters[2].getCalls());
+    }
+
+    @Test public void testSelectAgainstOriginalRequest() throws Exception {
+        final FilterHandle[] filters = new FilterHandle[] {
+            new FilterHandle(new RecordingFilter("original"), "/content/.*", 1L, 200, "original", null),
+            new FilterHandle(new RecordingFilter("wrapped"), "/wrapped/.*", 2L, 100, "wrapped", null)
+        };
+        new AbstractSlingFilterChain(filters) {
+            @Override
+            protected void render(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+                calls.add("render " + request.getPathInfo());
+            }
+        }.doFilter(slingRequest, slingResponse);
+
+        assertEquals(Arrays.asList("original", "render /content/page"), calls);
+    }
+
+    private class RecordingFilter implements Filter {
+
+        private final String name;
+
+        RecordingFilter(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            calls.add(name);
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    /** Moves the request to another path, as e.g. a rewriting filter would do */
+    private class WrappingFilter extends RecordingFilter {
+
+        WrappingFilter() {
+            super("wrap");
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            calls.add("wrap");
+            chain.doFilter(new SlingHttpServletRequestWrapper((SlingHttpServletRequest) request) {
+                @Override
+                public String getPathInfo() {
+                    return "/wrapped/page";
+                }
+            }, response);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.Filter;
+
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for selecting the next filter applying to a request path.
+ */
+@RunWith(JMock.class)
+public class FilterDispatchTableTest {
+
+    private final Mockery context = new JUnit4Mockery();
+
+    @Test public void testUnconditional() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        chain.addFilter(context.mock(Filter.class, "A"), null, 1L, 100, "A", null);
+        chain.addFilter(context.mock(Filter.class, "B"), "", 2L, 0, "B", null);
+
+        final FilterDispatchTable table = chain.getDispatchTable();
+        assertEquals(0, table.next("/content/foo", -1));
+        assertEquals(1, table.next(null, 0));
+        assertEquals(2, table.next("/", 1));
+    }
+
+    @Test public void testNext() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        chain.addFilter(context.mock(Filter.class, "A"), null, 1L, 400, "A", null);
+        chain.addFilter(context.mock(Filter.class, "B"), "/content/.*", 2L, 300, "B", null);
+        chain.addFilter(context.mock(Filter.class, "C"), "/apps/.*\\.html", 3L, 200, "C", null);
+        chain.addFilter(context.mock(Filter.class, "D"), ".*\\.json", 4L, 100, "D", null);
+        chain.addFilter(context.mock(Filter.class, "E"), "/content.*", 5L, 0, "E", null);
+
+        assertSelected(chain, "/content/page.json", "A", "B", "D", "E");
+        assertSelected(chain, "/content.html", "A", "E");
+        assertSelected(chain, "/apps/x.html", "A", "C");
+        assertSelected(chain, "/apps/x.json", "A", "D");
+        assertSelected(chain, "/other", "A");
+        assertSelected(chain, null, "A");
+
+        // continuing the chain from a filter
+        assertEquals(3, chain.getDispatchTable().next("/apps/x.json", 1));
+        assertEquals(5, chain.getDispatchTable().next("/apps/x.html", 2));
+
+        chain.removeFilterById(1L);
+        assertSelected(chain, "/content/page.json", "B", "D", "E");
+        assertSelected(chain, "/", new String[0]);
+    }
+
+    private void assertSelected(final SlingFilterChainHelper chain, final String path, final String... expected) {
+        final FilterDispatchTable table = chain.getDispatchTable();
+        final List<String> names = new ArrayList<String>();
+        for (int i = table.next(path, -1); i < table.getFilters().length; i = table.next(path, i)) {
+            names.add(table.getFilters()[i].getOrderSource());
+        }
+        assertArrayEquals(expected, names.toArray(new String[names.size()]));
+    }
+}
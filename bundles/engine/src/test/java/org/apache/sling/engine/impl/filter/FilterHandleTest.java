@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.Filter;
+
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for selecting filters by the request path.
+ */
+@RunWith(JMock.class)
+public class FilterHandleTest {
+
+    private final Mockery context = new JUnit4Mockery();
+
+    @Test public void testLiteralPrefix() {
+        assertEquals("/content/", FilterHandle.getLiteralPrefix("/content/.*"));
+        assertEquals("/content/", FilterHandle.getLiteralPrefix("^/content/.*"));
+        assertEquals("/content/a", FilterHandle.getLiteralPrefix("/content/ab?"));
+        assertEquals("/libs", FilterHandle.getLiteralPrefix("/libs+"));
+        assertEquals("", FilterHandle.getLiteralPrefix("/content/.*|/apps/.*"));
+        assertEquals("", FilterHandle.getLiteralPrefix("(?i)/content/.*"));
+        assertEquals("/a", FilterHandle.getLiteralPrefix("/a\\.html"));
+    }
+
+    @Test public void testSelect() {
+        assertTrue(handle(null).select("/content/foo"));
+        assertTrue(handle("").select((String) null));
+        assertTrue(handle("/content/.*").select("/content/page.json"));
+        assertFalse(handle("/content/.*").select("/apps/page.json"));
+        assertTrue(handle(".*\\.json").select("/apps/page.json"));
+        assertTrue(handle("/").select((String) null));
+        assertFalse(handle("/content.*").select((String) null));
+    }
+
+    private int filterCount;
+
+    private FilterHandle handle(final String pattern) {
+        filterCount++;
+        return new FilterHandle(context.mock(Filter.class, "F" + filterCount), pattern, (long) filterCount, 0,
+            String.valueOf(filterCount), null);
+    }
+}
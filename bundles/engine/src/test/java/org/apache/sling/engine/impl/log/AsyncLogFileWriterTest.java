@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncLogFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), Charset.defaultCharset());
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        final File file = new File(folder.getRoot(), "logs/request.log");
+        final AsyncLogFileWriter writer = new AsyncLogFileWriter(file, 16, false, 0, 0);
+        writer.start();
+        for (int i = 0; i < 1000; i++) {
+            writer.write("message " + i);
+        }
+        writer.close();
+
+        final List<String> lines = readLines(file);
+        assertEquals(1000, lines.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("message " + i, lines.get(i));
+        }
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        final File file = new File(folder.getRoot(), "request.log");
+        AsyncLogFileWriter writer = new AsyncLogFileWriter(file, 16, false, 0, 0);
+        writer.start();
+        writer.write("first");
+        writer.close();
+
+        writer = new AsyncLogFileWriter(file, 16, false, 0, 0);
+        writer.start();
+        writer.write("second");
+        writer.close();
+
+        assertEquals(Arrays.asList("first", "second"), readLines(file));
+    }
+
+    @Test
+    public void testOverflowDrop() throws IOException {
+        final File file = new File(folder.getRoot(), "request.log");
+        final AsyncLogFileWriter writer = new AsyncLogFileWriter(file, 2, true, 0, 0);
+        // not started yet, so nothing is taken from the buffer
+        writer.write("one");
+        writer.write("two");
+        writer.write("three");
+        assertEquals(1, writer.getDroppedCount());
+
+        writer.start();
+        writer.close();
+        assertEquals(Arrays.asList("one", "two"), readLines(file));
+    }
+
+    @Test
+    public void testOverflowWaitIsBounded() throws IOException, InterruptedException {
+        final File file = new File(folder.getRoot(), "request.log");
+        final CountDownLatch stuck = new CountDownLatch(1);
+        final AsyncLogFileWriter writer = new AsyncLogFileWriter(file, 2, false, 0, 0) {
+            @Override
+            public void consume(final StringBuilder message) {
+                // the writer hangs, e.g. on a full disk
+                try {
+                    stuck.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                super.consume(message);
+            }
+        };
+        writer.start();
+        writer.write("one");
+        writer.write("two");
+        writer.write("three");
+        final long start = System.nanoTime();
+        writer.write("four");
+        assertTrue(System.nanoTime() - start >= AsyncLogFileWriter.MAX_OVERFLOW_WAIT_NANOS);
+        assertTrue(writer.getDroppedCount() > 0);
+
+        stuck.countDown();
+        writer.close();
+        assertEquals(4 - writer.getDroppedCount(), readLines(file).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testOverflowAfterWriterFailed() throws IOException, InterruptedException {
+        final File file = new File(folder.getRoot(), "request.log");
+        final CountDownLatch failed = new CountDownLatch(1);
+        final AsyncLogFileWriter writer = new AsyncLogFileWriter(file, 2, false, 0, 0) {
+            @Override
+            public void consume(final StringBuilder message) {
+                failed.countDown();
+                throw new IllegalStateException("failure");
+            }
+        };
+        writer.start();
+        writer.write("one");
+        failed.await();
+        // request threads don't wait for the failed writer
+        for (int i = 0; i < 10; i++) {
+            writer.write("message " + i);
+        }
+        assertTrue(writer.getDroppedCount() > 0);
+        writer.close();
+    }
+
+    @Test
+    public void testRotationBySize() throws IOException {
+        final File file = new File(folder.getRoot(), "request.log");
+        AsyncLogFileWriter writer = new AsyncLogFileWriter(file, 16, false, 0, 0);
+        writer.start();
+        writer.write("12345678");
+        writer.close();
+
+        writer = new AsyncLogFileWriter(file, 16, false, 12, 0);
+        writer.start();
+        writer.write("abcdefgh");
+        writer.close();
+
+        assertEquals(Arrays.asList("abcdefgh"), readLines(file));
+        File rotated = null;
+        for (final File f : folder.getRoot().listFiles()) {
+            if (f.getName().startsWith("request.log.")) {
+                rotated = f;
+            }
+        }
+        assertNotNull(rotated);
+        assertEquals(Arrays.asList("12345678"), readLines(rotated));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class LogRingBufferTest {
+
+    private static class CollectingConsumer implements LogRingBuffer.Consumer {
+
+        final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void consume(StringBuilder message) {
+            messages.add(message.toString());
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(2, new LogRingBuffer(0).capacity());
+        assertEquals(4, new LogRingBuffer(3).capacity());
+        assertEquals(1024, new LogRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void testFullAndDrain() {
+        final LogRingBuffer ring = new LogRingBuffer(4);
+        assertTrue(ring.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            final long position = ring.claim();
+            assertEquals(i, position);
+            ring.getBuffer(position).append("message ").append(i);
+            ring.publish(position);
+        }
+        assertEquals(-1, ring.claim());
+
+        final CollectingConsumer consumer = new CollectingConsumer();
+        assertEquals(2, ring.drain(consumer, 2));
+        assertEquals(2, ring.drain(consumer, 10));
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.drain(consumer, 10));
+        for (int i = 0; i < 4; i++) {
+            assertEquals("message " + i, consumer.messages.get(i));
+        }
+
+        // slots are reused
+        assertEquals(4, ring.claim());
+    }
+
+    @Test
+    public void testUnpublishedSlotStopsDrain() {
+        final LogRingBuffer ring = new LogRingBuffer(4);
+        final long first = ring.claim();
+        final long second = ring.claim();
+        ring.getBuffer(second).append("second");
+        ring.publish(second);
+
+        final CollectingConsumer consumer = new CollectingConsumer();
+        assertEquals(0, ring.drain(consumer, 10));
+
+        ring.getBuffer(first).append("first");
+        ring.publish(first);
+        assertEquals(2, ring.drain(consumer, 10));
+        assertEquals("first", consumer.messages.get(0));
+        assertEquals("second", consumer.messages.get(1));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int messagesPerProducer = 10000;
+        final LogRingBuffer ring = new LogRingBuffer(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int i = 0; i < messagesPerProducer; i++) {
+                        long position;
+                        while ((position = ring.claim()) == -1) {
+                            Thread.yield();
+                        }
+                        ring.getBuffer(position).append(producer).append(':').append(i);
+                        ring.publish(position);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+
+        final int[] next = new int[producers];
+        final int[] count = new int[1];
+        final LogRingBuffer.Consumer consumer = new LogRingBuffer.Consumer() {
+            @Override
+            public void consume(StringBuilder message) {
+                final String[] parts = message.toString().split(":");
+                final int producer = Integer.parseInt(parts[0]);
+                // messages of one producer arrive in order
+                assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+                count[0]++;
+            }
+        };
+        while (count[0] < producers * messagesPerProducer) {
+            if (ring.drain(consumer, 100) == 0) {
+                Thread.yield();
+            }
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.servlet.http.Part;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.fileupload.RequestContext;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.util.Streams;
+
+public class LazyMultipartParametersTest extends TestCase {
+
+    private static final String BOUNDARY = "----SlingBoundary";
+
+    private ParameterMap parameters;
+
+    private LazyMultipartParameters lazy;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        final StringBuilder sb = new StringBuilder();
+        addField(sb, "first", "1");
+        addFile(sb, "file", "data.txt", "file content");
+        addField(sb, "second", "2");
+        addField(sb, "second", "two");
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+
+        this.parameters = new ParameterMap();
+        final InputStream body = new ByteArrayInputStream(sb.toString().getBytes(Util.ENCODING_DIRECT));
+        this.lazy = new LazyMultipartParameters(new TestRequestContext(body), this.parameters,
+            new DiskFileItemFactory(), -1, -1);
+    }
+
+    public void testParseUntil() {
+        assertTrue(this.lazy.parseUntil("first"));
+        assertEquals("1", this.parameters.getStringValue("first"));
+        assertNull(this.parameters.getValue("file"));
+        assertFalse(this.lazy.isComplete());
+
+        // already present, nothing more is read
+        assertFalse(this.lazy.parseUntil("first"));
+
+        assertTrue(this.lazy.parseUntil("second"));
+        assertEquals("file content", this.parameters.getValue("file").getString());
+        assertEquals(1, this.parameters.getValues("second").length);
+
+        assertTrue(this.lazy.parseAll());
+        assertTrue(this.lazy.isComplete());
+        assertEquals(2, this.parameters.getValues("second").length);
+        assertEquals(4, this.parameters.getRequestParameterList().size());
+    }
+
+    public void testParseUntilMissing() {
+        assertTrue(this.lazy.parseUntil("missing"));
+        assertTrue(this.lazy.isComplete());
+        assertEquals(3, this.parameters.size());
+        assertFalse(this.lazy.parseAll());
+    }
+
+    public void testPartsIterator() throws IOException {
+        assertTrue(this.lazy.parseUntil("first"));
+
+        final Iterator<Part> parts = this.lazy.getPartsIterator();
+
+        // read ahead by the lookup
+        assertTrue(parts.hasNext());
+        Part part = parts.next();
+        assertEquals("first", part.getName());
+        assertTrue(part instanceof SlingPart);
+
+        // streamed from the request and not stored
+        assertTrue(parts.hasNext());
+        part = parts.next();
+        assertEquals("file", part.getName());
+        assertEquals("data.txt", part.getSubmittedFileName());
+        assertEquals("file content", Streams.asString(part.getInputStream(), Util.ENCODING_DIRECT));
+        assertNull(this.parameters.getValue("file"));
+
+        // form fields consumed by the iterator are parameters, too
+        assertTrue(parts.hasNext());
+        assertEquals("second", parts.next().getName());
+        assertEquals("2", this.parameters.getStringValue("second"));
+
+        assertTrue(parts.hasNext());
+        parts.next();
+        assertFalse(parts.hasNext());
+
+        assertFalse(this.lazy.parseAll());
+        assertEquals(2, this.parameters.getValues("second").length);
+    }
+
+    public void testPartsIteratorSkipsUnreadFile() {
+        final Iterator<Part> parts = this.lazy.getPartsIterator();
+        assertEquals("first", parts.next().getName());
+        assertEquals("file", parts.next().getName());
+
+        // the file content is skipped, not stored
+        assertTrue(this.lazy.parseAll());
+        assertNull(this.parameters.getValue("file"));
+        assertEquals(2, this.parameters.getValues("second").length);
+    }
+
+    private static void addField(final StringBuilder sb, final String name, final String value) {
+        sb.append("--").append(BOUNDARY).append("\r\n");
+        sb.append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n");
+        sb.append(value).append("\r\n");
+    }
+
+    private static void addFile(final StringBuilder sb, final String name, final String fileName,
+            final String content) {
+        sb.append("--").append(BOUNDARY).append("\r\n");
+        sb.append("Content-Disposition: form-data; name=\"").append(name).append("\"; filename=\"").append(
+            fileName).append("\"\r\n");
+        sb.append("Content-Type: text/plain\r\n\r\n");
+        sb.append(content).append("\r\n");
+    }
+
+    private static class TestRequestContext implements RequestContext {
+
+        private final InputStream body;
+
+        TestRequestContext(final InputStream body) {
+            this.body = body;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return Util.ENCODING_DIRECT;
+        }
+
+        @Override
+        public String getContentType() {
+            return "multipart/form-data; boundary=" + BOUNDARY;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.body;
+        }
+    }
+}
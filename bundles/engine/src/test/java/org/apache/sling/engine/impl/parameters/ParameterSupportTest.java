@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.After;
+import org.junit.Test;
+
+public class ParameterSupportTest {
+
+    private static final String BOUNDARY = "----SlingBoundary";
+
+    private final Mockery context = new Mockery();
+
+    @After
+    public void tearDown() {
+        ParameterSupport.configure(-1, null, -1, -1, false, false);
+    }
+
+    @Test
+    public void testLazyMultipartFormEncoding() throws IOException {
+        ParameterSupport.configure(-1, null, -1, -1, false, true);
+
+        // "\u00e4" encoded as UTF-8, the charset is only sent after the first field
+        final StringBuilder sb = new StringBuilder();
+        addField(sb, "first", "\u00c3\u00a4");
+        addField(sb, ParameterSupport.PARAMETER_FORMENCODING, "UTF-8");
+        addField(sb, "second", "\u00c3\u00b6");
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+
+        final ParameterSupport support = ParameterSupport.getInstance(createRequest(sb.toString()));
+        // the form encoding has not been read yet, so the default applies
+        assertEquals("\u00c3\u00a4", support.getParameter("first"));
+        assertEquals("\u00f6", support.getParameter("second"));
+        // parameters read before the form encoding are decoded again
+        assertEquals("\u00e4", support.getParameter("first"));
+        assertEquals(3, support.getParameterMap().size());
+    }
+
+    @Test
+    public void testLazyMultipartFormEncodingOfNames() throws IOException {
+        ParameterSupport.configure(-1, null, -1, -1, false, true);
+
+        // "n\u00e4" encoded as UTF-8 as the parameter name
+        final StringBuilder sb = new StringBuilder();
+        addField(sb, "n\u00c3\u00a4", "1");
+        addField(sb, "first", "2");
+        addField(sb, ParameterSupport.PARAMETER_FORMENCODING, "UTF-8");
+        addField(sb, "second", "3");
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+
+        final ParameterSupport support = ParameterSupport.getInstance(createRequest(sb.toString()));
+        assertEquals("2", support.getParameter("first"));
+        assertEquals("3", support.getParameter("second"));
+        assertEquals("1", support.getParameter("n\u00e4"));
+        // fixing the encoding again does not decode the name twice
+        assertEquals(4, support.getParameterMap().size());
+        assertEquals("1", support.getParameter("n\u00e4"));
+    }
+
+    @Test
+    public void testLazyMultipartDoesNotReadFilesAhead() throws IOException {
+        ParameterSupport.configure(-1, null, -1, -1, false, true);
+
+        final StringBuilder sb = new StringBuilder();
+        addField(sb, "first", "1");
+        addField(sb, "second", "2");
+        sb.append("--").append(BOUNDARY).append("\r\n");
+        sb.append("Content-Disposition: form-data; name=\"file\"; filename=\"large.bin\"\r\n");
+        sb.append("Content-Type: application/octet-stream\r\n\r\n");
+        for (int i = 0; i < 1024 * 1024; i++) {
+            sb.append('x');
+        }
+        sb.append("\r\n");
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+
+        final int[] read = new int[1];
+        final ParameterSupport support = ParameterSupport.getInstance(createRequest(sb.toString(), read));
+        assertEquals("1", support.getParameter("first"));
+        assertEquals("2", support.getParameter("second"));
+        assertTrue("Read " + read[0] + " bytes", read[0] < 64 * 1024);
+
+        assertEquals(1024 * 1024, support.getRequestParameter("file").getSize());
+        assertEquals(sb.length(), read[0]);
+    }
+
+    @Test
+    public void testLazyMultipartWithoutFormEncoding() throws IOException {
+        ParameterSupport.configure(-1, null, -1, -1, false, true);
+
+        final StringBuilder sb = new StringBuilder();
+        addField(sb, "first", "1");
+        addField(sb, "second", "2");
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+
+        final ParameterSupport support = ParameterSupport.getInstance(createRequest(sb.toString()));
+        assertEquals("1", support.getParameter("first"));
+        assertEquals("2", support.getParameter("second"));
+    }
+
+    private HttpServletRequest createRequest(final String body) throws IOException {
+        return createRequest(body, new int[1]);
+    }
+
+    private HttpServletRequest createRequest(final String body, final int[] read) throws IOException {
+        final ByteArrayInputStream input = new ByteArrayInputStream(body.getBytes(Util.ENCODING_DIRECT));
+        final ServletInputStream servletInput = new ServletInputStream() {
+            @Override
+            public int read() {
+                final int b = input.read();
+                if (b != -1) {
+                    read[0]++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                final int count = input.read(b, off, len);
+                if (count > 0) {
+                    read[0] += count;
+                }
+                return count;
+            }
+
+            @Override
+            public boolean isFinished() {
+                return input.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        };
+        final HttpServletRequest request = context.mock(HttpServletRequest.class);
+        context.checking(new Expectations() {{
+            allowing(request).getAttribute(with(any(String.class)));
+            will(returnValue(null));
+            allowing(request).setAttribute(with(any(String.class)), with(any(Object.class)));
+            allowing(request).getCharacterEncoding();
+            will(returnValue(Util.ENCODING_DIRECT));
+            allowing(request).getQueryString();
+            will(returnValue(null));
+            allowing(request).getMethod();
+            will(returnValue("POST"));
+            allowing(request).getContentType();
+            will(returnValue("multipart/form-data; boundary=" + BOUNDARY));
+            allowing(request).getContentLength();
+            will(returnValue(-1));
+            allowing(request).getHeader(with(any(String.class)));
+            will(returnValue(null));
+            allowing(request).getInputStream();
+            will(returnValue(servletInput));
+        }});
+        return request;
+    }
+
+    private static void addField(final StringBuilder sb, final String name, final String value) {
+        sb.append("--").append(BOUNDARY).append("\r\n");
+        sb.append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n");
+        sb.append(value).append("\r\n");
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.sling.engine.impl.request;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assert.assertEquals;
@@ -27,6 +28,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Iterator;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -38,6 +40,11 @@ public class SlingRequestProgressTrackerTest {
     public void setup() {
         tracker = new SlingRequestProgressTracker();
     }
+
+    @After
+    public void resetSampling() {
+        SlingRequestProgressTracker.setSampling(1, 0);
+    }
     
     private void addTestData() {
         tracker.startTimer("foo");
@@ -129,6 +136,85 @@ public class SlingRequestProgressTrackerTest {
         tracker.getMessages().remove();
     }
 
+    @Test
+    public void argumentsCapturedWhenLogged() {
+        final StringBuilder arg = new StringBuilder("before");
+        tracker.log("value {0}", arg);
+        arg.replace(0, arg.length(), "after");
+        final Iterator<String> messages = tracker.getMessages();
+        messages.next();
+        messages.next();
+        assertEquals("LOG value before\n", messages.next().substring(8));
+    }
+
+    @Test
+    public void manyEntries() {
+        for (int i = 0; i < 1000; i++) {
+            tracker.startTimer("timer");
+            tracker.log("entry {0}", i);
+            tracker.logTimer("timer", "done {0}", i);
+        }
+        int count = 0;
+        final Iterator<String> messages = tracker.getMessages();
+        while (messages.hasNext()) {
+            messages.next();
+            count++;
+        }
+        assertEquals(3002, count);
+    }
+
+    @Test
+    public void sampleRate() {
+        SlingRequestProgressTracker.setSampling(3, 0);
+        int sampled = 0;
+        for (int i = 0; i < 3; i++) {
+            final SlingRequestProgressTracker t = new SlingRequestProgressTracker();
+            t.startTimer("foo");
+            t.log("message");
+            t.logTimer("foo");
+            if (t.isSampled()) {
+                sampled++;
+                assertEquals(5, countMessages(t));
+            } else {
+                final Iterator<String> messages = t.getMessages();
+                assertTrue(messages.next().endsWith("COMMENT request not sampled for tracking\n"));
+                assertFalse(messages.hasNext());
+            }
+        }
+        assertEquals(1, sampled);
+    }
+
+    @Test
+    public void slowRequestsOnly() throws InterruptedException {
+        SlingRequestProgressTracker.setSampling(Integer.MAX_VALUE, 25);
+
+        final SlingRequestProgressTracker fast = new SlingRequestProgressTracker();
+        assertFalse(fast.isSampled());
+        fast.log("message");
+        assertEquals(3, countMessages(fast));
+        fast.done();
+        final Iterator<String> messages = fast.getMessages();
+        assertTrue(messages.next().contains("COMMENT trace discarded"));
+        assertTrue(messages.next().contains(",Request Processing} Request Processing"));
+        assertFalse(messages.hasNext());
+
+        final SlingRequestProgressTracker slow = new SlingRequestProgressTracker();
+        slow.log("message");
+        Thread.sleep(30);
+        slow.done();
+        assertEquals(4, countMessages(slow));
+    }
+
+    private int countMessages(final SlingRequestProgressTracker t) {
+        int count = 0;
+        final Iterator<String> messages = t.getMessages();
+        while (messages.hasNext()) {
+            messages.next();
+            count++;
+        }
+        return count;
+    }
+
     private String substringAfter(String string, char ch) {
         final int pos = string.indexOf(ch);
         return string.substring(pos);
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The job index keeps the resource paths of new jobs assigned to this
+ * instance per topic in the order they have been reported by the
+ * resource observation.
+ *
+ * This allows the queues to load new jobs directly instead of traversing
+ * the topic folders. The index is not complete: it does not contain jobs
+ * which have been added before it has been cleared for a topic (see
+ * {@link #clear(String)}), therefore the queues still traverse a topic if
+ * they have not done so since the last {@link #clear(String)}.
+ * If the index of a topic exceeds {@link #MAX_ENTRIES_PER_TOPIC}, it is
+ * dropped and the topic needs to be traversed again.
+ */
+public class JobIndex {
+
+    /** Maximum number of job paths per topic. */
+    public static final int MAX_ENTRIES_PER_TOPIC = 1000;
+
+    /** The job paths per topic. */
+    private final ConcurrentMap<String, TopicIndex> topics = new ConcurrentHashMap<String, TopicIndex>();
+
+    /**
+     * Add a new job.
+     * @param topic The job topic
+     * @param path The resource path of the job
+     */
+    public void add(final String topic, final String path) {
+        TopicIndex index = this.topics.get(topic);
+        if ( index == null ) {
+            final TopicIndex newIndex = new TopicIndex();
+            index = this.topics.putIfAbsent(topic, newIndex);
+            if ( index == null ) {
+                index = newIndex;
+            }
+        }
+        synchronized ( index ) {
+            if ( !index.overflow ) {
+                index.paths.add(path);
+                if ( index.paths.size() > MAX_ENTRIES_PER_TOPIC ) {
+                    index.paths.clear();
+                    index.overflow = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove and return the next job paths of a topic.
+     * @param topic The job topic
+     * @param max The maximum number of paths
+     * @return The paths or {@code null} if the index has been dropped and
+     *         the topic needs to be traversed.
+     */
+    public List<String> poll(final String topic, final int max) {
+        final List<String> result = new ArrayList<String>();
+        final TopicIndex index = this.topics.get(topic);
+        if ( index != null ) {
+            synchronized ( index ) {
+                if ( index.overflow ) {
+                    return null;
+                }
+                final Iterator<String> iter = index.paths.iterator();
+                while ( iter.hasNext() && result.size() < max ) {
+                    result.add(iter.next());
+                    iter.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check whether the index contains jobs of the topic.
+     * @param topic The job topic
+     * @return {@code true} if there are jobs or the index has been dropped
+     */
+    public boolean hasJobs(final String topic) {
+        final TopicIndex index = this.topics.get(topic);
+        if ( index != null ) {
+            synchronized ( index ) {
+                return index.overflow || !index.paths.isEmpty();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clear the index of a topic, called before the topic is traversed.
+     * @param topic The job topic
+     */
+    public void clear(final String topic) {
+        final TopicIndex index = this.topics.get(topic);
+        if ( index != null ) {
+            synchronized ( index ) {
+                index.paths.clear();
+                index.overflow = false;
+            }
+        }
+    }
+
+    private static final class TopicIndex {
+
+        public final Set<String> paths = new LinkedHashSet<String>();
+
+        public boolean overflow;
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.event.impl.jobs;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -53,6 +54,10 @@ import org.apache.sling.event.impl.jobs.queues.JobQueueImpl;
 import org.apache.sling.event.impl.jobs.queues.QueueManager;
 import org.apache.sling.event.impl.jobs.scheduling.JobSchedulerImpl;
 import org.apache.sling.event.impl.jobs.stats.StatisticsManager;
+import org.apache.sling.event.impl.jobs.store.BatchingJobStore;
+import org.apache.sling.event.impl.jobs.store.JobStore;
+import org.apache.sling.event.impl.jobs.store.JournalJobStore;
+import org.apache.sling.event.impl.jobs.store.ResourceJobStore;
 import org.apache.sling.event.impl.jobs.tasks.CleanUpTask;
 import org.apache.sling.event.impl.support.Environment;
 import org.apache.sling.event.impl.support.ResourceHelper;
@@ -92,6 +97,9 @@ import org.slf4j.LoggerFactory;
 public class JobManagerImpl
     implements JobManager, EventHandler, Runnable {
 
+    /** The name of the journal file of the journal job store. */
+    private static final String JOURNAL_FILE_NAME = "jobs.journal";
+
     /** Default logger. */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -127,6 +135,9 @@ public class JobManagerImpl
 
     private volatile ServiceRegistration<ResourceChangeListener> changeListenerReg;
 
+    /** The store for new jobs. */
+    private volatile JobStore jobStore;
+
     /**
      * Activate this component.
      * @param props Configuration properties
@@ -135,6 +146,7 @@ public class JobManagerImpl
     protected void activate(final BundleContext ctx, final Map<String, Object> props) throws LoginException {
         this.jobScheduler = new org.apache.sling.event.impl.jobs.scheduling.JobSchedulerImpl(this.configuration, this.scheduler, this);
         this.maintenanceTask = new CleanUpTask(this.configuration, this.jobScheduler);
+        this.jobStore = this.createJobStore(ctx);
 
         final Dictionary<String, Object> regProps = new Hashtable<>();
         regProps.put(ResourceChangeListener.PATHS, this.configuration.getScheduledJobsPath(false));
@@ -163,10 +175,38 @@ public class JobManagerImpl
 
         this.jobScheduler.deactivate();
 
+        this.jobStore.close();
+
         this.maintenanceTask = null;
         logger.info("Apache Sling Job Manager stopped on instance {}", Environment.APPLICATION_ID);
     }
 
+    /**
+     * Create the configured job store.
+     */
+    private JobStore createJobStore(final BundleContext ctx) {
+        final String type = this.configuration.getJobStore();
+        if ( JobManagerConfiguration.JOB_STORE_BATCHED.equals(type) ) {
+            final BatchingJobStore store = new BatchingJobStore(this.configuration, this.configuration.getJobStoreBatchSize());
+            store.start();
+            logger.info("Using batched job store");
+            return store;
+        }
+        if ( JobManagerConfiguration.JOB_STORE_JOURNAL.equals(type) ) {
+            final File journal = ctx.getDataFile(JOURNAL_FILE_NAME);
+            if ( journal != null ) {
+                final JournalJobStore store = new JournalJobStore(this.configuration, this.configuration.getJobStoreBatchSize(), journal);
+                store.start();
+                logger.info("Using journal job store with journal {}", journal);
+                return store;
+            }
+            logger.warn("No file system support for the journal job store, using the resource job store.");
+        } else if ( !JobManagerConfiguration.JOB_STORE_RESOURCE.equals(type) ) {
+            logger.warn("Unknown job store {}, using the resource job store.", type);
+        }
+        return new ResourceJobStore(this.configuration);
+    }
+
     /**
      * This method is invoked periodically by the scheduler.
      * In the default configuration every minute
@@ -329,6 +369,16 @@ public class JobManagerImpl
         } finally {
             resolver.close();
         }
+        // the job might be accepted but not written yet
+        final JobStore store = this.jobStore;
+        final Map<String, Object> pending = store == null ? null : store.getPendingJob(id);
+        if ( pending != null ) {
+            final String topic = (String) pending.get(ResourceHelper.PROPERTY_JOB_TOPIC);
+            if ( topic != null ) {
+                logger.debug("Found pending job with id {}", id);
+                return new JobImpl(topic, id, pending);
+            }
+        }
         logger.debug("Job not found with id: {}", id);
         return null;
     }
@@ -566,10 +616,8 @@ public class JobManagerImpl
                 logger.debug("Persisting job {} into queue {}", Utility.toString(jobTopic, jobProperties), info.queueName);
             }
         }
-        final ResourceResolver resolver = this.configuration.createResourceResolver();
         try {
-            final JobImpl job = this.writeJob(resolver,
-                    jobTopic,
+            final JobImpl job = this.writeJob(jobTopic,
                     jobProperties,
                     info);
             if ( info.targetId != null ) {
@@ -583,8 +631,6 @@ public class JobManagerImpl
         } catch (final PersistenceException re ) {
             // something went wrong, so let's log it
             this.logger.error("Exception during persisting new job '" + Utility.toString(jobTopic, jobProperties) + "'", re);
-        } finally {
-            resolver.close();
         }
         if ( errors != null ) {
             errors.add("Unable to persist new job.");
@@ -594,14 +640,12 @@ public class JobManagerImpl
     }
 
     /**
-     * Write a job to the resource tree.
-     * @param resolver The resolver resolver
+     * Write a job to the resource tree using the job store.
      * @param event The event
      * @param info The queue information (queue name etc.)
      * @throws PersistenceException
      */
-    private JobImpl writeJob(final ResourceResolver resolver,
-            final String jobTopic,
+    private JobImpl writeJob(final String jobTopic,
             final Map<String, Object> jobProperties,
             final QueueInfo info)
     throws PersistenceException {
@@ -640,9 +684,7 @@ public class JobManagerImpl
         if ( logger.isDebugEnabled() ) {
             logger.debug("Storing new job {} at {}", Utility.toString(jobTopic, properties), path);
         }
-        ResourceHelper.getOrCreateResource(resolver,
-                path,
-                properties);
+        this.jobStore.persist(path, new HashMap<String, Object>(properties));
 
         // update property types - priority, add path and create job
         properties.put(JobImpl.PROPERTY_RESOURCE_PATH, path);
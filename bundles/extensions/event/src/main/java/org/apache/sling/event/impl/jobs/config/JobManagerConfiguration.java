@@ -33,6 +33,7 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.resource.LoginException;
@@ -46,6 +47,7 @@ import org.apache.sling.discovery.TopologyEventListener;
 import org.apache.sling.discovery.commons.InitDelayingTopologyEventListener;
 import org.apache.sling.discovery.TopologyEvent.Type;
 import org.apache.sling.event.impl.EnvironmentComponent;
+import org.apache.sling.event.impl.jobs.JobIndex;
 import org.apache.sling.event.impl.jobs.Utility;
 import org.apache.sling.event.impl.jobs.tasks.CheckTopologyTask;
 import org.apache.sling.event.impl.jobs.tasks.FindUnfinishedJobsTask;
@@ -80,6 +82,20 @@ import org.slf4j.LoggerFactory;
               label="Startup Delay",
               description="Specify amount in seconds that job manager waits on startup before starting with job handling. "
                         + "This can be used to allow enough time to restart a cluster before jobs are eventually reassigned."),
+    @Property(name=JobManagerConfiguration.PROPERTY_JOB_STORE,
+              value=JobManagerConfiguration.DEFAULT_JOB_STORE,
+              options={@PropertyOption(name=JobManagerConfiguration.JOB_STORE_RESOURCE,value="Resource"),
+                       @PropertyOption(name=JobManagerConfiguration.JOB_STORE_BATCHED,value="Batched"),
+                       @PropertyOption(name=JobManagerConfiguration.JOB_STORE_JOURNAL,value="Journal")},
+              label="Job Store",
+              description="How new jobs are persisted. Resource commits each job on its own. Batched writes "
+                        + "concurrently added jobs with a single commit. Journal appends jobs to a local journal "
+                        + "and writes them in batches asynchronously - this is only suited for non clustered "
+                        + "installations. Changes take effect when the job manager is restarted."),
+    @Property(name=JobManagerConfiguration.PROPERTY_JOB_STORE_BATCH_SIZE,
+              intValue=JobManagerConfiguration.DEFAULT_JOB_STORE_BATCH_SIZE,
+              label="Job Store Batch Size",
+              description="The maximum number of jobs written with a single commit by the batched and journal job store."),
     @Property(name=JobManagerConfiguration.PROPERTY_REPOSITORY_PATH,
               value=JobManagerConfiguration.DEFAULT_REPOSITORY_PATH, propertyPrivate=true),
     @Property(name=JobManagerConfiguration.PROPERTY_SCHEDULED_JOBS_PATH,
@@ -134,6 +150,27 @@ public class JobManagerConfiguration {
     /** Default value for deprecation warnings. */
     public static final boolean DEFAULT_LOG_DEPRECATION_WARNINGS = true;
 
+    /** Configuration property for the job store. */
+    public static final String PROPERTY_JOB_STORE = "job.store";
+
+    /** Job store committing each job on its own. */
+    public static final String JOB_STORE_RESOURCE = "resource";
+
+    /** Job store committing concurrently added jobs together. */
+    public static final String JOB_STORE_BATCHED = "batched";
+
+    /** Job store appending jobs to a local journal. */
+    public static final String JOB_STORE_JOURNAL = "journal";
+
+    /** Default job store. */
+    public static final String DEFAULT_JOB_STORE = JOB_STORE_RESOURCE;
+
+    /** Configuration property for the maximum number of jobs per commit. */
+    public static final String PROPERTY_JOB_STORE_BATCH_SIZE = "job.store.batch.size";
+
+    /** Default maximum number of jobs per commit. */
+    public static final int DEFAULT_JOB_STORE_BATCH_SIZE = 100;
+
     /** The jobs base path with a slash. */
     private String jobsBasePathWithSlash;
 
@@ -161,6 +198,13 @@ public class JobManagerConfiguration {
 
     private volatile boolean disabledDistribution;
 
+    private volatile String jobStore;
+
+    private volatile int jobStoreBatchSize;
+
+    /** The index of new jobs assigned to this instance. */
+    private final JobIndex jobIndex = new JobIndex();
+
     private String storedCancelledJobsPath;
 
     private String storedSuccessfulJobsPath;
@@ -260,6 +304,8 @@ public class JobManagerConfiguration {
         // an immediate effect - it will only have an effect on next activation.
         // (as 'startup delay runnable' is already scheduled in activate)
         this.startupDelay = PropertiesUtil.toLong(props.get(PROPERTY_STARTUP_DELAY), DEFAULT_STARTUP_DELAY);
+        this.jobStore = PropertiesUtil.toString(props.get(PROPERTY_JOB_STORE), DEFAULT_JOB_STORE);
+        this.jobStoreBatchSize = PropertiesUtil.toInteger(props.get(PROPERTY_JOB_STORE_BATCH_SIZE), DEFAULT_JOB_STORE_BATCH_SIZE);
         Utility.LOG_DEPRECATION_WARNINGS = PropertiesUtil.toBoolean(props.get(PROPERTY_LOG_DEPRECATION_WARNINGS), DEFAULT_LOG_DEPRECATION_WARNINGS);
     }
 
@@ -316,6 +362,30 @@ public class JobManagerConfiguration {
         return this.queueConfigManager;
     }
 
+    /**
+     * Get the configured job store.
+     * @return One of {@link #JOB_STORE_RESOURCE}, {@link #JOB_STORE_BATCHED} or {@link #JOB_STORE_JOURNAL}
+     */
+    public String getJobStore() {
+        return this.jobStore;
+    }
+
+    /**
+     * Get the maximum number of jobs per commit for the batching job stores.
+     * @return The batch size
+     */
+    public int getJobStoreBatchSize() {
+        return this.jobStoreBatchSize;
+    }
+
+    /**
+     * Get the index of new jobs assigned to this instance.
+     * @return The job index
+     */
+    public JobIndex getJobIndex() {
+        return this.jobIndex;
+    }
+
     /**
      * Get main logger.
      * @return The main logger.
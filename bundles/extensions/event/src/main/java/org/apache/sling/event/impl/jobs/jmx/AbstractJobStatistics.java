@@ -21,6 +21,8 @@ import java.util.Date;
 
 import javax.management.StandardMBean;
 
+import org.apache.sling.event.impl.jobs.stats.StatisticsImpl;
+import org.apache.sling.event.impl.jobs.stats.TimeWindowStatistics;
 import org.apache.sling.event.jobs.Statistics;
 import org.apache.sling.event.jobs.jmx.StatisticsMBean;
 
@@ -97,4 +99,66 @@ public abstract class AbstractJobStatistics extends StandardMBean implements
         return new Date(getStatistics().getLastFinishedJobTime());
     }
 
+    /**
+     * @return the windowed statistics or {@code null} if not available.
+     */
+    protected TimeWindowStatistics getWindowStatistics() {
+        final Statistics s = getStatistics();
+        if ( s instanceof StatisticsImpl ) {
+            return ((StatisticsImpl)s).getWindowStatistics();
+        }
+        return null;
+    }
+
+    public double getOneMinuteJobRate() {
+        return getJobRate(1);
+    }
+
+    public double getFiveMinuteJobRate() {
+        return getJobRate(5);
+    }
+
+    public double getFifteenMinuteJobRate() {
+        return getJobRate(15);
+    }
+
+    public long getOneMinuteWaitingTime99thPercentile() {
+        return getWaitingTimePercentile(1);
+    }
+
+    public long getFiveMinuteWaitingTime99thPercentile() {
+        return getWaitingTimePercentile(5);
+    }
+
+    public long getFifteenMinuteWaitingTime99thPercentile() {
+        return getWaitingTimePercentile(15);
+    }
+
+    public long getOneMinuteProcessingTime99thPercentile() {
+        return getProcessingTimePercentile(1);
+    }
+
+    public long getFiveMinuteProcessingTime99thPercentile() {
+        return getProcessingTimePercentile(5);
+    }
+
+    public long getFifteenMinuteProcessingTime99thPercentile() {
+        return getProcessingTimePercentile(15);
+    }
+
+    private double getJobRate(final int minutes) {
+        final TimeWindowStatistics ws = getWindowStatistics();
+        return ws == null ? 0 : ws.getJobsPerSecond(minutes);
+    }
+
+    private long getWaitingTimePercentile(final int minutes) {
+        final TimeWindowStatistics ws = getWindowStatistics();
+        return ws == null ? 0 : ws.getWaitingTimePercentile(0.99, minutes);
+    }
+
+    private long getProcessingTimePercentile(final int minutes) {
+        final TimeWindowStatistics ws = getWindowStatistics();
+        return ws == null ? 0 : ws.getProcessingTimePercentile(0.99, minutes);
+    }
+
 }
@@ -27,20 +27,24 @@ public class QueueMBeanImpl extends AbstractJobStatistics {
 
     private final String name;
 
-    private final Statistics statistics;
+    private final Queue queue;
 
     public QueueMBeanImpl(Queue queue) {
         this.name = queue.getName();
-        if (queue instanceof Statistics) {
-            this.statistics = (Statistics) queue;
-        } else {
-            this.statistics = new EmptyStatistics();
-        }
+        this.queue = queue;
     }
 
     @Override
     protected Statistics getStatistics() {
-        return this.statistics;
+        if (this.queue instanceof Statistics) {
+            return (Statistics) this.queue;
+        }
+        // the statistics of a queue are created lazily, so always ask the queue
+        final Statistics statistics = this.queue.getStatistics();
+        if (statistics == null) {
+            return new EmptyStatistics();
+        }
+        return statistics;
     }
 
     @Override
@@ -31,13 +31,26 @@ import javax.management.MBeanNotificationInfo;
 import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
 import javax.management.StandardEmitterMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.event.impl.jobs.stats.StatisticsManager;
+import org.apache.sling.event.impl.jobs.stats.TimeWindowStatistics;
+import org.apache.sling.event.impl.jobs.stats.TopicStatisticsImpl;
 import org.apache.sling.event.jobs.Queue;
+import org.apache.sling.event.jobs.TopicStatistics;
 import org.apache.sling.event.jobs.jmx.QueuesMBean;
 import org.apache.sling.event.jobs.jmx.StatisticsMBean;
 import org.osgi.framework.BundleContext;
@@ -56,6 +69,35 @@ public class QueuesMBeanImpl extends StandardEmitterMBean implements QueuesMBean
     private AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
     private BundleContext bundleContext;
 
+    @Reference
+    private StatisticsManager statisticsManager;
+
+    private static final String[] TOPIC_ITEMS = {
+        "topic",
+        "jobRate1m", "jobRate5m", "jobRate15m",
+        "waitingTime99th1m", "waitingTime99th5m", "waitingTime99th15m",
+        "processingTime99th1m", "processingTime99th5m", "processingTime99th15m"
+    };
+
+    private static final TabularType TOPIC_STATISTICS_TYPE;
+    static {
+        try {
+            final OpenType<?>[] types = new OpenType<?>[TOPIC_ITEMS.length];
+            types[0] = SimpleType.STRING;
+            for ( int i = 1; i < types.length; i++ ) {
+                types[i] = i < 4 ? SimpleType.DOUBLE : SimpleType.LONG;
+            }
+            final CompositeType rowType = new CompositeType("TopicStatistics",
+                    "Job rates (jobs per second) and 99th percentiles of the waiting and processing times (ms) of a topic",
+                    TOPIC_ITEMS, TOPIC_ITEMS, types);
+            TOPIC_STATISTICS_TYPE = new TabularType("TopicStatisticsTable",
+                    "Job statistics per topic over the last 1, 5 and 15 minutes",
+                    rowType, new String[] {"topic"});
+        } catch (final OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     class QueueMBeanHolder {
 
         QueueMBeanHolder(String name, QueueMBeanImpl queueMBean,
@@ -172,6 +214,32 @@ public class QueuesMBeanImpl extends StandardEmitterMBean implements QueuesMBean
         queues.remove(queueMBeanHolder.name);
     }
 
+    @Override
+    public TabularData getTopicStatistics() {
+        final TabularDataSupport data = new TabularDataSupport(TOPIC_STATISTICS_TYPE);
+        final StatisticsManager manager = this.statisticsManager;
+        if ( manager != null ) {
+            for (final TopicStatistics ts : manager.getTopicStatistics().values()) {
+                if ( ts instanceof TopicStatisticsImpl ) {
+                    final TimeWindowStatistics ws = ((TopicStatisticsImpl)ts).getWindowStatistics();
+                    try {
+                        data.put(new CompositeDataSupport(TOPIC_STATISTICS_TYPE.getRowType(), TOPIC_ITEMS, new Object[] {
+                            ts.getTopic(),
+                            ws.getJobsPerSecond(1), ws.getJobsPerSecond(5), ws.getJobsPerSecond(15),
+                            ws.getWaitingTimePercentile(0.99, 1), ws.getWaitingTimePercentile(0.99, 5),
+                            ws.getWaitingTimePercentile(0.99, 15),
+                            ws.getProcessingTimePercentile(0.99, 1), ws.getProcessingTimePercentile(0.99, 5),
+                            ws.getProcessingTimePercentile(0.99, 15)
+                        }));
+                    } catch (final OpenDataException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
     @Override
     public String[] getQueueNames() {
         if (names == null) {
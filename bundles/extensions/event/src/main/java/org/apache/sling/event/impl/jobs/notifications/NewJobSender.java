@@ -103,6 +103,8 @@ public class NewJobSender implements ResourceChangeListener, ExternalResourceCha
                 final String jobId = path.substring(topicEnd + 1);
 
                 if ( path.indexOf("_", topicEnd + 1) != -1 ) {
+                    this.configuration.getJobIndex().add(topic, path);
+
                 	// only job id and topic are guaranteed
                 	final Dictionary<String, Object> properties = new Hashtable<String, Object>();
                 	properties.put(NotificationConstants.NOTIFICATION_PROPERTY_JOB_ID, jobId);
@@ -33,6 +33,7 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.event.impl.jobs.JobConsumerManager;
 import org.apache.sling.event.impl.jobs.JobHandler;
 import org.apache.sling.event.impl.jobs.JobImpl;
+import org.apache.sling.event.impl.jobs.JobIndex;
 import org.apache.sling.event.impl.jobs.JobTopicTraverser;
 import org.apache.sling.event.impl.jobs.Utility;
 import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
@@ -48,6 +49,10 @@ import org.slf4j.LoggerFactory;
 /**
  * The queue job cache caches jobs per queue based on the topics the queue is actively
  * processing.
+ *
+ * Jobs of a topic are loaded by traversing the topic folder until a traversal
+ * has found all jobs of the topic. Afterwards new jobs of the topic are
+ * loaded from the {@link JobIndex}. A full scan traverses all topics again.
  */
 public class QueueJobCache {
 
@@ -66,6 +71,9 @@ public class QueueJobCache {
     /** The set of new topics to scan. */
     private final Set<String> topicsWithNewJobs = new HashSet<String>();
 
+    /** The set of topics which need to be traversed as the index might be incomplete. */
+    private final Set<String> unindexedTopics = new ConcurrentSkipListSet<String>();
+
     /** The cache of current objects. */
     private final List<JobImpl> cache = new ArrayList<JobImpl>();
 
@@ -91,6 +99,7 @@ public class QueueJobCache {
         this.configuration = configuration;
         this.queueType = queueType;
         this.topics = new ConcurrentSkipListSet<String>(topics);
+        this.unindexedTopics.addAll(topics);
         this.fillCache(queueName, statisticsManager);
     }
 
@@ -165,6 +174,7 @@ public class QueueJobCache {
                         }
                         if ( doFull ) {
                             checkingTopics.addAll(this.topics);
+                            this.unindexedTopics.addAll(this.topics);
                         }
                         if ( !checkingTopics.isEmpty() ) {
                             this.loadJobs(queue.getName(), checkingTopics, statisticsManager);
@@ -217,10 +227,22 @@ public class QueueJobCache {
             // sanity check - should never be null
             if ( baseResource != null ) {
                 for(final String topic : checkingTopics) {
-
-                    final Resource topicResource = baseResource.getChild(topic.replace('/', '.'));
-                    if ( topicResource != null ) {
-                        topicCache.put(topic, loadJobs(queueName, topic, topicResource, statisticsManager));
+                    List<JobImpl> list = null;
+                    if ( !this.unindexedTopics.contains(topic) ) {
+                        list = loadIndexedJobs(queueName, topic, resolver, statisticsManager);
+                    }
+                    if ( list == null ) {
+                        // the index needs to be rebuilt, clear it before traversing
+                        this.configuration.getJobIndex().clear(topic);
+                        final Resource topicResource = baseResource.getChild(topic.replace('/', '.'));
+                        if ( topicResource != null ) {
+                            list = loadJobs(queueName, topic, topicResource, statisticsManager);
+                        } else {
+                            this.unindexedTopics.remove(topic);
+                        }
+                    }
+                    if ( list != null ) {
+                        topicCache.put(topic, list);
                     }
                 }
             }
@@ -278,24 +300,9 @@ public class QueueJobCache {
 
             @Override
             public boolean handle(final JobImpl job) {
-                if ( job.getProcessingStarted() == null && !job.hasReadErrors() ) {
-                    list.add(job);
-                    statisticsManager.jobQueued(queueName, topic);
-                    if ( list.size() == maxPreloadLimit ) {
-                        scanTopic.set(true);
-                    }
-                } else if ( job.getProcessingStarted() != null ) {
-                    logger.debug("Ignoring job {} - processing already started.", job);
-                } else {
-                    // error reading job
+                if ( !addJob(queueName, topic, job, list, statisticsManager)
+                     || list.size() == maxPreloadLimit ) {
                     scanTopic.set(true);
-                    if ( job.isReadErrorRecoverable() ) {
-                        logger.debug("Ignoring job {} due to recoverable read errors.", job);
-                    } else {
-                        logger.debug("Failing job {} due to unrecoverable read errors.", job);
-                        final JobHandler handler = new JobHandler(job, null, configuration);
-                        handler.finished(JobState.ERROR, true, null);
-                    }
                 }
                 return list.size() < maxPreloadLimit;
             }
@@ -304,18 +311,92 @@ public class QueueJobCache {
             synchronized ( this.topicsWithNewJobs ) {
                 this.topicsWithNewJobs.add(topic);
             }
+        } else {
+            // all jobs have been found, new jobs are in the index
+            this.unindexedTopics.remove(topic);
         }
         logger.debug("Caching {} jobs for topic {}", list.size(), topic);
 
         return list;
     }
 
+    /**
+     * Load the next N jobs of a topic from the job index.
+     * @param topic The topic
+     * @param resolver The resolver to read the jobs
+     * @return The jobs or {@code null} if the topic needs to be traversed.
+     */
+    private List<JobImpl> loadIndexedJobs(final String queueName, final String topic,
+            final ResourceResolver resolver,
+            final StatisticsManager statisticsManager) {
+        final JobIndex index = this.configuration.getJobIndex();
+        final List<String> paths = index.poll(topic, maxPreloadLimit);
+        if ( paths == null ) {
+            logger.debug("Job index for topic {} has been dropped", topic);
+            this.unindexedTopics.add(topic);
+            return null;
+        }
+        logger.debug("Loading {} jobs from job index for topic {}", paths.size(), topic);
+        final List<JobImpl> list = new ArrayList<JobImpl>();
+        for(final String path : paths) {
+            final Resource jobResource = resolver.getResource(path);
+            // the job might have been processed or removed already
+            if ( jobResource != null ) {
+                final JobImpl job = Utility.readJob(logger, jobResource);
+                if ( job != null && !addJob(queueName, topic, job, list, statisticsManager) ) {
+                    // retry the job with the next traversal
+                    this.unindexedTopics.add(topic);
+                }
+            }
+        }
+        if ( index.hasJobs(topic) || this.unindexedTopics.contains(topic) ) {
+            synchronized ( this.topicsWithNewJobs ) {
+                this.topicsWithNewJobs.add(topic);
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Add a loaded job to the list if it can be processed.
+     * @return {@code false} if the job could not be read.
+     */
+    private boolean addJob(final String queueName, final String topic,
+            final JobImpl job,
+            final List<JobImpl> list,
+            final StatisticsManager statisticsManager) {
+        if ( job.getProcessingStarted() == null && !job.hasReadErrors() ) {
+            list.add(job);
+            statisticsManager.jobQueued(queueName, topic);
+        } else if ( job.getProcessingStarted() != null ) {
+            logger.debug("Ignoring job {} - processing already started.", job);
+        } else {
+            // error reading job
+            if ( job.isReadErrorRecoverable() ) {
+                logger.debug("Ignoring job {} due to recoverable read errors.", job);
+            } else {
+                logger.debug("Failing job {} due to unrecoverable read errors.", job);
+                final JobHandler handler = new JobHandler(job, null, configuration);
+                handler.finished(JobState.ERROR, true, null);
+            }
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Inform the queue cache about topics containing new jobs
      * @param topics The set of topics to scan
      */
     public void handleNewTopics(final Set<String> topics) {
         logger.debug("Update cache to handle new event for topics {}", topics);
+        for(final String topic : topics) {
+            if ( !this.topics.contains(topic) ) {
+                // the topic might contain jobs which are not in the index
+                this.unindexedTopics.add(topic);
+            }
+        }
         synchronized ( this.topicsWithNewJobs ) {
             this.topicsWithNewJobs.addAll(topics);
         }
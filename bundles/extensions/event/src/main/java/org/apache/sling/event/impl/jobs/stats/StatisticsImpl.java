@@ -18,40 +18,45 @@
  */
 package org.apache.sling.event.impl.jobs.stats;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.sling.event.jobs.Statistics;
 
 /**
  * Implementation of the statistics.
+ * <p>
+ * All values are kept in atomic counters, updates and reads do not lock.
+ * Averages are calculated when read. Values read while jobs are updating
+ * the statistics might therefore be slightly inconsistent with each other.
  */
 public class StatisticsImpl implements Statistics {
 
     private volatile long startTime;
 
-    private volatile long activeJobs;
+    private final AtomicLong activeJobs = new AtomicLong();
 
-    private volatile long queuedJobs;
+    private final AtomicLong queuedJobs = new AtomicLong();
 
     private volatile long lastActivated = -1;
 
     private volatile long lastFinished = -1;
 
-    private volatile long averageWaitingTime;
-
-    private volatile long averageProcessingTime;
+    private final AtomicLong waitingTime = new AtomicLong();
 
-    private volatile long waitingTime;
+    private final AtomicLong processingTime = new AtomicLong();
 
-    private volatile long processingTime;
+    private final AtomicLong waitingCount = new AtomicLong();
 
-    private volatile long waitingCount;
+    private final AtomicLong processingCount = new AtomicLong();
 
-    private volatile long processingCount;
+    private final AtomicLong finishedJobs = new AtomicLong();
 
-    private volatile long finishedJobs;
+    private final AtomicLong failedJobs = new AtomicLong();
 
-    private volatile long failedJobs;
+    private final AtomicLong cancelledJobs = new AtomicLong();
 
-    private volatile long cancelledJobs;
+    /** Rates and percentiles over the last minutes. */
+    private final TimeWindowStatistics windowStatistics = new TimeWindowStatistics();
 
     public StatisticsImpl() {
         this(System.currentTimeMillis());
@@ -65,7 +70,7 @@ public class StatisticsImpl implements Statistics {
      * @see org.apache.sling.event.jobs.Statistics#getStartTime()
      */
     @Override
-    public synchronized long getStartTime() {
+    public long getStartTime() {
         return startTime;
     }
 
@@ -73,7 +78,7 @@ public class StatisticsImpl implements Statistics {
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfProcessedJobs()
      */
     @Override
-    public synchronized long getNumberOfProcessedJobs() {
+    public long getNumberOfProcessedJobs() {
         return getNumberOfCancelledJobs() + getNumberOfFailedJobs() + getNumberOfFinishedJobs();
     }
 
@@ -81,71 +86,71 @@ public class StatisticsImpl implements Statistics {
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfActiveJobs()
      */
     @Override
-    public synchronized long getNumberOfActiveJobs() {
-        return activeJobs;
+    public long getNumberOfActiveJobs() {
+        return activeJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfQueuedJobs()
      */
     @Override
-    public synchronized long getNumberOfQueuedJobs() {
-        return queuedJobs;
+    public long getNumberOfQueuedJobs() {
+        return queuedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfJobs()
      */
     @Override
-    public synchronized long getNumberOfJobs() {
-        return activeJobs + queuedJobs;
+    public long getNumberOfJobs() {
+        return activeJobs.get() + queuedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getAverageWaitingTime()
      */
     @Override
-    public synchronized long getAverageWaitingTime() {
-        return averageWaitingTime;
+    public long getAverageWaitingTime() {
+        return average(waitingTime, waitingCount);
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getAverageProcessingTime()
      */
     @Override
-    public synchronized long getAverageProcessingTime() {
-        return averageProcessingTime;
+    public long getAverageProcessingTime() {
+        return average(processingTime, processingCount);
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfFinishedJobs()
      */
     @Override
-    public synchronized long getNumberOfFinishedJobs() {
-        return finishedJobs;
+    public long getNumberOfFinishedJobs() {
+        return finishedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfCancelledJobs()
      */
     @Override
-    public synchronized long getNumberOfCancelledJobs() {
-        return cancelledJobs;
+    public long getNumberOfCancelledJobs() {
+        return cancelledJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getNumberOfFailedJobs()
      */
     @Override
-    public synchronized long getNumberOfFailedJobs() {
-        return failedJobs;
+    public long getNumberOfFailedJobs() {
+        return failedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#getLastActivatedJobTime()
      */
     @Override
-    public synchronized long getLastActivatedJobTime() {
+    public long getLastActivatedJobTime() {
         return this.lastActivated;
     }
 
@@ -153,167 +158,145 @@ public class StatisticsImpl implements Statistics {
      * @see org.apache.sling.event.jobs.Statistics#getLastFinishedJobTime()
      */
     @Override
-    public synchronized long getLastFinishedJobTime() {
+    public long getLastFinishedJobTime() {
         return this.lastFinished;
     }
 
+    /**
+     * Get the rates and percentiles over the last minutes.
+     */
+    public TimeWindowStatistics getWindowStatistics() {
+        return this.windowStatistics;
+    }
+
     /**
      * Add a finished job
      * @param jobTime The processing time for this job.
      */
-    public synchronized void finishedJob(final long jobTime) {
+    public void finishedJob(final long jobTime) {
         this.lastFinished = System.currentTimeMillis();
-        this.processingTime += jobTime;
-        this.processingCount++;
-        this.averageProcessingTime = this.processingTime / this.processingCount;
-        this.finishedJobs++;
-        this.activeJobs--;
+        this.processingTime.addAndGet(jobTime);
+        this.processingCount.incrementAndGet();
+        this.finishedJobs.incrementAndGet();
+        this.activeJobs.decrementAndGet();
+        this.windowStatistics.jobProcessed(jobTime);
     }
 
     /**
      * Add a failed job.
      */
-    public synchronized void failedJob() {
-        this.failedJobs++;
-        this.activeJobs--;
+    public void failedJob() {
+        this.failedJobs.incrementAndGet();
+        this.activeJobs.decrementAndGet();
+        this.windowStatistics.jobProcessed(-1);
     }
 
     /**
      * Add a cancelled job.
      */
-    public synchronized void cancelledJob() {
-        this.cancelledJobs++;
-        this.activeJobs--;
+    public void cancelledJob() {
+        this.cancelledJobs.incrementAndGet();
+        this.activeJobs.decrementAndGet();
+        this.windowStatistics.jobProcessed(-1);
     }
 
     /**
      * New job in the queue
      */
-    public synchronized void incQueued() {
-        this.queuedJobs++;
+    public void incQueued() {
+        this.queuedJobs.incrementAndGet();
     }
 
     /**
      * Job not processed by us
      */
-    public synchronized void decQueued() {
-        this.queuedJobs--;
+    public void decQueued() {
+        this.queuedJobs.decrementAndGet();
     }
 
     /**
      * Clear all queued
      */
-    public synchronized void clearQueued() {
-        this.queuedJobs = 0;
+    public void clearQueued() {
+        this.queuedJobs.set(0);
     }
 
     /**
      * Add a job from the queue to status active
      * @param queueTime The time the job stayed in the queue.
      */
-    public synchronized void addActive(final long queueTime) {
-        this.queuedJobs--;
-        this.activeJobs++;
-        this.waitingCount++;
-        this.waitingTime += queueTime;
-        this.averageWaitingTime = this.waitingTime / this.waitingCount;
+    public void addActive(final long queueTime) {
+        this.queuedJobs.decrementAndGet();
+        this.activeJobs.incrementAndGet();
+        this.waitingCount.incrementAndGet();
+        this.waitingTime.addAndGet(queueTime);
         this.lastActivated = System.currentTimeMillis();
+        this.windowStatistics.jobStarted(queueTime);
     }
 
     /**
      * Add another statistics information.
      */
-    public synchronized void add(final StatisticsImpl other) {
-        synchronized ( other ) {
-            if ( other.lastActivated > this.lastActivated ) {
-                this.lastActivated = other.lastActivated;
-            }
-            if ( other.lastFinished > this.lastFinished ) {
-                this.lastFinished = other.lastFinished;
-            }
-            this.queuedJobs += other.queuedJobs;
-            this.waitingTime += other.waitingTime;
-            this.waitingCount += other.waitingCount;
-            if ( this.waitingCount > 0 ) {
-                this.averageWaitingTime = this.waitingTime / this.waitingCount;
-            }
-            this.processingTime += other.processingTime;
-            this.processingCount += other.processingCount;
-            if ( this.processingCount > 0 ) {
-                this.averageProcessingTime = this.processingTime / this.processingCount;
-            }
-            this.finishedJobs += other.finishedJobs;
-            this.failedJobs += other.failedJobs;
-            this.cancelledJobs += other.cancelledJobs;
-            this.activeJobs += other.activeJobs;
+    public void add(final StatisticsImpl other) {
+        if ( other.lastActivated > this.lastActivated ) {
+            this.lastActivated = other.lastActivated;
         }
+        if ( other.lastFinished > this.lastFinished ) {
+            this.lastFinished = other.lastFinished;
+        }
+        this.queuedJobs.addAndGet(other.queuedJobs.get());
+        this.waitingTime.addAndGet(other.waitingTime.get());
+        this.waitingCount.addAndGet(other.waitingCount.get());
+        this.processingTime.addAndGet(other.processingTime.get());
+        this.processingCount.addAndGet(other.processingCount.get());
+        this.finishedJobs.addAndGet(other.finishedJobs.get());
+        this.failedJobs.addAndGet(other.failedJobs.get());
+        this.cancelledJobs.addAndGet(other.cancelledJobs.get());
+        this.activeJobs.addAndGet(other.activeJobs.get());
+        this.windowStatistics.add(other.windowStatistics);
     }
 
     /**
      * Create a new statistics object with exactly the same values.
      */
     public void copyFrom(final StatisticsImpl other) {
-        final long localQueuedJobs;
-        final long localLastActivated;
-        final long localLastFinished;
-        final long localAverageWaitingTime;
-        final long localAverageProcessingTime;
-        final long localWaitingTime;
-        final long localProcessingTime;
-        final long localWaitingCount;
-        final long localProcessingCount;
-        final long localFinishedJobs;
-        final long localFailedJobs;
-        final long localCancelledJobs;
-        final long localActiveJobs;
-        synchronized ( other ) {
-            localQueuedJobs = other.queuedJobs;
-            localLastActivated = other.lastActivated;
-            localLastFinished = other.lastFinished;
-            localAverageWaitingTime = other.averageWaitingTime;
-            localAverageProcessingTime = other.averageProcessingTime;
-            localWaitingTime = other.waitingTime;
-            localProcessingTime = other.processingTime;
-            localWaitingCount = other.waitingCount;
-            localProcessingCount = other.processingCount;
-            localFinishedJobs = other.finishedJobs;
-            localFailedJobs = other.failedJobs;
-            localCancelledJobs = other.cancelledJobs;
-            localActiveJobs = other.activeJobs;
-        }
-        synchronized ( this ) {
-            this.queuedJobs = localQueuedJobs;
-            this.lastActivated = localLastActivated;
-            this.lastFinished = localLastFinished;
-            this.averageWaitingTime = localAverageWaitingTime;
-            this.averageProcessingTime = localAverageProcessingTime;
-            this.waitingTime = localWaitingTime;
-            this.processingTime = localProcessingTime;
-            this.waitingCount = localWaitingCount;
-            this.processingCount = localProcessingCount;
-            this.finishedJobs = localFinishedJobs;
-            this.failedJobs = localFailedJobs;
-            this.cancelledJobs = localCancelledJobs;
-            this.activeJobs = localActiveJobs;
-        }
+        this.queuedJobs.set(other.queuedJobs.get());
+        this.lastActivated = other.lastActivated;
+        this.lastFinished = other.lastFinished;
+        this.waitingTime.set(other.waitingTime.get());
+        this.processingTime.set(other.processingTime.get());
+        this.waitingCount.set(other.waitingCount.get());
+        this.processingCount.set(other.processingCount.get());
+        this.finishedJobs.set(other.finishedJobs.get());
+        this.failedJobs.set(other.failedJobs.get());
+        this.cancelledJobs.set(other.cancelledJobs.get());
+        this.activeJobs.set(other.activeJobs.get());
+        this.windowStatistics.copyFrom(other.windowStatistics);
     }
 
     /**
      * @see org.apache.sling.event.jobs.Statistics#reset()
      */
     @Override
-    public synchronized void reset() {
+    public void reset() {
         this.startTime = System.currentTimeMillis();
         this.lastActivated = -1;
         this.lastFinished = -1;
-        this.averageWaitingTime = 0;
-        this.averageProcessingTime = 0;
-        this.waitingTime = 0;
-        this.processingTime = 0;
-        this.waitingCount = 0;
-        this.processingCount = 0;
-        this.finishedJobs = 0;
-        this.failedJobs = 0;
-        this.cancelledJobs = 0;
+        this.waitingTime.set(0);
+        this.processingTime.set(0);
+        this.waitingCount.set(0);
+        this.processingCount.set(0);
+        this.finishedJobs.set(0);
+        this.failedJobs.set(0);
+        this.cancelledJobs.set(0);
+        this.windowStatistics.reset();
+    }
+
+    private static long average(final AtomicLong total, final AtomicLong count) {
+        final long c = count.get();
+        if ( c == 0 ) {
+            return 0;
+        }
+        return total.get() / c;
     }
 }
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Job rates and latency percentiles over a sliding time window of up
+ * to {@link #MAX_WINDOW_MINUTES} minutes.
+ * <p>
+ * The window is divided into slots of {@link #SLOT_MILLIS} milliseconds,
+ * each counting the processed jobs and keeping a histogram of the waiting
+ * and processing times of its jobs. Slots are kept in a ring and replaced
+ * once they are too old; updates are lock-free. Percentiles are computed
+ * from the histograms and are therefore reported as the upper limit of the
+ * bucket containing the percentile.
+ */
+public class TimeWindowStatistics {
+
+    /** The maximum window size in minutes. */
+    public static final int MAX_WINDOW_MINUTES = 15;
+
+    /** The length of a slot in milliseconds. */
+    static final long SLOT_MILLIS = 10000;
+
+    private static final int SLOTS_PER_MINUTE = (int)(60000 / SLOT_MILLIS);
+
+    private static final int SLOTS = MAX_WINDOW_MINUTES * SLOTS_PER_MINUTE;
+
+    /** The upper (inclusive) limits of the histogram buckets in milliseconds. */
+    static final long[] BUCKET_LIMITS = {1, 2, 5, 10, 20, 50, 100, 200, 500,
+        1000, 2000, 5000, 10000, 30000, 60000, 300000, 900000, 3600000};
+
+    private final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<Slot>(SLOTS);
+
+    private volatile long startTime;
+
+    public TimeWindowStatistics() {
+        this.startTime = this.currentTimeMillis();
+    }
+
+    /**
+     * Return the current time, overridable for testing.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * A job has been started.
+     * @param waitingTime The time the job waited in the queue.
+     */
+    public void jobStarted(final long waitingTime) {
+        if ( waitingTime >= 0 ) {
+            this.getSlot(this.currentTimeMillis()).waitingTimes.incrementAndGet(bucket(waitingTime));
+        }
+    }
+
+    /**
+     * A job has been processed.
+     * @param processingTime The processing time of the job or a negative
+     *                       value if the job has not finished successfully.
+     */
+    public void jobProcessed(final long processingTime) {
+        final Slot slot = this.getSlot(this.currentTimeMillis());
+        slot.processed.incrementAndGet();
+        if ( processingTime >= 0 ) {
+            slot.processingTimes.incrementAndGet(bucket(processingTime));
+        }
+    }
+
+    /**
+     * Return the number of processed jobs per second.
+     * @param minutes The window size in minutes (1 to {@link #MAX_WINDOW_MINUTES})
+     * @return The processed jobs per second
+     */
+    public double getJobsPerSecond(final int minutes) {
+        final long now = this.currentTimeMillis();
+        final long currentEpoch = now / SLOT_MILLIS;
+        final int slotCount = slotCount(minutes);
+        long processed = 0;
+        for (int i = 0; i < slotCount; i++) {
+            final Slot slot = this.getSlotForRead(currentEpoch - i);
+            if ( slot != null ) {
+                processed += slot.processed.get();
+            }
+        }
+        // the window ends with the current, partial slot - but does not reach
+        // back further than the start of the statistics
+        long windowMillis = (slotCount - 1) * SLOT_MILLIS + (now - currentEpoch * SLOT_MILLIS);
+        windowMillis = Math.min(windowMillis, now - this.startTime);
+        if ( windowMillis <= 0 ) {
+            return 0;
+        }
+        return processed * 1000.0 / windowMillis;
+    }
+
+    /**
+     * Return a percentile of the waiting times.
+     * @param percentile The percentile between 0 and 1, e.g. 0.99
+     * @param minutes The window size in minutes (1 to {@link #MAX_WINDOW_MINUTES})
+     * @return The waiting time percentile in milliseconds or 0 if no job was started
+     */
+    public long getWaitingTimePercentile(final double percentile, final int minutes) {
+        return this.getPercentile(percentile, minutes, true);
+    }
+
+    /**
+     * Return a percentile of the processing times.
+     * @param percentile The percentile between 0 and 1, e.g. 0.99
+     * @param minutes The window size in minutes (1 to {@link #MAX_WINDOW_MINUTES})
+     * @return The processing time percentile in milliseconds or 0 if no job finished
+     */
+    public long getProcessingTimePercentile(final double percentile, final int minutes) {
+        return this.getPercentile(percentile, minutes, false);
+    }
+
+    /**
+     * Clear all values.
+     */
+    public void reset() {
+        this.startTime = this.currentTimeMillis();
+        for (int i = 0; i < SLOTS; i++) {
+            this.slots.set(i, null);
+        }
+    }
+
+    /**
+     * Add the values of other statistics, e.g. to aggregate the statistics
+     * of several queues. Values older than the window are ignored.
+     * @param other The statistics to add
+     */
+    public void add(final TimeWindowStatistics other) {
+        final long oldestEpoch = this.currentTimeMillis() / SLOT_MILLIS - SLOTS + 1;
+        for (int i = 0; i < SLOTS; i++) {
+            final Slot source = other.slots.get(i);
+            if ( source != null && source.epoch >= oldestEpoch ) {
+                final Slot target = this.getSlotForEpoch(source.epoch);
+                if ( target.epoch == source.epoch ) {
+                    target.add(source);
+                }
+            }
+        }
+        if ( other.startTime < this.startTime ) {
+            this.startTime = other.startTime;
+        }
+    }
+
+    /**
+     * Replace all values with the values of other statistics.
+     * @param other The statistics to copy
+     */
+    public void copyFrom(final TimeWindowStatistics other) {
+        for (int i = 0; i < SLOTS; i++) {
+            final Slot source = other.slots.get(i);
+            Slot copy = null;
+            if ( source != null ) {
+                copy = new Slot(source.epoch);
+                copy.add(source);
+            }
+            this.slots.set(i, copy);
+        }
+        this.startTime = other.startTime;
+    }
+
+    private long getPercentile(final double percentile, final int minutes, final boolean waiting) {
+        final long currentEpoch = this.currentTimeMillis() / SLOT_MILLIS;
+        final int slotCount = slotCount(minutes);
+        final long[] histogram = new long[BUCKET_LIMITS.length + 1];
+        long total = 0;
+        for (int i = 0; i < slotCount; i++) {
+            final Slot slot = this.getSlotForRead(currentEpoch - i);
+            if ( slot != null ) {
+                final AtomicLongArray times = waiting ? slot.waitingTimes : slot.processingTimes;
+                for (int b = 0; b < histogram.length; b++) {
+                    final long count = times.get(b);
+                    histogram[b] += count;
+                    total += count;
+                }
+            }
+        }
+        if ( total == 0 ) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKET_LIMITS.length; b++) {
+            seen += histogram[b];
+            if ( seen >= rank ) {
+                return BUCKET_LIMITS[b];
+            }
+        }
+        // above the largest limit
+        return BUCKET_LIMITS[BUCKET_LIMITS.length - 1];
+    }
+
+    private static int slotCount(final int minutes) {
+        final int m = Math.max(1, Math.min(minutes, MAX_WINDOW_MINUTES));
+        return m * SLOTS_PER_MINUTE;
+    }
+
+    private static int bucket(final long time) {
+        int b = 0;
+        while ( b < BUCKET_LIMITS.length && time > BUCKET_LIMITS[b] ) {
+            b++;
+        }
+        return b;
+    }
+
+    private static int index(final long epoch) {
+        return (int) (epoch % SLOTS);
+    }
+
+    private Slot getSlotForRead(final long epoch) {
+        final Slot slot = this.slots.get(index(epoch));
+        if ( slot != null && slot.epoch == epoch ) {
+            return slot;
+        }
+        return null;
+    }
+
+    private Slot getSlot(final long now) {
+        return this.getSlotForEpoch(now / SLOT_MILLIS);
+    }
+
+    /**
+     * Return the slot for the epoch or a newer slot occupying its place.
+     */
+    private Slot getSlotForEpoch(final long epoch) {
+        final int index = index(epoch);
+        while ( true ) {
+            final Slot current = this.slots.get(index);
+            if ( current != null && current.epoch >= epoch ) {
+                return current;
+            }
+            final Slot slot = new Slot(epoch);
+            if ( this.slots.compareAndSet(index, current, slot) ) {
+                return slot;
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        final long epoch;
+
+        final AtomicLong processed = new AtomicLong();
+
+        final AtomicLongArray waitingTimes = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+
+        final AtomicLongArray processingTimes = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+
+        Slot(final long epoch) {
+            this.epoch = epoch;
+        }
+
+        void add(final Slot other) {
+            this.processed.addAndGet(other.processed.get());
+            for (int b = 0; b < BUCKET_LIMITS.length + 1; b++) {
+                this.waitingTimes.addAndGet(b, other.waitingTimes.get(b));
+                this.processingTimes.addAndGet(b, other.processingTimes.get(b));
+            }
+        }
+    }
+}
@@ -18,10 +18,14 @@
  */
 package org.apache.sling.event.impl.jobs.stats;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.sling.event.jobs.TopicStatistics;
 
 /**
  * Implementation of the statistics.
+ * <p>
+ * All values are kept in atomic counters, updates and reads do not lock.
  */
 public class TopicStatisticsImpl implements TopicStatistics {
 
@@ -31,23 +35,22 @@ public class TopicStatisticsImpl implements TopicStatistics {
 
     private volatile long lastFinished = -1;
 
-    private volatile long averageWaitingTime;
-
-    private volatile long averageProcessingTime;
+    private final AtomicLong waitingTime = new AtomicLong();
 
-    private volatile long waitingTime;
+    private final AtomicLong processingTime = new AtomicLong();
 
-    private volatile long processingTime;
+    private final AtomicLong waitingCount = new AtomicLong();
 
-    private volatile long waitingCount;
+    private final AtomicLong processingCount = new AtomicLong();
 
-    private volatile long processingCount;
+    private final AtomicLong finishedJobs = new AtomicLong();
 
-    private volatile long finishedJobs;
+    private final AtomicLong failedJobs = new AtomicLong();
 
-    private volatile long failedJobs;
+    private final AtomicLong cancelledJobs = new AtomicLong();
 
-    private volatile long cancelledJobs;
+    /** Rates and percentiles over the last minutes. */
+    private final TimeWindowStatistics windowStatistics = new TimeWindowStatistics();
 
     /** Constructor. */
     public TopicStatisticsImpl(final String topic) {
@@ -66,7 +69,7 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfProcessedJobs()
      */
     @Override
-    public synchronized long getNumberOfProcessedJobs() {
+    public long getNumberOfProcessedJobs() {
         return getNumberOfCancelledJobs() + getNumberOfFailedJobs() + getNumberOfFinishedJobs();
     }
 
@@ -74,47 +77,49 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * @see org.apache.sling.event.jobs.TopicStatistics#getAverageWaitingTime()
      */
     @Override
-    public synchronized long getAverageWaitingTime() {
-        return averageWaitingTime;
+    public long getAverageWaitingTime() {
+        final long count = waitingCount.get();
+        return count == 0 ? 0 : waitingTime.get() / count;
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getAverageProcessingTime()
      */
     @Override
-    public synchronized long getAverageProcessingTime() {
-        return averageProcessingTime;
+    public long getAverageProcessingTime() {
+        final long count = processingCount.get();
+        return count == 0 ? 0 : processingTime.get() / count;
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfFinishedJobs()
      */
     @Override
-    public synchronized long getNumberOfFinishedJobs() {
-        return finishedJobs;
+    public long getNumberOfFinishedJobs() {
+        return finishedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfCancelledJobs()
      */
     @Override
-    public synchronized long getNumberOfCancelledJobs() {
-        return cancelledJobs;
+    public long getNumberOfCancelledJobs() {
+        return cancelledJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfFailedJobs()
      */
     @Override
-    public synchronized long getNumberOfFailedJobs() {
-        return failedJobs;
+    public long getNumberOfFailedJobs() {
+        return failedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getLastActivatedJobTime()
      */
     @Override
-    public synchronized long getLastActivatedJobTime() {
+    public long getLastActivatedJobTime() {
         return this.lastActivated;
     }
 
@@ -122,48 +127,57 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * @see org.apache.sling.event.jobs.TopicStatistics#getLastFinishedJobTime()
      */
     @Override
-    public synchronized long getLastFinishedJobTime() {
+    public long getLastFinishedJobTime() {
         return this.lastFinished;
     }
 
+    /**
+     * Get the rates and percentiles over the last minutes.
+     */
+    public TimeWindowStatistics getWindowStatistics() {
+        return this.windowStatistics;
+    }
+
     /**
      * Add a finished job.
      * @param jobTime The time of the job processing.
      */
-    public synchronized void addFinished(final long jobTime) {
-        this.finishedJobs++;
+    public void addFinished(final long jobTime) {
+        this.finishedJobs.incrementAndGet();
         this.lastFinished = System.currentTimeMillis();
         if ( jobTime > 0 ) {
-            this.processingTime += jobTime;
-            this.processingCount++;
-            this.averageProcessingTime = this.processingTime / this.processingCount;
+            this.processingTime.addAndGet(jobTime);
+            this.processingCount.incrementAndGet();
         }
+        this.windowStatistics.jobProcessed(jobTime);
     }
 
     /**
      * Add a started job.
      * @param queueTime The time of the job in the queue.
      */
-    public synchronized void addActivated(final long queueTime) {
+    public void addActivated(final long queueTime) {
         this.lastActivated = System.currentTimeMillis();
         if ( queueTime > 0 ) {
-            this.waitingTime += queueTime;
-            this.waitingCount++;
-            this.averageWaitingTime = this.waitingTime / this.waitingCount;
+            this.waitingTime.addAndGet(queueTime);
+            this.waitingCount.incrementAndGet();
         }
+        this.windowStatistics.jobStarted(queueTime);
     }
 
     /**
      * Add a failed job.
      */
-    public synchronized void addFailed() {
-        this.failedJobs++;
+    public void addFailed() {
+        this.failedJobs.incrementAndGet();
+        this.windowStatistics.jobProcessed(-1);
     }
 
     /**
      * Add a cancelled job.
      */
-    public synchronized void addCancelled() {
-        this.cancelledJobs++;
+    public void addCancelled() {
+        this.cancelledJobs.incrementAndGet();
+        this.windowStatistics.jobProcessed(-1);
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.support.ResourceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The batching job store groups concurrently added jobs and writes
+ * them with a single commit (group commit).
+ *
+ * All writes are done by a single writer thread: it takes all pending
+ * jobs up to the maximum batch size from the queue, creates their
+ * resources and commits them at once. If the commit fails, the jobs of
+ * the batch are written one by one, so each caller gets its own result.
+ * Callers of {@link #persist(String, Map)} wait until their job has been
+ * committed.
+ */
+public class BatchingJobStore implements JobStore, Runnable {
+
+    /** Logger. */
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** Marker to stop the writer thread. */
+    private static final Write CLOSE = new Write(null, null, false);
+
+    /** The job manager configuration. */
+    private final JobManagerConfiguration configuration;
+
+    /** The maximum number of jobs per commit. */
+    private final int maxBatchSize;
+
+    /** The pending writes. */
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<Write>();
+
+    /** Guards {@link #running} and the adding of writes. */
+    private final Object lock = new Object();
+
+    /** Is the store accepting writes? */
+    private boolean running;
+
+    /** The writer thread. */
+    private volatile Thread writer;
+
+    /**
+     * Create a new store, {@link #start()} needs to be called before it is used.
+     * @param configuration The job manager configuration
+     * @param maxBatchSize The maximum number of jobs written with a single commit
+     */
+    public BatchingJobStore(final JobManagerConfiguration configuration, final int maxBatchSize) {
+        this.configuration = configuration;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    public void start() {
+        synchronized ( this.lock ) {
+            this.running = true;
+        }
+        final Thread t = new Thread(this, "Apache Sling Job Store Writer Thread");
+        t.setDaemon(true);
+        this.writer = t;
+        t.start();
+    }
+
+    @Override
+    public void persist(final String path, final Map<String, Object> properties)
+    throws PersistenceException {
+        final Write write = this.enqueue(path, properties, false);
+        write.await();
+    }
+
+    /**
+     * Add a job to the queue of pending writes.
+     * @param path The resource path
+     * @param properties The resource properties
+     * @param async Whether the caller does not wait for the result
+     * @return The pending write
+     * @throws PersistenceException If the store is closed.
+     */
+    protected Write enqueue(final String path, final Map<String, Object> properties, final boolean async)
+    throws PersistenceException {
+        final Write write = new Write(path, properties, async);
+        synchronized ( this.lock ) {
+            if ( !this.running ) {
+                throw new PersistenceException("Job store is closed.");
+            }
+            this.queue.add(write);
+        }
+        return write;
+    }
+
+    /**
+     * Jobs are only accepted once they have been committed.
+     */
+    @Override
+    public Map<String, Object> getPendingJob(final String jobId) {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        synchronized ( this.lock ) {
+            if ( !this.running ) {
+                return;
+            }
+            this.running = false;
+            this.queue.add(CLOSE);
+        }
+        final Thread t = this.writer;
+        if ( t != null ) {
+            try {
+                t.join();
+            } catch ( final InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+            }
+            this.writer = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        final List<Write> batch = new ArrayList<Write>();
+        boolean stop = false;
+        while ( !stop ) {
+            try {
+                batch.add(this.queue.take());
+            } catch ( final InterruptedException ie ) {
+                // the writer is only stopped through close
+                continue;
+            }
+            this.queue.drainTo(batch, this.maxBatchSize - 1);
+            if ( batch.remove(CLOSE) ) {
+                // no writes are added after the marker
+                this.queue.drainTo(batch);
+                stop = true;
+            }
+            if ( !batch.isEmpty() ) {
+                this.write(batch);
+                this.written(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Called by the writer thread after a batch has been written.
+     * @param batch The writes, either successful or with an error
+     */
+    protected void written(final List<Write> batch) {
+        // nothing to do
+    }
+
+    /**
+     * Write the batch with a single commit, falling back to single writes.
+     */
+    private void write(final List<Write> batch) {
+        ResourceResolver resolver = null;
+        try {
+            resolver = this.configuration.createResourceResolver();
+        } catch ( final RuntimeException re ) {
+            logger.error("Unable to create resource resolver for writing jobs.", re);
+        }
+        if ( resolver == null ) {
+            for(final Write write : batch) {
+                write.done(new PersistenceException("Job manager is not active."));
+            }
+            return;
+        }
+        try {
+            boolean committed = false;
+            try {
+                for(final Write write : batch) {
+                    ResourceHelper.getOrCreateResource(resolver, write.path, write.properties, false);
+                }
+                resolver.commit();
+                committed = true;
+                logger.debug("Persisted {} jobs with a single commit", batch.size());
+            } catch ( final PersistenceException pe ) {
+                logger.debug("Unable to persist batch of {} jobs, persisting them one by one : {}", batch.size(), pe.getMessage());
+            } catch ( final RuntimeException re ) {
+                logger.debug("Unable to persist batch of {} jobs, persisting them one by one : {}", batch.size(), re.getMessage());
+            }
+            if ( committed ) {
+                for(final Write write : batch) {
+                    write.done(null);
+                }
+            } else {
+                resolver.revert();
+                resolver.refresh();
+                for(final Write write : batch) {
+                    try {
+                        ResourceHelper.getOrCreateResource(resolver, write.path, write.properties);
+                        write.done(null);
+                    } catch ( final PersistenceException pe ) {
+                        write.done(pe);
+                    } catch ( final RuntimeException re ) {
+                        resolver.revert();
+                        resolver.refresh();
+                        write.done(new PersistenceException(re.getMessage(), re));
+                    }
+                }
+            }
+        } finally {
+            resolver.close();
+        }
+    }
+
+    /**
+     * A pending write of a job.
+     */
+    protected static final class Write {
+
+        public final String path;
+
+        public final Map<String, Object> properties;
+
+        /** Whether the caller does not wait for the result. */
+        public final boolean async;
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private volatile PersistenceException error;
+
+        Write(final String path, final Map<String, Object> properties, final boolean async) {
+            this.path = path;
+            this.properties = properties;
+            this.async = async;
+        }
+
+        void done(final PersistenceException error) {
+            this.error = error;
+            this.latch.countDown();
+        }
+
+        /**
+         * The error of a completed write.
+         * @return The error or {@code null} if the job has been persisted
+         */
+        public PersistenceException getError() {
+            return this.error;
+        }
+
+        /**
+         * Wait until the job has been written.
+         * @throws PersistenceException If the job could not be written
+         */
+        public void await() throws PersistenceException {
+            try {
+                this.latch.await();
+            } catch ( final InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+                throw new PersistenceException("Interrupted while persisting job " + this.path);
+            }
+            if ( this.error != null ) {
+                throw this.error;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.store;
+
+import java.util.Map;
+
+import org.apache.sling.api.resource.PersistenceException;
+
+/**
+ * The job store persists new jobs.
+ *
+ * Jobs are stored as resources in the resource tree, as all other parts
+ * of the job handling (processing, notifications, maintenance) work on the
+ * resource tree. Implementations only differ in how and when the resources
+ * are written.
+ */
+public interface JobStore {
+
+    /**
+     * Persist a new job.
+     * @param path The resource path of the job
+     * @param properties The properties of the job resource. The map must not be
+     *                   changed by the caller afterwards.
+     * @throws PersistenceException If the job can't be persisted.
+     */
+    void persist(String path, Map<String, Object> properties) throws PersistenceException;
+
+    /**
+     * Get a job which has been accepted by {@link #persist(String, Map)} but
+     * is not available in the resource tree yet.
+     * @param jobId The job id
+     * @return A copy of the job properties including the resource path as
+     *         {@link org.apache.sling.event.impl.jobs.JobImpl#PROPERTY_RESOURCE_PATH}
+     *         or {@code null}
+     */
+    Map<String, Object> getPendingJob(String jobId);
+
+    /**
+     * Close the job store.
+     * Pending writes are completed before this method returns.
+     */
+    void close();
+}
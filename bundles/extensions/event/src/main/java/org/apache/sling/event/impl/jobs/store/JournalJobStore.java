@@ -0,0 +1,578 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.event.impl.jobs.JobImpl;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.support.ResourceHelper;
+
+/**
+ * The journal job store appends new jobs to a local journal file and
+ * writes them to the resource tree asynchronously in batches.
+ *
+ * A job is accepted once it has been appended to the journal and the
+ * journal has been synced to the disk. Concurrent appends share a single
+ * sync. The jobs are then written by the {@link BatchingJobStore} and
+ * become visible to the job processing once they are committed. Until
+ * then, they are only returned by {@link #getPendingJob(String)}.
+ *
+ * After each batch, a commit record with the sequence numbers of the
+ * committed jobs is appended and synced, so committed jobs are never
+ * written again. The journal is truncated whenever all appended jobs have
+ * been committed, and rewritten with the uncommitted jobs only once it
+ * gets larger than {@link #COMPACT_SIZE} and at least half of it is
+ * committed. On startup, the journal is replayed: jobs which have not
+ * been committed before a shutdown or crash are written then. A crash
+ * between the commit of a batch and the sync of its commit record results
+ * in the jobs of the batch being written again.
+ *
+ * If an accepted job can't be written, it is kept in the journal and
+ * written on the next start. As its caller has already returned, new jobs
+ * are persisted synchronously from then on, so that further failures are
+ * reported to their callers instead of being accepted. The same applies if
+ * a journal which could not be replayed can't be kept as a backup: it is
+ * left untouched for inspection.
+ *
+ * As jobs are only available in the resource tree after they have been
+ * committed and are only replayed by the instance which accepted them,
+ * this store is meant for non clustered installations.
+ *
+ * Jobs with property values which are not provided by the JRE are written
+ * synchronously, as they might not be deserializable on replay.
+ */
+public class JournalJobStore extends BatchingJobStore {
+
+    /** Maximum size of a journal record. */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    /** Default journal size in bytes after which the journal is compacted. */
+    static final long COMPACT_SIZE = 1024 * 1024;
+
+    /** Record of a job: sequence number, path and properties. */
+    private static final byte RECORD_JOB = 1;
+
+    /** Record of committed jobs: count and sequence numbers. */
+    private static final byte RECORD_COMMIT = 2;
+
+    /** The journal file. */
+    private final File journalFile;
+
+    /** Journal size in bytes after which the journal is compacted. */
+    private final long compactSize;
+
+    /** Guards the journal channel and the counters. */
+    private final Object journalLock = new Object();
+
+    /** Guards the syncing of the journal. */
+    private final Object syncLock = new Object();
+
+    /** The journal, guarded by the journal lock. */
+    private RandomAccessFile journal;
+
+    /** The size of the journal, guarded by the journal lock. */
+    private long journalSize;
+
+    /** The sequence number of the last appended record, guarded by the journal lock. */
+    private long appended;
+
+    /** The sequence number of the last synced record, guarded by the sync lock. */
+    private long synced;
+
+    /** The records of the uncommitted jobs by sequence number, guarded by the journal lock. */
+    private final Map<Long, byte[]> uncommitted = new LinkedHashMap<Long, byte[]>();
+
+    /** The size of the records of the uncommitted jobs, guarded by the journal lock. */
+    private long uncommittedSize;
+
+    /** The sequence numbers of the writes in progress, guarded by the journal lock. */
+    private final Map<Write, Long> sequences = new IdentityHashMap<Write, Long>();
+
+    /** The writes in progress by job id, guarded by the journal lock. */
+    private final Map<String, Write> pendingJobs = new HashMap<String, Write>();
+
+    /** Whether appending to the journal failed, guarded by the journal lock. */
+    private boolean broken;
+
+    /** Whether an accepted job could not be written, guarded by the journal lock. */
+    private boolean retained;
+
+    /**
+     * Create a new store, {@link #start()} needs to be called before it is used.
+     * @param configuration The job manager configuration
+     * @param maxBatchSize The maximum number of jobs written with a single commit
+     * @param journalFile The journal file
+     */
+    public JournalJobStore(final JobManagerConfiguration configuration,
+            final int maxBatchSize,
+            final File journalFile) {
+        this(configuration, maxBatchSize, journalFile, COMPACT_SIZE);
+    }
+
+    JournalJobStore(final JobManagerConfiguration configuration,
+            final int maxBatchSize,
+            final File journalFile,
+            final long compactSize) {
+        super(configuration, maxBatchSize);
+        this.journalFile = journalFile;
+        this.compactSize = compactSize;
+    }
+
+    /**
+     * Start the writer thread, replay the journal and open it for appending.
+     * The journal is only truncated if it has been replayed completely or
+     * has been kept as a backup.
+     */
+    @Override
+    public void start() {
+        super.start();
+        final boolean replayed = this.replay();
+        synchronized ( this.journalLock ) {
+            if ( !replayed ) {
+                logger.error("Job journal {} could not be replayed nor kept, persisting jobs synchronously.", this.journalFile);
+                this.broken = true;
+                return;
+            }
+            try {
+                this.journalFile.getParentFile().mkdirs();
+                this.journal = new RandomAccessFile(this.journalFile, "rw");
+                this.journal.setLength(0);
+                this.journalSize = 0;
+            } catch ( final IOException ioe ) {
+                logger.error("Unable to open job journal " + this.journalFile + ", persisting jobs synchronously.", ioe);
+                this.journal = null;
+                this.broken = true;
+            }
+        }
+    }
+
+    @Override
+    public void persist(final String path, final Map<String, Object> properties)
+    throws PersistenceException {
+        byte[] job = null;
+        if ( isJournalable(properties) ) {
+            try {
+                job = serialize(path, properties);
+            } catch ( final IOException ioe ) {
+                logger.debug("Unable to serialize job {} : {}", path, ioe.getMessage());
+            }
+        }
+        if ( job == null ) {
+            super.persist(path, properties);
+            return;
+        }
+        long sequence = -1;
+        synchronized ( this.journalLock ) {
+            if ( !this.broken && !this.retained && this.journal != null ) {
+                final long next = this.appended + 1;
+                final ByteBuffer payload = ByteBuffer.allocate(job.length + 9);
+                payload.put(RECORD_JOB);
+                payload.putLong(next);
+                payload.put(job);
+                final byte[] record = frame(payload.array());
+                if ( this.append(record) ) {
+                    this.uncommitted.put(next, record);
+                    this.uncommittedSize += record.length;
+                    sequence = next;
+                }
+            }
+        }
+        if ( sequence == -1 ) {
+            super.persist(path, properties);
+            return;
+        }
+        this.sync(sequence);
+        synchronized ( this.journalLock ) {
+            // registered before the writer thread can report the write
+            final Write write = this.enqueue(path, properties, true);
+            this.sequences.put(write, sequence);
+            final Object jobId = properties.get(ResourceHelper.PROPERTY_JOB_ID);
+            if ( jobId instanceof String ) {
+                this.pendingJobs.put((String) jobId, write);
+            }
+        }
+    }
+
+    /**
+     * Returns a job which has been accepted but not committed yet.
+     */
+    @Override
+    public Map<String, Object> getPendingJob(final String jobId) {
+        synchronized ( this.journalLock ) {
+            final Write write = this.pendingJobs.get(jobId);
+            if ( write == null ) {
+                return null;
+            }
+            final Map<String, Object> properties = new HashMap<String, Object>(write.properties);
+            properties.put(JobImpl.PROPERTY_RESOURCE_PATH, write.path);
+            return properties;
+        }
+    }
+
+    /**
+     * Append a record, must be called while holding the journal lock.
+     * @return {@code true} if the record has been appended
+     */
+    private boolean append(final byte[] record) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(record);
+            final FileChannel channel = this.journal.getChannel();
+            while ( buffer.hasRemaining() ) {
+                channel.write(buffer);
+            }
+            this.journalSize += record.length;
+            this.appended++;
+            return true;
+        } catch ( final IOException ioe ) {
+            logger.error("Unable to append to job journal " + this.journalFile + ", persisting jobs synchronously.", ioe);
+            this.broken = true;
+            return false;
+        }
+    }
+
+    /**
+     * Sync the journal unless a concurrent sync already covered the record.
+     */
+    private void sync(final long sequence) throws PersistenceException {
+        synchronized ( this.syncLock ) {
+            while ( this.synced < sequence ) {
+                final long target;
+                final FileChannel channel;
+                synchronized ( this.journalLock ) {
+                    if ( this.journal == null ) {
+                        throw new PersistenceException("Job store is closed.");
+                    }
+                    target = this.appended;
+                    channel = this.journal.getChannel();
+                }
+                try {
+                    channel.force(false);
+                    this.synced = target;
+                } catch ( final ClosedChannelException cce ) {
+                    // the journal has been replaced by a compaction, sync the new one
+                } catch ( final IOException ioe ) {
+                    throw new PersistenceException("Unable to sync job journal " + this.journalFile, ioe);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void written(final List<Write> batch) {
+        long commitSequence = -1;
+        synchronized ( this.journalLock ) {
+            final List<Long> committed = new ArrayList<Long>();
+            for(final Write write : batch) {
+                final Long sequence = this.sequences.remove(write);
+                if ( sequence == null ) {
+                    continue;
+                }
+                final Object jobId = write.properties.get(ResourceHelper.PROPERTY_JOB_ID);
+                if ( jobId != null && this.pendingJobs.get(jobId) == write ) {
+                    this.pendingJobs.remove(jobId);
+                }
+                if ( write.getError() != null ) {
+                    logger.error("Unable to persist accepted job " + write.path + ", it is kept in the job journal " + this.journalFile
+                            + " and written on the next start. Persisting jobs synchronously until then.", write.getError());
+                    this.retained = true;
+                } else {
+                    committed.add(sequence);
+                    this.uncommittedSize -= this.uncommitted.remove(sequence).length;
+                }
+            }
+            if ( committed.isEmpty() || this.broken || this.journal == null ) {
+                return;
+            }
+            try {
+                if ( this.uncommitted.isEmpty() ) {
+                    this.journal.setLength(0);
+                    this.journalSize = 0;
+                    this.journal.getChannel().force(true);
+                } else if ( this.journalSize > this.compactSize && this.journalSize > 2 * this.uncommittedSize ) {
+                    this.compact();
+                } else {
+                    final ByteBuffer payload = ByteBuffer.allocate(5 + 8 * committed.size());
+                    payload.put(RECORD_COMMIT);
+                    payload.putInt(committed.size());
+                    for(final Long sequence : committed) {
+                        payload.putLong(sequence);
+                    }
+                    if ( this.append(frame(payload.array())) ) {
+                        commitSequence = this.appended;
+                    }
+                }
+            } catch ( final IOException ioe ) {
+                logger.warn("Unable to record committed jobs in job journal " + this.journalFile, ioe);
+            }
+        }
+        if ( commitSequence != -1 ) {
+            try {
+                this.sync(commitSequence);
+            } catch ( final PersistenceException pe ) {
+                logger.warn("Unable to sync committed jobs in job journal " + this.journalFile, pe);
+            }
+        }
+    }
+
+    /**
+     * Replace the journal with one containing the uncommitted jobs only.
+     * Must be called while holding the journal lock.
+     */
+    private void compact() throws IOException {
+        final File tmp = new File(this.journalFile.getPath() + ".tmp");
+        long size = 0;
+        final RandomAccessFile compacted = new RandomAccessFile(tmp, "rw");
+        try {
+            compacted.setLength(0);
+            final FileChannel channel = compacted.getChannel();
+            for(final byte[] record : this.uncommitted.values()) {
+                final ByteBuffer buffer = ByteBuffer.wrap(record);
+                while ( buffer.hasRemaining() ) {
+                    channel.write(buffer);
+                }
+                size += record.length;
+            }
+            channel.force(true);
+        } finally {
+            compacted.close();
+        }
+        this.journal.close();
+        this.journal = null;
+        if ( !tmp.renameTo(this.journalFile) ) {
+            // some platforms can't replace an existing file
+            if ( !this.journalFile.delete() || !tmp.renameTo(this.journalFile) ) {
+                this.broken = true;
+                throw new IOException("Unable to replace job journal " + this.journalFile + " with " + tmp);
+            }
+        }
+        this.journal = new RandomAccessFile(this.journalFile, "rw");
+        this.journal.seek(size);
+        this.journalSize = size;
+        logger.debug("Compacted job journal {} to {} jobs", this.journalFile, this.uncommitted.size());
+    }
+
+    @Override
+    public void close() {
+        // writes all pending jobs
+        super.close();
+        synchronized ( this.journalLock ) {
+            if ( this.journal != null ) {
+                try {
+                    this.journal.close();
+                } catch ( final IOException ioe ) {
+                    logger.warn("Unable to close job journal " + this.journalFile, ioe);
+                }
+                this.journal = null;
+            }
+        }
+    }
+
+    /**
+     * Write all uncommitted jobs from the journal to the resource tree.
+     * If a job can't be read or written, the journal is kept for inspection.
+     * @return {@code true} if the journal may be truncated, {@code false} if
+     *         it could neither be replayed completely nor be kept as a backup
+     */
+    private boolean replay() {
+        if ( !this.journalFile.exists() || this.journalFile.length() == 0 ) {
+            return true;
+        }
+        final Map<Long, byte[]> jobs = new LinkedHashMap<Long, byte[]>();
+        final List<Write> writes = new ArrayList<Write>();
+        boolean failed = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.journalFile)));
+            while ( true ) {
+                final int length;
+                try {
+                    length = in.readInt();
+                } catch ( final EOFException eof ) {
+                    break;
+                }
+                final byte[] record;
+                try {
+                    final int crc = in.readInt();
+                    if ( length <= 0 || length > MAX_RECORD_SIZE ) {
+                        throw new EOFException();
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    if ( crc != checksum(record) ) {
+                        throw new EOFException();
+                    }
+                } catch ( final EOFException eof ) {
+                    // incomplete record from an interrupted append
+                    logger.warn("Ignoring incomplete record at the end of job journal {}", this.journalFile);
+                    break;
+                }
+                final ByteBuffer buffer = ByteBuffer.wrap(record);
+                final byte type = buffer.get();
+                if ( type == RECORD_JOB ) {
+                    final long sequence = buffer.getLong();
+                    final byte[] job = new byte[buffer.remaining()];
+                    buffer.get(job);
+                    jobs.put(sequence, job);
+                } else if ( type == RECORD_COMMIT ) {
+                    final int count = buffer.getInt();
+                    for(int i = 0; i < count; i++) {
+                        jobs.remove(buffer.getLong());
+                    }
+                } else {
+                    logger.error("Unknown record type {} in job journal {}", type, this.journalFile);
+                    failed = true;
+                }
+            }
+            for(final byte[] job : jobs.values()) {
+                try {
+                    final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(job));
+                    final String path = (String) ois.readObject();
+                    @SuppressWarnings("unchecked")
+                    final Map<String, Object> properties = (Map<String, Object>) ois.readObject();
+                    writes.add(this.enqueue(path, properties, false));
+                } catch ( final ClassNotFoundException cnfe ) {
+                    logger.error("Unable to read job from journal " + this.journalFile, cnfe);
+                    failed = true;
+                }
+            }
+        } catch ( final PersistenceException pe ) {
+            logger.error("Unable to replay job journal " + this.journalFile, pe);
+            failed = true;
+        } catch ( final IOException ioe ) {
+            logger.error("Unable to read job journal " + this.journalFile, ioe);
+            failed = true;
+        } finally {
+            if ( in != null ) {
+                try {
+                    in.close();
+                } catch ( final IOException ignore ) {
+                    // ignore
+                }
+            }
+        }
+        for(final Write write : writes) {
+            try {
+                write.await();
+            } catch ( final PersistenceException pe ) {
+                logger.error("Unable to persist job " + write.path + " from journal " + this.journalFile, pe);
+                failed = true;
+            }
+        }
+        logger.info("Replayed {} jobs from job journal {}", writes.size(), this.journalFile);
+        if ( failed ) {
+            final File backup = new File(this.journalFile.getPath() + "." + System.currentTimeMillis());
+            if ( !this.journalFile.renameTo(backup) ) {
+                logger.warn("Not all jobs could be replayed and the journal could not be kept as {}", backup);
+                return false;
+            }
+            logger.warn("Not all jobs could be replayed, the journal has been kept as {}", backup);
+        }
+        return true;
+    }
+
+    /**
+     * Add length and checksum to the payload of a record.
+     */
+    private static byte[] frame(final byte[] payload) {
+        final ByteBuffer buffer = ByteBuffer.allocate(payload.length + 8);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    private static byte[] serialize(final String path, final Map<String, Object> properties) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(path);
+        oos.writeObject(properties);
+        oos.close();
+        return baos.toByteArray();
+    }
+
+    private static int checksum(final byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Check whether all values are provided by the JRE and can be read on replay.
+     */
+    private static boolean isJournalable(final Object value) {
+        if ( value == null ) {
+            return true;
+        }
+        final Class<?> type = value.getClass();
+        if ( type.isArray() ) {
+            if ( type.getComponentType().isPrimitive() ) {
+                return true;
+            }
+            if ( type.getComponentType().getClassLoader() != null ) {
+                return false;
+            }
+            for(final Object element : (Object[]) value) {
+                if ( !isJournalable(element) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if ( type.getClassLoader() != null ) {
+            return false;
+        }
+        if ( value instanceof Map ) {
+            for(final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if ( !isJournalable(entry.getKey()) || !isJournalable(entry.getValue()) ) {
+                    return false;
+                }
+            }
+        } else if ( value instanceof Collection ) {
+            for(final Object element : (Collection<?>) value) {
+                if ( !isJournalable(element) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
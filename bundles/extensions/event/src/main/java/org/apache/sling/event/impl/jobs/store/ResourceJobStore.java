@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.store;
+
+import java.util.Map;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.support.ResourceHelper;
+
+/**
+ * The default job store writes each job with its own resource resolver
+ * and commits it immediately.
+ */
+public class ResourceJobStore implements JobStore {
+
+    /** The job manager configuration. */
+    private final JobManagerConfiguration configuration;
+
+    public ResourceJobStore(final JobManagerConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public void persist(final String path, final Map<String, Object> properties)
+    throws PersistenceException {
+        final ResourceResolver resolver = this.configuration.createResourceResolver();
+        if ( resolver == null ) {
+            throw new PersistenceException("Job manager is not active.");
+        }
+        try {
+            ResourceHelper.getOrCreateResource(resolver, path, properties);
+        } finally {
+            resolver.close();
+        }
+    }
+
+    /**
+     * Jobs are only accepted once they have been committed.
+     */
+    @Override
+    public Map<String, Object> getPendingJob(final String jobId) {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+}
@@ -273,6 +273,24 @@ public abstract class ResourceHelper {
                         true);
     }
 
+    /**
+     * Creates or gets the resource at the given path.
+     * @param resolver The resource resolver to use for creation
+     * @param path     The full path to be created
+     * @param props    The optional resource properties of the final resource to create
+     * @param autoCommit If set to false, the changes are not committed and the caller
+     *                   is responsible for committing or reverting them.
+     */
+    public static Resource getOrCreateResource(final ResourceResolver resolver,
+            final String path, final Map<String, Object> props, final boolean autoCommit)
+    throws PersistenceException {
+       return getOrCreateResource(resolver,
+                        path,
+                        props,
+                        ResourceHelper.RESOURCE_TYPE_FOLDER,
+                        autoCommit);
+    }
+
     /**
      * Creates or gets the resource at the given path.
      * This is a copy of Sling's API ResourceUtil method to avoid a dependency on the latest
@@ -17,12 +17,25 @@
  */
 package org.apache.sling.event.jobs.jmx;
 
+import javax.management.openmbean.TabularData;
+
+import org.osgi.annotation.versioning.ProviderType;
+
 /**
  * A Marker interface to allow the implementation to register as a service with
  * the JMX whiteboard.
  */
+@ProviderType
 public interface QueuesMBean {
 
     String[] getQueueNames();
 
+    /**
+     * The job rates and the 99th percentiles of the waiting and processing
+     * times per topic over the last one, five and fifteen minutes.
+     * @return A table with one row per topic.
+     * @since 1.1.0
+     */
+    TabularData getTopicStatistics();
+
 }
@@ -20,7 +20,9 @@ package org.apache.sling.event.jobs.jmx;
 import java.util.Date;
 
 import org.apache.sling.event.jobs.Statistics;
+import org.osgi.annotation.versioning.ProviderType;
 
+@ProviderType
 public interface StatisticsMBean extends Statistics {
 
     Date getLastActivatedJobDate();
@@ -31,4 +33,64 @@ public interface StatisticsMBean extends Statistics {
 
     String getName();
 
+    /**
+     * The number of processed jobs per second during the last minute.
+     * @since 1.1.0
+     */
+    double getOneMinuteJobRate();
+
+    /**
+     * The number of processed jobs per second during the last five minutes.
+     * @since 1.1.0
+     */
+    double getFiveMinuteJobRate();
+
+    /**
+     * The number of processed jobs per second during the last fifteen minutes.
+     * @since 1.1.0
+     */
+    double getFifteenMinuteJobRate();
+
+    /**
+     * The 99th percentile of the waiting time in milliseconds of the jobs
+     * started during the last minute.
+     * @since 1.1.0
+     */
+    long getOneMinuteWaitingTime99thPercentile();
+
+    /**
+     * The 99th percentile of the waiting time in milliseconds of the jobs
+     * started during the last five minutes.
+     * @since 1.1.0
+     */
+    long getFiveMinuteWaitingTime99thPercentile();
+
+    /**
+     * The 99th percentile of the waiting time in milliseconds of the jobs
+     * started during the last fifteen minutes.
+     * @since 1.1.0
+     */
+    long getFifteenMinuteWaitingTime99thPercentile();
+
+    /**
+     * The 99th percentile of the processing time in milliseconds of the jobs
+     * finished during the last minute.
+     * @since 1.1.0
+     */
+    long getOneMinuteProcessingTime99thPercentile();
+
+    /**
+     * The 99th percentile of the processing time in milliseconds of the jobs
+     * finished during the last five minutes.
+     * @since 1.1.0
+     */
+    long getFiveMinuteProcessingTime99thPercentile();
+
+    /**
+     * The 99th percentile of the processing time in milliseconds of the jobs
+     * finished during the last fifteen minutes.
+     * @since 1.1.0
+     */
+    long getFifteenMinuteProcessingTime99thPercentile();
+
 }
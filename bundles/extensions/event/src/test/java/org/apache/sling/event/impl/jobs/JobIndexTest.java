@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JobIndexTest {
+
+    @Test
+    public void testPoll() {
+        final JobIndex index = new JobIndex();
+        assertTrue(index.poll("a", 10).isEmpty());
+        index.add("a", "/a/1");
+        index.add("a", "/a/2");
+        index.add("a", "/a/3");
+        index.add("b", "/b/1");
+        assertTrue(index.hasJobs("a"));
+
+        assertEquals(Arrays.asList("/a/1", "/a/2"), index.poll("a", 2));
+        assertEquals(Arrays.asList("/a/3"), index.poll("a", 2));
+        assertFalse(index.hasJobs("a"));
+        assertEquals(Arrays.asList("/b/1"), index.poll("b", 2));
+    }
+
+    @Test
+    public void testOverflow() {
+        final JobIndex index = new JobIndex();
+        for(int i = 0; i <= JobIndex.MAX_ENTRIES_PER_TOPIC; i++) {
+            index.add("a", "/a/" + i);
+        }
+        // the topic needs to be traversed
+        assertTrue(index.hasJobs("a"));
+        assertNull(index.poll("a", 10));
+
+        index.clear("a");
+        assertFalse(index.hasJobs("a"));
+        index.add("a", "/a/new");
+        final List<String> paths = index.poll("a", 10);
+        assertEquals(Arrays.asList("/a/new"), paths);
+    }
+}
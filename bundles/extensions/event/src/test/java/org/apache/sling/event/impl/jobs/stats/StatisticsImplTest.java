@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StatisticsImplTest {
+
+    private static StatisticsImpl processed(final long jobTime) {
+        final StatisticsImpl stats = new StatisticsImpl();
+        stats.incQueued();
+        stats.addActive(3);
+        stats.finishedJob(jobTime);
+        return stats;
+    }
+
+    @Test
+    public void testAddIncludesWindowStatistics() {
+        final StatisticsImpl total = new StatisticsImpl();
+        total.add(processed(40));
+        total.add(processed(70000));
+
+        assertEquals(2, total.getNumberOfFinishedJobs());
+        assertEquals(50, total.getWindowStatistics().getProcessingTimePercentile(0.5, 1));
+        assertEquals(300000, total.getWindowStatistics().getProcessingTimePercentile(1.0, 1));
+        assertEquals(5, total.getWindowStatistics().getWaitingTimePercentile(1.0, 1));
+    }
+
+    @Test
+    public void testCopyFromIncludesWindowStatistics() {
+        final StatisticsImpl copy = processed(70000);
+        copy.copyFrom(processed(40));
+
+        assertEquals(1, copy.getNumberOfFinishedJobs());
+        assertEquals(50, copy.getWindowStatistics().getProcessingTimePercentile(1.0, 1));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeWindowStatisticsTest {
+
+    private static final long MINUTE = 60000;
+
+    private long now;
+
+    private TimeWindowStatistics stats;
+
+    @Before
+    public void setup() {
+        this.now = 1000 * MINUTE;
+        this.stats = createStatistics();
+    }
+
+    private TimeWindowStatistics createStatistics() {
+        final TimeWindowStatistics result = new TimeWindowStatistics() {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+        result.reset();
+        return result;
+    }
+
+    @Test
+    public void testEmpty() {
+        now += MINUTE;
+        assertEquals(0, stats.getJobsPerSecond(1), 0);
+        assertEquals(0, stats.getWaitingTimePercentile(0.99, 1));
+        assertEquals(0, stats.getProcessingTimePercentile(0.99, 15));
+    }
+
+    @Test
+    public void testJobRates() {
+        // 60 jobs in the first minute, 240 in the following four minutes
+        for (int i = 0; i < 300; i++) {
+            stats.jobProcessed(10);
+            now += 1000;
+        }
+        assertEquals(1, stats.getJobsPerSecond(1), 0.05);
+        assertEquals(1, stats.getJobsPerSecond(5), 0.01);
+        // only five minutes have passed since the start
+        assertEquals(1, stats.getJobsPerSecond(15), 0.01);
+
+        // nothing in the last two minutes
+        now += 2 * MINUTE;
+        assertEquals(0, stats.getJobsPerSecond(1), 0);
+        assertEquals(180.0 / 300, stats.getJobsPerSecond(5), 0.05);
+        assertEquals(300.0 / 420, stats.getJobsPerSecond(15), 0.01);
+
+        // everything expired
+        now += 15 * MINUTE;
+        assertEquals(0, stats.getJobsPerSecond(15), 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int i = 0; i < 99; i++) {
+            stats.jobStarted(3);
+            stats.jobProcessed(40);
+        }
+        stats.jobStarted(1500);
+        stats.jobProcessed(70000);
+
+        assertEquals(5, stats.getWaitingTimePercentile(0.99, 1));
+        assertEquals(2000, stats.getWaitingTimePercentile(1.0, 1));
+        assertEquals(50, stats.getProcessingTimePercentile(0.5, 1));
+        assertEquals(50, stats.getProcessingTimePercentile(0.99, 1));
+        assertEquals(300000, stats.getProcessingTimePercentile(1.0, 1));
+
+        // failed jobs count for the rate only
+        stats.jobProcessed(-1);
+        assertEquals(300000, stats.getProcessingTimePercentile(1.0, 1));
+
+        now += 2 * MINUTE;
+        assertEquals(0, stats.getWaitingTimePercentile(0.99, 1));
+        assertEquals(5, stats.getWaitingTimePercentile(0.99, 5));
+    }
+
+    @Test
+    public void testReset() {
+        stats.jobStarted(10);
+        stats.jobProcessed(10);
+        now += 1000;
+        stats.reset();
+        now += 1000;
+        assertEquals(0, stats.getJobsPerSecond(1), 0);
+        assertEquals(0, stats.getWaitingTimePercentile(0.99, 1));
+    }
+
+    @Test
+    public void testAdd() {
+        // expired by the time the statistics are added
+        final TimeWindowStatistics other = createStatistics();
+        other.jobProcessed(10000);
+        now += 20 * MINUTE;
+        for (int i = 0; i < 60; i++) {
+            stats.jobProcessed(40);
+            other.jobProcessed(3);
+            now += 1000;
+        }
+
+        stats.add(other);
+        assertEquals(2, stats.getJobsPerSecond(1), 0.1);
+        assertEquals(5, stats.getProcessingTimePercentile(0.5, 1));
+        assertEquals(50, stats.getProcessingTimePercentile(1.0, 15));
+
+        // the added statistics are unchanged
+        assertEquals(1, other.getJobsPerSecond(1), 0.1);
+        assertEquals(5, other.getProcessingTimePercentile(1.0, 15));
+    }
+
+    @Test
+    public void testCopyFrom() {
+        final TimeWindowStatistics other = createStatistics();
+        stats.jobProcessed(40);
+        other.jobStarted(3);
+        other.jobProcessed(3);
+
+        stats.copyFrom(other);
+        assertEquals(5, stats.getWaitingTimePercentile(1.0, 1));
+        assertEquals(5, stats.getProcessingTimePercentile(1.0, 1));
+
+        // the copy is independent
+        other.jobProcessed(40);
+        assertEquals(5, stats.getProcessingTimePercentile(1.0, 1));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final int threads = 4;
+        final int jobs = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < jobs; i++) {
+                        stats.jobProcessed(1);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        now += 10000;
+        assertEquals(threads * jobs / 10.0, stats.getJobsPerSecond(1), 0.001);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of adding jobs with the job stores.
+ * The resource job store is the write path the job manager always used.
+ * <p>
+ * The mock resource tree is held in memory, therefore each commit is
+ * delayed by {@link #commitLatency} microseconds to account for the cost of
+ * a commit to a repository. Like in a repository, commits are serialized.
+ * <p>
+ * Run with <code>mvn -Pbenchmarks clean test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.sling.event.impl.jobs.store.JobStoreBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class JobStoreBenchmark {
+
+    @Param({ "resource", "batched", "journal" })
+    private String store;
+
+    @Param({ "1000" })
+    private long commitLatency;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    private final Object commitLock = new Object();
+
+    private JobStore jobStore;
+
+    private File journal;
+
+    @Setup
+    public void setup() throws IOException {
+        final ResourceResolverFactory factory = new MockResourceResolverFactory();
+        final JobManagerConfiguration configuration = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(configuration.createResourceResolver()).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                return delayCommit(factory.getAdministrativeResourceResolver(null));
+            }
+        });
+        if ( JobManagerConfiguration.JOB_STORE_BATCHED.equals(store) ) {
+            final BatchingJobStore batching = new BatchingJobStore(configuration, JobManagerConfiguration.DEFAULT_JOB_STORE_BATCH_SIZE);
+            batching.start();
+            this.jobStore = batching;
+        } else if ( JobManagerConfiguration.JOB_STORE_JOURNAL.equals(store) ) {
+            this.journal = File.createTempFile("jobs", ".journal");
+            final JournalJobStore journalStore = new JournalJobStore(configuration, JobManagerConfiguration.DEFAULT_JOB_STORE_BATCH_SIZE, this.journal);
+            journalStore.start();
+            this.jobStore = journalStore;
+        } else {
+            this.jobStore = new ResourceJobStore(configuration);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.jobStore.close();
+        if ( this.journal != null ) {
+            this.journal.delete();
+        }
+    }
+
+    private ResourceResolver delayCommit(final ResourceResolver resolver) {
+        return (ResourceResolver) Proxy.newProxyInstance(ResourceResolver.class.getClassLoader(),
+                new Class<?>[] {ResourceResolver.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                        if ( "commit".equals(method.getName()) ) {
+                            synchronized ( commitLock ) {
+                                TimeUnit.MICROSECONDS.sleep(commitLatency);
+                                return invokeDelegate(resolver, method, args);
+                            }
+                        }
+                        return invokeDelegate(resolver, method, args);
+                    }
+                });
+    }
+
+    private static Object invokeDelegate(final ResourceResolver resolver, final Method method, final Object[] args)
+    throws Throwable {
+        try {
+            return method.invoke(resolver, args);
+        } catch ( final InvocationTargetException ite ) {
+            throw ite.getCause();
+        }
+    }
+
+    @Benchmark
+    public void addJob() throws PersistenceException {
+        final long index = this.counter.incrementAndGet();
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("index", index);
+        props.put("created", Calendar.getInstance());
+        this.jobStore.persist("/var/eventing/jobs/assigned/instance/topic/2017/1/1/" + (index / 1000) + "/1/instance_" + index, props);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JobStoreBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .build();
+        new Runner(options).run();
+    }
+}
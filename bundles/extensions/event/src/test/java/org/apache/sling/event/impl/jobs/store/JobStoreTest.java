@@ -0,0 +1,417 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.impl.jobs.JobImpl;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.support.ResourceHelper;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JobStoreTest {
+
+    private static final String JOBS_PATH = "/var/eventing/jobs/assigned/instance/topic";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private ResourceResolverFactory factory;
+
+    private JobManagerConfiguration configuration;
+
+    @Before
+    public void setup() {
+        this.factory = new MockResourceResolverFactory();
+        this.configuration = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(this.configuration.createResourceResolver()).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                return factory.getAdministrativeResourceResolver(null);
+            }
+        });
+    }
+
+    private static Map<String, Object> properties(final int index) {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("index", index);
+        props.put(ResourceHelper.PROPERTY_JOB_ID, "job_" + index);
+        props.put("created", Calendar.getInstance());
+        props.put("names", new String[] {"a", "b"});
+        return props;
+    }
+
+    private static String path(final int index) {
+        return JOBS_PATH + "/2017/1/1/1/1/instance_" + index;
+    }
+
+    private void assertJobs(final int count) throws LoginException {
+        for(int i = 0; i < count; i++) {
+            assertJob(i);
+        }
+    }
+
+    private void assertJob(final int index) throws LoginException {
+        final ResourceResolver resolver = this.factory.getAdministrativeResourceResolver(null);
+        try {
+            final Resource rsrc = resolver.getResource(path(index));
+            assertNotNull(path(index), rsrc);
+            assertEquals(index, rsrc.getValueMap().get("index"));
+        } finally {
+            resolver.close();
+        }
+    }
+
+    private void assertNoJob(final int index) throws LoginException {
+        final ResourceResolver resolver = this.factory.getAdministrativeResourceResolver(null);
+        try {
+            assertNull(path(index), resolver.getResource(path(index)));
+        } finally {
+            resolver.close();
+        }
+    }
+
+    private void deleteJob(final int index) throws LoginException, PersistenceException {
+        final ResourceResolver resolver = this.factory.getAdministrativeResourceResolver(null);
+        try {
+            resolver.delete(resolver.getResource(path(index)));
+            resolver.commit();
+        } finally {
+            resolver.close();
+        }
+    }
+
+    private static void awaitWritten(final JobStore store, final int index) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 10000;
+        while ( store.getPendingJob("job_" + index) != null && System.currentTimeMillis() < end ) {
+            Thread.sleep(10);
+        }
+        assertNull(store.getPendingJob("job_" + index));
+    }
+
+    /**
+     * Configuration failing to provide a resolver for the first batch,
+     * which is blocked until the release latch is released.
+     */
+    private JobManagerConfiguration failingFirstBatch(final CountDownLatch started, final CountDownLatch release) {
+        final AtomicBoolean failed = new AtomicBoolean();
+        final JobManagerConfiguration config = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(config.createResourceResolver()).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                if ( failed.compareAndSet(false, true) ) {
+                    started.countDown();
+                    release.await();
+                    return null;
+                }
+                return factory.getAdministrativeResourceResolver(null);
+            }
+        });
+        return config;
+    }
+
+    /**
+     * Configuration providing a resolver for a batch once a permit is
+     * released, counting the batches which have been started.
+     */
+    private JobManagerConfiguration permittedBatches(final Semaphore permits, final AtomicInteger started) {
+        final JobManagerConfiguration config = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(config.createResourceResolver()).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                started.incrementAndGet();
+                permits.acquire();
+                return factory.getAdministrativeResourceResolver(null);
+            }
+        });
+        return config;
+    }
+
+    private void persistConcurrently(final JobStore store, final int count) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for(int i = 0; i < count; i++) {
+                final int index = i;
+                results.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        store.persist(path(index), properties(index));
+                        return null;
+                    }
+                }));
+            }
+            for(final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testResourceStore() throws Exception {
+        final JobStore store = new ResourceJobStore(this.configuration);
+        persistConcurrently(store, 10);
+        store.close();
+        assertJobs(10);
+    }
+
+    @Test
+    public void testBatchingStore() throws Exception {
+        final BatchingJobStore store = new BatchingJobStore(this.configuration, 5);
+        store.start();
+        persistConcurrently(store, 50);
+        // jobs are visible once persist returns
+        assertJobs(50);
+        store.close();
+        try {
+            store.persist(path(50), properties(50));
+            fail("Closed store must not accept jobs");
+        } catch ( final PersistenceException expected ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testJournalStore() throws Exception {
+        final File journal = new File(this.folder.getRoot(), "jobs.journal");
+        final JournalJobStore store = new JournalJobStore(this.configuration, 5, journal);
+        store.start();
+        persistConcurrently(store, 50);
+        store.close();
+        assertJobs(50);
+        assertEquals(0, journal.length());
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        final File journal = new File(this.folder.getRoot(), "jobs.journal");
+
+        // the resource tree is not available once the jobs have been accepted
+        final CountDownLatch release = new CountDownLatch(1);
+        final JobManagerConfiguration inactive = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(inactive.createResourceResolver()).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return null;
+            }
+        });
+        final JournalJobStore store = new JournalJobStore(inactive, 5, journal);
+        store.start();
+        for(int i = 0; i < 10; i++) {
+            store.persist(path(i), properties(i));
+        }
+        release.countDown();
+        store.close();
+        assertTrue(journal.length() > 0);
+
+        final JournalJobStore replaying = new JournalJobStore(this.configuration, 5, journal);
+        replaying.start();
+        assertJobs(10);
+        assertEquals(0, journal.length());
+        replaying.close();
+    }
+
+    @Test
+    public void testJournalReplaySkipsCommittedJobs() throws Exception {
+        final File journal = new File(this.folder.getRoot(), "jobs.journal");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final JournalJobStore store = new JournalJobStore(failingFirstBatch(started, release), 5, journal);
+        store.start();
+        // job 0 is written by the first batch, the others are queued behind it
+        store.persist(path(0), properties(0));
+        started.await();
+        for(int i = 1; i < 5; i++) {
+            store.persist(path(i), properties(i));
+        }
+        // job 0 fails and is retained, the others are committed
+        release.countDown();
+        for(int i = 0; i < 5; i++) {
+            awaitWritten(store, i);
+        }
+        store.close();
+        assertNoJob(0);
+        assertTrue(journal.length() > 0);
+
+        // the committed jobs have been processed in the meantime
+        for(int i = 1; i < 5; i++) {
+            deleteJob(i);
+        }
+        final JournalJobStore replaying = new JournalJobStore(this.configuration, 5, journal);
+        replaying.start();
+        assertJobs(1);
+        for(int i = 1; i < 5; i++) {
+            assertNoJob(i);
+        }
+        replaying.close();
+    }
+
+    @Test
+    public void testJournalFailurePersistsSynchronously() throws Exception {
+        final File journal = new File(this.folder.getRoot(), "jobs.journal");
+        // the resource tree is not available
+        final JobManagerConfiguration inactive = Mockito.mock(JobManagerConfiguration.class);
+        final JournalJobStore store = new JournalJobStore(inactive, 5, journal);
+        store.start();
+        // accepted, but can't be written
+        store.persist(path(0), properties(0));
+        awaitWritten(store, 0);
+        final long retainedSize = journal.length();
+        try {
+            store.persist(path(1), properties(1));
+            fail("Failure must be reported once an accepted job could not be written");
+        } catch ( final PersistenceException expected ) {
+            // expected
+        }
+        store.close();
+        assertEquals(retainedSize, journal.length());
+
+        final JournalJobStore replaying = new JournalJobStore(this.configuration, 5, journal);
+        replaying.start();
+        assertJobs(1);
+        assertNoJob(1);
+        replaying.close();
+    }
+
+    @Test
+    public void testJournalCompaction() throws Exception {
+        final File journal = new File(this.folder.getRoot(), "jobs.journal");
+        final Semaphore permits = new Semaphore(0);
+        final AtomicInteger started = new AtomicInteger();
+        final JournalJobStore store = new JournalJobStore(permittedBatches(permits, started), 5, journal, 4096);
+        store.start();
+        for(int i = 0; i < 100; i++) {
+            store.persist(path(i), properties(i));
+        }
+        final long acceptedSize = journal.length();
+
+        // write batches until job 89 is committed, the writer then waits
+        // for the next permit with the following jobs uncommitted
+        int batches = 0;
+        while ( store.getPendingJob("job_89") != null ) {
+            permits.release();
+            batches++;
+            final long end = System.currentTimeMillis() + 10000;
+            while ( started.get() <= batches && System.currentTimeMillis() < end ) {
+                Thread.sleep(10);
+            }
+            assertTrue(started.get() > batches);
+        }
+        assertTrue(journal.length() < acceptedSize / 3);
+
+        // a replay of the compacted journal only writes the uncommitted jobs
+        final File compacted = new File(this.folder.getRoot(), "compacted.journal");
+        final List<Integer> uncommitted = new ArrayList<Integer>();
+        for(int i = 0; i < 100; i++) {
+            if ( store.getPendingJob("job_" + i) != null ) {
+                uncommitted.add(i);
+            }
+        }
+        Files.copy(journal.toPath(), compacted.toPath());
+        permits.release(Integer.MAX_VALUE / 2);
+        store.close();
+        assertJobs(100);
+        assertEquals(0, journal.length());
+
+        for(int i = 0; i < 100; i++) {
+            deleteJob(i);
+        }
+        final JournalJobStore replaying = new JournalJobStore(this.configuration, 5, compacted);
+        replaying.start();
+        assertTrue(!uncommitted.isEmpty());
+        for(int i = 0; i < 100; i++) {
+            if ( uncommitted.contains(i) ) {
+                assertJob(i);
+            } else {
+                assertNoJob(i);
+            }
+        }
+        replaying.close();
+    }
+
+    @Test
+    public void testJournalPendingJob() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final JobManagerConfiguration slow = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(slow.createResourceResolver()).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                blocked.await();
+                return factory.getAdministrativeResourceResolver(null);
+            }
+        });
+        final File journal = new File(this.folder.getRoot(), "jobs.journal");
+        final JournalJobStore store = new JournalJobStore(slow, 5, journal);
+        store.start();
+        store.persist(path(0), properties(0));
+
+        // accepted, but not written yet
+        assertNoJob(0);
+        final Map<String, Object> pending = store.getPendingJob("job_0");
+        assertNotNull(pending);
+        assertEquals(path(0), pending.get(JobImpl.PROPERTY_RESOURCE_PATH));
+        assertEquals(0, pending.get("index"));
+
+        blocked.countDown();
+        awaitWritten(store, 0);
+        assertJobs(1);
+        store.close();
+    }
+}
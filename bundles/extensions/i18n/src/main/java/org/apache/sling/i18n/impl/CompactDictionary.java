@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.i18n.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The <code>CompactDictionary</code> is an immutable message dictionary
+ * keeping its keys and values in two flat arrays which are indexed by an
+ * open addressing hash table of <code>int</code>s. Compared to a
+ * <code>LinkedHashMap</code> no entry objects are created which keeps the
+ * dictionaries small and lookups cache friendly.
+ * <p>
+ * Message keys are usually the same across all locales, therefore all keys
+ * are interned in a weak pool shared by all dictionaries: each key string is
+ * only kept once in memory regardless of the number of locales.
+ * <p>
+ * Dictionaries are never modified. Changes are applied by creating a
+ * {@link Builder} from an existing dictionary and building a new one.
+ */
+final class CompactDictionary {
+
+    /** The empty dictionary */
+    static final CompactDictionary EMPTY = new Builder().build();
+
+    /** Pool of message keys shared by all dictionaries */
+    private static final Map<String, WeakReference<String>> KEY_POOL = new WeakHashMap<String, WeakReference<String>>();
+
+    /** The keys in insertion order */
+    private final String[] keys;
+
+    /** The values, at the same index as their key */
+    private final String[] values;
+
+    /**
+     * The hash table: each slot contains the index of the entry plus one
+     * or zero for an empty slot. Collisions are resolved by linear probing.
+     */
+    private final int[] table;
+
+    private final int mask;
+
+    private CompactDictionary(final String[] keys, final String[] values) {
+        this.keys = keys;
+        this.values = values;
+
+        // keep the load factor at or below 0.5
+        int size = 2;
+        while (size < keys.length * 2) {
+            size <<= 1;
+        }
+        this.table = new int[size];
+        this.mask = size - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Returns the value for the key or <code>null</code> if the dictionary
+     * does not contain the key.
+     */
+    String get(final String key) {
+        int slot = hash(key) & mask;
+        int index;
+        while ((index = table[slot]) != 0) {
+            final String candidate = keys[index - 1];
+            if (candidate == key || candidate.equals(key)) {
+                return values[index - 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(final String key) {
+        return get(key) != null;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns an unmodifiable view of the keys in insertion order.
+     */
+    Set<String> keySet() {
+        return new AbstractSet<String>() {
+
+            @Override
+            public boolean contains(final Object o) {
+                return o instanceof String && containsKey((String) o);
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        return keys[next++];
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private static int hash(final String key) {
+        // spread the higher bits as the table size is a power of two
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the pooled instance of the key.
+     */
+    static String intern(final String key) {
+        synchronized (KEY_POOL) {
+            final WeakReference<String> ref = KEY_POOL.get(key);
+            final String pooled = (ref == null) ? null : ref.get();
+            if (pooled != null) {
+                return pooled;
+            }
+            KEY_POOL.put(key, new WeakReference<String>(key));
+            return key;
+        }
+    }
+
+    /**
+     * The <code>Builder</code> collects the entries for a new dictionary.
+     * Entries put later replace entries with the same key put earlier but
+     * keep their position.
+     */
+    static final class Builder {
+
+        private final Map<String, String> entries;
+
+        Builder() {
+            this.entries = new LinkedHashMap<String, String>();
+        }
+
+        /**
+         * Creates a builder starting with all entries of the dictionary.
+         */
+        Builder(final CompactDictionary dictionary) {
+            this.entries = new LinkedHashMap<String, String>(dictionary.size() * 2);
+            putAll(dictionary);
+        }
+
+        Builder put(final String key, final String value) {
+            entries.put(key, value);
+            return this;
+        }
+
+        Builder putAll(final CompactDictionary dictionary) {
+            for (int i = 0; i < dictionary.keys.length; i++) {
+                entries.put(dictionary.keys[i], dictionary.values[i]);
+            }
+            return this;
+        }
+
+        Builder remove(final String key) {
+            entries.remove(key);
+            return this;
+        }
+
+        boolean containsKey(final String key) {
+            return entries.containsKey(key);
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        CompactDictionary build() {
+            final String[] keys = new String[entries.size()];
+            final String[] values = new String[entries.size()];
+            int i = 0;
+            for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                keys[i] = intern(entry.getKey());
+                values[i] = entry.getValue();
+                i++;
+            }
+            return new CompactDictionary(keys, values);
+        }
+    }
+}
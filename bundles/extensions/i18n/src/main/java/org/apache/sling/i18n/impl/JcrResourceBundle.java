@@ -39,6 +39,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,7 +66,15 @@ public class JcrResourceBundle extends ResourceBundle {
 
     static final String QUERY_LANGUAGE_ROOTS = "//element(*,mix:language)[@jcr:language]";
 
-    private final Map<String, Object> resources;
+    /**
+     * The dictionaries of the language roots in the order in which they
+     * are merged (later dictionaries overlay earlier ones). Guarded by
+     * <code>this</code>.
+     */
+    private final List<RootDictionary> dictionaries;
+
+    /** The merged dictionary, replaced on changes */
+    private volatile CompactDictionary resources;
 
     private final Locale locale;
 
@@ -83,7 +92,8 @@ public class JcrResourceBundle extends ResourceBundle {
         long start = System.currentTimeMillis();
         resourceResolver.refresh();
         Set<String> roots = loadPotentialLanguageRoots(resourceResolver, locale, baseName);
-        this.resources = loadFully(resourceResolver, roots, this.languageRoots);
+        this.dictionaries = loadFully(resourceResolver, roots, this.languageRoots);
+        this.resources = merge(this.dictionaries);
 
         long end = System.currentTimeMillis();
         if (log.isInfoEnabled()) {
@@ -137,6 +147,132 @@ public class JcrResourceBundle extends ResourceBundle {
         return new ResourceBundleEnumeration(resources.keySet(), parentKeys);
     }
 
+    /**
+     * Applies changes of resources below the language roots of this bundle.
+     * <p>
+     * Only the affected dictionaries are updated: a changed JSON dictionary
+     * is parsed again and for sling:Message dictionaries only the changed
+     * subtrees are read. The dictionaries are then merged again in memory,
+     * so this bundle instance stays valid and is updated atomically.
+     *
+     * @param resolver The storage access
+     * @param changes The changes of resources below the language roots
+     * @return {@code true} if the changes have been applied, {@code false}
+     *      if the bundle must be fully reloaded instead
+     */
+    boolean applyChanges(final ResourceResolver resolver, final List<ResourceChange> changes) {
+        final long start = System.currentTimeMillis();
+        resolver.refresh();
+        synchronized (this) {
+            final Map<RootDictionary, CompactDictionary.Builder> updated = new LinkedHashMap<RootDictionary, CompactDictionary.Builder>();
+            for (final ResourceChange change : changes) {
+                final RootDictionary dictionary = getDictionary(change.getPath());
+                if (dictionary == null) {
+                    log.debug("Change of {} is not below a language root of {}", change.getPath(), this);
+                    continue;
+                }
+                if (dictionary.messages == null) {
+                    // json dictionaries are parsed again, but only once
+                    if (!updated.containsKey(dictionary)) {
+                        final Resource dictionaryResource = resolver.getResource(dictionary.path);
+                        if (dictionaryResource == null) {
+                            return false;
+                        }
+                        final CompactDictionary.Builder builder = new CompactDictionary.Builder();
+                        loadJsonDictionary(dictionaryResource, builder);
+                        updated.put(dictionary, builder);
+                    }
+                } else {
+                    CompactDictionary.Builder builder = updated.get(dictionary);
+                    if (builder == null) {
+                        builder = new CompactDictionary.Builder(dictionary.entries);
+                        updated.put(dictionary, builder);
+                    }
+                    applySlingMessageChange(resolver, dictionary, change.getPath(), builder);
+                }
+            }
+            if (updated.isEmpty()) {
+                return true;
+            }
+            for (final Map.Entry<RootDictionary, CompactDictionary.Builder> entry : updated.entrySet()) {
+                entry.getKey().entries = entry.getValue().build();
+            }
+            this.resources = merge(this.dictionaries);
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Applied {} changes to '{}' (basename: {}) in {}ms",
+                new Object[] { changes.size(), locale, baseName == null ? "<none>" : baseName, System.currentTimeMillis() - start });
+        }
+        return true;
+    }
+
+    private RootDictionary getDictionary(final String path) {
+        for (final RootDictionary dictionary : dictionaries) {
+            if (path.startsWith(dictionary.path) && path.length() > dictionary.path.length()
+                    && path.charAt(dictionary.path.length()) == '/') {
+                return dictionary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Updates the entries defined by the resource at the path and its
+     * children.
+     */
+    private void applySlingMessageChange(final ResourceResolver resolver, final RootDictionary dictionary,
+            final String path, final CompactDictionary.Builder builder) {
+        final String relPath = path.substring(dictionary.path.length() + 1);
+
+        // drop the entries of the subtree, unless a different resource
+        // defines the same key
+        final Map<String, List<MessageIndex.Node>> removed = dictionary.messages.remove(relPath);
+        for (final Map.Entry<String, List<MessageIndex.Node>> entry : removed.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                builder.remove(entry.getKey());
+            }
+        }
+
+        // read the subtree again, if it still exists
+        final Set<String> keys = new HashSet<String>();
+        final Resource resource = resolver.getResource(path);
+        if (resource != null) {
+            final MessageIndex.Node parent = dictionary.messages.getOrCreateParent(relPath);
+            dictionary.messages.startScan();
+            try {
+                scanForSlingMessages(resource, dictionary.messages.newChild(parent, resource.getName()),
+                        dictionary, builder, keys);
+            } finally {
+                dictionary.messages.endScan();
+            }
+            dictionary.messages.prune(parent);
+        }
+
+        // keys which are not defined by the subtree anymore get the value
+        // of a different resource defining the same key
+        for (final Map.Entry<String, List<MessageIndex.Node>> entry : removed.entrySet()) {
+            if (!entry.getValue().isEmpty() && !keys.contains(entry.getKey())) {
+                restoreEntry(resolver, dictionary, entry.getKey(), entry.getValue(), builder);
+            }
+        }
+    }
+
+    private void restoreEntry(final ResourceResolver resolver, final RootDictionary dictionary, final String key,
+            final List<MessageIndex.Node> definitions, final CompactDictionary.Builder builder) {
+        for (final MessageIndex.Node node : definitions) {
+            final String relPath = dictionary.messages.getPath(node);
+            final String path = relPath.length() == 0 ? dictionary.path : dictionary.path + "/" + relPath;
+            final Resource resource = resolver.getResource(path);
+            final ValueMap vm = (resource == null) ? null : resource.adaptTo(ValueMap.class);
+            final String value = (vm == null) ? null : vm.get(PROP_VALUE, String.class);
+            if (value != null) {
+                builder.put(key, value);
+                return;
+            }
+        }
+        builder.remove(key);
+    }
+
     @Override
     protected Object handleGetObject(String key) {
         if (log.isDebugEnabled()) {
@@ -160,15 +296,15 @@ public class JcrResourceBundle extends ResourceBundle {
      *      processing the resources, all subtrees listed in the {@code roots}
      *      set is added to this set if it actually contains resources. This
      *      must not be {@code null}.
-     * @return
+     * @return The dictionaries in the order in which they have to be merged
      *
      * @throws NullPointerException if either of the parameters is {@code null}.
      */
-    private Map<String, Object> loadFully(final ResourceResolver resolver, Set<String> roots, Set<String> languageRoots) {
+    private List<RootDictionary> loadFully(final ResourceResolver resolver, Set<String> roots, Set<String> languageRoots) {
 
         final String[] searchPath = resolver.getSearchPath();
 
-        // for each search path entry, have a list of maps (dictionaries)
+        // for each search path entry, have a list of dictionaries
         // plus other = "outside the search path" at the end
 
         //   [0] /apps2  -> [dict1, dict2, dict3 ...]
@@ -176,9 +312,9 @@ public class JcrResourceBundle extends ResourceBundle {
         //   [2] /libs   -> [dict6, ...]
         //   [3] (other) -> [dict7, dict8 ...]
 
-        List<List<Map<String, Object>>> dictionariesBySearchPath = new ArrayList<List<Map<String, Object>>>(searchPath.length + 1);
+        List<List<RootDictionary>> dictionariesBySearchPath = new ArrayList<List<RootDictionary>>(searchPath.length + 1);
         for (int i = 0; i < searchPath.length + 1; i++) {
-            dictionariesBySearchPath.add(new ArrayList<Map<String, Object>>());
+            dictionariesBySearchPath.add(new ArrayList<RootDictionary>());
         }
 
         for (final String root: roots) {
@@ -189,53 +325,66 @@ public class JcrResourceBundle extends ResourceBundle {
                 continue;
             }
 
-            // linked hash map to keep order (not functionally important, but helpful for dictionary debugging)
-            Map<String, Object> dictionary = new LinkedHashMap<String, Object>();
-
             // find where in the search path this dict belongs
             // otherwise put it in the outside-the-search-path bucket (last list)
-            List<Map<String, Object>> targetList = dictionariesBySearchPath.get(searchPath.length);
+            List<RootDictionary> targetList = dictionariesBySearchPath.get(searchPath.length);
             for (int i = 0; i < searchPath.length; i++) {
                 if (root.startsWith(searchPath[i])) {
                     targetList = dictionariesBySearchPath.get(i);
                     break;
                 }
             }
-            targetList.add(dictionary);
+
+            // the builder keeps the order (not functionally important, but helpful for dictionary debugging)
+            final CompactDictionary.Builder builder = new CompactDictionary.Builder();
 
             // check type of dictionary
+            final RootDictionary dictionary;
             if (dictionaryResource.getName().endsWith(".json")) {
-                loadJsonDictionary(dictionaryResource, dictionary);
+                dictionary = new RootDictionary(root, false);
+                loadJsonDictionary(dictionaryResource, builder);
             } else {
-                loadSlingMessageDictionary(dictionaryResource, dictionary);
+                dictionary = new RootDictionary(root, true);
+                loadSlingMessageDictionary(dictionaryResource, dictionary, builder);
             }
+            dictionary.entries = builder.build();
+            targetList.add(dictionary);
 
             languageRoots.add(root);
         }
 
-        // linked hash map to keep order (not functionally important, but helpful for dictionary debugging)
-        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        final List<RootDictionary> result = new ArrayList<RootDictionary>(roots.size());
 
         // first, add everything that's not under a search path (e.g. /content)
         // below, same strings inside a search path dictionary would overlay them since
-        // they are added later to result = overwrite
-        for (Map<String, Object> dict : dictionariesBySearchPath.get(searchPath.length)) {
-            result.putAll(dict);
-        }
+        // they are merged later
+        result.addAll(dictionariesBySearchPath.get(searchPath.length));
 
-        // then, in order of the search path, add all the individual dictionaries into
-        // a single result, so that e.g. strings in /apps overlay the ones in /libs
+        // then, in order of the search path, add all the individual dictionaries,
+        // so that e.g. strings in /apps overlay the ones in /libs
         for (int i = searchPath.length - 1; i >= 0; i--) {
-
-            for (Map<String, Object> dict : dictionariesBySearchPath.get(i)) {
-                result.putAll(dict);
-            }
+            result.addAll(dictionariesBySearchPath.get(i));
         }
 
         return result;
     }
 
-    private void loadJsonDictionary(Resource resource, final Map<String, Object> targetDictionary) {
+    /**
+     * Merges the dictionaries into a single one, entries of later
+     * dictionaries overlay the entries of earlier ones.
+     */
+    private static CompactDictionary merge(final List<RootDictionary> dictionaries) {
+        if (dictionaries.size() == 1) {
+            return dictionaries.get(0).entries;
+        }
+        final CompactDictionary.Builder builder = new CompactDictionary.Builder();
+        for (final RootDictionary dictionary : dictionaries) {
+            builder.putAll(dictionary.entries);
+        }
+        return builder.build();
+    }
+
+    private void loadJsonDictionary(Resource resource, final CompactDictionary.Builder targetDictionary) {
         log.info("Loading json dictionary: {}", resource.getPath());
 
         // use streaming parser (we don't need the dict in memory twice)
@@ -295,27 +444,45 @@ public class JcrResourceBundle extends ResourceBundle {
     }
 
     /**
-     * Depth-first traversal of a resource tree
+     * Depth-first traversal of a resource tree, the messages found are
+     * recorded in the message index of the dictionary.
+     *
+     * @param node The index node of the resource, added to the index if
+     *      the resource or its descendants define messages
+     * @param keys The set to which the keys found in the tree are added
      */
-    private void scanForSlingMessages(final Resource rsrc, final Map<String, Object> targetDictionary) {
+    private void scanForSlingMessages(final Resource rsrc, final MessageIndex.Node node, final RootDictionary dictionary,
+            final CompactDictionary.Builder targetDictionary, final Set<String> keys) {
         final ValueMap vm = rsrc.adaptTo(ValueMap.class);
         if ( vm != null ) {
             final String value = vm.get(PROP_VALUE, String.class);
             if ( value != null ) {
-                final String key = vm.get(PROP_KEY, rsrc.getName());
+                final String key = CompactDictionary.intern(vm.get(PROP_KEY, rsrc.getName()));
+                dictionary.messages.define(node, key, targetDictionary.containsKey(key));
                 targetDictionary.put(key, value);
+                keys.add(key);
             }
         }
 
         for(final Resource c : rsrc.getChildren()) {
-            scanForSlingMessages(c, targetDictionary);
+            scanForSlingMessages(c, dictionary.messages.newChild(node, c.getName()), dictionary, targetDictionary, keys);
+        }
+        if (node != dictionary.messages.getRoot()) {
+            dictionary.messages.attach(node);
         }
     }
 
-    private void loadSlingMessageDictionary(final Resource dictionaryResource, final Map<String, Object> targetDictionary) {
+    private void loadSlingMessageDictionary(final Resource dictionaryResource, final RootDictionary dictionary,
+            final CompactDictionary.Builder targetDictionary) {
         log.info("Loading sling:Message dictionary: {}", dictionaryResource.getPath());
 
-        this.scanForSlingMessages(dictionaryResource, targetDictionary);
+        dictionary.messages.startScan();
+        try {
+            this.scanForSlingMessages(dictionaryResource, dictionary.messages.getRoot(), dictionary, targetDictionary,
+                    new HashSet<String>());
+        } finally {
+            dictionary.messages.endScan();
+        }
     }
 
     private Set<String> loadPotentialLanguageRoots(ResourceResolver resourceResolver, Locale locale, String baseName) {
@@ -350,6 +517,28 @@ public class JcrResourceBundle extends ResourceBundle {
         return locale.toString().replace('_', '-');
     }
 
+    /**
+     * The entries loaded from a single language root.
+     */
+    private static final class RootDictionary {
+
+        final String path;
+
+        /**
+         * The sling:Message resources and the keys they define,
+         * <code>null</code> for JSON dictionaries. Used to find the entries
+         * affected by a change.
+         */
+        final MessageIndex messages;
+
+        CompactDictionary entries = CompactDictionary.EMPTY;
+
+        RootDictionary(final String path, final boolean slingMessages) {
+            this.path = path;
+            this.messages = slingMessages ? new MessageIndex() : null;
+        }
+    }
+
     @Override
     public String toString() {
         return "JcrResourceBundle [locale=" + locale + ", baseName=" + baseName + ", languageRoots=" + languageRoots
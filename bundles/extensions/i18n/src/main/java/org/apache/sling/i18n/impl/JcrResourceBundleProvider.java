@@ -93,9 +93,15 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider, Resour
     @Reference
     private Scheduler scheduler;
 
-    /** job names of scheduled jobs for reloading individual bundles */
+    /** job names of scheduled jobs for updating individual bundles */
     private final Collection<String> scheduledJobNames = Collections.synchronizedList(new ArrayList<String>()) ;
 
+    /**
+     * Changes not yet applied to the cached bundles. A job is scheduled for
+     * each bundle with pending changes.
+     */
+    private final Map<Key, List<ResourceChange>> pendingChanges = new HashMap<Key, List<ResourceChange>>();
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -198,25 +204,28 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider, Resour
                         change.getPath());
                 scheduleReloadBundles(true);
             } else {
-                // if it is only a change below a root path, only messages of one resource bundle can be affected!
+                // if it is only a change below a root path, only the messages of the bundles using this root
+                // are affected and the change can be applied to these bundles
+                boolean scheduled = false;
                 for (final String root : languageRootPaths) {
-                    if (change.getPath().startsWith(root)) {
-                        // figure out which JcrResourceBundle from the cached ones is affected
+                    if (change.getPath().startsWith(root.concat("/"))) {
+                        // figure out which JcrResourceBundles from the cached ones are affected
                         for (JcrResourceBundle bundle : resourceBundleCache.values()) {
                             if (bundle.getLanguageRootPaths().contains(root)) {
-                                // reload it
-                                log.debug("handleEvent: Resource changes below '{}', reloading ResourceBundle '{}'",
+                                log.debug("handleEvent: Resource changes below '{}', updating ResourceBundle '{}'",
                                         root, bundle);
-                                scheduleReloadBundle(bundle);
-                                return;
+                                scheduleApplyChanges(bundle, change);
+                                scheduled = true;
                             }
                         }
-                        log.debug("handleEvent: No cached resource bundle found with root '{}'", root);
+                        if (!scheduled) {
+                            log.debug("handleEvent: No cached resource bundle found with root '{}'", root);
+                        }
                         break;
                     }
                 }
                 // may be a completely new dictionary
-                if (isDictionaryResource(change)) {
+                if (!scheduled && isDictionaryResource(change)) {
                     scheduleReloadBundles(true);
                 }
             }
@@ -277,6 +286,9 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider, Resour
             }
         }
         scheduledJobNames.clear();
+        synchronized (pendingChanges) {
+            pendingChanges.clear();
+        }
         // defer this job
         final ScheduleOptions options;
         if (withDelay) {
@@ -295,25 +307,54 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider, Resour
         }, options);
     }
 
-    private void scheduleReloadBundle(JcrResourceBundle bundle) {
-        String baseName = bundle.getBaseName();
-        Locale locale = bundle.getLocale();
-        final Key key = new Key(baseName, locale);
+    private void scheduleApplyChanges(JcrResourceBundle bundle, ResourceChange change) {
+        final Key key = new Key(bundle.getBaseName(), bundle.getLocale());
+
+        // collect the changes until the job runs
+        synchronized (pendingChanges) {
+            List<ResourceChange> changes = pendingChanges.get(key);
+            if (changes != null) {
+                changes.add(change);
+                return;
+            }
+            changes = new ArrayList<ResourceChange>();
+            changes.add(change);
+            pendingChanges.put(key, changes);
+        }
 
         // defer this job
         ScheduleOptions options = scheduler.AT(new Date(System.currentTimeMillis() + invalidationDelay));
-        final String jobName = "JcrResourceBundleProvider: reload bundle with key " + key.toString();
+        final String jobName = "JcrResourceBundleProvider: update bundle with key " + key.toString();
         scheduledJobNames.add(jobName);
         options.name(jobName);
         scheduler.schedule(new Runnable() {
             @Override
             public void run() {
-                reloadBundle(key);
+                applyChanges(key);
                 scheduledJobNames.remove(jobName);
             }
         }, options);
     }
 
+    /**
+     * Applies the pending changes to the cached bundle. The bundle is only
+     * reloaded if the changes cannot be applied.
+     */
+    void applyChanges(final Key key) {
+        final List<ResourceChange> changes;
+        synchronized (pendingChanges) {
+            changes = pendingChanges.remove(key);
+        }
+        final JcrResourceBundle bundle = resourceBundleCache.get(key);
+        if (changes == null || bundle == null) {
+            return;
+        }
+        log.info("Applying {} changes to resource bundle for {}", changes.size(), key);
+        if (!bundle.applyChanges(resourceResolver, changes)) {
+            reloadBundle(key);
+        }
+    }
+
     void reloadBundle(final Key key) {
         // remove bundle from cache
         resourceBundleCache.remove(key);
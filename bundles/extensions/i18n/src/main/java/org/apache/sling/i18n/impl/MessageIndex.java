@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.i18n.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>MessageIndex</code> records which sling:Message resources below a
+ * language root define which keys, so the entries affected by a change of a
+ * subtree are found without reading the whole root again.
+ * <p>
+ * Resources are kept as a tree of path segments instead of path strings:
+ * each message costs one small node and its parent's reference to it. Names
+ * are pooled with the keys, so messages named after their key add no string
+ * at all. Only keys defined by more than one resource keep the list of their
+ * definitions.
+ */
+final class MessageIndex {
+
+    /** Children of a node are searched linearly up to this number */
+    private static final int MAX_LINEAR_CHILDREN = 8;
+
+    private static final Comparator<Node> BY_NAME = new Comparator<Node>() {
+
+        @Override
+        public int compare(final Node n1, final Node n2) {
+            return n1.name.compareTo(n2.name);
+        }
+    };
+
+    private final Node root = new Node(null, "");
+
+    /** The definitions of the keys defined by more than one resource */
+    private final Map<String, List<Node>> duplicates = new HashMap<String, List<Node>>();
+
+    /** The first definition of each key defined during a scan, otherwise <code>null</code> */
+    private Map<String, Node> scanning;
+
+    /**
+     * The resource at the language root.
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Starts scanning resources. Until {@link #endScan()} is called, the
+     * first definition of each newly defined key is remembered, so duplicate
+     * definitions within the scanned resources are found without searching
+     * the tree.
+     */
+    void startScan() {
+        scanning = new HashMap<String, Node>();
+    }
+
+    void endScan() {
+        scanning = null;
+    }
+
+    /**
+     * Creates a node for a child resource. The node is not added to its
+     * parent before {@link #attach(Node)} is called.
+     */
+    Node newChild(final Node parent, final String name) {
+        return new Node(parent, CompactDictionary.intern(name));
+    }
+
+    /**
+     * Adds the node to its parent if it or one of its descendants defines a
+     * message.
+     *
+     * @return <code>true</code> if the node has been added
+     */
+    boolean attach(final Node node) {
+        if (node.key == null && node.childCount == 0) {
+            return false;
+        }
+        node.parent.addChild(node);
+        return true;
+    }
+
+    /**
+     * Records that the resource of the node defines the message key.
+     *
+     * @param defined <code>true</code> if another resource below this root
+     *      already defines the key
+     */
+    void define(final Node node, final String key, final boolean defined) {
+        node.key = key;
+        if (!defined) {
+            if (scanning != null) {
+                scanning.put(key, node);
+            }
+            return;
+        }
+        List<Node> definitions = duplicates.get(key);
+        if (definitions == null) {
+            Node first = (scanning == null) ? null : scanning.get(key);
+            if (first == null) {
+                // only happens if a change adds a second definition of a key
+                // which is defined outside of the changed resources
+                first = root.find(key);
+            }
+            definitions = new ArrayList<Node>(2);
+            if (first != null) {
+                definitions.add(first);
+            }
+            duplicates.put(key, definitions);
+        }
+        definitions.add(node);
+    }
+
+    /**
+     * Returns the parent node of the relative path, creating the nodes of
+     * the missing ancestors.
+     */
+    Node getOrCreateParent(final String relPath) {
+        Node node = root;
+        int start = 0;
+        int end;
+        while ((end = relPath.indexOf('/', start)) >= 0) {
+            final String name = relPath.substring(start, end);
+            Node child = node.getChild(name);
+            if (child == null) {
+                child = newChild(node, name);
+                node.addChild(child);
+            }
+            node = child;
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Removes the ancestors of the node which neither define a message nor
+     * have any children anymore.
+     */
+    void prune(Node node) {
+        while (node != root && node.key == null && node.childCount == 0) {
+            node.parent.removeChild(node.name);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Removes the resource at the relative path and its descendants.
+     *
+     * @return The keys defined by the removed resources, each mapped to the
+     *      resources still defining the key; the list is empty if no other
+     *      resource below this root defines the key.
+     */
+    Map<String, List<Node>> remove(final String relPath) {
+        final Node parent = getOrCreateParent(relPath);
+        final Node node = parent.removeChild(relPath.substring(relPath.lastIndexOf('/') + 1));
+        final Map<String, List<Node>> removed = new LinkedHashMap<String, List<Node>>();
+        if (node != null) {
+            collect(node, removed);
+        }
+        prune(parent);
+        for (final Map.Entry<String, List<Node>> entry : removed.entrySet()) {
+            final List<Node> definitions = duplicates.get(entry.getKey());
+            if (definitions != null) {
+                if (definitions.size() <= 1) {
+                    duplicates.remove(entry.getKey());
+                }
+                entry.setValue(definitions.isEmpty() ? Collections.<Node>emptyList() : definitions);
+            }
+        }
+        return removed;
+    }
+
+    private void collect(final Node node, final Map<String, List<Node>> removed) {
+        if (node.key != null) {
+            final List<Node> definitions = duplicates.get(node.key);
+            if (definitions != null) {
+                definitions.remove(node);
+            }
+            removed.put(node.key, Collections.<Node>emptyList());
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            collect(node.children[i], removed);
+        }
+    }
+
+    /**
+     * Returns the path of the node relative to the root.
+     */
+    String getPath(final Node node) {
+        if (node == root) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder(node.name);
+        for (Node n = node.parent; n != root; n = n.parent) {
+            sb.insert(0, '/').insert(0, n.name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A resource below the language root which defines a message or has
+     * descendants defining messages.
+     */
+    static final class Node {
+
+        final Node parent;
+
+        final String name;
+
+        /** The key of the message defined by the resource, <code>null</code> if none */
+        String key;
+
+        private Node[] children;
+
+        private int childCount;
+
+        /** Whether the children are sorted by name */
+        private boolean sorted = true;
+
+        Node(final Node parent, final String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        private void addChild(final Node child) {
+            if (children == null) {
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            children[childCount++] = child;
+            // children are appended while loading and only sorted once looked up
+            sorted = childCount == 1 || (sorted && BY_NAME.compare(children[childCount - 2], child) < 0);
+        }
+
+        private Node getChild(final String name) {
+            final int index = indexOf(name);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node removeChild(final String name) {
+            final int index = indexOf(name);
+            if (index < 0) {
+                return null;
+            }
+            final Node child = children[index];
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            children[--childCount] = null;
+            return child;
+        }
+
+        private int indexOf(final String name) {
+            if (childCount <= MAX_LINEAR_CHILDREN) {
+                for (int i = 0; i < childCount; i++) {
+                    if (children[i].name.equals(name)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            if (!sorted) {
+                Arrays.sort(children, 0, childCount, BY_NAME);
+                sorted = true;
+            }
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = children[mid].name.compareTo(name);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the first node of this subtree defining the key.
+         */
+        private Node find(final String key) {
+            if (key.equals(this.key)) {
+                return this;
+            }
+            for (int i = 0; i < childCount; i++) {
+                final Node node = children[i].find(key);
+                if (node != null) {
+                    return node;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.i18n.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the lookups in a {@link CompactDictionary} with the lookups in
+ * the previously used <code>LinkedHashMap</code> and the cost of building
+ * a dictionary from all entries with applying a single changed entry.
+ * <p>
+ * Run with <code>mvn -Pbenchmarks clean test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.sling.i18n.impl.CompactDictionaryBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompactDictionaryBenchmark {
+
+    @Param({ "100", "10000" })
+    private int entries;
+
+    private String[] keys;
+
+    private Map<String, Object> map;
+
+    private CompactDictionary dictionary;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        keys = new String[entries];
+        map = new LinkedHashMap<String, Object>();
+        final CompactDictionary.Builder builder = new CompactDictionary.Builder();
+        for (int i = 0; i < entries; i++) {
+            // copies, as the keys passed by the callers are not the pooled instances
+            keys[i] = new String("Message number " + i);
+            map.put("Message number " + i, "Nachricht Nummer " + i);
+            builder.put("Message number " + i, "Nachricht Nummer " + i);
+        }
+        dictionary = builder.build();
+    }
+
+    private String nextKey() {
+        next = (next + 1) % keys.length;
+        return keys[next];
+    }
+
+    @Benchmark
+    public Object lookupHashMap() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Object lookupCompact() {
+        return dictionary.get(nextKey());
+    }
+
+    @Benchmark
+    public CompactDictionary fullLoad() {
+        final CompactDictionary.Builder builder = new CompactDictionary.Builder();
+        for (int i = 0; i < keys.length; i++) {
+            builder.put(keys[i], "Nachricht Nummer " + i);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public CompactDictionary deltaUpdate() {
+        return new CompactDictionary.Builder(dictionary).put(nextKey(), "Geaendert").build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(CompactDictionaryBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.i18n.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link CompactDictionary} lookups, key order and the
+ * sharing of keys between dictionaries.
+ */
+public class CompactDictionaryTest extends TestCase {
+
+    public void test_empty() {
+        assertEquals(0, CompactDictionary.EMPTY.size());
+        assertNull(CompactDictionary.EMPTY.get("missing"));
+        assertFalse(CompactDictionary.EMPTY.keySet().iterator().hasNext());
+    }
+
+    public void test_get() {
+        CompactDictionary.Builder builder = new CompactDictionary.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.put("key" + i, "value" + i);
+        }
+        CompactDictionary dictionary = builder.build();
+        assertEquals(1000, dictionary.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value" + i, dictionary.get("key" + i));
+        }
+        assertNull(dictionary.get("key1000"));
+        assertTrue(dictionary.keySet().contains("key999"));
+        assertFalse(dictionary.keySet().contains("key1000"));
+    }
+
+    public void test_colliding_keys() {
+        // "Aa" and "BB" have the same hash code
+        CompactDictionary dictionary = new CompactDictionary.Builder()
+                .put("Aa", "1").put("BB", "2").put("AaAa", "3").put("BBBB", "4").put("AaBB", "5").build();
+        assertEquals("1", dictionary.get("Aa"));
+        assertEquals("2", dictionary.get("BB"));
+        assertEquals("3", dictionary.get("AaAa"));
+        assertEquals("4", dictionary.get("BBBB"));
+        assertEquals("5", dictionary.get("AaBB"));
+        assertNull(dictionary.get("BBAa"));
+    }
+
+    public void test_key_order() {
+        CompactDictionary dictionary = new CompactDictionary.Builder()
+                .put("c", "1").put("a", "2").put("b", "3").put("a", "4").build();
+        Iterator<String> keys = dictionary.keySet().iterator();
+        assertEquals("c", keys.next());
+        assertEquals("a", keys.next());
+        assertEquals("b", keys.next());
+        assertFalse(keys.hasNext());
+        assertEquals("4", dictionary.get("a"));
+    }
+
+    public void test_builder_from_dictionary() {
+        CompactDictionary dictionary = new CompactDictionary.Builder().put("a", "1").put("b", "2").build();
+        CompactDictionary changed = new CompactDictionary.Builder(dictionary).remove("a").put("c", "3").put("b", "4").build();
+
+        // the original dictionary is not modified
+        assertEquals("1", dictionary.get("a"));
+        assertEquals(2, dictionary.size());
+
+        assertNull(changed.get("a"));
+        assertEquals("4", changed.get("b"));
+        assertEquals("3", changed.get("c"));
+        assertEquals(Arrays.asList("b", "c"), Arrays.asList(changed.keySet().toArray()));
+    }
+
+    public void test_shared_keys() {
+        String key = new String("shared");
+        CompactDictionary german = new CompactDictionary.Builder().put(key, "geteilt").build();
+        CompactDictionary french = new CompactDictionary.Builder().put(new String("shared"), "partage").build();
+        assertSame(german.keySet().iterator().next(), french.keySet().iterator().next());
+    }
+}
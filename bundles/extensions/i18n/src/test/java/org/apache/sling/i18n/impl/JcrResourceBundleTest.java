@@ -20,10 +20,12 @@ package org.apache.sling.i18n.impl;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -45,6 +47,8 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.apache.sling.commons.testing.jcr.RepositoryTestBase;
 import org.apache.sling.commons.testing.jcr.RepositoryUtil;
@@ -670,6 +674,137 @@ public class JcrResourceBundleTest extends RepositoryTestBase {
         assertEquals(MESSAGES_DE.size(), counter);
     }
 
+    public void test_apply_changes() throws Exception {
+        Node appsI18n = getSession().getRootNode().addNode("apps").addNode("i18n", "nt:unstructured");
+        Node appsDe = appsI18n.addNode("de", "nt:folder");
+        appsDe.addMixin("mix:language");
+        appsDe.setProperty("jcr:language", "de");
+        getSession().save();
+
+        JcrResourceBundle bundle = new JcrResourceBundle(new Locale("de"), null, resolver);
+        assertEquals("Teller", bundle.getString("plate"));
+
+        // add a new message and overlay an existing one in /apps
+        Node libsDe = getSession().getNode("/libs/i18n/de");
+        Node glass = libsDe.addNode("glass", "sling:MessageEntry");
+        glass.setProperty("sling:message", "Glas");
+        Node plate = appsDe.addNode("plate", "sling:MessageEntry");
+        plate.setProperty("sling:message", "OTHER");
+        getSession().save();
+
+        List<ResourceChange> changes = new ArrayList<ResourceChange>();
+        changes.add(change(ChangeType.ADDED, glass.getPath()));
+        changes.add(change(ChangeType.ADDED, plate.getPath()));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Glas", bundle.getString("glass"));
+        assertEquals("OTHER", bundle.getString("plate"));
+        assertEquals(MESSAGES_DE.size() + 1, bundle.keySet().size());
+
+        // change a message
+        glass.setProperty("sling:message", "Trinkglas");
+        getSession().save();
+        changes.clear();
+        changes.add(change(ChangeType.CHANGED, glass.getPath()));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Trinkglas", bundle.getString("glass"));
+
+        // remove the overlay and a whole subtree
+        String platePath = plate.getPath();
+        plate.remove();
+        libsDe.getNode("s").remove();
+        getSession().save();
+        changes.clear();
+        changes.add(change(ChangeType.REMOVED, platePath));
+        changes.add(change(ChangeType.REMOVED, "/libs/i18n/de/s"));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Teller", bundle.getString("plate"));
+        assertFalse(bundle.keySet().contains("spoon"));
+        assertEquals(MESSAGES_DE.size(), bundle.keySet().size());
+
+        // same result as loading the bundle again
+        JcrResourceBundle reloaded = new JcrResourceBundle(new Locale("de"), null, resolver);
+        assertEquals(reloaded.keySet(), bundle.keySet());
+        for (String key : reloaded.keySet()) {
+            assertEquals(reloaded.getString(key), bundle.getString(key));
+        }
+    }
+
+    public void test_apply_changes_duplicate_keys() throws Exception {
+        Node libsDe = getSession().getNode("/libs/i18n/de");
+        Node first = libsDe.addNode("first", "sling:MessageEntry");
+        first.setProperty("sling:key", "duplicate");
+        first.setProperty("sling:message", "Erstes");
+        Node second = libsDe.addNode("second", "sling:MessageEntry");
+        second.setProperty("sling:key", "duplicate");
+        second.setProperty("sling:message", "Zweites");
+        getSession().save();
+
+        JcrResourceBundle bundle = new JcrResourceBundle(new Locale("de"), null, resolver);
+        assertEquals("Zweites", bundle.getString("duplicate"));
+
+        // the remaining definition applies again
+        second.remove();
+        getSession().save();
+        List<ResourceChange> changes = new ArrayList<ResourceChange>();
+        changes.add(change(ChangeType.REMOVED, "/libs/i18n/de/second"));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Erstes", bundle.getString("duplicate"));
+
+        // a definition added again
+        Node third = libsDe.addNode("third", "sling:MessageEntry");
+        third.setProperty("sling:key", "duplicate");
+        third.setProperty("sling:message", "Drittes");
+        getSession().save();
+        changes.clear();
+        changes.add(change(ChangeType.ADDED, third.getPath()));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Drittes", bundle.getString("duplicate"));
+
+        first.remove();
+        getSession().save();
+        changes.clear();
+        changes.add(change(ChangeType.REMOVED, "/libs/i18n/de/first"));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Drittes", bundle.getString("duplicate"));
+
+        third.remove();
+        getSession().save();
+        changes.clear();
+        changes.add(change(ChangeType.REMOVED, "/libs/i18n/de/third"));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertFalse(bundle.keySet().contains("duplicate"));
+        assertEquals(MESSAGES_DE.size(), bundle.keySet().size());
+    }
+
+    public void test_apply_changes_json() throws Exception {
+        Node appsI18n = getSession().getRootNode().addNode("apps").addNode("i18n", "nt:unstructured");
+        Node deJson = appsI18n.addNode("de.json", "nt:file");
+        deJson.addMixin("mix:language");
+        deJson.setProperty("jcr:language", "de");
+        Node content = deJson.addNode("jcr:content", "nt:resource");
+        content.setProperty("jcr:mimeType", "application/json");
+        content.setProperty("jcr:data", getSession().getValueFactory().createBinary(
+                new ByteArrayInputStream("{\"plate\": \"OTHER\"}".getBytes())));
+        getSession().save();
+
+        JcrResourceBundle bundle = new JcrResourceBundle(new Locale("de"), null, resolver);
+        assertEquals("OTHER", bundle.getString("plate"));
+
+        content.setProperty("jcr:data", getSession().getValueFactory().createBinary(
+                new ByteArrayInputStream("{\"fork\": \"OTHER\"}".getBytes())));
+        getSession().save();
+
+        List<ResourceChange> changes = new ArrayList<ResourceChange>();
+        changes.add(change(ChangeType.CHANGED, content.getPath()));
+        assertTrue(bundle.applyChanges(resolver, changes));
+        assertEquals("Teller", bundle.getString("plate"));
+        assertEquals("OTHER", bundle.getString("fork"));
+    }
+
+    private static ResourceChange change(ChangeType type, String path) {
+        return new ResourceChange(type, path, false, null, null, null);
+    }
+
     private class TestResource extends AbstractResource {
 
         private final Node node;
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.i18n.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link MessageIndex} bookkeeping of message definitions.
+ */
+public class MessageIndexTest extends TestCase {
+
+    private final MessageIndex index = new MessageIndex();
+
+    /**
+     * Adds a message at the relative path like a scan of the resource does.
+     */
+    private MessageIndex.Node define(final String relPath, final String key, final boolean defined) {
+        final MessageIndex.Node parent = index.getOrCreateParent(relPath);
+        final MessageIndex.Node node = index.newChild(parent, relPath.substring(relPath.lastIndexOf('/') + 1));
+        index.define(node, key, defined);
+        assertTrue(index.attach(node));
+        return node;
+    }
+
+    public void test_remove_subtree() {
+        index.startScan();
+        define("a/one", "one", false);
+        define("a/two", "two", false);
+        define("b/three", "three", false);
+        index.endScan();
+
+        final Map<String, List<MessageIndex.Node>> removed = index.remove("a");
+        assertEquals(2, removed.size());
+        assertEquals(Collections.emptyList(), removed.get("one"));
+        assertEquals(Collections.emptyList(), removed.get("two"));
+
+        assertTrue(index.remove("a").isEmpty());
+        assertTrue(index.remove("a/one").isEmpty());
+        assertEquals(Collections.singleton("three"), index.remove("b/three").keySet());
+    }
+
+    public void test_duplicate_keys() {
+        index.startScan();
+        final MessageIndex.Node first = define("a/key", "key", false);
+        final MessageIndex.Node second = define("b/key", "key", true);
+        index.endScan();
+
+        // the other definition remains
+        Map<String, List<MessageIndex.Node>> removed = index.remove("b");
+        assertEquals(Collections.singletonList(first), removed.get("key"));
+        assertEquals("a/key", index.getPath(removed.get("key").get(0)));
+
+        // a definition added by a change finds the existing one
+        final MessageIndex.Node third = define("c/key", "key", true);
+        removed = index.remove("a/key");
+        assertEquals(Collections.singletonList(third), removed.get("key"));
+        assertNotSame(second, third);
+
+        removed = index.remove("c");
+        assertEquals(Collections.emptyList(), removed.get("key"));
+    }
+
+    public void test_many_children() {
+        index.startScan();
+        for (int i = 100; i > 0; i--) {
+            define("folder/key" + i, "key" + i, false);
+        }
+        index.endScan();
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(Collections.singleton("key" + i), index.remove("folder/key" + i).keySet());
+        }
+        // empty folders are removed as well
+        assertTrue(index.remove("folder").isEmpty());
+    }
+
+    public void test_path() {
+        final MessageIndex.Node node = define("a/b/c", "c", false);
+        assertEquals("a/b/c", index.getPath(node));
+        assertEquals("", index.getPath(index.getRoot()));
+    }
+}
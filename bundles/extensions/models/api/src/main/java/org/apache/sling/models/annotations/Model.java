@@ -66,4 +66,15 @@ public @interface Model {
      */
     public String[] resourceType() default {};
 
+    /**
+     * If set to true, the created model instance is cached and returned again when the same adaptable
+     * is adapted to the same model type. For request adaptables the cache lives as long as the request.
+     * For all other adaptables the model is only held weakly, so it is returned again only as long as
+     * it is still referenced elsewhere. Adaptables are compared by identity.
+     * Only enable this for models which do not change after being created.
+     *
+     * @return true if model instances should be cached
+     */
+    public boolean cache() default false;
+
 }
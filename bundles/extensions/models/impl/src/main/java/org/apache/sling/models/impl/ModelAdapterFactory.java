@@ -23,7 +23,6 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +31,7 @@ import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -40,7 +40,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
-import javax.annotation.PostConstruct;
+import javax.servlet.ServletRequest;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
@@ -60,7 +60,6 @@ import org.apache.sling.api.adapter.AdapterFactory;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.commons.osgi.RankedServices;
-import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.ValidationStrategy;
 import org.apache.sling.models.factory.InvalidAdaptableException;
 import org.apache.sling.models.factory.InvalidModelException;
@@ -144,6 +143,12 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
 
     private static final Logger log = LoggerFactory.getLogger(ModelAdapterFactory.class);
 
+    /** Name of the request attribute holding the model instances cached for a request. */
+    private static final String REQUEST_CACHE_ATTRIBUTE = ModelAdapterFactory.class.getName() + ".RequestCache";
+
+    /** Model instances cached for adaptables other than requests, only used for models with caching enabled. */
+    private final WeakModelCache adapterCache = new WeakModelCache();
+
     private static final int DEFAULT_MAX_RECURSION_DEPTH = 20;
 
     @Property(label = "Maximum Recursion Depth", description = "Maximum depth adaptation will be attempted.", intValue = DEFAULT_MAX_RECURSION_DEPTH)
@@ -212,7 +217,7 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
     private boolean internalCanCreateFromAdaptable(Object adaptable, Class<?> requestedType) throws ModelClassException {
         try {
             ModelClass<?> modelClass = getImplementationTypeForAdapterType(requestedType, adaptable);
-            Class<?>[] declaredAdaptable = modelClass.getModelAnnotation().adaptables();
+            Class<?>[] declaredAdaptable = modelClass.getAdaptables();
             for (Class<?> clazz : declaredAdaptable) {
                 if (clazz.isInstance(adaptable)) {
                     return true;
@@ -282,27 +287,39 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
                 String msg = String.format("Provided Adapter class does not have a Model annotation: %s", modelClass.getType());
                 return new Result<ModelType>(new ModelClassException(msg));
             }
+            if (modelClass.isCached()) {
+                Object cachedModel = getCachedModel(adaptable, requestedType);
+                if (cachedModel != null) {
+                    return new Result<ModelType>((ModelType) cachedModel);
+                }
+            }
             boolean isAdaptable = false;
 
-            Model modelAnnotation = modelClass.getModelAnnotation();
-            Class<?>[] declaredAdaptable = modelAnnotation.adaptables();
+            Class<?>[] declaredAdaptable = modelClass.getAdaptables();
             for (Class<?> clazz : declaredAdaptable) {
                 if (clazz.isInstance(adaptable)) {
                     isAdaptable = true;
+                    break;
                 }
             }
             if (!isAdaptable) {
                 String msg = String.format("Adaptables (%s) are not acceptable for the model class: %s", StringUtils.join(declaredAdaptable), modelClass.getType());
                 return new Result<ModelType>(new InvalidAdaptableException(msg)); 
             } else {
-                RuntimeException t = validateModel(adaptable, modelClass.getType(), modelAnnotation);
+                RuntimeException t = validateModel(adaptable, modelClass.getType(), modelClass.getValidationStrategy());
                 if (t != null) {
                     return new Result<ModelType>(t);
                 }
                 if (modelClass.getType().isInterface()) {
                     Result<InvocationHandler> handlerResult = createInvocationHandler(adaptable, modelClass);
                     if (handlerResult.wasSuccessful()) {
-                        ModelType model = (ModelType) Proxy.newProxyInstance(modelClass.getType().getClassLoader(), new Class<?>[] { modelClass.getType() }, handlerResult.getValue());
+                        ModelType model;
+                        try {
+                            model = (ModelType) modelClass.getProxyConstructor().newInstance(handlerResult.getValue());
+                        } catch (Exception e) {
+                            String msg = String.format("Unable to create proxy for model %s", modelClass.getType());
+                            return new Result<ModelType>(new ModelClassException(msg, e));
+                        }
                         result = new Result<ModelType>(model);
                     } else {
                         return new Result<ModelType>(handlerResult.getThrowable());
@@ -315,6 +332,9 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
                         return new Result<ModelType>(new ModelClassException(msg, e));
                     }
                 }
+                if (modelClass.isCached() && result.wasSuccessful()) {
+                    cacheModel(adaptable, requestedType, result.getValue());
+                }
             }
             return result;
         } finally {
@@ -322,12 +342,63 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         }
     }
     
-    private <ModelType> RuntimeException validateModel(Object adaptable, Class<ModelType> modelType, Model modelAnnotation) {
-        if (modelAnnotation.validation() != ValidationStrategy.DISABLED) {
+    /**
+     * Gets the model instance cached for the given adaptable and requested type.
+     * @param adaptable the adaptable
+     * @param requestedType the requested model type
+     * @return the cached model or null
+     */
+    private Object getCachedModel(final Object adaptable, final Class<?> requestedType) {
+        if (adaptable instanceof ServletRequest) {
+            final Map<Object, Map<Class<?>, Object>> requestCache = getRequestCache((ServletRequest) adaptable);
+            synchronized (requestCache) {
+                final Map<Class<?>, Object> models = requestCache.get(adaptable);
+                return models == null ? null : models.get(requestedType);
+            }
+        }
+        return adapterCache.get(adaptable, requestedType);
+    }
+
+    private void cacheModel(final Object adaptable, final Class<?> requestedType, final Object model) {
+        if (adaptable instanceof ServletRequest) {
+            final Map<Object, Map<Class<?>, Object>> requestCache = getRequestCache((ServletRequest) adaptable);
+            synchronized (requestCache) {
+                Map<Class<?>, Object> models = requestCache.get(adaptable);
+                if (models == null) {
+                    models = new HashMap<Class<?>, Object>();
+                    requestCache.put(adaptable, models);
+                }
+                models.put(requestedType, model);
+            }
+        } else {
+            adapterCache.put(adaptable, requestedType, model);
+        }
+    }
+
+    /**
+     * Gets the cache of model instances kept in a request attribute, creating it if necessary.
+     * It is released together with the request, so the models can be referenced strongly.
+     * @param request the request
+     * @return the model instances by adaptable and requested type
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Map<Class<?>, Object>> getRequestCache(final ServletRequest request) {
+        Map<Object, Map<Class<?>, Object>> requestCache =
+                (Map<Object, Map<Class<?>, Object>>) request.getAttribute(REQUEST_CACHE_ATTRIBUTE);
+        if (requestCache == null) {
+            // keyed by identity as request wrappers of includes share the attributes
+            requestCache = Collections.synchronizedMap(new IdentityHashMap<Object, Map<Class<?>, Object>>());
+            request.setAttribute(REQUEST_CACHE_ATTRIBUTE, requestCache);
+        }
+        return requestCache;
+    }
+
+    private <ModelType> RuntimeException validateModel(Object adaptable, Class<ModelType> modelType, ValidationStrategy validationStrategy) {
+        if (validationStrategy != ValidationStrategy.DISABLED) {
             if (modelValidation == null) {
                 return new ValidationException("No active service for ModelValidation found, therefore no validation can be performed.");
             }
-            return modelValidation.validate(adaptable, modelType, modelAnnotation.validation() == ValidationStrategy.REQUIRED);
+            return modelValidation.validate(adaptable, modelType, validationStrategy == ValidationStrategy.REQUIRED);
         }
         return null;
     }
@@ -488,15 +559,19 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         DisposalCallbackRegistryImpl registry = new DisposalCallbackRegistryImpl();
         registerCallbackRegistry(handler, registry);
 
-        MissingElementsException missingElements = new MissingElementsException("Could not create all mandatory methods for interface of model " + modelClass);
+        // only created on the first missing element, filling in the stack trace is expensive
+        MissingElementsException missingElements = null;
         for (InjectableMethod method : injectableMethods) {
             RuntimeException t = injectElement(method, adaptable, registry, callback);
             if (t != null) {
+                if (missingElements == null) {
+                    missingElements = new MissingElementsException("Could not create all mandatory methods for interface of model " + modelClass);
+                }
                 missingElements.addMissingElementExceptions(new MissingElementException(method.getAnnotatedElement(), t));
             }
         }
         registry.seal();
-        if (!missingElements.isEmpty()) {
+        if (missingElements != null) {
             return new Result<InvocationHandler>(missingElements);
         }
         return new Result<InvocationHandler>(handler);
@@ -517,7 +592,7 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         }
 
         final ModelType object;
-        if (constructorToUse.getConstructor().getParameterTypes().length == 0) {
+        if (constructorToUse.getConstructorParameters().length == 0) {
             // no parameters for constructor injection? instantiate it right away
             object = constructorToUse.getConstructor().newInstance();
         } else {
@@ -548,20 +623,23 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         InjectCallback callback = new SetFieldCallback(object);
 
         InjectableField[] injectableFields = modelClass.getInjectableFields();
-        MissingElementsException missingElements = new MissingElementsException("Could not inject all required fields into " + modelClass.getType());
+        MissingElementsException missingElements = null;
         for (InjectableField field : injectableFields) {
             RuntimeException t = injectElement(field, adaptable, registry, callback);
             if (t != null) {
+                if (missingElements == null) {
+                    missingElements = new MissingElementsException("Could not inject all required fields into " + modelClass.getType());
+                }
                 missingElements.addMissingElementExceptions(new MissingElementException(field.getAnnotatedElement(), t));
             }
         }
 
         registry.seal();
-        if (!missingElements.isEmpty()) {
+        if (missingElements != null) {
             return new Result<ModelType>(missingElements);
         }
         try {
-            invokePostConstruct(object);
+            invokePostConstruct(object, modelClass);
         } catch (InvocationTargetException e) {
             return new Result<ModelType>(new PostConstructException("Post-construct method has thrown an exception for model " + modelClass.getType(), e.getCause()));
         } catch (IllegalAccessException e) {
@@ -587,15 +665,15 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
             }
             // compatibility mode for sling models implementation <= 1.0.6:
             // support constructor without @Inject if it has exactly one parameter matching the adaptable class
-            final Class<?>[] paramTypes = constructor.getConstructor().getParameterTypes();
-            if (paramTypes.length == 1) {
-                Class<?> paramType = constructor.getConstructor().getParameterTypes()[0];
+            final int paramCount = constructor.getConstructorParameters().length;
+            if (paramCount == 1) {
+                Class<?> paramType = constructor.getParameterType(0);
                 if (paramType.isInstance(adaptable)) {
                     return constructor;
                 }
             }
             // if no constructor for injection found use public constructor without any params
-            if (constructor.getConstructor().getParameterTypes().length == 0) {
+            if (paramCount == 0) {
                 return constructor;
             }
         }
@@ -610,14 +688,17 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         List<Object> paramValues = new ArrayList<Object>(Arrays.asList(new Object[parameters.length]));
         InjectCallback callback = new SetConstructorParameterCallback(paramValues);
 
-        MissingElementsException missingElements = new MissingElementsException("Required constructor parameters were not able to be injected on model " + modelClass.getType());
+        MissingElementsException missingElements = null;
         for (int i = 0; i < parameters.length; i++) {
             RuntimeException t = injectElement(parameters[i], adaptable, registry, callback);
             if (t != null) {
+                if (missingElements == null) {
+                    missingElements = new MissingElementsException("Required constructor parameters were not able to be injected on model " + modelClass.getType());
+                }
                 missingElements.addMissingElementExceptions(new MissingElementException(parameters[i].getAnnotatedElement(), t));
             }
         }
-        if (!missingElements.isEmpty()) {
+        if (missingElements != null) {
             return new Result<ModelType>(missingElements);
         }
         return new Result<ModelType>(constructor.getConstructor().newInstance(paramValues.toArray(new Object[paramValues.size()])));
@@ -715,43 +796,9 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         return element.getName();
     }
 
-    private boolean addMethodIfNotOverriden(List<Method> methods, Method newMethod) {
-        for (Method method : methods) {
-            if (method.getName().equals(newMethod.getName())) {
-                if (Arrays.equals(method.getParameterTypes(),newMethod.getParameterTypes())) {
-                    return false;
-                }
-            }
-        }
-        methods.add(newMethod);
-        return true;
-    }
-
-    private void invokePostConstruct(Object object) throws InvocationTargetException, IllegalAccessException {
-        Class<?> clazz = object.getClass();
-        List<Method> postConstructMethods = new ArrayList<Method>();
-        while (clazz != null) {
-            Method[] methods = clazz.getDeclaredMethods();
-            for (Method method : methods) {
-                if (method.isAnnotationPresent(PostConstruct.class)) {
-                    addMethodIfNotOverriden(postConstructMethods, method);
-                }
-            }
-            clazz = clazz.getSuperclass();
-        }
-        Collections.reverse(postConstructMethods);
-        for (Method method : postConstructMethods) {
-            boolean accessible = method.isAccessible();
-            try {
-                if (!accessible) {
-                    method.setAccessible(true);
-                }
-                method.invoke(object);
-            } finally {
-                if (!accessible) {
-                    method.setAccessible(false);
-                }
-            }
+    private void invokePostConstruct(Object object, ModelClass<?> modelClass) throws InvocationTargetException, IllegalAccessException {
+        for (Method method : modelClass.getPostConstructMethods()) {
+            method.invoke(object);
         }
     }
 
@@ -759,18 +806,11 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
         Field field = injectableField.getField();
         Result<Object> result = adaptIfNecessary(value, field.getType(), field.getGenericType());
         if (result.wasSuccessful()) {
-            boolean accessible = field.isAccessible();
             try {
-                if (!accessible) {
-                    field.setAccessible(true);
-                }
+                // the field has been made accessible once by InjectableField
                 field.set(createdObject, result.getValue());
             } catch (Exception e) {
                 return new ModelClassException("Could not inject field due to reflection issues", e);
-            } finally {
-                if (!accessible) {
-                    field.setAccessible(false);
-                }
             }
             return null;
         } else {
@@ -938,6 +978,7 @@ public class ModelAdapterFactory implements AdapterFactory, Runnable, ModelFacto
     protected void deactivate() {
         this.listener.unregisterAll();
         this.adapterImplementations.removeAll();
+        this.adapterCache.clear();
         if (jobRegistration != null) {
             jobRegistration.unregister();
             jobRegistration = null;
@@ -19,13 +19,17 @@
 package org.apache.sling.models.impl;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import org.apache.commons.lang.ClassUtils;
@@ -62,6 +66,40 @@ public final class ReflectionUtil {
 
     }
 
+    /**
+     * Collects the methods annotated with {@link PostConstruct} of the given type and its super classes.
+     * Methods overridden in a sub class are only contained once, super class methods come first.
+     *
+     * @param type the model type
+     * @return the post construct methods in invocation order
+     */
+    public static List<Method> collectPostConstructMethods(Class<?> type) {
+        List<Method> result = new ArrayList<Method>();
+        while (type != null) {
+            Method[] methods = type.getDeclaredMethods();
+            for (Method method : methods) {
+                if (method.isAnnotationPresent(PostConstruct.class)) {
+                    addMethodIfNotOverriden(result, method);
+                }
+            }
+            type = type.getSuperclass();
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static boolean addMethodIfNotOverriden(List<Method> methods, Method newMethod) {
+        for (Method method : methods) {
+            if (method.getName().equals(newMethod.getName())) {
+                if (Arrays.equals(method.getParameterTypes(),newMethod.getParameterTypes())) {
+                    return false;
+                }
+            }
+        }
+        methods.add(newMethod);
+        return true;
+    }
+
     private static void addAnnotatedMethodsFromInterfaces(Class<?> type, List<Method> result) {
         for (Class<?> iface : type.getInterfaces()) {
             Method[] methods = iface.getDeclaredMethods();
@@ -84,6 +122,22 @@ public final class ReflectionUtil {
         }
     }
 
+    /**
+     * Suppresses the Java language access checks for the given element if it is not accessible yet.
+     * If a security manager denies this, the element is left untouched.
+     *
+     * @param object the field, method or constructor
+     */
+    public static void makeAccessible(AccessibleObject object) {
+        if (!object.isAccessible()) {
+            try {
+                object.setAccessible(true);
+            } catch (SecurityException e) {
+                // ignore, fall back to the regular access check
+            }
+        }
+    }
+
     /**
      * Get an annotation from either the element itself or on any of the
      * element's annotations (meta-annotations).
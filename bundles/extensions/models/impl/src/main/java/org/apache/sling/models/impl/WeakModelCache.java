@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches model instances for adaptables which are not requests. Adaptables are compared by identity
+ * and both adaptables and models are only weakly referenced: models usually reference their adaptable,
+ * so holding them any stronger would keep the adaptable and the entry alive forever.
+ */
+class WeakModelCache {
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    private final Map<AdaptableKey, Map<Class<?>, WeakReference<Object>>> entries =
+            new HashMap<AdaptableKey, Map<Class<?>, WeakReference<Object>>>();
+
+    /**
+     * @param adaptable the adaptable
+     * @param type the requested model type
+     * @return the cached model or null if none is cached or it has been garbage collected
+     */
+    synchronized Object get(Object adaptable, Class<?> type) {
+        expunge();
+        Map<Class<?>, WeakReference<Object>> models = entries.get(new AdaptableKey(adaptable, null));
+        if (models == null) {
+            return null;
+        }
+        WeakReference<Object> reference = models.get(type);
+        return reference == null ? null : reference.get();
+    }
+
+    synchronized void put(Object adaptable, Class<?> type, Object model) {
+        expunge();
+        AdaptableKey key = new AdaptableKey(adaptable, queue);
+        Map<Class<?>, WeakReference<Object>> models = entries.get(key);
+        if (models == null) {
+            models = new HashMap<Class<?>, WeakReference<Object>>();
+            entries.put(key, models);
+        }
+        models.put(type, new WeakReference<Object>(model));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        while (queue.poll() != null) {
+            // drop references of removed entries
+        }
+    }
+
+    synchronized int size() {
+        expunge();
+        return entries.size();
+    }
+
+    private void expunge() {
+        java.lang.ref.Reference<?> ref = queue.poll();
+        while (ref != null) {
+            entries.remove(ref);
+            ref = queue.poll();
+        }
+    }
+
+    /**
+     * Weak reference to an adaptable which uses identity for equality. A cleared key is only
+     * equal to itself, so it can still be removed once it has been enqueued.
+     */
+    private static final class AdaptableKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        AdaptableKey(Object adaptable, ReferenceQueue<Object> queue) {
+            super(adaptable, queue);
+            this.hash = System.identityHashCode(adaptable);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AdaptableKey)) {
+                return false;
+            }
+            Object adaptable = get();
+            return adaptable != null && adaptable == ((AdaptableKey) obj).get();
+        }
+    }
+
+}
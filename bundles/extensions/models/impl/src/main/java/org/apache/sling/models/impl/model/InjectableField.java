@@ -31,6 +31,8 @@ public class InjectableField extends AbstractInjectableElement {
     public InjectableField(Field field, StaticInjectAnnotationProcessorFactory[] processorFactories, DefaultInjectionStrategy defaultInjectionStrategy) {
         super(field, ReflectionUtil.mapPrimitiveClasses(field.getGenericType()), field.getName(), processorFactories, defaultInjectionStrategy);
         this.field = field;
+        // make accessible once here instead of toggling the flag on every injection
+        ReflectionUtil.makeAccessible(field);
     }
     
     public Field getField() {
@@ -20,12 +20,15 @@ package org.apache.sling.models.impl.model;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.ValidationStrategy;
 import org.apache.sling.models.impl.ReflectionUtil;
 import org.apache.sling.models.spi.injectorspecific.StaticInjectAnnotationProcessorFactory;
 
@@ -33,19 +36,32 @@ public class ModelClass<ModelType> {
 
     private final Class<ModelType> type;
     private final Model modelAnnotation;
+    private final Class<?>[] adaptables;
+    private final ValidationStrategy validationStrategy;
+    private final boolean cached;
     final DefaultInjectionStrategy defaultInjectionStrategy;
     private volatile ModelClassConstructor[] constructors;
     private volatile InjectableField[] injectableFields;
     private volatile InjectableMethod[] injectableMethods;
+    private final Method[] postConstructMethods;
+    private volatile Constructor<?> proxyConstructor;
 
     public ModelClass(Class<ModelType> type, StaticInjectAnnotationProcessorFactory[] processorFactories) {
         this.type = type;
         this.modelAnnotation = type.getAnnotation(Model.class);
         if (modelAnnotation == null) {
+            adaptables = new Class<?>[0];
+            validationStrategy = ValidationStrategy.DISABLED;
+            cached = false;
             defaultInjectionStrategy = DefaultInjectionStrategy.REQUIRED;
         } else {
+            // read the annotation values once, each call on the annotation goes through a proxy
+            adaptables = modelAnnotation.adaptables();
+            validationStrategy = modelAnnotation.validation();
+            cached = modelAnnotation.cache();
             defaultInjectionStrategy = modelAnnotation.defaultInjectionStrategy();
         }
+        this.postConstructMethods = getPostConstructMethods(type);
         updateProcessorFactories(processorFactories);
     }
     
@@ -100,6 +116,19 @@ public class ModelClass<ModelType> {
         return array;
     }
 
+    private static Method[] getPostConstructMethods(Class<?> type) {
+        if (type.isInterface()) {
+            return new Method[0];
+        }
+        List<Method> postConstructMethods = ReflectionUtil.collectPostConstructMethods(type);
+        Method[] array = postConstructMethods.toArray(new Method[postConstructMethods.size()]);
+        for (Method method : array) {
+            // make accessible once here instead of toggling the flag on every model instantiation
+            ReflectionUtil.makeAccessible(method);
+        }
+        return array;
+    }
+
     public Class<ModelType> getType() {
         return this.type;
     }
@@ -111,6 +140,24 @@ public class ModelClass<ModelType> {
     public boolean hasModelAnnotation() {
         return this.modelAnnotation != null;
     }
+
+    /**
+     * @return the adaptables of the model annotation. The returned array must not be modified.
+     */
+    public Class<?>[] getAdaptables() {
+        return this.adaptables;
+    }
+
+    public ValidationStrategy getValidationStrategy() {
+        return this.validationStrategy;
+    }
+
+    /**
+     * @return true if instances of this model should be cached per adaptable
+     */
+    public boolean isCached() {
+        return this.cached;
+    }
     
     public ModelClassConstructor[] getConstructors() {
         return constructors;
@@ -124,4 +171,26 @@ public class ModelClass<ModelType> {
         return this.injectableMethods;
     }
 
+    /**
+     * @return the post construct methods in invocation order, already made accessible
+     */
+    public Method[] getPostConstructMethods() {
+        return this.postConstructMethods;
+    }
+
+    /**
+     * Gets the constructor of the dynamic proxy class implementing this model interface.
+     * The proxy class is looked up on first use only.
+     * @return the proxy constructor taking an {@link java.lang.reflect.InvocationHandler}
+     * @throws NoSuchMethodException if the proxy class has no such constructor
+     */
+    public Constructor<?> getProxyConstructor() throws NoSuchMethodException {
+        Constructor<?> constructor = this.proxyConstructor;
+        if (constructor == null) {
+            constructor = Proxy.getProxyClass(type.getClassLoader(), type).getConstructor(InvocationHandler.class);
+            this.proxyConstructor = constructor;
+        }
+        return constructor;
+    }
+
 }
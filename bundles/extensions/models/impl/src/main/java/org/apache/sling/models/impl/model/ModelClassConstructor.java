@@ -57,6 +57,10 @@ public class ModelClassConstructor<ModelType> {
         return hasInjectAnnotation;
     }
 
+    public Class<?> getParameterType(int index) {
+        return (Class<?>) constructorParametersArray[index].getParameterType();
+    }
+
     public ConstructorParameter[] getConstructorParameters() {
         return constructorParametersArray;
     };
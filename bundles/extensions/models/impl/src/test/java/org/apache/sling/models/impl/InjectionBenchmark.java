@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.models.impl;
+
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.spi.DisposalCallbackRegistry;
+import org.apache.sling.models.spi.Injector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.ComponentContext;
+
+/**
+ * Measures the cost of creating models with field, constructor and interface injection.
+ * The values are provided by a map based injector, so the numbers reflect the overhead
+ * of the model adapter factory itself.
+ * <p>
+ * Run with <code>mvn -Pbenchmarks clean test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.sling.models.impl.InjectionBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InjectionBenchmark {
+
+    private ModelAdapterFactory factory;
+
+    private Map<String, Object> adaptable;
+
+    @Setup
+    public void setup() {
+        ComponentContext componentCtx = mock(ComponentContext.class);
+        when(componentCtx.getBundleContext()).thenReturn(mock(BundleContext.class));
+        when(componentCtx.getProperties()).thenReturn(new Hashtable<String, Object>());
+
+        factory = new ModelAdapterFactory();
+        factory.activate(componentCtx);
+        factory.bindInjector(new MapInjector(), new ServicePropertiesMap(1, 1));
+        factory.adapterImplementations.addClassesAsAdapterAndImplementation(FieldModel.class, ConstructorModel.class, InterfaceModel.class);
+
+        adaptable = new HashMap<String, Object>();
+        adaptable.put("first", "value");
+        adaptable.put("second", 42);
+        adaptable.put("third", Boolean.TRUE);
+        adaptable.put("fourth", 4711L);
+    }
+
+    /**
+     * Releases the disposal callback registries of collected models, which is
+     * otherwise done by the scheduled cleanup job.
+     */
+    @TearDown(Level.Iteration)
+    public void cleanup() {
+        factory.run();
+    }
+
+    @Benchmark
+    public Object fieldInjection() {
+        return factory.createModel(adaptable, FieldModel.class);
+    }
+
+    @Benchmark
+    public Object constructorInjection() {
+        return factory.createModel(adaptable, ConstructorModel.class);
+    }
+
+    @Benchmark
+    public Object interfaceInjection() {
+        return factory.createModel(adaptable, InterfaceModel.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(InjectionBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Model(adaptables = Map.class)
+    public static class FieldModel {
+
+        @Inject
+        private String first;
+
+        @Inject
+        private int second;
+
+        @Inject
+        private boolean third;
+
+        @Inject
+        private long fourth;
+
+        private int sum;
+
+        @PostConstruct
+        protected void init() {
+            sum = first.length() + second;
+        }
+
+        public int getSum() {
+            return sum;
+        }
+    }
+
+    @Model(adaptables = Map.class)
+    public static class ConstructorModel {
+
+        private final String first;
+
+        private final int second;
+
+        @Inject
+        public ConstructorModel(@Named("first") String first, @Named("second") int second,
+                @Named("third") boolean third, @Named("fourth") long fourth) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public String getFirst() {
+            return first;
+        }
+
+        public int getSecond() {
+            return second;
+        }
+    }
+
+    @Model(adaptables = Map.class)
+    public static interface InterfaceModel {
+
+        @Inject
+        String getFirst();
+
+        @Inject
+        int getSecond();
+
+        @Inject
+        boolean getThird();
+
+        @Inject
+        long getFourth();
+    }
+
+    private static class MapInjector implements Injector {
+
+        @Override
+        public @Nonnull String getName() {
+            return "map";
+        }
+
+        @Override
+        public Object getValue(@Nonnull Object adaptable, String name, @Nonnull Type declaredType, @Nonnull AnnotatedElement element,
+                @Nonnull DisposalCallbackRegistry callbackRegistry) {
+            if (adaptable instanceof Map) {
+                return ((Map<?, ?>) adaptable).get(name);
+            }
+            return null;
+        }
+    }
+}
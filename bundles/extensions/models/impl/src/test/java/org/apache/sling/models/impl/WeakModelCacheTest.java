@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.impl;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+public class WeakModelCacheTest {
+
+    private final WeakModelCache cache = new WeakModelCache();
+
+    @Test
+    public void testAdaptablesComparedByIdentity() {
+        String adaptable1 = new String("adaptable");
+        String adaptable2 = new String("adaptable");
+        Object model = new Object();
+        cache.put(adaptable1, Object.class, model);
+
+        assertSame(model, cache.get(adaptable1, Object.class));
+        assertNull(cache.get(adaptable2, Object.class));
+        assertNull(cache.get(adaptable1, String.class));
+    }
+
+    @Test
+    public void testModelReferencingAdaptableIsReleased() throws InterruptedException {
+        Object adaptable = new Object();
+        cache.put(adaptable, ReferencingModel.class, new ReferencingModel(adaptable));
+        WeakReference<Object> adaptableReference = new WeakReference<Object>(adaptable);
+        adaptable = null;
+
+        for (int i = 0; i < 50 && adaptableReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(adaptableReference.get());
+        assertEquals(0, cache.size());
+    }
+
+    private static class ReferencingModel {
+
+        @SuppressWarnings("unused")
+        private final Object adaptable;
+
+        ReferencingModel(Object adaptable) {
+            this.adaptable = adaptable;
+        }
+    }
+
+}
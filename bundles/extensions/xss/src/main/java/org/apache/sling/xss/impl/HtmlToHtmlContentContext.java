@@ -16,9 +16,17 @@
  ******************************************************************************/
 package org.apache.sling.xss.impl;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.owasp.validator.html.AntiSamy;
 import org.owasp.validator.html.CleanResults;
+import org.owasp.validator.html.InternalPolicy;
+import org.owasp.validator.html.Policy;
 import org.owasp.validator.html.PolicyException;
 import org.owasp.validator.html.ScanException;
 import org.slf4j.Logger;
@@ -30,20 +38,64 @@ import org.slf4j.LoggerFactory;
  * <p>
  * The cleanup is performed using the AntiSamy library found at
  * <a href="http://www.owasp.org/index.php/AntiSamy">http://www.owasp.org/index.php/AntiSamy</a>
+ * <p>
+ * Input without any markup is handled without calling AntiSamy at all. Markup is
+ * scanned with the default scanner of AntiSamy, unless another scanner is
+ * configured. The results of scanning markup are kept in a bounded cache, as the
+ * same rich text fragments are usually filtered over and over again.
  */
 public class HtmlToHtmlContentContext implements XSSFilterRule {
 
+    /** The maximum number of cached scan results */
+    static final int CACHE_SIZE = 1000;
+
+    /** Only inputs up to this length are cached */
+    static final int MAX_CACHED_LENGTH = 8192;
+
     /**
      * Logger
      */
     private Logger log = LoggerFactory.getLogger(this.getClass());
 
+    /** Scan with the scanner AntiSamy uses by default */
+    static final int DEFAULT_SCAN_TYPE = -1;
+
+    /** The AntiSamy scan type, {@link AntiSamy#DOM}, {@link AntiSamy#SAX} or {@link #DEFAULT_SCAN_TYPE} */
+    private final int scanType;
+
+    private final ConcurrentMap<CacheKey, ScanResult> cache = new ConcurrentHashMap<CacheKey, ScanResult>();
+
+    /** Incremented on each cache access, the ticks order the cached results by their last use */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Creates a context scanning markup with the default scanner of AntiSamy.
+     */
+    public HtmlToHtmlContentContext() {
+        this(DEFAULT_SCAN_TYPE);
+    }
+
+    /**
+     * Creates a context scanning markup with the given AntiSamy scanner.
+     *
+     * @param scanType {@link AntiSamy#DOM}, {@link AntiSamy#SAX} or {@link #DEFAULT_SCAN_TYPE}
+     */
+    public HtmlToHtmlContentContext(final int scanType) {
+        this.scanType = scanType;
+    }
+
     /**
      * @see XSSFilterRule#check(PolicyHandler, String)
      */
     public boolean check(final PolicyHandler policyHandler, final String str) {
+        if (isPlainText(policyHandler, str)) {
+            // text never contains errors, see filterPlainText(String)
+            return true;
+        }
         try {
-            return policyHandler.getAntiSamy().scan(str).getNumberOfErrors() == 0;
+            return scan(policyHandler, str).errors.isEmpty();
         } catch (final ScanException se) {
             throw new RuntimeException("Unable to scan input");
         } catch (final PolicyException pe) {
@@ -55,18 +107,18 @@ public class HtmlToHtmlContentContext implements XSSFilterRule {
      * @see XSSFilterRule#filter(PolicyHandler, java.lang.String)
      */
     public String filter(final PolicyHandler policyHandler, final String str) {
+        if (isPlainText(policyHandler, str)) {
+            return escapePlainText(str);
+        }
         try {
             log.debug("Protecting (HTML -> HTML) :\n{}", str);
-            final CleanResults results = policyHandler.getAntiSamy().scan(str);
-            final String cleaned = results.getCleanHTML();
-            @SuppressWarnings("unchecked")
-            final List<String> errors = results.getErrorMessages();
-            for (final String error : errors) {
+            final ScanResult result = scan(policyHandler, str);
+            for (final String error : result.errors) {
                 log.info("AntiSamy warning: {}", error);
             }
-            log.debug("Protected (HTML -> HTML):\n{}", cleaned);
+            log.debug("Protected (HTML -> HTML):\n{}", result.cleanHTML);
 
-            return cleaned;
+            return result.cleanHTML;
         } catch (final ScanException se) {
             throw new RuntimeException("Unable to scan input");
         } catch (final PolicyException pe) {
@@ -74,10 +126,169 @@ public class HtmlToHtmlContentContext implements XSSFilterRule {
         }
     }
 
+    private ScanResult scan(final PolicyHandler policyHandler, final String str) throws ScanException, PolicyException {
+        final CacheKey key = (str != null && str.length() <= MAX_CACHED_LENGTH) ? new CacheKey(policyHandler, str) : null;
+        ScanResult result = (key == null) ? null : cache.get(key);
+        if (result == null) {
+            final AntiSamy antiSamy = policyHandler.getAntiSamy();
+            final CleanResults results = (scanType == DEFAULT_SCAN_TYPE) ? antiSamy.scan(str) : antiSamy.scan(str, scanType);
+            @SuppressWarnings("unchecked")
+            final List<String> errors = results.getErrorMessages();
+            result = new ScanResult(results.getCleanHTML(), errors);
+            if (key != null) {
+                result.lastAccess = clock.incrementAndGet();
+                cache.put(key, result);
+                if (cache.size() > CACHE_SIZE) {
+                    evict();
+                }
+            }
+        } else {
+            result.lastAccess = clock.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Removes the results which have not been used within the last
+     * {@code CACHE_SIZE / 2} cache accesses. At most that many results
+     * remain, so the cache has to fill up again before the next eviction.
+     */
+    private void evict() {
+        if (evicting.compareAndSet(false, true)) {
+            try {
+                final long threshold = clock.get() - CACHE_SIZE / 2;
+                final Iterator<ScanResult> iter = cache.values().iterator();
+                while (iter.hasNext()) {
+                    if (iter.next().lastAccess <= threshold) {
+                        iter.remove();
+                    }
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the input can be filtered without AntiSamy: it is not
+     * larger than the maximum input size of the policy, which AntiSamy
+     * rejects, and it is plain text.
+     */
+    private static boolean isPlainText(final PolicyHandler policyHandler, final String str) {
+        return str != null && str.length() <= getMaxInputSize(policyHandler) && isPlainText(str);
+    }
+
+    private static int getMaxInputSize(final PolicyHandler policyHandler) {
+        final Policy policy = policyHandler.getPolicy();
+        if (policy instanceof InternalPolicy) {
+            return ((InternalPolicy) policy).getMaxInputSize();
+        }
+        return Policy.DEFAULT_MAX_INPUT_SIZE;
+    }
+
+    /**
+     * Returns whether the input contains neither markup nor entities nor
+     * control characters, which AntiSamy normalizes or escapes.
+     */
+    static boolean isPlainText(final String str) {
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (c == '<' || c == '&' || (c < ' ' && c != '\t' && c != '\n')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the filtered text if the input is plain text which can be filtered
+     * without AntiSamy or {@code null} if AntiSamy is needed.
+     * <p>
+     * The result is the same as the one of AntiSamy: text without markup and
+     * entities is returned unchanged, except for {@code >} and {@code "} which
+     * are escaped.
+     */
+    static String filterPlainText(final String str) {
+        return isPlainText(str) ? escapePlainText(str) : null;
+    }
+
+    private static String escapePlainText(final String str) {
+        StringBuilder sb = null;
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            final String replacement;
+            if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '"') {
+                replacement = "&quot;";
+            } else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(str.length() + 16);
+                sb.append(str, 0, i);
+            }
+            sb.append(replacement);
+        }
+        return sb == null ? str : sb.toString();
+    }
+
     /**
      * @see XSSFilterRule#supportsPolicy()
      */
     public boolean supportsPolicy() {
         return true;
     }
+
+    /**
+     * The cached result of scanning an input.
+     */
+    private static final class ScanResult {
+
+        final String cleanHTML;
+
+        final List<String> errors;
+
+        /** The clock tick of the last use */
+        volatile long lastAccess;
+
+        ScanResult(final String cleanHTML, final List<String> errors) {
+            this.cleanHTML = cleanHTML;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * The input and the policy used to scan it. Policies are compared by
+     * identity, so the results of a replaced policy are not used anymore and
+     * are eventually evicted.
+     */
+    private static final class CacheKey {
+
+        private final PolicyHandler policyHandler;
+
+        private final String input;
+
+        CacheKey(final PolicyHandler policyHandler, final String input) {
+            this.policyHandler = policyHandler;
+            this.input = input;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(policyHandler) + input.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) obj;
+            return policyHandler == other.policyHandler && input.equals(other.input);
+        }
+    }
 }
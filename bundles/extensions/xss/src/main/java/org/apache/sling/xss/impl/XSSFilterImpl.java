@@ -28,6 +28,7 @@ import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.resource.LoginException;
@@ -39,6 +40,7 @@ import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.xss.ProtectionContext;
 import org.apache.sling.xss.XSSFilter;
+import org.owasp.validator.html.AntiSamy;
 import org.owasp.validator.html.model.Attribute;
 import org.owasp.validator.html.model.Tag;
 import org.slf4j.Logger;
@@ -48,7 +50,8 @@ import org.slf4j.LoggerFactory;
  * This class implements the <code>XSSFilter</code> using the Antisamy XSS protection library found at
  * <a href="http://code.google.com/p/owaspantisamy/">http://code.google.com/p/owaspantisamy/</a>.
  */
-@Component(immediate = true)
+@Component(immediate = true, metatype = true, label = "Apache Sling XSS Filter",
+        description = "XSS protection based on the OWASP AntiSamy library")
 @Service(value = {ResourceChangeListener.class, XSSFilter.class})
 @Properties({
 	@Property(name = ResourceChangeListener.CHANGES, value = {"ADDED","CHANGED", "REMOVED"}),
@@ -58,6 +61,20 @@ public class XSSFilterImpl implements XSSFilter, ResourceChangeListener, Externa
 
     private static final Logger LOGGER = LoggerFactory.getLogger(XSSFilterImpl.class);
 
+    private static final String SCANNER_DEFAULT = "default";
+    private static final String SCANNER_DOM = "dom";
+    private static final String SCANNER_SAX = "sax";
+
+    @Property(value = SCANNER_DEFAULT, label = "HTML Scanner",
+            description = "The AntiSamy scanner used to filter HTML: the default scanner of AntiSamy, the DOM " +
+                    "scanner or the streaming SAX scanner. The output of the scanners may differ for some inputs.",
+            options = {
+                    @PropertyOption(name = SCANNER_DEFAULT, value = "AntiSamy default"),
+                    @PropertyOption(name = SCANNER_DOM, value = "DOM"),
+                    @PropertyOption(name = SCANNER_SAX, value = "SAX")
+            })
+    private static final String PROP_SCANNER = "scanner";
+
     // Default href configuration copied from the config.xml supplied with AntiSamy
     static final Attribute DEFAULT_HREF_ATTRIBUTE = new Attribute(
             "href",
@@ -75,7 +92,7 @@ public class XSSFilterImpl implements XSSFilter, ResourceChangeListener, Externa
     private Attribute hrefAttribute;
 
     // available contexts
-    private final XSSFilterRule htmlHtmlContext = new HtmlToHtmlContentContext();
+    private volatile XSSFilterRule htmlHtmlContext = new HtmlToHtmlContentContext();
     private final XSSFilterRule plainHtmlContext = new PlainTextToHtmlContentContext();
 
     // policies cache
@@ -110,7 +127,15 @@ public class XSSFilterImpl implements XSSFilter, ResourceChangeListener, Externa
 
     @Activate
     @SuppressWarnings("unused")
-    protected void activate() {
+    protected void activate(final Map<String, Object> properties) {
+        final Object scanner = properties.get(PROP_SCANNER);
+        int scanType = HtmlToHtmlContentContext.DEFAULT_SCAN_TYPE;
+        if (SCANNER_DOM.equals(scanner)) {
+            scanType = AntiSamy.DOM;
+        } else if (SCANNER_SAX.equals(scanner)) {
+            scanType = AntiSamy.SAX;
+        }
+        this.htmlHtmlContext = new HtmlToHtmlContentContext(scanType);
         // load default handler
         updateDefaultHandler();
     }
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or
+ * more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the
+ * Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by
+ * applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ ******************************************************************************/
+package org.apache.sling.xss.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.FileInputStream;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.owasp.validator.html.AntiSamy;
+import org.owasp.validator.html.Policy;
+import org.powermock.reflect.Whitebox;
+
+public class HtmlToHtmlContentContextTest {
+
+    private static final String[] PLAIN_TEXT = {
+            "", " ", "simple", "  leading and trailing  ", "a > b", "say \"hi\", it's", "{\"json\":1}",
+            "line\nbreak", "tab\there", "günter ラド", "emoji 😀", "nb sp", "del\u007f"
+    };
+
+    private HtmlToHtmlContentContext context;
+
+    private AntiSamy antiSamy;
+
+    private PolicyHandler policyHandler;
+
+    @Before
+    public void setup() throws Exception {
+        Policy policy = Policy.getInstance(new FileInputStream("./src/main/resources/SLING-INF/content/config.xml"));
+        antiSamy = spy(new AntiSamy(policy));
+        policyHandler = mock(PolicyHandler.class);
+        when(policyHandler.getPolicy()).thenReturn(policy);
+        when(policyHandler.getAntiSamy()).thenReturn(antiSamy);
+        context = new HtmlToHtmlContentContext();
+    }
+
+    @Test
+    public void testPlainTextLikeAntiSamy() throws Exception {
+        AntiSamy reference = new AntiSamy(policyHandler.getPolicy());
+        for (String text : PLAIN_TEXT) {
+            assertEquals(reference.scan(text, AntiSamy.DOM).getCleanHTML(), HtmlToHtmlContentContext.filterPlainText(text));
+            assertEquals(reference.scan(text, AntiSamy.DOM).getCleanHTML(), context.filter(policyHandler, text));
+            assertTrue(context.check(policyHandler, text));
+        }
+        verify(antiSamy, times(0)).scan(Matchers.anyString(), Matchers.anyInt());
+    }
+
+    @Test
+    public void testMarkupNeedsScan() {
+        assertNull(HtmlToHtmlContentContext.filterPlainText("<b>bold</b>"));
+        assertNull(HtmlToHtmlContentContext.filterPlainText("a &amp; b"));
+        assertNull(HtmlToHtmlContentContext.filterPlainText("line\r\nbreak"));
+        assertNull(HtmlToHtmlContentContext.filterPlainText("\u0000"));
+        assertFalse(HtmlToHtmlContentContext.isPlainText("a &lt; b"));
+
+        assertEquals("line\nbreak", context.filter(policyHandler, "line\r\nbreak"));
+        assertEquals("<b>bold</b>", context.filter(policyHandler, "<b>bold</b>"));
+        assertEquals("text", context.filter(policyHandler, "text<script>alert(1)</script>"));
+        assertFalse(context.check(policyHandler, "<img src=x onerror=alert(1)>"));
+    }
+
+    @Test
+    public void testCachedScans() throws Exception {
+        String html = "<p>para<br></p>";
+        String filtered = context.filter(policyHandler, html);
+        assertEquals("<p>para<br /></p>", filtered);
+        assertSame(filtered, context.filter(policyHandler, html));
+        assertTrue(context.check(policyHandler, html));
+        verify(antiSamy, times(1)).scan(html);
+
+        // a different policy handler scans again
+        PolicyHandler other = mock(PolicyHandler.class);
+        when(other.getAntiSamy()).thenReturn(antiSamy);
+        assertEquals(filtered, context.filter(other, html));
+        verify(antiSamy, times(2)).scan(html);
+    }
+
+    @Test
+    public void testConfiguredScanner() throws Exception {
+        String html = "<p>para<br></p>";
+        assertEquals("<p>para<br /></p>", new HtmlToHtmlContentContext(AntiSamy.SAX).filter(policyHandler, html));
+        verify(antiSamy, times(1)).scan(html, AntiSamy.SAX);
+        assertEquals("<p>para<br /></p>", new HtmlToHtmlContentContext(AntiSamy.DOM).filter(policyHandler, html));
+        verify(antiSamy, times(1)).scan(html, AntiSamy.DOM);
+        verify(antiSamy, times(0)).scan(html);
+    }
+
+    @Test
+    public void testControlCharactersNeedScan() throws Exception {
+        // check() and filter() agree on which inputs are scanned
+        assertFalse(HtmlToHtmlContentContext.isPlainText("\u0000"));
+        context.check(policyHandler, "a\u0001b");
+        verify(antiSamy, times(1)).scan("a\u0001b");
+        context.filter(policyHandler, "a\u0001c");
+        verify(antiSamy, times(1)).scan("a\u0001c");
+    }
+
+    @Test
+    public void testMaxInputSize() throws Exception {
+        Policy policy = policyHandler.getPolicy().cloneWithDirective("maxInputSize", "10");
+        when(policyHandler.getPolicy()).thenReturn(policy);
+        when(policyHandler.getAntiSamy()).thenReturn(new AntiSamy(policy));
+        assertEquals("short", context.filter(policyHandler, "short"));
+        try {
+            context.filter(policyHandler, "longer than ten");
+            fail("Input larger than the maximum input size must be rejected");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+        try {
+            context.check(policyHandler, "longer than ten");
+            fail("Input larger than the maximum input size must be rejected");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception {
+        for (int i = 0; i < 3 * HtmlToHtmlContentContext.CACHE_SIZE; i++) {
+            context.filter(policyHandler, "<b>" + i + "</b>");
+            // keep one result in use
+            context.filter(policyHandler, "<i>used</i>");
+        }
+        Map<?, ?> cache = Whitebox.getInternalState(context, "cache");
+        assertTrue(cache.size() <= HtmlToHtmlContentContext.CACHE_SIZE);
+        verify(antiSamy, times(1)).scan("<i>used</i>");
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or
+ * more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the
+ * Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by
+ * applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ ******************************************************************************/
+package org.apache.sling.xss.impl;
+
+import java.io.FileInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.xss.ProtectionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.owasp.validator.html.AntiSamy;
+
+/**
+ * Compares filtering typical inputs through the {@link XSSFilterImpl} with a
+ * plain AntiSamy DOM scan of every input, as done before.
+ * <p>
+ * Run with <code>mvn -Pbenchmarks clean test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.sling.xss.impl.XSSFilterBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XSSFilterBenchmark {
+
+    private static final String[] INPUTS = {
+            // a short comment
+            "Great article, thanks for sharing!",
+            // a comment with quotes
+            "I'd say \"it depends\" - but 3 > 2 in any case.",
+            // rich text
+            "<p>This is <b>rich</b> text with a <a href=\"http://sling.apache.org\">link</a>.</p><ul><li>one</li><li>two</li></ul>",
+            // an attack
+            "<img src=x onerror=alert(1)><script>alert(document.cookie)</script>text"
+    };
+
+    @Param({ "0", "1", "2", "3" })
+    private int input;
+
+    private String source;
+
+    private XSSFilterImpl filter;
+
+    private AntiSamy antiSamy;
+
+    @Setup
+    public void setup() throws Exception {
+        source = INPUTS[input];
+        filter = new XSSFilterImpl();
+        filter.setDefaultPolicy(new FileInputStream("./src/main/resources/SLING-INF/content/config.xml"));
+        antiSamy = new PolicyHandler(new FileInputStream("./src/main/resources/SLING-INF/content/config.xml")).getAntiSamy();
+    }
+
+    @Benchmark
+    public String filter() {
+        return filter.filter(ProtectionContext.HTML_HTML_CONTENT, source);
+    }
+
+    @Benchmark
+    public boolean check() {
+        return filter.check(ProtectionContext.HTML_HTML_CONTENT, source);
+    }
+
+    @Benchmark
+    public String antiSamyDom() throws Exception {
+        return antiSamy.scan(source, AntiSamy.DOM).getCleanHTML();
+    }
+
+    @Benchmark
+    public String antiSamySax() throws Exception {
+        return antiSamy.scan(source, AntiSamy.SAX).getCleanHTML();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(XSSFilterBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
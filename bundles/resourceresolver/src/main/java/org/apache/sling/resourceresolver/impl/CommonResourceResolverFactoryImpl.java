@@ -34,9 +34,11 @@ import org.apache.commons.collections.BidiMap;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.metrics.MetricsService;
 import org.apache.sling.resourceresolver.impl.console.ResourceResolverWebConsolePlugin;
 import org.apache.sling.resourceresolver.impl.helper.ResourceDecoratorTracker;
 import org.apache.sling.resourceresolver.impl.helper.ResourceResolverControl;
+import org.apache.sling.resourceresolver.impl.helper.ResourceSuperTypeGraph;
 import org.apache.sling.resourceresolver.impl.mapping.MapConfigurationProvider;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntries;
 import org.apache.sling.resourceresolver.impl.mapping.Mapping;
@@ -56,6 +58,9 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
     /** Helper for the resource resolver. */
     private MapEntries mapEntries = MapEntries.EMPTY;
 
+    /** The resource super type graph shared by all resolvers, {@code null} if not active. */
+    private volatile ResourceSuperTypeGraph resourceSuperTypeGraph;
+
     /** The web console plugin. */
     private ResourceResolverWebConsolePlugin plugin;
 
@@ -262,6 +267,10 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         return mapEntries;
     }
 
+    public ResourceSuperTypeGraph getResourceSuperTypeGraph() {
+        return resourceSuperTypeGraph;
+    }
+
     /** Activates this component */
     protected void activate(final BundleContext bundleContext) {
         final Logger logger = LoggerFactory.getLogger(getClass());
@@ -278,6 +287,25 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         } catch (final Exception e) {
             logger.error("activate: Cannot access repository, failed setting up Mapping Support", e);
         }
+        // set up the resource super type graph
+        try {
+            final List<ResourceResolver> resolvers = new ArrayList<ResourceResolver>();
+            try {
+                for (int i = 0; i < ResourceSuperTypeGraph.POOL_SIZE; i++) {
+                    resolvers.add(getAdministrativeResourceResolver(null));
+                }
+            } catch (final Exception e) {
+                for (final ResourceResolver resolver : resolvers) {
+                    resolver.close();
+                }
+                throw e;
+            }
+            final ResourceSuperTypeGraph graph = new ResourceSuperTypeGraph(resolvers, getSearchPath());
+            graph.register(bundleContext);
+            resourceSuperTypeGraph = graph;
+        } catch (final Exception e) {
+            logger.error("activate: Cannot access repository, failed setting up resource super type graph", e);
+        }
     }
 
     /**
@@ -295,6 +323,11 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
             mapEntries.dispose();
             mapEntries = MapEntries.EMPTY;
         }
+        final ResourceSuperTypeGraph graph = resourceSuperTypeGraph;
+        if (graph != null) {
+            resourceSuperTypeGraph = null;
+            graph.dispose();
+        }
         resolverStackHolder = null;
     }
 
@@ -363,6 +396,21 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         return this.activator.getVanityBloomFilterMaxBytes();
     }
 
+    @Override
+    public boolean isVanityPathIndexEnabled() {
+        return this.activator.isVanityPathIndexEnabled();
+    }
+
+    @Override
+    public int getMapCacheMaxEntries() {
+        return this.activator.getMapCacheMaxEntries();
+    }
+
+    @Override
+    public MetricsService getMetricsService() {
+        return this.activator.getMetricsService();
+    }
+
     @Override
     public boolean isOptimizeAliasResolutionEnabled() {
         return this.activator.isOptimizeAliasResolutionEnabled();
@@ -411,6 +459,10 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         return logResourceResolverClosing;
     }
 
+    public int getResourceCacheMaxEntries() {
+        return this.activator.getResourceCacheMaxEntries();
+    }
+
     public ResourceProviderTracker getResourceProviderTracker() {
         return activator.getResourceProviderTracker();
     }
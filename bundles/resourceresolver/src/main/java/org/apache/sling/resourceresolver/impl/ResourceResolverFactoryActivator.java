@@ -41,6 +41,7 @@ import org.apache.felix.scr.annotations.References;
 import org.apache.sling.api.resource.ResourceDecorator;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.runtime.RuntimeService;
+import org.apache.sling.commons.metrics.MetricsService;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.resourceresolver.impl.helper.ResourceDecoratorTracker;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntries;
@@ -225,6 +226,33 @@ public class ResourceResolverFactoryActivator {
                             "Changing this value is subject to vanity bloom filter rebuild")
     private static final String PROP_VANITY_BLOOM_FILTER_MAX_BYTES = " resource.resolver.vanitypath.bloomfilter.maxBytes";
 
+    private static final boolean DEFAULT_ENABLE_VANITY_PATH_INDEX = false;
+    @Property(boolValue = DEFAULT_ENABLE_VANITY_PATH_INDEX,
+              label = "Enable vanity path index",
+              description = "If enabled and the number of cached vanity path entries is limited, all vanity paths " +
+                            "are kept in a memory mapped index file which is used instead of a repository query " +
+                            "for vanity paths not found in the cache. The index is built once and then updated " +
+                            "incrementally.")
+    private static final String PROP_ENABLE_VANITY_PATH_INDEX = "resource.resolver.vanitypath.index";
+
+    private static final int DEFAULT_MAP_CACHE_MAX_ENTRIES = 10000;
+    @Property(intValue = DEFAULT_MAP_CACHE_MAX_ENTRIES,
+              label = "Maximum number of cached map results",
+              description = "The maximum number of results of ResourceResolver.map() which are cached. " +
+                            "Results are cached per user and request host. A value of 0 disables the cache.")
+    private static final String PROP_MAP_CACHE_MAX_ENTRIES = "resource.resolver.map.cache.maxEntries";
+
+    private static final int DEFAULT_RESOURCE_CACHE_MAX_ENTRIES = 0;
+    @Property(intValue = DEFAULT_RESOURCE_CACHE_MAX_ENTRIES,
+              label = "Resource cache size",
+              description = "The maximum number of resources and child lists each resource resolver caches. " +
+                            "Entries are cached until a change is made, committed or reverted or the resolver is " +
+                            "refreshed, and are not used while the resolver has pending changes. Changes made " +
+                            "through other resolvers are not visible while an entry is cached, therefore only " +
+                            "resolvers opened for a user, like the ones used for processing a request, use the " +
+                            "cache, administrative and service resolvers never do. A value of 0 disables the cache.")
+    private static final String PROP_RESOURCE_CACHE_MAX_ENTRIES = "resource.resolver.resource.cache.maxEntries";
+
     private static final boolean DEFAULT_ENABLE_OPTIMIZE_ALIAS_RESOLUTION = true;
     @Property(boolValue = DEFAULT_ENABLE_OPTIMIZE_ALIAS_RESOLUTION ,
               label = "Optimize alias resolution",
@@ -308,6 +336,10 @@ public class ResourceResolverFactoryActivator {
     @Reference
     ResourceAccessSecurityTracker resourceAccessSecurityTracker;
 
+    /** Metrics Service */
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC)
+    private volatile MetricsService metricsService;
+
     volatile ResourceProviderTracker resourceProviderTracker;
 
     volatile ResourceChangeListenerWhiteboard changeListenerWhiteboard;
@@ -332,6 +364,15 @@ public class ResourceResolverFactoryActivator {
     /** Maximum number of vanity bloom filter bytes */
     private volatile int vanityBloomFilterMaxBytes = DEFAULT_VANITY_BLOOM_FILTER_MAX_BYTES;
 
+    /** Use the persistent vanity path index? */
+    private volatile boolean enableVanityPathIndex = DEFAULT_ENABLE_VANITY_PATH_INDEX;
+
+    /** Maximum number of cached map results */
+    private volatile int mapCacheMaxEntries = DEFAULT_MAP_CACHE_MAX_ENTRIES;
+
+    /** Maximum number of resources cached per resolver */
+    private volatile int resourceCacheMaxEntries = DEFAULT_RESOURCE_CACHE_MAX_ENTRIES;
+
     /** vanity paths will have precedence over existing /etc/map mapping? */
     private volatile boolean vanityPathPrecedence = DEFAULT_VANITY_PATH_PRECEDENCE;
 
@@ -430,6 +471,22 @@ public class ResourceResolverFactoryActivator {
         return this.vanityBloomFilterMaxBytes;
     }
 
+    public boolean isVanityPathIndexEnabled() {
+        return this.enableVanityPathIndex;
+    }
+
+    public int getMapCacheMaxEntries() {
+        return this.mapCacheMaxEntries;
+    }
+
+    public int getResourceCacheMaxEntries() {
+        return this.resourceCacheMaxEntries;
+    }
+
+    public MetricsService getMetricsService() {
+        return this.metricsService;
+    }
+
     public boolean shouldLogResourceResolverClosing() {
         return logResourceResolverClosing;
     }
@@ -543,6 +600,9 @@ public class ResourceResolverFactoryActivator {
         this.maxCachedVanityPathEntries = PropertiesUtil.toLong(properties.get(PROP_MAX_CACHED_VANITY_PATHS), DEFAULT_MAX_CACHED_VANITY_PATHS);
         this.maxCachedVanityPathEntriesStartup = PropertiesUtil.toBoolean(properties.get(PROP_MAX_CACHED_VANITY_PATHS_STARTUP), DEFAULT_MAX_CACHED_VANITY_PATHS_STARTUP);
         this.vanityBloomFilterMaxBytes = PropertiesUtil.toInteger(properties.get(PROP_VANITY_BLOOM_FILTER_MAX_BYTES), DEFAULT_VANITY_BLOOM_FILTER_MAX_BYTES);
+        this.enableVanityPathIndex = PropertiesUtil.toBoolean(properties.get(PROP_ENABLE_VANITY_PATH_INDEX), DEFAULT_ENABLE_VANITY_PATH_INDEX);
+        this.mapCacheMaxEntries = PropertiesUtil.toInteger(properties.get(PROP_MAP_CACHE_MAX_ENTRIES), DEFAULT_MAP_CACHE_MAX_ENTRIES);
+        this.resourceCacheMaxEntries = PropertiesUtil.toInteger(properties.get(PROP_RESOURCE_CACHE_MAX_ENTRIES), DEFAULT_RESOURCE_CACHE_MAX_ENTRIES);
 
         this.vanityPathPrecedence = PropertiesUtil.toBoolean(properties.get(PROP_VANITY_PATH_PRECEDENCE), DEFAULT_VANITY_PATH_PRECEDENCE);
         this.logResourceResolverClosing = PropertiesUtil.toBoolean(properties.get(PROP_LOG_RESOURCE_RESOLVER_CLOSING),
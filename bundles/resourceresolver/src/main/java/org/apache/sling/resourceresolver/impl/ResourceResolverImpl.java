@@ -56,12 +56,16 @@ import org.apache.sling.resourceresolver.impl.helper.ResourceIteratorDecorator;
 import org.apache.sling.resourceresolver.impl.helper.ResourcePathIterator;
 import org.apache.sling.resourceresolver.impl.helper.ResourceResolverContext;
 import org.apache.sling.resourceresolver.impl.helper.ResourceResolverControl;
+import org.apache.sling.resourceresolver.impl.helper.ResourceSuperTypeGraph;
 import org.apache.sling.resourceresolver.impl.helper.StarResource;
 import org.apache.sling.resourceresolver.impl.helper.URI;
 import org.apache.sling.resourceresolver.impl.helper.URIException;
+import org.apache.sling.resourceresolver.impl.mapping.MapEntries;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntry;
+import org.apache.sling.resourceresolver.impl.mapping.MapResultCache;
 import org.apache.sling.resourceresolver.impl.params.ParsedParameters;
 import org.apache.sling.resourceresolver.impl.providers.ResourceProviderStorageProvider;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -149,7 +153,12 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
             final Map<String, Object> authenticationInfo,
             final boolean isAdmin)
     throws LoginException {
-        final ResourceResolverControl control = new ResourceResolverControl(isAdmin, authenticationInfo, resourceProviderTracker);
+        // administrative and service resolvers are usually long lived,
+        // they would not see changes made through other resolvers
+        final boolean isService = authenticationInfo != null
+                && authenticationInfo.containsKey(ResourceProvider.AUTH_SERVICE_BUNDLE);
+        final ResourceResolverControl control = new ResourceResolverControl(isAdmin, authenticationInfo, resourceProviderTracker,
+                isAdmin || isService ? 0 : this.factory.getResourceCacheMaxEntries());
 
         this.context.getProviderManager().authenticateAll(resourceProviderTracker.getResourceProviderStorage().getAuthRequiredHandlers(), control);
 
@@ -429,6 +438,25 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
     public String map(final HttpServletRequest request, final String resourcePath) {
         checkClosed();
 
+        final MapEntries mapEntries = this.factory.getMapEntries();
+        final MapResultCache cache = mapEntries.getMapResultCache();
+        if (cache == null || !resourcePath.startsWith("/")) {
+            return mapInternal(request, resourcePath);
+        }
+
+        // the result depends on the permissions of the user, the
+        // request and the mapping configuration
+        final String key = MapResultCache.createKey(resourcePath, mapEntries.getMapMapsGeneration(), this.getUserID(), request);
+        String mappedPath = cache.get(key);
+        if (mappedPath == null) {
+            final long version = cache.getVersion();
+            mappedPath = mapInternal(request, resourcePath);
+            cache.put(key, mappedPath, version);
+        }
+        return mappedPath;
+    }
+
+    private String mapInternal(final HttpServletRequest request, final String resourcePath) {
         // find a fragment or query
         int fragmentQueryMark = resourcePath.indexOf('#');
         if (fragmentQueryMark < 0) {
@@ -1298,7 +1326,7 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
      */
     @Override
     public String getParentResourceType(final String resourceType) {
-        return this.control.getParentResourceType(this.factory, this, resourceType);
+        return this.control.getParentResourceType(this.factory, this, this.factory.getResourceSuperTypeGraph(), resourceType);
     }
 
     /**
@@ -1316,6 +1344,15 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
              } else {
                  Set<String> superTypesChecked = new HashSet<String>();
                  String superType = this.getParentResourceType(resource);
+                 // the rest of the hierarchy is available from the shared graph
+                 // unless it contains a cycle which is reported below
+                 final ResourceSuperTypeGraph graph = this.factory.getResourceSuperTypeGraph();
+                 if (graph != null && graph.isCacheable(superType)) {
+                     final Boolean isA = graph.isResourceType(superType, resourceType);
+                     if (isA != null) {
+                         return isA;
+                     }
+                 }
                  while (!result && superType != null) {
                      if (resourceType.equals(superType)) {
                          result = true;
@@ -141,6 +141,12 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
         pw.print(resolverFactory.getMapRoot());
         pw.print("</td>");
         pw.println("</tr>");
+        pw.println("<tr class='content'>");
+        pw.println("<td class='content'>Vanity Path Bloom Filter</td>");
+        pw.print("<td class='content' colspan='2'>");
+        pw.print(ResponseUtil.escapeXml(getBloomFilterInfo(mapEntries)));
+        pw.print("</td>");
+        pw.println("</tr>");
 
         separatorHtml(pw);
 
@@ -285,6 +291,11 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
         separatorText(pw);
 
         dumpMapText(pw, "Mapping Map Entries", mapEntries.getMapMaps());
+
+        separatorText(pw);
+
+        pw.println("Vanity Path Bloom Filter");
+        pw.println(getBloomFilterInfo(mapEntries));
     }
 
     // ---------- internal
@@ -353,6 +364,14 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
         pw.println("</tr>");
     }
 
+    private String getBloomFilterInfo(final MapEntries mapEntries) {
+        final int[] size = mapEntries.getVanityBloomFilterSize();
+        return String.format("%d entries, capacity %d, fill ratio %.2f%%, observed false positive rate %.2f%%",
+                size[0], size[1],
+                mapEntries.getVanityBloomFilterFillRatio() * 100,
+                mapEntries.getVanityBloomFilterFalsePositiveRate() * 100);
+    }
+
     private void dumpMapText(PrintWriter pw, String title,
             Collection<MapEntry> list) {
 
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.resourceresolver.impl.providers.ResourceProviderStorage;
+
+/**
+ * Cache for the resources and child lists returned by the resource providers
+ * to a single {@link ResourceResolverControl}.
+ * <p>
+ * The resources are returned by the providers after the resource access
+ * security has been applied for the user of the resolver, therefore the
+ * cache must never be shared between resolvers.
+ * <p>
+ * The resource resolver modifies the metadata of the resources it returns
+ * and the decorators lock it. Therefore the cached resources are never handed
+ * out directly, each lookup returns a new wrapper with a copy of the metadata
+ * as returned by the provider.
+ * <p>
+ * The number of cached resources and child lists is limited, the least
+ * recently used entries are removed first. Child lists with more entries
+ * than the limit are not cached.
+ * <p>
+ * Like the control, this class is not thread safe.
+ */
+class ResourceCache {
+
+    /** Cached resources, a {@code null} value caches a missing resource. */
+    private final Map<String, CachedResource> resources;
+
+    /** Cached child lists, a {@code null} value caches a provider without children. */
+    private final Map<String, List<CachedResource>> children;
+
+    /** The maximum number of entries in each map and of a cached child list. */
+    private final int maxEntries;
+
+    /** The provider storage the cached entries have been retrieved from. */
+    private ResourceProviderStorage storage;
+
+    /** Incremented on each clear to discard child lists being recorded. */
+    private long generation;
+
+    /**
+     * Create a new cache.
+     * @param maxEntries The maximum number of cached resources and child lists
+     */
+    public ResourceCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.resources = new LRUMap<CachedResource>(maxEntries);
+        this.children = new LRUMap<List<CachedResource>>(maxEntries);
+    }
+
+    /**
+     * Clears the cache if the resource providers changed since the entries
+     * have been added.
+     * @param currentStorage The current provider storage
+     */
+    public void validate(final ResourceProviderStorage currentStorage) {
+        if ( this.storage != currentStorage ) {
+            this.clear();
+            this.storage = currentStorage;
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        this.generation++;
+        this.resources.clear();
+        this.children.clear();
+    }
+
+    public boolean containsResource(final String path) {
+        return this.resources.containsKey(path);
+    }
+
+    /**
+     * Returns the cached resource.
+     * @param path The path
+     * @return A new wrapper for the cached resource or {@code null}
+     */
+    public Resource getResource(final String path) {
+        final CachedResource cached = this.resources.get(path);
+        return cached == null ? null : cached.copy();
+    }
+
+    /**
+     * Adds the resource returned by a provider.
+     * @param path The path
+     * @param resource The resource or {@code null}
+     * @return A new wrapper for the resource or {@code null}
+     */
+    public Resource putResource(final String path, final Resource resource) {
+        final CachedResource cached = resource == null ? null : new CachedResource(resource, resource.getResourceMetadata());
+        this.resources.put(path, cached);
+        return cached == null ? null : cached.copy();
+    }
+
+    public boolean containsChildren(final String path) {
+        return this.children.containsKey(path);
+    }
+
+    /**
+     * Returns the cached children.
+     * @param path The path of the parent
+     * @return An iterator over new wrappers of the children or {@code null}
+     */
+    public Iterator<Resource> getChildren(final String path) {
+        final List<CachedResource> list = this.children.get(path);
+        if ( list == null ) {
+            return null;
+        }
+        final Iterator<CachedResource> i = list.iterator();
+        return new Iterator<Resource>() {
+
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public Resource next() {
+                return i.next().copy();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    /**
+     * Wraps the children returned by a provider. Once the returned iterator
+     * is exhausted, the children are added to the cache.
+     * @param path The path of the parent
+     * @param iter The children or {@code null}
+     * @return An iterator over new wrappers of the children or {@code null}
+     */
+    public Iterator<Resource> putChildren(final String path, final Iterator<Resource> iter) {
+        if ( iter == null ) {
+            this.children.put(path, null);
+            return null;
+        }
+        final long startGeneration = this.generation;
+        final List<CachedResource> list = new ArrayList<CachedResource>();
+        return new Iterator<Resource>() {
+
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                final boolean hasNext = iter.hasNext();
+                if ( !hasNext && !done ) {
+                    done = true;
+                    if ( generation == startGeneration ) {
+                        children.put(path, list);
+                    }
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Resource next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                final Resource rsrc = iter.next();
+                final CachedResource cached = new CachedResource(rsrc, rsrc.getResourceMetadata());
+                if ( !done && list.size() < maxEntries ) {
+                    list.add(cached);
+                } else {
+                    // too many children, do not cache the list
+                    done = true;
+                }
+                return cached.copy();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    /**
+     * Returns the resource as returned by the provider if the given resource
+     * has been returned by a cache.
+     * @param resource The resource or {@code null}
+     * @return The provider resource or {@code null}
+     */
+    public static Resource unwrap(final Resource resource) {
+        if ( resource instanceof CachedResource ) {
+            return ((CachedResource)resource).getResource();
+        }
+        return resource;
+    }
+
+    /**
+     * Wrapper for a cached resource with its own metadata.
+     */
+    private static final class CachedResource extends ResourceWrapper {
+
+        private final ResourceMetadata metadata;
+
+        public CachedResource(final Resource resource, final ResourceMetadata metadata) {
+            super(resource);
+            this.metadata = new ResourceMetadata();
+            if ( metadata != null ) {
+                this.metadata.putAll(metadata);
+            }
+        }
+
+        public CachedResource copy() {
+            return new CachedResource(getResource(), this.metadata);
+        }
+
+        @Override
+        public ResourceMetadata getResourceMetadata() {
+            return this.metadata;
+        }
+    }
+}
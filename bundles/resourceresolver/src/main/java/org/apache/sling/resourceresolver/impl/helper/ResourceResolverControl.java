@@ -86,16 +86,33 @@ public class ResourceResolverControl {
 
     private final Map<ResourceProviderHandler, Object> authenticatedProviders;
 
+    /** Cache for provider lookups, {@code null} if disabled. */
+    private final ResourceCache cache;
+
     /**
      * Create a new resource resolver context.
      */
     public ResourceResolverControl(final boolean isAdmin,
             final Map<String, Object> authenticationInfo,
             final ResourceProviderStorageProvider resourceProviderTracker) {
+        this(isAdmin, authenticationInfo, resourceProviderTracker, 0);
+    }
+
+    /**
+     * Create a new resource resolver context.
+     * @param resourceCacheMaxEntries The maximum number of resources and child
+     *        lists returned by the providers which are cached until a change is
+     *        made through this control, 0 disables the cache.
+     */
+    public ResourceResolverControl(final boolean isAdmin,
+            final Map<String, Object> authenticationInfo,
+            final ResourceProviderStorageProvider resourceProviderTracker,
+            final int resourceCacheMaxEntries) {
         this.authenticatedProviders = new IdentityHashMap<ResourceProviderHandler, Object>();
         this.authenticationInfo = authenticationInfo;
         this.isAdmin = isAdmin;
         this.resourceProviderTracker = resourceProviderTracker;
+        this.cache = resourceCacheMaxEntries > 0 ? new ResourceCache(resourceCacheMaxEntries) : null;
     }
 
     /**
@@ -145,6 +162,7 @@ public class ResourceResolverControl {
      * Refreshes all refreshable providers.
      */
     public void refresh(@Nonnull final ResourceResolverContext context) {
+        this.clearCache();
         for (final AuthenticatedResourceProvider p : context.getProviderManager().getAllUsedRefreshable()) {
             p.refresh();
         }
@@ -176,7 +194,7 @@ public class ResourceResolverControl {
         if ( parentProvider != null ) {
             final Resource parentCandidate;
             if ( childProvider == parentProvider ) {
-                parentCandidate = parentProvider.getParent(child);
+                parentCandidate = parentProvider.getParent(ResourceCache.unwrap(child));
             } else {
                 parentCandidate = parentProvider.getResource(parentPath, null, null);
             }
@@ -213,12 +231,9 @@ public class ResourceResolverControl {
             return null; // path must be absolute
         }
 
-        final AuthenticatedResourceProvider provider = this.getBestMatchingProvider(context, path);
-        if ( provider != null ) {
-            final Resource resourceCandidate = provider.getResource(path, parent, parameters);
-            if (resourceCandidate != null) {
-                return resourceCandidate;
-            }
+        final Resource resourceCandidate = this.getProviderResource(context, path, parent, parameters);
+        if (resourceCandidate != null) {
+            return resourceCandidate;
         }
 
         // query: /libs/sling/servlet/default
@@ -236,6 +251,73 @@ public class ResourceResolverControl {
         return null;
     }
 
+    /**
+     * Returns the resource from the best matching provider, using the cache
+     * if enabled. Lookups with parameters are not cached.
+     */
+    private Resource getProviderResource(final ResourceResolverContext context,
+            final String path, final Resource parent, final Map<String, String> parameters) {
+        final boolean useCache = (parameters == null || parameters.isEmpty()) && this.isCacheUsable(context);
+        if ( useCache ) {
+            if ( this.cache.containsResource(path) ) {
+                return this.cache.getResource(path);
+            }
+        }
+        final AuthenticatedResourceProvider provider = this.getBestMatchingProvider(context, path);
+        final Resource resource = provider == null ? null : provider.getResource(path, ResourceCache.unwrap(parent), parameters);
+        if ( useCache ) {
+            return this.cache.putResource(path, resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Returns the children from the best matching provider, using the cache
+     * if enabled.
+     */
+    private Iterator<Resource> getProviderChildren(final ResourceResolverContext context, final Resource parent) {
+        final String parentPath = parent.getPath();
+        final boolean useCache = this.isCacheUsable(context);
+        if ( useCache ) {
+            if ( this.cache.containsChildren(parentPath) ) {
+                return this.cache.getChildren(parentPath);
+            }
+        }
+        final AuthenticatedResourceProvider provider = this.getBestMatchingProvider(context, parentPath);
+        final Iterator<Resource> children = provider == null ? null : provider.listChildren(ResourceCache.unwrap(parent));
+        if ( useCache ) {
+            return this.cache.putChildren(parentPath, children);
+        }
+        return children;
+    }
+
+    /**
+     * Checks whether the cache is enabled and its entries are still valid.
+     * Changes which have not been committed yet, for example made through a
+     * {@code ModifiableValueMap}, are not tracked, therefore the cache is
+     * cleared and not used while a provider has pending changes.
+     */
+    private boolean isCacheUsable(final ResourceResolverContext context) {
+        if ( this.cache == null ) {
+            return false;
+        }
+        if ( this.hasChanges(context) ) {
+            this.cache.clear();
+            return false;
+        }
+        this.cache.validate(getResourceProviderStorage());
+        return true;
+    }
+
+    /**
+     * Clears the cache, called for every change made through this control.
+     */
+    private void clearCache() {
+        if ( this.cache != null ) {
+            this.cache.clear();
+        }
+    }
+
     private boolean isIntermediatePath(final String fullPath) {
         return getResourceProviderStorage().getTree().getNode(fullPath) != null;
     }
@@ -257,11 +339,7 @@ public class ResourceResolverControl {
         // synthetic resources for providers mounted at a lower level
 
         // children of the 'parent' provider
-        Iterator<Resource> realChildren = null;
-        final AuthenticatedResourceProvider provider = this.getBestMatchingProvider(context, parentPath);
-        if ( provider != null ) {
-            realChildren = provider.listChildren(parent);
-        }
+        final Iterator<Resource> realChildren = this.getProviderChildren(context, parent);
 
         final Set<String> visitedNames = new HashSet<String>();
 
@@ -363,6 +441,7 @@ public class ResourceResolverControl {
     public Resource create(final ResourceResolverContext context,
             final String path, final Map<String, Object> properties)
     throws PersistenceException {
+        this.clearCache();
         final AuthenticatedResourceProvider provider = getBestMatchingModifiableProvider(context, path);
         if ( provider != null ) {
             final Resource creationResultResource = provider.create(context.getResourceResolver(), path, properties);
@@ -385,10 +464,11 @@ public class ResourceResolverControl {
      *             If deletion fails
      */
     public void delete(final ResourceResolverContext context, final Resource resource) throws PersistenceException {
+        this.clearCache();
         final String path = resource.getPath();
         final AuthenticatedResourceProvider provider = getBestMatchingModifiableProvider(context, path);
         if ( provider != null ) {
-            provider.delete(resource);
+            provider.delete(ResourceCache.unwrap(resource));
             return;
         }
         throw new UnsupportedOperationException("delete at '" + path + "'");
@@ -398,6 +478,7 @@ public class ResourceResolverControl {
      * Revert changes on all modifiable ResourceProviders.
      */
     public void revert(final ResourceResolverContext context) {
+        this.clearCache();
         for (final AuthenticatedResourceProvider p : context.getProviderManager().getAllUsedModifiable()) {
             p.revert();
         }
@@ -407,6 +488,7 @@ public class ResourceResolverControl {
      * Commit changes on all modifiable ResourceProviders.
      */
     public void commit(final ResourceResolverContext context) throws PersistenceException {
+        this.clearCache();
         for (final AuthenticatedResourceProvider p : context.getProviderManager().getAllUsedModifiable()) {
             p.commit();
         }
@@ -571,6 +653,7 @@ public class ResourceResolverControl {
      */
     public Resource copy(final ResourceResolverContext context,
             final String srcAbsPath, final String destAbsPath) throws PersistenceException {
+        this.clearCache();
         final AuthenticatedResourceProvider optimizedSourceProvider = checkSourceAndDest(context, srcAbsPath, destAbsPath);
         if ( optimizedSourceProvider != null && optimizedSourceProvider.copy(srcAbsPath, destAbsPath) ) {
             return this.getResource(context, destAbsPath + '/' + ResourceUtil.getName(srcAbsPath), null, null, false);
@@ -599,6 +682,7 @@ public class ResourceResolverControl {
      */
     public Resource move(final ResourceResolverContext context,
             String srcAbsPath, String destAbsPath) throws PersistenceException {
+        this.clearCache();
         final AuthenticatedResourceProvider optimizedSourceProvider = checkSourceAndDest(context, srcAbsPath, destAbsPath);
         if ( optimizedSourceProvider != null && optimizedSourceProvider.move(srcAbsPath, destAbsPath) ) {
             return this.getResource(context, destAbsPath + '/' + ResourceUtil.getName(srcAbsPath), null, null, false);
@@ -664,6 +748,7 @@ public class ResourceResolverControl {
      */
     public void close() {
         if (this.isClosed.compareAndSet(false, true)) {
+            this.clearCache();
             this.logout();
             if ( this.resourceTypeResourceResolver != null ) {
                 try {
@@ -704,6 +789,24 @@ public class ResourceResolverControl {
             final ResourceResolverFactory factory,
             final ResourceResolver resolver,
             final String resourceType) {
+        return getParentResourceType(factory, resolver, null, resourceType);
+    }
+
+    /**
+     * Get the parent resource type, using the shared graph for resource types
+     * defined below the search paths.
+     *
+     * @param graph The resource super type graph or {@code null}
+     * @see org.apache.sling.api.resource.ResourceResolver#getParentResourceType(java.lang.String)
+     */
+    public String getParentResourceType(
+            final ResourceResolverFactory factory,
+            final ResourceResolver resolver,
+            final ResourceSuperTypeGraph graph,
+            final String resourceType) {
+        if ( graph != null && graph.isCacheable(resourceType) ) {
+            return graph.getParentResourceType(resourceType);
+        }
         // normalize resource type to a path string
         final String rtPath = (resourceType == null ? null : ResourceUtil.resourceTypeToPath(resourceType));
         // get the resource type resource and check its super type
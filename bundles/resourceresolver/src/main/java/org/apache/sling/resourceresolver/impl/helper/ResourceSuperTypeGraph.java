@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The resource super type graph caches the resource super type of resource
+ * types defined below the search paths for all resource resolvers.
+ * <p>
+ * The super type of a resource type is read once through one of the
+ * administrative resource resolvers owned by the graph, like it is done by
+ * {@link ResourceResolverControl#getParentResourceType(org.apache.sling.api.resource.ResourceResolverFactory, ResourceResolver, String)}
+ * for each resolver. Afterwards it and the set of all super types of a
+ * resource type are available without accessing the resource tree. The
+ * graph is cleared on every change below the search paths.
+ * <p>
+ * The least recently used resource types are removed once more than
+ * {@link #MAX_ENTRIES} are cached. As resolvers are not thread safe, each
+ * one is used by a single thread at a time, concurrent misses are read
+ * through different resolvers of the pool.
+ * <p>
+ * Resource types which are not below the search paths are not cached, see
+ * {@link #isCacheable(String)}.
+ */
+public class ResourceSuperTypeGraph implements ResourceChangeListener, ExternalResourceChangeListener {
+
+    /** Maximum number of cached resource types. */
+    static final int MAX_ENTRIES = 10000;
+
+    /** Number of resolvers the graph should get for reading the definitions. */
+    public static final int POOL_SIZE = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /** Marker for resource types without a super type. */
+    private static final Entry NO_SUPER_TYPE = new Entry(null);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The resolvers not in use for reading the definitions. */
+    private final BlockingQueue<PooledResolver> resolvers;
+
+    /** All resolvers of the pool, closed on {@link #dispose()}. */
+    private final List<PooledResolver> allResolvers;
+
+    private volatile boolean disposed;
+
+    /** The search paths, each ending with a slash. */
+    private final String[] searchPath;
+
+    /** Direct super types by resource type, access is synchronized. */
+    private final Map<String, Entry> superTypes = new LRUMap<Entry>(MAX_ENTRIES);
+
+    /** All super types by resource type, access is synchronized. */
+    private final Map<String, Set<String>> ancestors = new LRUMap<Set<String>>(MAX_ENTRIES);
+
+    /** Incremented on each change to discard concurrently loaded entries. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile ServiceRegistration<ResourceChangeListener> registration;
+
+    /**
+     * Create a new graph.
+     * @param resolver The resolver to read the definitions, closed on {@link #dispose()}
+     * @param searchPath The search paths
+     */
+    public ResourceSuperTypeGraph(final ResourceResolver resolver, final String[] searchPath) {
+        this(Collections.singletonList(resolver), searchPath);
+    }
+
+    /**
+     * Create a new graph.
+     * @param resolvers The pool of resolvers to read the definitions, closed on {@link #dispose()}
+     * @param searchPath The search paths
+     */
+    public ResourceSuperTypeGraph(final List<ResourceResolver> resolvers, final String[] searchPath) {
+        this.allResolvers = new ArrayList<PooledResolver>(resolvers.size());
+        for (final ResourceResolver resolver : resolvers) {
+            this.allResolvers.add(new PooledResolver(resolver));
+        }
+        this.resolvers = new LinkedBlockingQueue<PooledResolver>(this.allResolvers);
+        this.searchPath = new String[searchPath.length];
+        for (int i = 0; i < searchPath.length; i++) {
+            this.searchPath[i] = searchPath[i].endsWith("/") ? searchPath[i] : searchPath[i].concat("/");
+        }
+    }
+
+    /**
+     * Registers the graph for changes below the search paths.
+     * @param bundleContext The bundle context
+     */
+    public void register(final BundleContext bundleContext) {
+        final String[] paths = new String[this.searchPath.length];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = this.searchPath[i].length() > 1
+                    ? this.searchPath[i].substring(0, this.searchPath[i].length() - 1)
+                    : this.searchPath[i];
+        }
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(ResourceChangeListener.PATHS, paths);
+        props.put(Constants.SERVICE_DESCRIPTION, "Apache Sling Resource Super Type Graph Observation");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        this.registration = bundleContext.registerService(ResourceChangeListener.class, this, props);
+    }
+
+    /**
+     * Unregisters the graph, drops all entries and closes the resolver.
+     */
+    public void dispose() {
+        if ( this.registration != null ) {
+            try {
+                this.registration.unregister();
+            } catch ( final IllegalStateException ise ) {
+                // ignore
+            }
+            this.registration = null;
+        }
+        this.clear();
+        this.disposed = true;
+        for (final PooledResolver pooled : this.allResolvers) {
+            synchronized ( pooled ) {
+                pooled.resolver.close();
+            }
+        }
+    }
+
+    @Override
+    public void onChange(final List<ResourceChange> changes) {
+        // resource type definitions change rarely, so any change
+        // simply drops the whole graph
+        logger.debug("onChange: Clearing resource super type graph after {} changes", changes.size());
+        this.clear();
+    }
+
+    private void clear() {
+        this.generation.incrementAndGet();
+        synchronized ( this.superTypes ) {
+            this.superTypes.clear();
+        }
+        synchronized ( this.ancestors ) {
+            this.ancestors.clear();
+        }
+    }
+
+    /**
+     * Checks whether the definition of the resource type is below the search
+     * paths and therefore cached by this graph.
+     * @param resourceType The resource type
+     * @return {@code true} if the resource type is cached
+     */
+    public boolean isCacheable(final String resourceType) {
+        if ( resourceType == null ) {
+            return false;
+        }
+        final String rtPath = ResourceUtil.resourceTypeToPath(resourceType);
+        if ( !rtPath.startsWith("/") ) {
+            return true;
+        }
+        for (final String path : this.searchPath) {
+            if ( rtPath.startsWith(path) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the super type of the resource type.
+     * @param resourceType The resource type
+     * @return The super type or {@code null}
+     */
+    public String getParentResourceType(final String resourceType) {
+        if ( !isCacheable(resourceType) ) {
+            return readSuperType(resourceType);
+        }
+        Entry entry = get(this.superTypes, resourceType);
+        if ( entry == null ) {
+            final long currentGeneration = this.generation.get();
+            final String superType = readSuperType(resourceType);
+            entry = superType == null ? NO_SUPER_TYPE : new Entry(superType);
+            put(this.superTypes, resourceType, entry, currentGeneration);
+        }
+        return entry.superType;
+    }
+
+    /**
+     * Checks if the resource type is the given super type or has it in its
+     * super type hierarchy.
+     * @param resourceType The resource type
+     * @param superType The super type to check
+     * @return The result or {@code null} if the hierarchy contains a cycle
+     */
+    public Boolean isResourceType(final String resourceType, final String superType) {
+        if ( resourceType.equals(superType) ) {
+            return Boolean.TRUE;
+        }
+        Set<String> all = get(this.ancestors, resourceType);
+        if ( all == null ) {
+            final long currentGeneration = this.generation.get();
+            all = new LinkedHashSet<String>();
+            String current = this.getParentResourceType(resourceType);
+            while ( current != null ) {
+                if ( !all.add(current) || current.equals(resourceType) ) {
+                    // cyclic hierarchy, leave the error handling to the caller
+                    return null;
+                }
+                current = this.getParentResourceType(current);
+            }
+            all = Collections.unmodifiableSet(all);
+            if ( isCacheable(resourceType) ) {
+                put(this.ancestors, resourceType, all, currentGeneration);
+            }
+        }
+        return all.contains(superType);
+    }
+
+    private static <T> T get(final Map<String, T> map, final String key) {
+        synchronized ( map ) {
+            return map.get(key);
+        }
+    }
+
+    /**
+     * Adds an entry unless the graph changed after it has been read.
+     */
+    private <T> void put(final Map<String, T> map, final String key, final T value, final long expectedGeneration) {
+        synchronized ( map ) {
+            map.put(key, value);
+        }
+        if ( this.generation.get() != expectedGeneration ) {
+            synchronized ( map ) {
+                if ( map.get(key) == value ) {
+                    map.remove(key);
+                }
+            }
+        }
+    }
+
+    private String readSuperType(final String resourceType) {
+        if ( resourceType == null ) {
+            return null;
+        }
+        final String rtPath = ResourceUtil.resourceTypeToPath(resourceType);
+        final PooledResolver pooled = this.acquire();
+        if ( pooled == null ) {
+            return null;
+        }
+        try {
+            synchronized ( pooled ) {
+                if ( this.disposed ) {
+                    return null;
+                }
+                final long currentGeneration = this.generation.get();
+                if ( pooled.generation != currentGeneration ) {
+                    pooled.generation = currentGeneration;
+                    pooled.resolver.refresh();
+                }
+                final Resource rtResource = pooled.resolver.getResource(rtPath);
+                if ( rtResource != null ) {
+                    return rtResource.getResourceSuperType();
+                }
+            }
+        } finally {
+            this.resolvers.offer(pooled);
+        }
+        return null;
+    }
+
+    /**
+     * Waits for a resolver of the pool.
+     * @return The resolver or {@code null} if the graph has been disposed
+     */
+    private PooledResolver acquire() {
+        try {
+            while ( !this.disposed ) {
+                final PooledResolver pooled = this.resolvers.poll(1, TimeUnit.SECONDS);
+                if ( pooled != null ) {
+                    return pooled;
+                }
+            }
+        } catch ( final InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static final class PooledResolver {
+
+        public final ResourceResolver resolver;
+
+        /** The generation of the graph the resolver has been refreshed for. */
+        public long generation;
+
+        public PooledResolver(final ResourceResolver resolver) {
+            this.resolver = resolver;
+        }
+    }
+
+    private static final class Entry {
+
+        public final String superType;
+
+        public Entry(final String superType) {
+            this.superType = superType;
+        }
+    }
+}
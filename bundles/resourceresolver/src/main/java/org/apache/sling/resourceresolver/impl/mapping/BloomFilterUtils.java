@@ -97,7 +97,7 @@ public class BloomFilterUtils {
      * @param key the key
      * @return the hash value
      */
-    private static int hash(int key) {
+    static int hash(int key) {
         int hash = key;
         // a supplemental secondary hash function
         // to protect against hash codes that don't differ much
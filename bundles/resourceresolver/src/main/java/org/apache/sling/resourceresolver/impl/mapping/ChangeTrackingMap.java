@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map of the mutable mapping state which records the keys changed since
+ * the last call to {@link #drainChanges()}, so that a new
+ * {@link SnapshotMap} only has to copy those. The map delegates to a
+ * {@link ConcurrentHashMap} and all mutators, including the default
+ * methods of {@link Map} and removals through the views, end up in
+ * {@link #put(Object, Object)}, {@link #remove(Object)} or the entry set,
+ * which record the changed keys.
+ */
+final class ChangeTrackingMap<K, V> extends AbstractMap<K, V> {
+
+    private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<K, V>();
+
+    private final Set<K> changedKeys = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+
+    /** Set until the changes have been drained for the first time or after {@link #clear()} */
+    private volatile boolean allChanged = true;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public V get(final Object key) {
+        return this.map.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+
+    @Override
+    public V put(final K key, final V value) {
+        this.changedKeys.add(key);
+        return this.map.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(final Object key) {
+        this.changedKeys.add((K) key);
+        return this.map.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        this.allChanged = true;
+        this.changedKeys.clear();
+        this.map.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new EntrySet();
+        }
+        return this.entrySet;
+    }
+
+    /**
+     * Returns the keys changed since the last call and resets the changes.
+     * Must not be called concurrently with changes of the map.
+     * @return The changed keys or <code>null</code> if the complete map has
+     *         to be considered as changed.
+     */
+    Collection<K> drainChanges() {
+        final Collection<K> changes = this.allChanged ? null : new ArrayList<K>(this.changedKeys);
+        this.allChanged = false;
+        this.changedKeys.clear();
+        return changes;
+    }
+
+    /**
+     * Entry set recording removals through its iterator and changes
+     * through {@link Map.Entry#setValue(Object)}.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            final Iterator<Map.Entry<K, V>> i = map.entrySet().iterator();
+            return new Iterator<Map.Entry<K, V>>() {
+
+                private K current;
+
+                @Override
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    final Map.Entry<K, V> entry = i.next();
+                    this.current = entry.getKey();
+                    return new SimpleEntry<K, V>(entry) {
+
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        public V setValue(final V value) {
+                            super.setValue(value);
+                            return put(getKey(), value);
+                        }
+                    };
+                }
+
+                @Override
+                public void remove() {
+                    changedKeys.add(this.current);
+                    i.remove();
+                }
+            };
+        }
+    }
+}
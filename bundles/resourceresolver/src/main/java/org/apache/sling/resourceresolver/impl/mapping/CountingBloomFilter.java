@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A counting bloom filter using 4 bit counters, which, unlike the plain
+ * filter of {@link BloomFilterUtils}, supports removing keys.
+ * <p>
+ * A counting bloom filter can't be resized, as the keys are not stored.
+ * Instead {@link #getLoad()} reports how full the filter is compared to
+ * its capacity, and a new, larger filter has to be filled from the
+ * original source of the keys once the load exceeds a threshold.
+ * <p>
+ * Counters which reach the maximum value are never decremented again,
+ * so a removal can never cause a false negative for another key.
+ * <p>
+ * Adding and removing is synchronized, checking is not.
+ */
+public class CountingBloomFilter {
+
+    /** File magic: "SVBF" */
+    private static final int MAGIC = 0x53564246;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /**
+     * The number of counters needed per stored element for a
+     * false positive rate of 2%, using the formula
+     * m = - (n * ln(p)) / (ln(2)^2).
+     */
+    private static final double COUNTERS_PER_ENTRY = -Math.log(0.02) / Math.pow(Math.log(2), 2);
+
+    private static final int MAX_HASH_COUNT = 8;
+
+    private static final int MAX_COUNT = 15;
+
+    /** Two 4 bit counters per byte. */
+    private final byte[] counters;
+
+    private final int counterCount;
+
+    private final int hashCount;
+
+    private final int capacity;
+
+    private volatile int size;
+
+    private volatile int nonZeroCounters;
+
+    private CountingBloomFilter(final byte[] counters, final int hashCount, final int capacity,
+            final int size, final int nonZeroCounters) {
+        this.counters = counters;
+        this.counterCount = counters.length * 2;
+        this.hashCount = hashCount;
+        this.capacity = capacity;
+        this.size = size;
+        this.nonZeroCounters = nonZeroCounters;
+    }
+
+    /**
+     * Create an empty filter for the given number of elements.
+     *
+     * @param elementCount the number of entries
+     * @param maxBytes the maximum number of bytes
+     * @return the empty filter
+     */
+    public static CountingBloomFilter create(final int elementCount, final int maxBytes) {
+        final long wanted = ((long) (Math.max(1, elementCount) * COUNTERS_PER_ENTRY) + 1) / 2;
+        final int bytes = (int) Math.max(0, Math.min(maxBytes, wanted));
+        final int capacity;
+        if (bytes == wanted) {
+            capacity = Math.max(1, elementCount);
+        } else {
+            capacity = (int) (bytes * 2 / COUNTERS_PER_ENTRY);
+        }
+        int hashCount = 1;
+        if (capacity > 0) {
+            hashCount = (int) Math.round(bytes * 2.0 / capacity * Math.log(2));
+            hashCount = Math.max(1, Math.min(MAX_HASH_COUNT, hashCount));
+        }
+        return new CountingBloomFilter(new byte[bytes], hashCount, capacity, 0, 0);
+    }
+
+    /**
+     * Load a filter written by {@link #write(File)}.
+     *
+     * @param file the file
+     * @return the filter
+     * @throws IOException if the file can't be read or has an unsupported format
+     */
+    public static CountingBloomFilter load(final File file) throws IOException {
+        // the counters are changed after loading, so they are read into
+        // the heap directly instead of mapping the file
+        final long fileSize = file.length();
+        if (fileSize < 28 || fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Invalid bloom filter size " + fileSize);
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a bloom filter file: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported bloom filter version " + version);
+            }
+            final int hashCount = in.readInt();
+            final int capacity = in.readInt();
+            final int size = in.readInt();
+            final int nonZeroCounters = in.readInt();
+            final int bytes = in.readInt();
+            if (bytes < 0 || bytes != fileSize - 28 || hashCount < 1 || hashCount > MAX_HASH_COUNT) {
+                throw new IOException("Corrupt bloom filter file: " + file);
+            }
+            final byte[] counters = new byte[bytes];
+            in.readFully(counters);
+            return new CountingBloomFilter(counters, hashCount, capacity, size, nonZeroCounters);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the filter to the given file. The data is written to a temporary
+     * file first which then replaces the file.
+     *
+     * @param file the file
+     * @throws IOException if writing fails
+     */
+    public synchronized void write(final File file) throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hashCount);
+            out.writeInt(capacity);
+            out.writeInt(size);
+            out.writeInt(nonZeroCounters);
+            out.writeInt(counters.length);
+            out.write(counters);
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Unable to rename " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * Add the key.
+     *
+     * @param key the key
+     */
+    public synchronized void add(final Object key) {
+        if (counterCount == 0) {
+            return;
+        }
+        final int h1 = BloomFilterUtils.hash(key.hashCode());
+        final int h2 = BloomFilterUtils.hash(h1);
+        for (int i = 0; i < hashCount; i++) {
+            final int index = index(h1, h2, i);
+            final int count = get(index);
+            if (count < MAX_COUNT) {
+                set(index, count + 1);
+                if (count == 0) {
+                    nonZeroCounters++;
+                }
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Remove the key. Only keys which have been added before must be
+     * removed, otherwise other keys might get lost.
+     *
+     * @param key the key
+     * @return <code>false</code> if the key was definitely not contained
+     */
+    public synchronized boolean remove(final Object key) {
+        if (counterCount == 0) {
+            return false;
+        }
+        final int h1 = BloomFilterUtils.hash(key.hashCode());
+        final int h2 = BloomFilterUtils.hash(h1);
+        if (!probablyContains(h1, h2)) {
+            return false;
+        }
+        for (int i = 0; i < hashCount; i++) {
+            final int index = index(h1, h2, i);
+            final int count = get(index);
+            if (count > 0 && count < MAX_COUNT) {
+                set(index, count - 1);
+                if (count == 1) {
+                    nonZeroCounters--;
+                }
+            }
+        }
+        if (size > 0) {
+            size--;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether the given key is probably in the set. This method never
+     * returns false if the key is in the set, but possibly returns true even if
+     * it isn't.
+     *
+     * @param key the key
+     * @return true if the given key is probably in the set
+     */
+    public boolean probablyContains(final Object key) {
+        if (counterCount == 0) {
+            return true;
+        }
+        final int h1 = BloomFilterUtils.hash(key.hashCode());
+        return probablyContains(h1, BloomFilterUtils.hash(h1));
+    }
+
+    private boolean probablyContains(final int h1, final int h2) {
+        for (int i = 0; i < hashCount; i++) {
+            if (get(index(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of keys currently in the filter.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The number of keys the filter has been sized for.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The size of the counter array in bytes.
+     */
+    public int getSizeInBytes() {
+        return counters.length;
+    }
+
+    /**
+     * The number of keys in relation to the capacity.
+     */
+    public double getLoad() {
+        return capacity == 0 ? 0 : (double) size / capacity;
+    }
+
+    /**
+     * The fraction of counters which are not zero.
+     */
+    public double getFillRatio() {
+        return counterCount == 0 ? 1 : (double) nonZeroCounters / counterCount;
+    }
+
+    /**
+     * The expected false positive rate for the current fill ratio.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(getFillRatio(), hashCount);
+    }
+
+    private int index(final int h1, final int h2, final int i) {
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % counterCount;
+    }
+
+    private int get(final int index) {
+        return (counters[index >>> 1] >>> ((index & 1) << 2)) & 0xf;
+    }
+
+    private void set(final int index, final int value) {
+        final int shift = (index & 1) << 2;
+        final int pos = index >>> 1;
+        counters[pos] = (byte) ((counters[pos] & ~(0xf << shift)) | (value << shift));
+    }
+}
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.metrics.MetricsService;
 
 /**
  * Internal interface representing the additional methods
@@ -48,6 +49,12 @@ public interface MapConfigurationProvider extends ResourceResolverFactory {
 
     int getVanityBloomFilterMaxBytes();
 
+    boolean isVanityPathIndexEnabled();
+
+    int getMapCacheMaxEntries();
+
+    MetricsService getMetricsService();
+
     boolean isOptimizeAliasResolutionEnabled();
 
     boolean hasVanityPathPrecedence();
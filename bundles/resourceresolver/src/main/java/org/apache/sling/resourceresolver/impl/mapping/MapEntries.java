@@ -18,9 +18,7 @@
  */
 package org.apache.sling.resourceresolver.impl.mapping;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -28,6 +26,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -44,7 +43,14 @@ import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -87,9 +93,31 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     public static final String PROP_VANITY_ORDER = "sling:vanityOrder";
 
-    private static final String VANITY_BLOOM_FILTER_NAME = "vanityBloomFilter.txt";
+    private static final String VANITY_BLOOM_FILTER_NAME = "vanityBloomFilter.bin";
 
-    private static final int VANITY_BLOOM_FILTER_MAX_ENTRIES = 10000000;
+    /**
+     * Suffix of the marker file written next to the bloom filter on a clean
+     * shutdown. Without it the filter on disk might miss keys added after it
+     * was written, so it is rebuilt from the repository.
+     */
+    private static final String VANITY_BLOOM_FILTER_CLEAN_SUFFIX = ".clean";
+
+    /** The file name used by the previous, plain bloom filter */
+    private static final String VANITY_BLOOM_FILTER_LEGACY_NAME = "vanityBloomFilter.txt";
+
+    /** The initial capacity of a new bloom filter */
+    private static final int VANITY_BLOOM_FILTER_INITIAL_ENTRIES = 100000;
+
+    /** The load of the bloom filter which triggers a resize */
+    private static final double VANITY_BLOOM_FILTER_MAX_LOAD = 0.9;
+
+    /** The observed false positive rate which triggers a rebuild */
+    private static final double VANITY_BLOOM_FILTER_MAX_FALSE_POSITIVE_RATE = 0.1;
+
+    /** The number of checks needed before the observed false positive rate is considered */
+    private static final long VANITY_BLOOM_FILTER_MIN_CHECKS = 1000;
+
+    private static final String VANITY_PATH_INDEX_NAME = "vanityPathIndex.bin";
 
     /** Key for the global list. */
     private static final String GLOBAL_LIST_KEY = "*";
@@ -100,8 +128,13 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     private static final String JCR_SYSTEM_PREFIX = "/jcr:system/";
 
+    /** The name of the node holding the access control policy of its parent */
+    private static final String REP_POLICY_SEGMENT = "/rep:policy";
+
     static final String ANY_SCHEME_HOST = "[^/]+/[^/]+";
 
+    private static final String MBEAN_OBJECT_NAME = "org.apache.sling:type=resource-resolver,name=mapping";
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -119,8 +152,40 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     private Map<String, Map<String, String>> aliasMap;
 
+    /**
+     * The mapping state used by the resource resolvers. The fields above are
+     * only changed while holding the {@link #initializing} lock and are
+     * published as a new snapshot once a change has been applied completely.
+     */
+    private volatile MappingSnapshot snapshot;
+
+    /** Set while a batch of changes is applied, see {@link #mappingChanged()} */
+    private boolean applyingChanges;
+
+    /** Whether a batch of changes modified the mapping */
+    private boolean mappingChangedInBatch;
+
+    /**
+     * Counts the changes of the mapping state, so that vanity paths looked
+     * up without holding the {@link #initializing} lock are only cached if
+     * the state has not changed during the lookup.
+     */
+    private volatile long mappingChangeCount;
+
+    /** Resource changes waiting to be applied by the {@link #updater} */
+    private final ConcurrentLinkedQueue<ResourceChange> pendingChanges = new ConcurrentLinkedQueue<ResourceChange>();
+
+    private final AtomicInteger pendingChangeCount = new AtomicInteger();
+
+    private final ExecutorService updater;
+
+    /** Cache for the results of map(), might be null */
+    private final MapResultCache mapResultCache;
+
     private ServiceRegistration<ResourceChangeListener> registration;
 
+    private ServiceRegistration<MapEntriesMBean> mbeanRegistration;
+
     private EventAdmin eventAdmin;
 
     private final ReentrantLock initializing = new ReentrantLock();
@@ -143,11 +208,23 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     private final File vanityBloomFilterFile;
 
-    private byte[] vanityBloomFilter;
+    private volatile CountingBloomFilter vanityBloomFilter;
 
-    private Timer timer;
+    /** The filter currently being filled in the background, if any */
+    private volatile CountingBloomFilter rebuildingVanityBloomFilter;
+
+    /** Whether a background rebuild of the bloom filter is running */
+    private final AtomicBoolean bloomFilterRebuildRunning = new AtomicBoolean();
 
-    private boolean updateBloomFilterFile = false;
+    /** Number of vanity path lookups the bloom filter did not rule out */
+    private final AtomicLong vanityBloomFilterPositives = new AtomicLong();
+
+    /** Number of those lookups which did not find a vanity path */
+    private final AtomicLong vanityBloomFilterFalsePositives = new AtomicLong();
+
+    private VanityPathIndex vanityPathIndex;
+
+    private Timer timer;
 
     @SuppressWarnings("unchecked")
     private MapEntries() {
@@ -159,6 +236,10 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         this.mapMaps = Collections.<MapEntry> emptyList();
         this.vanityTargets = Collections.<String,List <String>>emptyMap();
         this.aliasMap = Collections.<String, Map<String, String>>emptyMap();
+        this.snapshot = new MappingSnapshot(null, 0, 0, SnapshotMap.copyOf(this.resolveMapsMap), this.mapMaps,
+                SnapshotMap.copyOf(this.aliasMap));
+        this.updater = null;
+        this.mapResultCache = null;
         this.registration = null;
         this.eventAdmin = null;
         this.enabledVanityPaths = true;
@@ -191,6 +272,22 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         this.mapMaps = Collections.<MapEntry> emptyList();
         this.vanityTargets = Collections.<String,List <String>>emptyMap();
         this.aliasMap = Collections.<String, Map<String, String>>emptyMap();
+        this.snapshot = new MappingSnapshot(null, 0, 0, SnapshotMap.copyOf(this.resolveMapsMap), this.mapMaps,
+                SnapshotMap.copyOf(this.aliasMap));
+        this.updater = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Apache Sling Resource Resolver Mapping Updater");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (factory.getMapCacheMaxEntries() > 0) {
+            this.mapResultCache = new MapResultCache(factory.getMapCacheMaxEntries(), factory.getMetricsService());
+        } else {
+            this.mapResultCache = null;
+        }
 
         doInit();
 
@@ -200,8 +297,26 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
         this.registration = bundleContext.registerService(ResourceChangeListener.class, this, props);
 
+        try {
+            final Dictionary<String, Object> mbeanProps = new Hashtable<String, Object>();
+            mbeanProps.put("jmx.objectname", MBEAN_OBJECT_NAME);
+            this.mbeanRegistration = bundleContext.registerService(MapEntriesMBean.class, new MapEntriesMBeanImpl(this), mbeanProps);
+        } catch (final Throwable t) {
+            log.debug("Unable to register mbean", t);
+        }
+
         this.vanityCounter = new AtomicLong(0);
         this.vanityBloomFilterFile = bundleContext.getDataFile(VANITY_BLOOM_FILTER_NAME);
+        final File legacyBloomFilterFile = bundleContext.getDataFile(VANITY_BLOOM_FILTER_LEGACY_NAME);
+        if (legacyBloomFilterFile != null && legacyBloomFilterFile.exists() && !legacyBloomFilterFile.delete()) {
+            log.warn("Unable to delete outdated bloom filter file {}", legacyBloomFilterFile);
+        }
+        if (this.enabledVanityPaths && factory.isVanityPathIndexEnabled() && !isAllVanityPathEntriesCached()) {
+            final File vanityPathIndexFile = bundleContext.getDataFile(VANITY_PATH_INDEX_NAME);
+            if (vanityPathIndexFile != null) {
+                this.vanityPathIndex = new VanityPathIndex(vanityPathIndexFile);
+            }
+        }
         initializeVanityPaths();
     }
 
@@ -220,7 +335,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
                 return;
             }
 
-            final Map<String, List<MapEntry>> newResolveMapsMap = new ConcurrentHashMap<String, List<MapEntry>>();
+            final Map<String, List<MapEntry>> newResolveMapsMap = new ChangeTrackingMap<String, List<MapEntry>>();
 
             //optimization made in SLING-2521
             if (enableOptimizeAliasResolution){
@@ -232,7 +347,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
             doUpdateConfiguration();
 
-            sendChangeEvent();
+            mappingChanged();
         } catch (final Exception e) {
 
             log.warn("doInit: Unexpected problem during initialization", e);
@@ -261,33 +376,63 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
                             "This platform does not have file system support");
                 }
                 boolean createVanityBloomFilter = false;
-                if (!vanityBloomFilterFile.exists()) {
+                final File cleanMarker = getBloomFilterCleanMarker();
+                if (vanityBloomFilterFile.exists() && cleanMarker.exists()) {
+                    // initialize bloom filter from disk
+                    try {
+                        vanityBloomFilter = CountingBloomFilter.load(vanityBloomFilterFile);
+                    } catch (final IOException ioe) {
+                        log.warn("Unable to read bloom filter file {}, recreating it", vanityBloomFilterFile, ioe);
+                    }
+                } else if (vanityBloomFilterFile.exists()) {
+                    log.info("Bloom filter file {} has not been written on a clean shutdown, recreating it", vanityBloomFilterFile);
+                }
+                // the filter changes from now on, the file is only valid
+                // again once it has been written on shutdown
+                if (cleanMarker.exists() && !cleanMarker.delete()) {
+                    log.warn("Unable to delete bloom filter marker {}", cleanMarker);
+                }
+                if (vanityBloomFilter == null) {
                     log.debug("creating bloom filter file {}",
                             vanityBloomFilterFile.getAbsolutePath());
-                    vanityBloomFilter = createVanityBloomFilter();
-                    persistBloomFilter();
+                    vanityBloomFilter = createVanityBloomFilter(VANITY_BLOOM_FILTER_INITIAL_ENTRIES);
                     createVanityBloomFilter = true;
-                } else {
-                    // initialize bloom filter from disk
-                    vanityBloomFilter = new byte[(int) vanityBloomFilterFile
-                            .length()];
-                    DataInputStream dis = new DataInputStream(
-                            new FileInputStream(vanityBloomFilterFile));
-                    try {
-                        dis.readFully(vanityBloomFilter);
-                    } finally {
-                        dis.close();
+                }
+
+                // the index needs to be (re)built from the repository if it
+                // does not exist yet or if the bloom filter is rebuilt
+                boolean buildVanityPathIndex = false;
+                if (vanityPathIndex != null && (createVanityBloomFilter || vanityPathIndex.isEmpty())) {
+                    log.debug("building vanity path index");
+                    vanityPathIndex.reset();
+                    buildVanityPathIndex = true;
+                    if (!createVanityBloomFilter) {
+                        // both are filled by the same scan
+                        vanityBloomFilter = createVanityBloomFilter(vanityBloomFilter.getCapacity());
+                        createVanityBloomFilter = true;
                     }
                 }
 
-                // task for persisting the bloom filter every minute (if changes
-                // exist)
+                // task for checking the bloom filter every minute
                 timer = new Timer();
-                timer.schedule(new BloomFilterTask(), 60 * 1000);
+                timer.schedule(new BloomFilterTask(), 60 * 1000, 60 * 1000);
 
                 final Map<String, List<String>> vanityTargets = this
-                        .loadVanityPaths(createVanityBloomFilter);
+                        .loadVanityPaths(createVanityBloomFilter || buildVanityPathIndex);
                 this.vanityTargets = vanityTargets;
+
+                if (buildVanityPathIndex) {
+                    vanityPathIndex.compact();
+                }
+                if (createVanityBloomFilter) {
+                    persistBloomFilter();
+                    if (vanityBloomFilter.getLoad() > VANITY_BLOOM_FILTER_MAX_LOAD) {
+                        // resize right away instead of waiting for the next check
+                        timer.schedule(new BloomFilterTask(), 0);
+                    }
+                }
+                this.mappingChangeCount++;
+                publishSnapshot();
             }
         } finally {
             this.initializing.unlock();
@@ -316,7 +461,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
                     doUpdateConfiguration();
                 }
             }
-            sendChangeEvent();
+            mappingChanged();
 
         } finally {
             this.initializing.unlock();
@@ -349,7 +494,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             if (path.startsWith(this.mapRoot)) {
                 doUpdateConfiguration();
             }
-            sendChangeEvent();
+            mappingChanged();
         } finally {
             this.initializing.unlock();
         }
@@ -383,7 +528,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             if (path.startsWith(this.mapRoot)) {
                 doUpdateConfiguration();
             }
-            sendChangeEvent();
+            mappingChanged();
         } finally {
             this.initializing.unlock();
         }
@@ -416,7 +561,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             if (path.startsWith(this.mapRoot)) {
                 doUpdateConfiguration();
             }
-            sendChangeEvent();
+            mappingChanged();
         } finally {
             this.initializing.unlock();
         }
@@ -432,7 +577,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         }
         try {
             doUpdateConfiguration();
-            sendChangeEvent();
+            mappingChanged();
         } finally {
             this.initializing.unlock();
         }
@@ -456,16 +601,12 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     private void doAddVanity(String path) {
         Resource resource = resolver.getResource(path);
-        boolean needsUpdate = false;
         if (isAllVanityPathEntriesCached() || vanityCounter.longValue() < maxCachedVanityPathEntries) {
             // fill up the cache and the bloom filter
-            needsUpdate = loadVanityPath(resource, resolveMapsMap, vanityTargets, true, true);
+            loadVanityPath(resource, resolveMapsMap, vanityTargets, true, true);
         } else {
             // fill up the bloom filter
-            needsUpdate = loadVanityPath(resource, resolveMapsMap, vanityTargets, false, true);
-        }
-        if ( needsUpdate ) {
-            updateBloomFilterFile = true;
+            loadVanityPath(resource, resolveMapsMap, vanityTargets, false, true);
         }
     }
 
@@ -476,21 +617,28 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     private void doRemoveVanity(String path) {
         String actualContentPath = getActualContentPath(path);
+        if (vanityPathIndex != null) {
+            vanityPathIndex.removeTarget(actualContentPath);
+        }
         List <String> l = vanityTargets.remove(actualContentPath);
         if (l != null){
             for (String s : l){
+                removeFromBloomFilter(s);
                 List<MapEntry> entries = this.resolveMapsMap.get(s);
                 if (entries!= null) {
-                    for (Iterator<MapEntry> iterator =entries.iterator(); iterator.hasNext(); ) {
-                        MapEntry entry = iterator.next();
+                    // the list might be part of the published snapshot
+                    final List<MapEntry> remaining = new ArrayList<MapEntry>(entries.size());
+                    for (final MapEntry entry : entries) {
                         String redirect = getMapEntryRedirect(entry);
-                        if (redirect != null && redirect.equals(actualContentPath)) {
-                            iterator.remove();
+                        if (redirect == null || !redirect.equals(actualContentPath)) {
+                            remaining.add(entry);
                         }
                     }
-                }
-                if (entries!= null && entries.isEmpty()) {
-                    this.resolveMapsMap.remove(s);
+                    if (remaining.isEmpty()) {
+                        this.resolveMapsMap.remove(s);
+                    } else {
+                        this.resolveMapsMap.put(s, remaining);
+                    }
                 }
             }
             if (vanityCounter.longValue() > 0) {
@@ -516,15 +664,21 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             boolean updatedOrder = false;
             for (String vanityTarget : vanityPaths) {
                 List<MapEntry> entries = this.resolveMapsMap.get(vanityTarget);
+                // entries are shared with the published snapshot, so
+                // the updated entries are created as copies
+                final List<MapEntry> updatedEntries = new ArrayList<MapEntry>(entries.size());
                 for (MapEntry entry : entries) {
                     String redirect = getMapEntryRedirect(entry);
                     if (redirect != null && redirect.equals(actualContentPath)) {
-                        entry.setOrder(vanityOrder);
+                        updatedEntries.add(new MapEntry(entry.getPattern(), entry.getStatus(), false, vanityOrder, entry.getRedirect()));
                         updatedOrder = true;
+                    } else {
+                        updatedEntries.add(entry);
                     }
                 }
                 if (updatedOrder) {
-                    Collections.sort(entries);
+                    Collections.sort(updatedEntries);
+                    this.resolveMapsMap.put(vanityTarget, updatedEntries);
                 }
             }
         }
@@ -603,15 +757,18 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         }
         Map<String, String> aliasMapEntry = aliasMap.get(path);
         if (aliasMapEntry != null) {
-            for (Iterator<String> iterator =aliasMapEntry.keySet().iterator(); iterator.hasNext(); ) {
-                String key = iterator.next();
-                if (resourceName.equals(aliasMapEntry.get(key))){
-                    iterator.remove();
+            // the map might be part of the published snapshot
+            final Map<String, String> remaining = new LinkedHashMap<String, String>();
+            for (final Map.Entry<String, String> entry : aliasMapEntry.entrySet()) {
+                if (!resourceName.equals(entry.getValue())) {
+                    remaining.put(entry.getKey(), entry.getValue());
                 }
             }
-        }
-        if (aliasMapEntry != null && aliasMapEntry.isEmpty()) {
-            this.aliasMap.remove(path);
+            if (remaining.isEmpty()) {
+                this.aliasMap.remove(path);
+            } else if (remaining.size() != aliasMapEntry.size()) {
+                this.aliasMap.put(path, remaining);
+            }
         }
     }
 
@@ -623,11 +780,30 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
      * Cleans up this class.
      */
     public void dispose() {
-        try {
-            persistBloomFilter();
-        } catch (IOException e) {
-           log.error("Error while saving bloom filter to disk", e);
+        if (this.mbeanRegistration != null) {
+            this.mbeanRegistration.unregister();
+            this.mbeanRegistration = null;
+        }
+        if (this.updater != null) {
+            // changes not applied yet are dropped, a running batch
+            // is waited for by acquiring the lock below
+            this.updater.shutdown();
+            this.pendingChanges.clear();
+            this.pendingChangeCount.set(0);
+        }
+        if (this.timer != null) {
+            this.timer.cancel();
+            this.timer = null;
+        }
+        if (this.vanityBloomFilter != null) {
+            try {
+                persistBloomFilter();
+                new FileOutputStream(getBloomFilterCleanMarker()).close();
+            } catch (IOException e) {
+               log.error("Error while saving bloom filter to disk", e);
+            }
         }
+        compactVanityPathIndex();
 
         if (this.registration != null) {
             this.registration.unregister();
@@ -702,29 +878,76 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             key = requestPath.substring(secondIndex);
         }
 
-        return new MapEntryIterator(key, resolveMapsMap, vanityPathPrecedence);
+        // only the global entries which might match the request path are
+        // considered, the others are skipped without evaluating their pattern
+        final MappingSnapshot snapshot = this.snapshot;
+        return new MapEntryIterator(key, snapshot.globalMatcher.getCandidates(requestPath), snapshot.resolveMaps, vanityPathPrecedence);
     }
 
     public Collection<MapEntry> getMapMaps() {
-        return mapMaps;
+        return this.snapshot.mapMaps;
     }
 
     public Map<String, String> getAliasMap(final String parentPath) {
-        return aliasMap.get(parentPath);
+        return this.snapshot.aliasMap.get(parentPath);
+    }
+
+    /**
+     * The generation of the mapping state used by the resource resolvers.
+     * It is incremented each time a new state is published.
+     */
+    public long getGeneration() {
+        return this.snapshot.generation;
+    }
+
+    /**
+     * The generation in which the map maps have been changed last. Changes
+     * to the aliases are not reflected, as they are tracked per path by the
+     * {@link MapResultCache}.
+     */
+    public long getMapMapsGeneration() {
+        return this.snapshot.mapMapsGeneration;
+    }
+
+    /**
+     * The cache for the results of map() or <code>null</code> if disabled.
+     */
+    public MapResultCache getMapResultCache() {
+        return this.mapResultCache;
+    }
+
+    /**
+     * The number of resource changes which have not been applied yet.
+     */
+    public int getPendingChangeCount() {
+        return this.pendingChangeCount.get();
     }
 
     /**
      * get the MapEnty containing all the nodes having a specific vanityPath
      */
     private List<MapEntry> getMapEntryList(String vanityPath){
+        return getMapEntryList(vanityPath, this.snapshot.resolveMaps);
+    }
+
+    private List<MapEntry> getMapEntryList(final String vanityPath, final Map<String, List<MapEntry>> resolveMaps) {
         List<MapEntry> mapEntries = null;
 
-        if (BloomFilterUtils.probablyContains(vanityBloomFilter, vanityPath)) {
-            mapEntries = this.resolveMapsMap.get(vanityPath);
+        if (vanityBloomFilter.probablyContains(vanityPath)) {
+            vanityBloomFilterPositives.incrementAndGet();
+            mapEntries = resolveMaps.get(vanityPath);
             if (mapEntries == null) {
-                Map<String, List<MapEntry>>  mapEntry = getVanityPaths(vanityPath);
+                Map<String, List<MapEntry>>  mapEntry;
+                if (vanityPathIndex != null) {
+                    mapEntry = getIndexedVanityPaths(vanityPath);
+                } else {
+                    mapEntry = getVanityPaths(vanityPath);
+                }
                 mapEntries = mapEntry.get(vanityPath);
             }
+            if (mapEntries == null || mapEntries.isEmpty()) {
+                vanityBloomFilterFalsePositives.incrementAndGet();
+            }
         }
 
         return mapEntries;
@@ -740,6 +963,77 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
      */
     @Override
     public void onChange(List<ResourceChange> changes) {
+        if (this.resolver == null) {
+            return;
+        }
+        if (this.mapResultCache != null) {
+            // results depend on the existence and the properties of the
+            // resource itself and its parents, see ResourceResolverImpl.map
+            for (final ResourceChange rc : changes) {
+                this.mapResultCache.invalidate(getInvalidationPath(rc.getPath()));
+            }
+        }
+        // changes are applied in the background, so that a number of
+        // changes arriving in a short time result in a single new
+        // snapshot and the observation thread is not blocked
+        this.pendingChanges.addAll(changes);
+        this.pendingChangeCount.addAndGet(changes.size());
+        try {
+            this.updater.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    applyPendingChanges();
+                }
+            });
+        } catch (final RejectedExecutionException ree) {
+            log.debug("onChange: Ignoring changes after dispose", ree);
+        }
+    }
+
+    /**
+     * Apply all pending changes and publish the resulting mapping state.
+     */
+    private void applyPendingChanges() {
+        final List<ResourceChange> changes = new ArrayList<ResourceChange>();
+        ResourceChange change;
+        while ((change = this.pendingChanges.poll()) != null) {
+            changes.add(change);
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        this.initializing.lock();
+        try {
+            if (this.resolver == null) {
+                return;
+            }
+            this.applyingChanges = true;
+            this.mappingChangedInBatch = false;
+            try {
+                applyChanges(changes);
+            } finally {
+                this.applyingChanges = false;
+            }
+            if (this.mappingChangedInBatch) {
+                mappingChanged();
+            }
+            if (this.mapResultCache != null) {
+                // drop results computed from the previous snapshot
+                // after the changes had been received
+                for (final ResourceChange rc : changes) {
+                    this.mapResultCache.invalidate(getInvalidationPath(rc.getPath()));
+                }
+            }
+        } catch (final RuntimeException e) {
+            log.warn("applyPendingChanges: Unexpected problem while applying changes", e);
+        } finally {
+            this.pendingChangeCount.addAndGet(-changes.size());
+            this.initializing.unlock();
+        }
+    }
+
+    private void applyChanges(final List<ResourceChange> changes) {
         boolean wasResolverRefreshed = false;
 
         for(final ResourceChange rc : changes) {
@@ -755,6 +1049,9 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             // removal of a resource is handled differently
             if (rc.getType() == ResourceChange.ChangeType.REMOVED) {
                 final String actualContentPath = getActualContentPath(path);
+                if (vanityPathIndex != null) {
+                    removeFromVanityPathIndex(path, actualContentPath);
+                }
                 for (final String target : this.vanityTargets.keySet()) {
                     if (target.startsWith(actualContentPath)) {
                         wasResolverRefreshed = doRemoveAttributes(path, Collections.singleton(PROP_VANITY_PATH), true, wasResolverRefreshed);
@@ -803,6 +1100,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
                         doUpdateVanity(path);
                         doUpdateAlias(path, false);
                     }
+                    this.mappingChangedInBatch = true;
                 }
 
             }
@@ -811,21 +1109,239 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
     // ---------- internal
 
-    private byte[] createVanityBloomFilter() throws IOException {
-        byte bloomFilter[] = null;
-        if (vanityBloomFilter == null) {
-            bloomFilter = BloomFilterUtils.createFilter(VANITY_BLOOM_FILTER_MAX_ENTRIES, this.vanityBloomFilterMaxBytes);
+    /**
+     * Publish the changed mapping state, unless a batch of changes is
+     * being applied, in which case this happens once the batch is done.
+     * Must be called while holding the {@link #initializing} lock.
+     */
+    private void mappingChanged() {
+        this.mappingChangeCount++;
+        if (this.applyingChanges) {
+            this.mappingChangedInBatch = true;
+        } else {
+            publishSnapshot();
+            sendChangeEvent();
+        }
+    }
+
+    /**
+     * Publish a copy of the current mapping state. The lists and maps
+     * contained in the state are never modified once they are added, so
+     * only the entries of the outer maps changed since the previous
+     * snapshot are copied. Must be called while holding the
+     * {@link #initializing} lock.
+     */
+    private void publishSnapshot() {
+        final MappingSnapshot previous = this.snapshot;
+        final long generation = previous.generation + 1;
+        final boolean mapMapsChanged = previous.mapMaps != this.mapMaps;
+        this.snapshot = new MappingSnapshot(previous, generation,
+                mapMapsChanged ? generation : previous.mapMapsGeneration,
+                updateSnapshotMap(previous.resolveMaps, this.resolveMapsMap),
+                this.mapMaps,
+                updateSnapshotMap(previous.aliasMap, this.aliasMap));
+        if (mapMapsChanged && this.mapResultCache != null) {
+            // all results of map() might be affected
+            this.mapResultCache.clear();
+        }
+    }
+
+    /**
+     * Derive a snapshot of the current map from the previous snapshot.
+     * Only maps tracking their changes can share the previous snapshot.
+     */
+    private static <V> SnapshotMap<String, V> updateSnapshotMap(final SnapshotMap<String, V> previous,
+            final Map<String, V> current) {
+        if (current instanceof ChangeTrackingMap) {
+            return previous.update(current, ((ChangeTrackingMap<String, V>) current).drainChanges());
         }
-        return bloomFilter;
+        return SnapshotMap.copyOf(current);
+    }
+
+    private CountingBloomFilter createVanityBloomFilter(final int elementCount) {
+        return CountingBloomFilter.create(elementCount, this.vanityBloomFilterMaxBytes);
     }
 
     private void persistBloomFilter() throws IOException {
-        if (vanityBloomFilterFile != null && vanityBloomFilter != null) {
-            FileOutputStream out = new FileOutputStream(vanityBloomFilterFile);
+        final CountingBloomFilter bloomFilter = this.vanityBloomFilter;
+        if (vanityBloomFilterFile != null && bloomFilter != null) {
+            bloomFilter.write(vanityBloomFilterFile);
+        }
+    }
+
+    private File getBloomFilterCleanMarker() {
+        return new File(vanityBloomFilterFile.getPath() + VANITY_BLOOM_FILTER_CLEAN_SUFFIX);
+    }
+
+    private void addToBloomFilter(final String vanityPath) {
+        vanityBloomFilter.add(vanityPath);
+        final CountingBloomFilter rebuilding = this.rebuildingVanityBloomFilter;
+        if (rebuilding != null) {
+            rebuilding.add(vanityPath);
+        }
+    }
+
+    private void removeFromBloomFilter(final String vanityPath) {
+        // removals are not applied to a filter being rebuilt: the key might
+        // not have been added yet, stale keys are harmless however
+        vanityBloomFilter.remove(vanityPath);
+    }
+
+    /**
+     * Rebuild the bloom filter in the background if it is overloaded
+     * or if too many lookups turn out to be false positives.
+     */
+    private void checkBloomFilter() {
+        final CountingBloomFilter bloomFilter = this.vanityBloomFilter;
+        if (bloomFilter == null || this.resolver == null) {
+            return;
+        }
+        int capacity = bloomFilter.getCapacity();
+        boolean rebuild = false;
+        if (bloomFilter.getLoad() > VANITY_BLOOM_FILTER_MAX_LOAD && bloomFilter.getSizeInBytes() < this.vanityBloomFilterMaxBytes) {
+            capacity = Math.max(capacity * 2, bloomFilter.getSize() * 2);
+            log.info("Resizing vanity path bloom filter to a capacity of {} entries", capacity);
+            rebuild = true;
+        } else {
+            final long positives = vanityBloomFilterPositives.get();
+            if (positives >= VANITY_BLOOM_FILTER_MIN_CHECKS
+                    && (double) vanityBloomFilterFalsePositives.get() / positives > VANITY_BLOOM_FILTER_MAX_FALSE_POSITIVE_RATE
+                    && bloomFilter.getExpectedFalsePositiveRate() < VANITY_BLOOM_FILTER_MAX_FALSE_POSITIVE_RATE) {
+                log.info("Rebuilding vanity path bloom filter, observed false positive rate is {}", getVanityBloomFilterFalsePositiveRate());
+                rebuild = true;
+            }
+        }
+        if (rebuild && this.updater != null && this.bloomFilterRebuildRunning.compareAndSet(false, true)) {
+            // the repository query can take a while, so it does not
+            // block the timer thread; the updater is shut down on dispose
+            final int newCapacity = capacity;
             try {
-                out.write(this.vanityBloomFilter);
+                this.updater.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            rebuildBloomFilter(newCapacity);
+                        } finally {
+                            bloomFilterRebuildRunning.set(false);
+                        }
+                    }
+                });
+            } catch (final RejectedExecutionException ree) {
+                this.bloomFilterRebuildRunning.set(false);
+                log.debug("checkBloomFilter: Not rebuilding after dispose", ree);
+            }
+        }
+    }
+
+    /**
+     * Fill a new bloom filter from the repository and replace the current one.
+     * Keys added while the new filter is being filled are added to both.
+     */
+    @SuppressWarnings("deprecation")
+    private void rebuildBloomFilter(final int capacity) {
+        final MapConfigurationProvider factory = this.factory;
+        if (factory == null) {
+            return;
+        }
+        final CountingBloomFilter bloomFilter = createVanityBloomFilter(capacity);
+        this.rebuildingVanityBloomFilter = bloomFilter;
+        ResourceResolver queryResolver = null;
+        try {
+            queryResolver = factory.getAdministrativeResourceResolver(null);
+            final String queryString = "SELECT sling:vanityPath FROM sling:VanityPath WHERE sling:vanityPath IS NOT NULL";
+            final Iterator<Resource> i = queryResolver.findResources(queryString, "sql");
+            while (i.hasNext()) {
+                final Resource resource = i.next();
+                if (isValidVanityPath(resource)) {
+                    final ValueMap props = resource.adaptTo(ValueMap.class);
+                    for (final String pVanityPath : props.get(PROP_VANITY_PATH, new String[0])) {
+                        final String[] result = this.getVanityPathDefinition(pVanityPath);
+                        if (result != null) {
+                            bloomFilter.add(result[1]);
+                        }
+                    }
+                }
+            }
+            this.initializing.lock();
+            try {
+                if (this.resolver == null) {
+                    // disposed while the filter was filled
+                    return;
+                }
+                this.vanityBloomFilter = bloomFilter;
+                this.vanityBloomFilterPositives.set(0);
+                this.vanityBloomFilterFalsePositives.set(0);
+                persistBloomFilter();
             } finally {
-                out.close();
+                this.initializing.unlock();
+            }
+        } catch (final LoginException e) {
+            log.error("Exception while obtaining queryResolver", e);
+        } catch (final IOException e) {
+            log.error("Error while saving bloom filter to disk", e);
+        } finally {
+            this.rebuildingVanityBloomFilter = null;
+            if (queryResolver != null) {
+                queryResolver.close();
+            }
+        }
+    }
+
+    /**
+     * The fraction of the counters of the vanity path bloom filter in use.
+     */
+    public double getVanityBloomFilterFillRatio() {
+        final CountingBloomFilter bloomFilter = this.vanityBloomFilter;
+        return bloomFilter == null ? 0 : bloomFilter.getFillRatio();
+    }
+
+    /**
+     * The fraction of lookups passing the vanity path bloom filter which
+     * did not find a vanity path.
+     */
+    public double getVanityBloomFilterFalsePositiveRate() {
+        final long positives = vanityBloomFilterPositives.get();
+        return positives == 0 ? 0 : (double) vanityBloomFilterFalsePositives.get() / positives;
+    }
+
+    /**
+     * The number of vanity paths in the bloom filter and its capacity.
+     */
+    public int[] getVanityBloomFilterSize() {
+        final CountingBloomFilter bloomFilter = this.vanityBloomFilter;
+        return bloomFilter == null ? new int[] {0, 0} : new int[] {bloomFilter.getSize(), bloomFilter.getCapacity()};
+    }
+
+    /**
+     * Remove the vanity paths defined by a removed resource from the index.
+     * Vanity paths defined on a jcr:content child belong to the parent.
+     */
+    private void removeFromVanityPathIndex(final String path, final String actualContentPath) {
+        this.initializing.lock();
+        try {
+            if (path.equals(actualContentPath)) {
+                vanityPathIndex.removeTree(path);
+            } else {
+                vanityPathIndex.removeTarget(actualContentPath);
+            }
+        } finally {
+            this.initializing.unlock();
+        }
+    }
+
+    /**
+     * Write pending changes of the vanity path index to disk.
+     */
+    private void compactVanityPathIndex() {
+        if (vanityPathIndex != null && vanityPathIndex.getPendingChanges() > 0) {
+            this.initializing.lock();
+            try {
+                vanityPathIndex.compact();
+            } catch (final IOException e) {
+                log.error("Error while saving vanity path index to disk", e);
+            } finally {
+                this.initializing.unlock();
             }
         }
     }
@@ -866,27 +1382,23 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
     @SuppressWarnings("deprecation")
     private Map<String, List<MapEntry>> getVanityPaths(String vanityPath) {
 
-        Map<String, List<MapEntry>> entryMap = new HashMap<String, List<MapEntry>>();
+        final Map<String, List<MapEntry>> entryMap = new HashMap<String, List<MapEntry>>();
+        final Map <String, List<String>> targetPaths = new HashMap <String, List<String>>();
 
         // sling:VanityPath (uppercase V) is the mixin name
         // sling:vanityPath (lowercase) is the property name
         final String queryString = "SELECT sling:vanityPath, sling:redirect, sling:redirectStatus FROM sling:VanityPath WHERE sling:vanityPath ="
                 + "'"+escapeIllegalXpathSearchChars(vanityPath).replaceAll("'", "''")+"' OR sling:vanityPath ="+ "'"+escapeIllegalXpathSearchChars(vanityPath.substring(1)).replaceAll("'", "''")+"' ORDER BY sling:vanityOrder DESC";
 
+        // the query runs without holding the lock, see cacheVanityPaths
+        final long changeCount = this.mappingChangeCount;
         ResourceResolver queryResolver = null;
-
         try {
             queryResolver = factory.getAdministrativeResourceResolver(null);
             final Iterator<Resource> i = queryResolver.findResources(queryString, "sql");
             while (i.hasNext()) {
                 final Resource resource = i.next();
-                if (maxCachedVanityPathEntriesStartup || vanityCounter.longValue() < maxCachedVanityPathEntries) {
-                    loadVanityPath(resource, resolveMapsMap, vanityTargets, true, false);
-                    entryMap = resolveMapsMap;
-                } else {
-                    final Map <String, List<String>> targetPaths = new HashMap <String, List<String>>();
-                    loadVanityPath(resource, entryMap, targetPaths, true, false);
-                }
+                loadVanityPath(resource, entryMap, targetPaths, true, false);
             }
         } catch (LoginException e) {
             log.error("Exception while obtaining queryResolver", e);
@@ -895,9 +1407,80 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
                 queryResolver.close();
             }
         }
+        cacheVanityPaths(entryMap, targetPaths, changeCount);
         return entryMap;
     }
 
+    /**
+     * get the vanity paths from the vanity path index, the index based
+     * counterpart of {@link #getVanityPaths(String)}
+     */
+    private Map<String, List<MapEntry>> getIndexedVanityPaths(String vanityPath) {
+        final Map<String, List<MapEntry>> entryMap = new HashMap<String, List<MapEntry>>();
+        final Map <String, List<String>> targetPaths = new HashMap <String, List<String>>();
+
+        final long changeCount = this.mappingChangeCount;
+        final List<VanityPathIndex.Entry> indexEntries = new ArrayList<VanityPathIndex.Entry>(vanityPathIndex.get(vanityPath));
+        if (indexEntries.isEmpty()) {
+            return entryMap;
+        }
+        // same order as the repository query
+        Collections.sort(indexEntries, new Comparator<VanityPathIndex.Entry>() {
+
+            @Override
+            public int compare(final VanityPathIndex.Entry o1, final VanityPathIndex.Entry o2) {
+                return o1.order < o2.order ? 1 : (o1.order == o2.order ? 0 : -1);
+            }
+        });
+        for (final VanityPathIndex.Entry entry : indexEntries) {
+            addVanityPathEntries(entryMap, targetPaths, entry.vanityPath, entry.url, entry.status, entry.order, entry.redirect);
+        }
+        cacheVanityPaths(entryMap, targetPaths, changeCount);
+        return entryMap;
+    }
+
+    /**
+     * Add the vanity paths looked up by {@link #getVanityPaths(String)} to
+     * the mapping state and publish them with a new snapshot. The lookup is
+     * done without holding the lock, so the result is dropped if the mapping
+     * changed in the meantime. Readers never wait for the lock, the result
+     * is not cached if changes are applied concurrently.
+     */
+    private void cacheVanityPaths(final Map<String, List<MapEntry>> entryMap,
+            final Map<String, List<String>> targetPaths, final long changeCount) {
+        if (entryMap.isEmpty()
+                || !(maxCachedVanityPathEntriesStartup || vanityCounter.longValue() < maxCachedVanityPathEntries)
+                || !this.initializing.tryLock()) {
+            return;
+        }
+        try {
+            if (this.resolver == null || changeCount != this.mappingChangeCount) {
+                return;
+            }
+            // same as loading the resources into the mapping state directly
+            for (final Map.Entry<String, List<MapEntry>> entry : entryMap.entrySet()) {
+                final List<MapEntry> entries = this.resolveMapsMap.get(entry.getKey());
+                if (entries == null) {
+                    this.resolveMapsMap.put(entry.getKey(), entry.getValue());
+                } else {
+                    final List<MapEntry> entriesCopy = new ArrayList<MapEntry>(entries);
+                    entriesCopy.addAll(entry.getValue());
+                    Collections.sort(entriesCopy);
+                    this.resolveMapsMap.put(entry.getKey(), entriesCopy);
+                }
+            }
+            for (final Map.Entry<String, List<String>> entry : targetPaths.entrySet()) {
+                for (final String checkPath : entry.getValue()) {
+                    updateTargetPaths(vanityTargets, entry.getKey(), checkPath);
+                    vanityCounter.addAndGet(2);
+                }
+            }
+            publishSnapshot();
+        } finally {
+            this.initializing.unlock();
+        }
+    }
+
     private boolean isValidVanityPath(Resource resource){
         // ignore system tree
         if (resource.getPath().startsWith(JCR_SYSTEM_PREFIX)) {
@@ -938,6 +1521,21 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         return checkPath;
     }
 
+    /**
+     * The path of the resource whose map results are affected by a change.
+     * Changes of an access control policy affect the protected resource.
+     */
+    private String getInvalidationPath(final String path) {
+        final int policy = path.indexOf(REP_POLICY_SEGMENT);
+        if (policy >= 0) {
+            final int end = policy + REP_POLICY_SEGMENT.length();
+            if (end == path.length() || path.charAt(end) == '/') {
+                return path.substring(0, policy);
+            }
+        }
+        return getActualContentPath(path);
+    }
+
     private String getMapEntryRedirect(MapEntry mapEntry) {
         String[] redirect = mapEntry.getRedirect();
         if (redirect.length > 1) {
@@ -1058,7 +1656,7 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
      * property
      */
     private Map<String, Map<String, String>> loadAliases(final ResourceResolver resolver) {
-        final Map<String, Map<String, String>> map = new ConcurrentHashMap<String, Map<String, String>>();
+        final Map<String, Map<String, String>> map = new ChangeTrackingMap<String, Map<String, String>>();
         final String queryString = "SELECT sling:alias FROM nt:base WHERE sling:alias IS NOT NULL";
         final Iterator<Resource> i = resolver.findResources(queryString, "sql");
         while (i.hasNext()) {
@@ -1096,6 +1694,11 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             resourceName = resource.getName();
         }
         Map<String, String> parentMap = map.get(parentPath);
+        if (parentMap != null && map == this.aliasMap) {
+            // the map might be part of the published snapshot
+            parentMap = new LinkedHashMap<String, String>(parentMap);
+            map.put(parentPath, parentMap);
+        }
         for (final String alias : props.get(ResourceResolverImpl.PROP_ALIAS, String[].class)) {
             if (parentMap != null && parentMap.containsKey(alias)) {
                 log.warn("Encountered duplicate alias {} under parent path {}. Refusing to replace current target {} with {}.", new Object[] {
@@ -1174,6 +1777,23 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             vanityOrder = props.get(PROP_VANITY_ORDER, Long.class);
         }
 
+        // redirect target is the node providing the
+        // sling:vanityPath
+        // property (or its parent if the node is called
+        // jcr:content)
+        final Resource redirectTarget;
+        if (resource.getName().equals("jcr:content")) {
+            redirectTarget = resource.getParent();
+        } else {
+            redirectTarget = resource;
+        }
+        final String redirect = redirectTarget.getPath();
+
+        final boolean updateIndex = newVanity && vanityPathIndex != null;
+        if (updateIndex) {
+            vanityPathIndex.removeTarget(redirect);
+        }
+
         // url is ignoring scheme and host.port and the path is
         // what is stored in the sling:vanityPath property
         boolean hasVanityPath = false;
@@ -1183,18 +1803,6 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
             if (result != null) {
                 hasVanityPath = true;
                 final String url = result[0] + result[1];
-                // redirect target is the node providing the
-                // sling:vanityPath
-                // property (or its parent if the node is called
-                // jcr:content)
-                final Resource redirectTarget;
-                if (resource.getName().equals("jcr:content")) {
-                    redirectTarget = resource.getParent();
-                } else {
-                    redirectTarget = resource;
-                }
-                final String redirect = redirectTarget.getPath();
-                final String redirectName = redirectTarget.getName();
 
                 // whether the target is attained by a external redirect or
                 // by an internal redirect is defined by the sling:redirect
@@ -1205,48 +1813,57 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
                 final String checkPath = result[1];
 
-                boolean addedEntry;
-                if (addToCache) {
-                    if (redirectName.indexOf('.') > -1) {
-                        // 1. entry with exact match
-                        this.addEntry(entryMap, checkPath, getMapEntry(url + "$", status, false, vanityOrder, redirect));
-
-                        final int idx = redirectName.lastIndexOf('.');
-                        final String extension = redirectName.substring(idx + 1);
-
-                        // 2. entry with extension
-                        addedEntry = this.addEntry(entryMap, checkPath, getMapEntry(url + "\\." + extension, status, false, vanityOrder, redirect));
-                    } else {
-                        // 1. entry with exact match
-                        this.addEntry(entryMap, checkPath, getMapEntry(url + "$", status, false, vanityOrder, redirect + ".html"));
-
-                        // 2. entry with match supporting selectors and extension
-                        addedEntry = this.addEntry(entryMap, checkPath, getMapEntry(url + "(\\..*)", status, false, vanityOrder, redirect + "$1"));
-                    }
-                    if (addedEntry) {
-                        // 3. keep the path to return
-                        this.updateTargetPaths(targetPaths, redirect, checkPath);
-                        //increment only if the instance variable
-                        if (entryMap == resolveMapsMap) {
-                            vanityCounter.addAndGet(2);
-                        }
+                if (updateIndex) {
+                    vanityPathIndex.add(new VanityPathIndex.Entry(checkPath, url, redirect, status, vanityOrder));
+                }
 
-                        if (newVanity) {
-                            // update bloom filter
-                            BloomFilterUtils.add(vanityBloomFilter, checkPath);
-                        }
-                    }
-                } else {
-                    if (newVanity) {
-                        // update bloom filter
-                        BloomFilterUtils.add(vanityBloomFilter, checkPath);
-                    }
+                boolean addedEntry = false;
+                if (addToCache) {
+                    addedEntry = addVanityPathEntries(entryMap, targetPaths, checkPath, url, status, vanityOrder, redirect);
+                }
+                if (newVanity && (addedEntry || !addToCache)) {
+                    // update bloom filter
+                    addToBloomFilter(checkPath);
                 }
             }
         }
         return hasVanityPath;
     }
 
+    /**
+     * Add the map entries for a single vanity path definition
+     */
+    private boolean addVanityPathEntries(final Map<String, List<MapEntry>> entryMap, final Map <String, List<String>> targetPaths,
+            final String checkPath, final String url, final int status, final long vanityOrder, final String redirect) {
+        final String redirectName = ResourceUtil.getName(redirect);
+        boolean addedEntry;
+        if (redirectName.indexOf('.') > -1) {
+            // 1. entry with exact match
+            this.addEntry(entryMap, checkPath, getMapEntry(url + "$", status, false, vanityOrder, redirect));
+
+            final int idx = redirectName.lastIndexOf('.');
+            final String extension = redirectName.substring(idx + 1);
+
+            // 2. entry with extension
+            addedEntry = this.addEntry(entryMap, checkPath, getMapEntry(url + "\\." + extension, status, false, vanityOrder, redirect));
+        } else {
+            // 1. entry with exact match
+            this.addEntry(entryMap, checkPath, getMapEntry(url + "$", status, false, vanityOrder, redirect + ".html"));
+
+            // 2. entry with match supporting selectors and extension
+            addedEntry = this.addEntry(entryMap, checkPath, getMapEntry(url + "(\\..*)", status, false, vanityOrder, redirect + "$1"));
+        }
+        if (addedEntry) {
+            // 3. keep the path to return
+            this.updateTargetPaths(targetPaths, redirect, checkPath);
+            //increment only if the instance variable
+            if (entryMap == resolveMapsMap) {
+                vanityCounter.addAndGet(2);
+            }
+        }
+        return addedEntry;
+    }
+
     private void updateTargetPaths(final Map<String, List<String>> targetPaths, final String key, final String entry) {
         if (entry == null) {
            return;
@@ -1430,6 +2047,44 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
         return filter.toString();
     }
 
+    /**
+     * Immutable mapping state as used by the resource resolvers.
+     */
+    private static final class MappingSnapshot {
+
+        final long generation;
+
+        /** The generation in which the map maps have been changed last */
+        final long mapMapsGeneration;
+
+        final SnapshotMap<String, List<MapEntry>> resolveMaps;
+
+        final Collection<MapEntry> mapMaps;
+
+        final SnapshotMap<String, Map<String, String>> aliasMap;
+
+        /** Selects the candidates of the global list for a request path */
+        final MapEntryMatcher globalMatcher;
+
+        MappingSnapshot(final MappingSnapshot previous, final long generation, final long mapMapsGeneration,
+                final SnapshotMap<String, List<MapEntry>> resolveMaps,
+                final Collection<MapEntry> mapMaps, final SnapshotMap<String, Map<String, String>> aliasMap) {
+            this.generation = generation;
+            this.mapMapsGeneration = mapMapsGeneration;
+            this.resolveMaps = resolveMaps;
+            this.mapMaps = mapMaps;
+            this.aliasMap = aliasMap;
+
+            // the matcher is only rebuilt if the global list has changed
+            final List<MapEntry> globalList = resolveMaps.get(GLOBAL_LIST_KEY);
+            if (previous != null && previous.resolveMaps.get(GLOBAL_LIST_KEY) == globalList) {
+                this.globalMatcher = previous.globalMatcher;
+            } else {
+                this.globalMatcher = new MapEntryMatcher(globalList == null ? Collections.<MapEntry> emptyList() : globalList);
+            }
+        }
+    }
+
     private final class MapEntryIterator implements Iterator<MapEntry> {
 
         private final Map<String, List<MapEntry>> resolveMapsMap;
@@ -1446,10 +2101,11 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
 
         private boolean vanityPathPrecedence;
 
-        public MapEntryIterator(final String startKey, final Map<String, List<MapEntry>> resolveMapsMap, final boolean vanityPathPrecedence) {
+        public MapEntryIterator(final String startKey, final List<MapEntry> globalList,
+                final Map<String, List<MapEntry>> resolveMapsMap, final boolean vanityPathPrecedence) {
             this.key = startKey;
             this.resolveMapsMap = resolveMapsMap;
-            this.globalListIterator = this.resolveMapsMap.get(GLOBAL_LIST_KEY).iterator();
+            this.globalListIterator = globalList.iterator();
             this.vanityPathPrecedence = vanityPathPrecedence;
             this.seek();
         }
@@ -1503,8 +2159,8 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
                     if (MapEntries.this.isAllVanityPathEntriesCached()) {
                         special = this.resolveMapsMap.get(key);
                     } else {
-                        special = MapEntries.this.getMapEntryList(key)
-;                    }
+                        special = MapEntries.this.getMapEntryList(key, this.resolveMapsMap);
+                    }
                     if (special != null) {
                         specialIterator = special.iterator();
                     }
@@ -1575,15 +2231,8 @@ public class MapEntries implements ResourceChangeListener, ExternalResourceChang
     final class BloomFilterTask extends TimerTask {
         @Override
         public void run() {
-            try {
-                if (updateBloomFilterFile) {
-                    persistBloomFilter();
-                    updateBloomFilterFile = false;
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(
-                        "Error while saving bloom filter to disk", e);
-            }
+            compactVanityPathIndex();
+            checkBloomFilter();
         }
     }
 
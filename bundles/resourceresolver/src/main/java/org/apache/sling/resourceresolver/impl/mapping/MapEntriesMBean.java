@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+/**
+ * This is the management interface for the resource resolver mapping.
+ */
+public interface MapEntriesMBean {
+
+    /**
+     * Returns the generation of the mapping state currently used by the
+     * resource resolvers. The generation is incremented each time changes
+     * to the mapping have been applied.
+     *
+     * @return The generation
+     */
+    long getGeneration();
+
+    /**
+     * Returns the number of resource changes which have been received but
+     * not applied to the mapping yet.
+     *
+     * @return The number of pending changes
+     */
+    int getPendingChangeCount();
+}
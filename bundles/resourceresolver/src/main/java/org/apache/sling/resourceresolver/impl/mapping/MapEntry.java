@@ -64,7 +64,7 @@ public class MapEntry implements Comparable<MapEntry> {
 
     private final int status;
 
-    private long order;
+    private final long order;
 
     public static String appendSlash(String path) {
         if (!path.endsWith("/")) {
@@ -397,8 +397,4 @@ public class MapEntry implements Comparable<MapEntry> {
 
         return list.isEmpty() ? null : (String[]) list.toArray(new String[list.size()]);
     }
-
-    void setOrder(long order) {
-        this.order = order;
-    }
 }
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the map entries which might match a path, so that only their
+ * regular expressions have to be evaluated.
+ * <p>
+ * For each pattern the leading part which only consists of literal
+ * characters and the <code>.</code> wildcard is extracted and added to a
+ * trie. A path is then matched against the trie in a single pass. Patterns
+ * without such a prefix, for example those starting with a character class,
+ * are candidates for every path.
+ * <p>
+ * The candidates are returned in the order of the entries passed to the
+ * constructor. Instances are immutable.
+ */
+final class MapEntryMatcher {
+
+    /** Token of the <code>.</code> wildcard */
+    private static final int ANY = -1;
+
+    private final MapEntry[] entries;
+
+    private final Node root = new Node();
+
+    MapEntryMatcher(final List<MapEntry> entries) {
+        this.entries = entries.toArray(new MapEntry[entries.size()]);
+        for (int i = 0; i < this.entries.length; i++) {
+            Node node = root;
+            for (final int token : getPrefix(this.entries[i].getPattern())) {
+                node = node.getOrCreateChild(token);
+            }
+            node.addEntry(i);
+        }
+    }
+
+    /**
+     * Returns the entries which might match the given path, all other
+     * entries are guaranteed not to match.
+     *
+     * @param path the path
+     * @return the candidates in the original order
+     */
+    List<MapEntry> getCandidates(final String path) {
+        if (entries.length == 0) {
+            return Collections.emptyList();
+        }
+        final BitSet matches = new BitSet(entries.length);
+        collect(root, path, 0, matches);
+        final List<MapEntry> candidates = new ArrayList<MapEntry>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            candidates.add(entries[i]);
+        }
+        return candidates;
+    }
+
+    private static void collect(final Node node, final String path, final int pos, final BitSet matches) {
+        Node current = node;
+        int i = pos;
+        while (current != null) {
+            for (int j = 0; j < current.entryCount; j++) {
+                matches.set(current.entries[j]);
+            }
+            if (i == path.length()) {
+                return;
+            }
+            if (current.any != null) {
+                if (current.children == null) {
+                    current = current.any;
+                    i++;
+                    continue;
+                }
+                collect(current.any, path, i + 1, matches);
+            }
+            current = current.children == null ? null : current.children.get(path.charAt(i));
+            i++;
+        }
+    }
+
+    /**
+     * Extract the tokens every string matched by the pattern starts with:
+     * literal characters and {@link #ANY}.
+     */
+    static int[] getPrefix(final String pattern) {
+        if (!pattern.startsWith("^") || hasTopLevelAlternative(pattern)) {
+            return new int[0];
+        }
+        final List<Integer> tokens = new ArrayList<Integer>();
+        int i = 1;
+        loop: while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 < pattern.length() && !Character.isLetterOrDigit(pattern.charAt(i + 1))) {
+                        tokens.add((int) pattern.charAt(i + 1));
+                        i += 2;
+                        continue;
+                    }
+                    break loop;
+                case '.':
+                    tokens.add(ANY);
+                    break;
+                case '?':
+                case '*':
+                case '{':
+                    // the previous token is optional
+                    if (!tokens.isEmpty()) {
+                        tokens.remove(tokens.size() - 1);
+                    }
+                    break loop;
+                case '[':
+                case ']':
+                case '(':
+                case ')':
+                case '}':
+                case '+':
+                case '|':
+                case '$':
+                case '^':
+                    break loop;
+                default:
+                    tokens.add((int) c);
+            }
+            i++;
+        }
+        final int[] result = new int[tokens.size()];
+        for (int j = 0; j < result.length; j++) {
+            result[j] = tokens.get(j);
+        }
+        return result;
+    }
+
+    /**
+     * Check for a <code>|</code> outside of groups and character classes,
+     * in which case the start anchor only applies to the first alternative.
+     */
+    private static boolean hasTopLevelAlternative(final String pattern) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        private Map<Character, Node> children;
+
+        private Node any;
+
+        private int[] entries;
+
+        private int entryCount;
+
+        Node getOrCreateChild(final int token) {
+            if (token == ANY) {
+                if (any == null) {
+                    any = new Node();
+                }
+                return any;
+            }
+            if (children == null) {
+                children = new HashMap<Character, Node>();
+            }
+            Node child = children.get((char) token);
+            if (child == null) {
+                child = new Node();
+                children.put((char) token, child);
+            }
+            return child;
+        }
+
+        void addEntry(final int index) {
+            if (entries == null) {
+                entries = new int[1];
+            } else if (entryCount == entries.length) {
+                final int[] newEntries = new int[entries.length * 2];
+                System.arraycopy(entries, 0, newEntries, 0, entryCount);
+                entries = newEntries;
+            }
+            entries[entryCount++] = index;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+
+/**
+ * Cache for the results of {@link org.apache.sling.api.resource.ResourceResolver#map(HttpServletRequest, String)}.
+ * <p>
+ * Keys start with the mapped path, followed by the mapping generation, the
+ * user and the scheme, host, port and context path of the request. This
+ * allows to invalidate all results for a changed resource and its
+ * descendants with a single range operation.
+ * <p>
+ * A result is only added if no path which is a prefix of the mapped path
+ * has been invalidated since the computation of the result has been
+ * started, see {@link #getVersion()}. The invalidations are tracked in a
+ * fixed number of stripes, so an unrelated path sharing a stripe might
+ * prevent a result from being added, but never the other way round.
+ * <p>
+ * The results are held in a {@link ConcurrentHashMap}, so lookups do not
+ * block each other. If the cache is full, the results which have not been
+ * used within the last {@code maxEntries / 2} cache accesses are removed,
+ * which approximates removing the least recently used results.
+ */
+public class MapResultCache {
+
+    private static final String METRIC_PREFIX = "resourceresolver.map.cache.";
+
+    private static final char SEPARATOR = '\u0000';
+
+    /** Number of stripes for the invalidation versions, a power of two */
+    private static final int VERSION_STRIPES = 1024;
+
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<String, Result> results = new ConcurrentHashMap<String, Result>();
+
+    /**
+     * The keys of the results in key order for the range invalidation. A
+     * key is added after its result and removed after its result, so no
+     * result is missed by an invalidation.
+     */
+    private final NavigableSet<String> keys = new ConcurrentSkipListSet<String>();
+
+    /** Incremented with every access of a result, for the eviction */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /** The version, incremented with every invalidation */
+    private final AtomicLong version = new AtomicLong();
+
+    /** The version of the last invalidation of the paths in each stripe */
+    private final AtomicLongArray invalidated = new AtomicLongArray(VERSION_STRIPES);
+
+    /** The version of the last {@link #clear()} */
+    private volatile long cleared;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    public MapResultCache(final int maxEntries, final MetricsService metricsService) {
+        this.maxEntries = maxEntries;
+        final MetricsService metrics = metricsService == null ? MetricsService.NOOP : metricsService;
+        this.hits = metrics.counter(METRIC_PREFIX + "hits");
+        this.misses = metrics.counter(METRIC_PREFIX + "misses");
+    }
+
+    /**
+     * Create the key for a mapping.
+     *
+     * @param resourcePath the path to map
+     * @param generation the generation of the mapping state
+     * @param userId the user mapping the path
+     * @param request the request or <code>null</code>
+     * @return the key
+     */
+    public static String createKey(final String resourcePath, final long generation, final String userId,
+            final HttpServletRequest request) {
+        final StringBuilder sb = new StringBuilder(resourcePath.length() + 64);
+        sb.append(resourcePath).append(SEPARATOR);
+        sb.append(generation).append(SEPARATOR);
+        sb.append(userId);
+        if (request != null) {
+            sb.append(SEPARATOR).append(request.getScheme());
+            sb.append(SEPARATOR).append(request.getServerName());
+            sb.append(SEPARATOR).append(request.getServerPort());
+            sb.append(SEPARATOR).append(request.getContextPath());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The current version of the cache, which changes with every
+     * invalidation. It has to be retrieved before the result to
+     * {@link #put(String, String, long)} is computed.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key the key
+     * @return the result or <code>null</code>
+     */
+    public String get(final String key) {
+        final Result result = results.get(key);
+        if (result != null) {
+            result.lastAccess = clock.incrementAndGet();
+            hits.increment();
+            return result.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Add a result, unless the mapped path or one of its prefixes has been
+     * invalidated in the meantime.
+     *
+     * @param key the key
+     * @param result the result
+     * @param expectedVersion the version before the result was computed
+     */
+    public void put(final String key, final String result, final long expectedVersion) {
+        if (isInvalidated(key, expectedVersion)) {
+            return;
+        }
+        final Result entry = new Result(result);
+        entry.lastAccess = clock.incrementAndGet();
+        results.put(key, entry);
+        keys.add(key);
+        // an invalidation might have happened concurrently
+        if (isInvalidated(key, expectedVersion)) {
+            remove(key, entry);
+        }
+        if (results.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Remove the results for all paths starting with the given path.
+     *
+     * @param path the changed path
+     */
+    public void invalidate(final String path) {
+        final long newVersion = version.incrementAndGet();
+        final int stripe = stripe(path.hashCode());
+        long current;
+        while ((current = invalidated.get(stripe)) < newVersion && !invalidated.compareAndSet(stripe, current, newVersion)) {
+            // retry
+        }
+        final NavigableSet<String> range = keys.subSet(path, true, path + Character.MAX_VALUE, true);
+        for (final Iterator<String> i = range.iterator(); i.hasNext();) {
+            results.remove(i.next());
+            i.remove();
+        }
+    }
+
+    /**
+     * Remove all results.
+     */
+    public void clear() {
+        cleared = version.incrementAndGet();
+        results.clear();
+        keys.clear();
+    }
+
+    /**
+     * The number of cached results.
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Remove the results which have not been used within the last
+     * {@code maxEntries / 2} cache accesses. At most that many results
+     * remain, so the cache has to fill up again before the next eviction.
+     */
+    private void evict() {
+        if (evicting.compareAndSet(false, true)) {
+            try {
+                final long threshold = clock.get() - maxEntries / 2;
+                for (final Map.Entry<String, Result> entry : results.entrySet()) {
+                    if (entry.getValue().lastAccess <= threshold) {
+                        remove(entry.getKey(), entry.getValue());
+                    }
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Remove the result if it has not been replaced in the meantime.
+     */
+    private void remove(final String key, final Result result) {
+        if (results.remove(key, result) && !results.containsKey(key)) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Check whether the path of the key or any string prefix of it has been
+     * invalidated after the given version. The hash of the prefixes is
+     * computed incrementally the same way as {@link String#hashCode()}.
+     */
+    private boolean isInvalidated(final String key, final long expectedVersion) {
+        if (cleared > expectedVersion) {
+            return true;
+        }
+        final int end = key.indexOf(SEPARATOR);
+        int hash = 0;
+        for (int i = 0; ; i++) {
+            if (invalidated.get(stripe(hash)) > expectedVersion) {
+                return true;
+            }
+            if (i == end) {
+                return false;
+            }
+            hash = 31 * hash + key.charAt(i);
+        }
+    }
+
+    private static int stripe(final int hash) {
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    private static final class Result {
+
+        final String value;
+
+        /** The clock tick of the last use */
+        volatile long lastAccess;
+
+        Result(final String value) {
+            this.value = value;
+        }
+    }
+}
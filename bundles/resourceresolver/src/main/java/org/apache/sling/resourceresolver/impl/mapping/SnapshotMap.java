@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable copy of a map which shares its contents with the snapshot it
+ * has been derived from. The entries changed since the base copy are held
+ * in two overlays: a small one which is copied with each update and a
+ * larger one into which the small overlay is merged once it is full. A new
+ * base copy is only created once the larger overlay reaches a fraction of
+ * the base size, so the cost of copying the complete map is spread over a
+ * number of changes proportional to the map size.
+ * <p>
+ * <code>null</code> values are not supported, a key with a
+ * <code>null</code> value in an overlay has been removed.
+ */
+final class SnapshotMap<K, V> extends AbstractMap<K, V> {
+
+    /** Maximum number of changed entries kept in the small overlay */
+    static final int MAX_CHANGES = 256;
+
+    /** Minimum number of changed entries kept in the large overlay */
+    static final int MIN_MERGED_CHANGES = 4096;
+
+    /** The large overlay is merged into a new base at this fraction of the base size */
+    private static final int MERGED_CHANGES_RATIO = 8;
+
+    private final Map<K, V> base;
+
+    private final Map<K, V> merged;
+
+    private final Map<K, V> changes;
+
+    private volatile Set<Map.Entry<K, V>> entrySet;
+
+    private SnapshotMap(final Map<K, V> base, final Map<K, V> merged, final Map<K, V> changes) {
+        this.base = base;
+        this.merged = merged;
+        this.changes = changes;
+    }
+
+    /**
+     * Creates a snapshot which does not share anything with other snapshots.
+     */
+    static <K, V> SnapshotMap<K, V> copyOf(final Map<K, V> source) {
+        return new SnapshotMap<K, V>(new HashMap<K, V>(source), Collections.<K, V> emptyMap(),
+                Collections.<K, V> emptyMap());
+    }
+
+    /**
+     * Creates a snapshot of the source map, which has been derived from the
+     * map of this snapshot by changing the given keys.
+     * @param source The current map
+     * @param changedKeys The keys changed since this snapshot has been taken
+     *            or <code>null</code> if the source has been replaced.
+     */
+    SnapshotMap<K, V> update(final Map<K, V> source, final Collection<K> changedKeys) {
+        if (changedKeys == null) {
+            return copyOf(source);
+        }
+        if (changedKeys.isEmpty()) {
+            return this;
+        }
+        if (this.changes.size() + changedKeys.size() <= MAX_CHANGES) {
+            final Map<K, V> newChanges = new HashMap<K, V>(this.changes);
+            for (final K key : changedKeys) {
+                final V value = source.get(key);
+                if (value == null && !this.base.containsKey(key) && !this.merged.containsKey(key)) {
+                    newChanges.remove(key);
+                } else {
+                    newChanges.put(key, value);
+                }
+            }
+            return new SnapshotMap<K, V>(this.base, this.merged, newChanges);
+        }
+        final int maxMerged = Math.max(MIN_MERGED_CHANGES, this.base.size() / MERGED_CHANGES_RATIO);
+        if (this.merged.size() + this.changes.size() + changedKeys.size() > maxMerged) {
+            return copyOf(source);
+        }
+        final Map<K, V> newMerged = new HashMap<K, V>(this.merged);
+        for (final Map.Entry<K, V> entry : this.changes.entrySet()) {
+            mergeChange(newMerged, entry.getKey(), entry.getValue());
+        }
+        for (final K key : changedKeys) {
+            mergeChange(newMerged, key, source.get(key));
+        }
+        return new SnapshotMap<K, V>(this.base, newMerged, Collections.<K, V> emptyMap());
+    }
+
+    private void mergeChange(final Map<K, V> newMerged, final K key, final V value) {
+        if (value == null && !this.base.containsKey(key)) {
+            newMerged.remove(key);
+        } else {
+            newMerged.put(key, value);
+        }
+    }
+
+    @Override
+    public V get(final Object key) {
+        if (this.changes.containsKey(key)) {
+            return this.changes.get(key);
+        }
+        if (this.merged.containsKey(key)) {
+            return this.merged.get(key);
+        }
+        return this.base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.get(key) != null;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> result = this.entrySet;
+        if (result == null) {
+            final Map<K, V> all = new HashMap<K, V>(this.base);
+            apply(all, this.merged);
+            apply(all, this.changes);
+            result = Collections.unmodifiableMap(all).entrySet();
+            this.entrySet = result;
+        }
+        return result;
+    }
+
+    private static <K, V> void apply(final Map<K, V> target, final Map<K, V> overlay) {
+        for (final Map.Entry<K, V> entry : overlay.entrySet()) {
+            if (entry.getValue() == null) {
+                target.remove(entry.getKey());
+            } else {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent, memory mapped index of all vanity path definitions.
+ * <p>
+ * The index consists of an immutable, sorted base file which is memory
+ * mapped and searched with a binary search, and a small in memory overlay
+ * holding the changes which happened since the base file has been written.
+ * Lookups therefore do not require a repository query and do not add to
+ * the heap, regardless of the number of vanity paths.
+ * <p>
+ * Changes are applied to the overlay by {@link #add(Entry)} and
+ * {@link #removeTarget(String)}. {@link #compact()} merges the overlay into
+ * a new base file.
+ * <p>
+ * This class is not synchronized for writers: callers are expected to
+ * serialize calls to the modifying methods. Readers may call
+ * {@link #get(String)} concurrently at any time.
+ */
+public class VanityPathIndex {
+
+    /** File magic: "SVPI" */
+    private static final int MAGIC = 0x53565049;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Size of the header: magic, version, entry count. */
+    private static final int HEADER_SIZE = 12;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final File file;
+
+    /** The current state, replaced as a whole on compaction. */
+    private volatile State state;
+
+    /**
+     * Opens the index stored in the given file. If the file does not exist
+     * or cannot be read, the index is empty and {@link #isEmpty()} returns
+     * <code>true</code>.
+     *
+     * @param file the index file
+     */
+    public VanityPathIndex(final File file) {
+        this.file = file;
+        Segment base = null;
+        if (file.exists()) {
+            try {
+                base = Segment.open(file);
+            } catch (final IOException ioe) {
+                log.warn("Unable to read vanity path index {}, index will be rebuilt", file, ioe);
+            }
+        }
+        this.state = new State(base);
+    }
+
+    /**
+     * Whether the index neither has a base file nor any pending changes.
+     * An empty index needs to be built from the repository.
+     */
+    public boolean isEmpty() {
+        final State s = this.state;
+        return s.base == null && s.added.isEmpty();
+    }
+
+    /**
+     * The number of vanity path definitions in the base file.
+     */
+    public int getPersistedSize() {
+        final Segment base = this.state.base;
+        return base == null ? 0 : base.count;
+    }
+
+    /**
+     * The number of changes not yet written to the base file.
+     */
+    public int getPendingChanges() {
+        final State s = this.state;
+        return s.addedCount + s.removedTargets.size() + s.removedTrees.size();
+    }
+
+    /**
+     * Drops the base file content, e.g. before rebuilding the index
+     * from the repository.
+     */
+    public void reset() {
+        this.state = new State(null);
+    }
+
+    /**
+     * Add a vanity path definition.
+     */
+    public void add(final Entry entry) {
+        final State s = this.state;
+        List<Entry> entries = s.added.get(entry.vanityPath);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+        } else {
+            entries = new ArrayList<Entry>(entries);
+        }
+        entries.add(entry);
+        s.added.put(entry.vanityPath, Collections.unmodifiableList(entries));
+        Set<String> keys = s.addedByTarget.get(entry.redirect);
+        if (keys == null) {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            s.addedByTarget.put(entry.redirect, keys);
+        }
+        keys.add(entry.vanityPath);
+        s.addedCount++;
+    }
+
+    /**
+     * Remove all vanity path definitions pointing to the given target.
+     *
+     * @param redirect the path of the resource defining the vanity paths
+     */
+    public void removeTarget(final String redirect) {
+        final State s = this.state;
+        if (s.base != null) {
+            s.removedTargets.add(redirect);
+        }
+        removeAdded(s, redirect);
+    }
+
+    /**
+     * Remove all vanity path definitions pointing to the given path or
+     * any resource below it.
+     *
+     * @param path the path of the removed resource
+     */
+    public void removeTree(final String path) {
+        final State s = this.state;
+        if (s.base != null) {
+            s.removedTrees.add(path);
+        }
+        final String prefix = path.endsWith("/") ? path : path.concat("/");
+        for (final String redirect : new ArrayList<String>(s.addedByTarget.keySet())) {
+            if (redirect.equals(path) || redirect.startsWith(prefix)) {
+                removeAdded(s, redirect);
+            }
+        }
+    }
+
+    private void removeAdded(final State s, final String redirect) {
+        final Set<String> keys = s.addedByTarget.remove(redirect);
+        if (keys != null) {
+            for (final String key : keys) {
+                final List<Entry> entries = s.added.get(key);
+                if (entries != null) {
+                    final List<Entry> remaining = new ArrayList<Entry>();
+                    for (final Entry e : entries) {
+                        if (!e.redirect.equals(redirect)) {
+                            remaining.add(e);
+                        }
+                    }
+                    s.addedCount -= entries.size() - remaining.size();
+                    if (remaining.isEmpty()) {
+                        s.added.remove(key);
+                    } else {
+                        s.added.put(key, Collections.unmodifiableList(remaining));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a definition of the base file has been removed since
+     * the base file has been written.
+     */
+    private static boolean isRemoved(final State s, final String redirect) {
+        if (s.removedTargets.contains(redirect)) {
+            return true;
+        }
+        if (!s.removedTrees.isEmpty()) {
+            String path = redirect;
+            int pos = path.length();
+            while (pos > 0) {
+                path = path.substring(0, pos);
+                if (s.removedTrees.contains(path)) {
+                    return true;
+                }
+                pos = path.lastIndexOf('/');
+            }
+            return s.removedTrees.contains("/");
+        }
+        return false;
+    }
+
+    /**
+     * Get all vanity path definitions for the given vanity path.
+     *
+     * @param vanityPath the vanity path (without scheme, host and extension)
+     * @return the definitions, possibly empty
+     */
+    public List<Entry> get(final String vanityPath) {
+        final State s = this.state;
+        List<Entry> result = null;
+        if (s.base != null) {
+            final List<Entry> persisted = s.base.find(vanityPath.getBytes(UTF_8));
+            for (final Entry e : persisted) {
+                if (!isRemoved(s, e.redirect)) {
+                    if (result == null) {
+                        result = new ArrayList<Entry>();
+                    }
+                    result.add(e);
+                }
+            }
+        }
+        final List<Entry> added = s.added.get(vanityPath);
+        if (added != null) {
+            if (result == null) {
+                return added;
+            }
+            result.addAll(added);
+        }
+        return result == null ? Collections.<Entry> emptyList() : result;
+    }
+
+    /**
+     * Merge all pending changes into a new base file and map it.
+     *
+     * @throws IOException if the file can't be written
+     */
+    public void compact() throws IOException {
+        final State s = this.state;
+        if (s.base != null && getPendingChanges() == 0) {
+            return;
+        }
+        final List<Entry> entries = new ArrayList<Entry>();
+        if (s.base != null) {
+            for (final Iterator<Entry> i = s.base.iterator(); i.hasNext();) {
+                final Entry e = i.next();
+                if (!isRemoved(s, e.redirect)) {
+                    entries.add(e);
+                }
+            }
+        }
+        for (final List<Entry> added : s.added.values()) {
+            entries.addAll(added);
+        }
+
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        Segment.write(tmpFile, entries);
+        final Segment oldBase = s.base;
+        if (file.exists() && !file.delete()) {
+            log.warn("Unable to delete outdated vanity path index {}", file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Unable to rename " + tmpFile + " to " + file);
+        }
+        this.state = new State(Segment.open(file));
+        if (oldBase != null) {
+            log.debug("Compacted vanity path index from {} to {} entries", oldBase.count, entries.size());
+        }
+    }
+
+    private static int compareBytes(final byte[] a, final byte[] b) {
+        final int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            final int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * A single vanity path definition.
+     */
+    public static final class Entry {
+
+        /** The vanity path used as the lookup key. */
+        public final String vanityPath;
+
+        /** The url pattern prefix including scheme and host. */
+        public final String url;
+
+        /** The path of the resource defining the vanity path. */
+        public final String redirect;
+
+        /** The redirect status or -1 for internal redirects. */
+        public final int status;
+
+        /** The value of sling:vanityOrder. */
+        public final long order;
+
+        public Entry(final String vanityPath, final String url, final String redirect, final int status, final long order) {
+            this.vanityPath = vanityPath;
+            this.url = url;
+            this.redirect = redirect;
+            this.status = status;
+            this.order = order;
+        }
+
+        @Override
+        public String toString() {
+            return "VanityPathIndex.Entry: vanityPath=" + vanityPath + ", url=" + url + ", redirect=" + redirect
+                    + ", status=" + status + ", order=" + order;
+        }
+    }
+
+    /**
+     * The in memory part of the index.
+     */
+    private static final class State {
+
+        final Segment base;
+
+        final Map<String, List<Entry>> added = new ConcurrentHashMap<String, List<Entry>>();
+
+        final Map<String, Set<String>> addedByTarget = new ConcurrentHashMap<String, Set<String>>();
+
+        final Set<String> removedTargets = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        final Set<String> removedTrees = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        volatile int addedCount;
+
+        State(final Segment base) {
+            this.base = base;
+        }
+    }
+
+    /**
+     * An entry with its UTF-8 encoded strings, ordered by the encoded key.
+     */
+    private static final class Encoded implements Comparable<Encoded> {
+
+        final Entry entry;
+
+        final byte[][] fields;
+
+        Encoded(final Entry entry) {
+            this.entry = entry;
+            this.fields = new byte[][] {entry.vanityPath.getBytes(UTF_8), entry.url.getBytes(UTF_8),
+                    entry.redirect.getBytes(UTF_8)};
+        }
+
+        @Override
+        public int compareTo(final Encoded o) {
+            return compareBytes(this.fields[0], o.fields[0]);
+        }
+    }
+
+    /**
+     * The memory mapped, sorted base file. The layout is
+     * <pre>
+     * int magic, int version, int count
+     * int[count] record offsets
+     * records: int keyLength, key, int urlLength, url, int redirectLength, redirect, int status, long order
+     * </pre>
+     * Keys are UTF-8 encoded and sorted by unsigned byte order.
+     */
+    private static final class Segment {
+
+        final ByteBuffer buffer;
+
+        final int count;
+
+        private Segment(final ByteBuffer buffer, final int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        static Segment open(final File file) throws IOException {
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                final long size = channel.size();
+                if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid vanity path index size " + size);
+                }
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not a vanity path index: " + file);
+                }
+                final int version = buffer.getInt(4);
+                if (version != VERSION) {
+                    throw new IOException("Unsupported vanity path index version " + version);
+                }
+                final int count = buffer.getInt(8);
+                if (count < 0 || HEADER_SIZE + 4L * count > size) {
+                    throw new IOException("Corrupt vanity path index: " + file);
+                }
+                return new Segment(buffer, count);
+            } finally {
+                raf.close();
+            }
+        }
+
+        static void write(final File file, final List<Entry> entries) throws IOException {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                // encode the strings only once and sort by the encoded key
+                final List<Encoded> encoded = new ArrayList<Encoded>(entries.size());
+                for (final Entry e : entries) {
+                    encoded.add(new Encoded(e));
+                }
+                Collections.sort(encoded);
+                int offset = HEADER_SIZE + 4 * entries.size();
+                for (final Encoded e : encoded) {
+                    final byte[][] fields = e.fields;
+                    out.writeInt(offset);
+                    offset += 12 + fields[0].length + fields[1].length + fields[2].length + 12;
+                    if (offset < 0) {
+                        throw new IOException("Vanity path index exceeds maximum size");
+                    }
+                }
+                for (final Encoded e : encoded) {
+                    for (final byte[] field : e.fields) {
+                        out.writeInt(field.length);
+                        out.write(field);
+                    }
+                    out.writeInt(e.entry.status);
+                    out.writeLong(e.entry.order);
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        List<Entry> find(final byte[] key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (compareKey(recordOffset(mid), key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            List<Entry> result = null;
+            for (int i = low; i < count; i++) {
+                final int offset = recordOffset(i);
+                if (compareKey(offset, key) != 0) {
+                    break;
+                }
+                if (result == null) {
+                    result = new ArrayList<Entry>(2);
+                }
+                result.add(read(offset));
+            }
+            return result == null ? Collections.<Entry> emptyList() : result;
+        }
+
+        Iterator<Entry> iterator() {
+            return new Iterator<Entry>() {
+
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < count;
+                }
+
+                @Override
+                public Entry next() {
+                    return read(recordOffset(index++));
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        private int recordOffset(final int index) {
+            return buffer.getInt(HEADER_SIZE + 4 * index);
+        }
+
+        private int compareKey(final int offset, final byte[] key) {
+            final int keyLength = buffer.getInt(offset);
+            final int len = Math.min(keyLength, key.length);
+            for (int i = 0; i < len; i++) {
+                final int diff = (buffer.get(offset + 4 + i) & 0xff) - (key[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return keyLength - key.length;
+        }
+
+        private Entry read(final int offset) {
+            int pos = offset;
+            final String[] fields = new String[3];
+            for (int i = 0; i < fields.length; i++) {
+                final int length = buffer.getInt(pos);
+                final byte[] bytes = new byte[length];
+                for (int b = 0; b < length; b++) {
+                    bytes[b] = buffer.get(pos + 4 + b);
+                }
+                fields[i] = new String(bytes, UTF_8);
+                pos += 4 + length;
+            }
+            final int status = buffer.getInt(pos);
+            final long order = buffer.getLong(pos + 4);
+            return new Entry(fields[0], fields[1], fields[2], status, order);
+        }
+    }
+}
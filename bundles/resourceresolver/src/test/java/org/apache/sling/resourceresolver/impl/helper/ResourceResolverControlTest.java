@@ -83,6 +83,7 @@ public class ResourceResolverControlTest {
     private Resource subProviderResource;
     private Resource somethingResource;
     private ResourceResolverContext context;
+    private ResourceProviderStorageProvider storageProvider;
 
     @Before
     public void prepare() throws Exception {
@@ -141,13 +142,14 @@ public class ResourceResolverControlTest {
         handlers = Arrays.asList(rootHandler, handler);
         final ResourceProviderStorage storage = new ResourceProviderStorage(handlers);
 
-        crp = new ResourceResolverControl(false, authInfo, new ResourceProviderStorageProvider() {
+        storageProvider = new ResourceProviderStorageProvider() {
             
             @Override
             public ResourceProviderStorage getResourceProviderStorage() {
                 return storage;
             }
-        });
+        };
+        crp = new ResourceResolverControl(false, authInfo, storageProvider);
         context = new ResourceResolverContext(rr, securityTracker);
     }
 
@@ -289,6 +291,84 @@ public class ResourceResolverControlTest {
         assertThat("Resource at /some", all.get("/some"), not(nullValue()));
     }
 
+    /**
+     * Verifies that resources are only retrieved once from the provider if
+     * the cache is enabled and that each lookup gets its own metadata
+     */
+    @Test
+    public void getResource_cached() throws PersistenceException {
+        final ResourceResolverControl control = new ResourceResolverControl(false, authInfo, storageProvider, 100);
+
+        final Resource first = control.getResource(context, "/something", null, null, false);
+        final Resource second = control.getResource(context, "/something", null, null, false);
+        assertThat(first.getPath(), equalTo("/something"));
+        assertThat(second.getPath(), equalTo("/something"));
+        assertTrue(first.getResourceMetadata() != second.getResourceMetadata());
+        assertTrue(ResourceCache.unwrap(first) == somethingResource);
+        assertThat(control.getResource(context, "/nothing", null, null, true), nullValue());
+        assertThat(control.getResource(context, "/nothing", null, null, true), nullValue());
+
+        verify(rootProvider, Mockito.times(1)).getResource(mockContext(), Mockito.eq("/something"), (ResourceContext) Mockito.any(), (Resource) Mockito.any());
+        verify(rootProvider, Mockito.times(1)).getResource(mockContext(), Mockito.eq("/nothing"), (ResourceContext) Mockito.any(), (Resource) Mockito.any());
+
+        // a commit invalidates the cache
+        control.commit(context);
+        control.getResource(context, "/something", null, null, false);
+        verify(rootProvider, Mockito.times(2)).getResource(mockContext(), Mockito.eq("/something"), (ResourceContext) Mockito.any(), (Resource) Mockito.any());
+    }
+
+    /**
+     * Verifies that the least recently used resource is removed from a full cache
+     */
+    @Test
+    public void getResource_cacheLimit() {
+        final ResourceResolverControl control = new ResourceResolverControl(false, authInfo, storageProvider, 1);
+
+        control.getResource(context, "/something", null, null, false);
+        control.getResource(context, "/something", null, null, false);
+        control.getResource(context, "/nothing", null, null, false);
+        control.getResource(context, "/something", null, null, false);
+
+        verify(rootProvider, Mockito.times(2)).getResource(mockContext(), Mockito.eq("/something"), (ResourceContext) Mockito.any(), (Resource) Mockito.any());
+    }
+
+    /**
+     * Verifies that the cache is not used while there are pending changes
+     */
+    @Test
+    public void getResource_pendingChanges() {
+        final ResourceResolverControl control = new ResourceResolverControl(false, authInfo, storageProvider, 100);
+        control.getResource(context, "/something", null, null, false);
+
+        // a change made through a modifiable value map
+        when(rootProvider.hasChanges(mockContext())).thenReturn(true);
+        control.getResource(context, "/something", null, null, false);
+        control.getResource(context, "/something", null, null, false);
+
+        verify(rootProvider, Mockito.times(3)).getResource(mockContext(), Mockito.eq("/something"), (ResourceContext) Mockito.any(), (Resource) Mockito.any());
+    }
+
+    /**
+     * Verifies that a child list is cached once it has been fully iterated
+     */
+    @Test
+    public void listChildren_cached() {
+        final ResourceResolverControl control = new ResourceResolverControl(false, authInfo, storageProvider, 100);
+        final Resource root = control.getResource(context, "/", null, null, false);
+
+        for (int i = 0; i < 2; i++) {
+            final Iterator<Resource> children = control.listChildren(context, root);
+            final Map<String, Resource> all = new HashMap<String, Resource>();
+            while ( children.hasNext() ) {
+                final Resource child = children.next();
+                all.put(child.getPath(), child);
+            }
+            assertThat(all.entrySet(), Matchers.hasSize(2));
+            assertThat("Resource at /something", all.get("/something"), not(nullValue()));
+        }
+        verify(rootProvider, Mockito.times(1)).listChildren(mockContext(), Mockito.any(Resource.class));
+    }
+
     /**
      * Verifies listing the children at a level below the root
      */
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceSuperTypeGraphTest {
+
+    private ResourceResolver resolver;
+
+    private ResourceSuperTypeGraph graph;
+
+    @Before
+    public void setup() {
+        resolver = mock(ResourceResolver.class);
+        graph = new ResourceSuperTypeGraph(resolver, new String[] {"/apps/", "/libs"});
+        addType("a/b", "a/c");
+        addType("a/c", "/libs/a/d");
+        addType("/libs/a/d", null);
+        addType("/content/a", "a/b");
+    }
+
+    private void addType(final String resourceType, final String superType) {
+        final Resource rsrc = mock(Resource.class);
+        when(rsrc.getResourceSuperType()).thenReturn(superType);
+        when(resolver.getResource(resourceType)).thenReturn(rsrc);
+    }
+
+    @Test
+    public void testIsCacheable() {
+        assertTrue(graph.isCacheable("a/b"));
+        assertTrue(graph.isCacheable("a:b"));
+        assertTrue(graph.isCacheable("/apps/a/b"));
+        assertTrue(graph.isCacheable("/libs/a/b"));
+        assertFalse(graph.isCacheable("/libsa/b"));
+        assertFalse(graph.isCacheable("/content/a"));
+        assertFalse(graph.isCacheable(null));
+    }
+
+    @Test
+    public void testGetParentResourceType() {
+        assertEquals("a/c", graph.getParentResourceType("a/b"));
+        assertEquals("a/c", graph.getParentResourceType("a/b"));
+        assertNull(graph.getParentResourceType("/libs/a/d"));
+        assertNull(graph.getParentResourceType("/libs/a/d"));
+        verify(resolver, times(1)).getResource("a/b");
+        verify(resolver, times(1)).getResource("/libs/a/d");
+
+        // types outside the search paths are not cached
+        assertEquals("a/b", graph.getParentResourceType("/content/a"));
+        assertEquals("a/b", graph.getParentResourceType("/content/a"));
+        verify(resolver, times(2)).getResource("/content/a");
+    }
+
+    @Test
+    public void testOnChange() {
+        assertEquals("a/c", graph.getParentResourceType("a/b"));
+        addType("a/b", "a/x");
+        assertEquals("a/c", graph.getParentResourceType("a/b"));
+
+        graph.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/apps/a/b", false, null, null, null)));
+        assertEquals("a/x", graph.getParentResourceType("a/b"));
+        verify(resolver, times(1)).refresh();
+    }
+
+    @Test
+    public void testIsResourceType() {
+        assertTrue(graph.isResourceType("a/b", "a/b"));
+        assertTrue(graph.isResourceType("a/b", "a/c"));
+        assertTrue(graph.isResourceType("a/b", "/libs/a/d"));
+        assertFalse(graph.isResourceType("a/b", "x/y"));
+        assertFalse(graph.isResourceType("a/c", "a/b"));
+        verify(resolver, times(1)).getResource("a/c");
+    }
+
+    @Test
+    public void testIsResourceTypeCycle() {
+        addType("/libs/a/d", "a/b");
+        assertNull(graph.isResourceType("a/b", "x/y"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        assertEquals("a/c", graph.getParentResourceType("a/b"));
+        for (int i = 0; i < ResourceSuperTypeGraph.MAX_ENTRIES; i++) {
+            assertNull(graph.getParentResourceType("x/" + i));
+            if (i == ResourceSuperTypeGraph.MAX_ENTRIES / 2) {
+                // keep the entry in use
+                assertEquals("a/c", graph.getParentResourceType("a/b"));
+            }
+        }
+        // the least recently used type has been removed
+        assertNull(graph.getParentResourceType("x/0"));
+        verify(resolver, times(2)).getResource("x/0");
+        assertEquals("a/c", graph.getParentResourceType("a/b"));
+        verify(resolver, times(1)).getResource("a/b");
+    }
+
+    @Test
+    public void testResolverPool() {
+        final ResourceResolver other = mock(ResourceResolver.class);
+        final Resource rsrc = mock(Resource.class);
+        when(rsrc.getResourceSuperType()).thenReturn("a/x");
+        when(other.getResource("a/b")).thenReturn(rsrc);
+        final ResourceSuperTypeGraph pooled = new ResourceSuperTypeGraph(Arrays.asList(resolver, other), new String[] {"/apps/"});
+        assertEquals("a/c", pooled.getParentResourceType("a/b"));
+        pooled.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/apps/a/b", false, null, null, null)));
+        // the next resolver of the pool is refreshed before it is used
+        assertEquals("a/x", pooled.getParentResourceType("a/b"));
+        verify(other, times(1)).refresh();
+
+        pooled.dispose();
+        verify(resolver).close();
+        verify(other).close();
+        assertNull(pooled.getParentResourceType("a/b"));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the counting bloom filter.
+ */
+public class CountingBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAddAndRemove() {
+        final CountingBloomFilter filter = CountingBloomFilter.create(1000, 1024 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("/vanity" + i);
+        }
+        assertEquals(1000, filter.getSize());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.probablyContains("/vanity" + i));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertTrue(filter.remove("/vanity" + i));
+        }
+        assertEquals(500, filter.getSize());
+        // no false negatives for the remaining keys
+        for (int i = 500; i < 1000; i++) {
+            assertTrue(filter.probablyContains("/vanity" + i));
+        }
+        int found = 0;
+        for (int i = 0; i < 500; i++) {
+            if (filter.probablyContains("/vanity" + i)) {
+                found++;
+            }
+        }
+        assertTrue("Too many false positives after removal: " + found, found < 50);
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        final CountingBloomFilter filter = CountingBloomFilter.create(100, 1024);
+        filter.add("/a");
+        filter.add("/a");
+        filter.remove("/a");
+        assertTrue(filter.probablyContains("/a"));
+        filter.remove("/a");
+        assertFalse(filter.probablyContains("/a"));
+        assertFalse(filter.remove("/a"));
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        final int size = 10000;
+        final CountingBloomFilter filter = CountingBloomFilter.create(size, Integer.MAX_VALUE);
+        for (int i = 0; i < size; i++) {
+            filter.add("/in" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter.probablyContains("/out" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positive rate too high: " + falsePositives, falsePositives < size * 0.04);
+        assertTrue(filter.getLoad() <= 1.0);
+        assertTrue(filter.getFillRatio() > 0 && filter.getFillRatio() < 1);
+    }
+
+    @Test
+    public void testMaxBytes() {
+        final CountingBloomFilter filter = CountingBloomFilter.create(100000, 1000);
+        assertEquals(1000, filter.getSizeInBytes());
+        assertTrue(filter.getCapacity() < 100000);
+
+        final CountingBloomFilter empty = CountingBloomFilter.create(100000, 0);
+        assertEquals(0, empty.getSizeInBytes());
+        assertTrue(empty.probablyContains("/anything"));
+        empty.add("/anything");
+        assertFalse(empty.remove("/anything"));
+    }
+
+    @Test
+    public void testLoad() {
+        final CountingBloomFilter filter = CountingBloomFilter.create(100, 1024 * 1024);
+        for (int i = 0; i < 150; i++) {
+            filter.add("/vanity" + i);
+        }
+        assertEquals(1.5, filter.getLoad(), 0.01);
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        final File file = new File(folder.getRoot(), "filter.bin");
+        final CountingBloomFilter filter = CountingBloomFilter.create(1000, 1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            filter.add("/vanity" + i);
+        }
+        filter.write(file);
+        // overwrite existing file
+        filter.add("/vanity100");
+        filter.write(file);
+
+        final CountingBloomFilter loaded = CountingBloomFilter.load(file);
+        assertEquals(filter.getSize(), loaded.getSize());
+        assertEquals(filter.getCapacity(), loaded.getCapacity());
+        assertEquals(filter.getFillRatio(), loaded.getFillRatio(), 0);
+        for (int i = 0; i <= 100; i++) {
+            assertTrue(loaded.probablyContains("/vanity" + i));
+        }
+        assertTrue(loaded.remove("/vanity1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadLegacyFormat() throws IOException {
+        final File file = new File(folder.getRoot(), "filter.txt");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(BloomFilterUtils.createFilter(1000, 1024));
+        } finally {
+            out.close();
+        }
+        CountingBloomFilter.load(file);
+    }
+}
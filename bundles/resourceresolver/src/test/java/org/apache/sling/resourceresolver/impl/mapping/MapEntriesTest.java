@@ -43,12 +43,14 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.apache.sling.resourceresolver.impl.mapping.MapConfigurationProvider.VanityPathConfig;
 import org.junit.After;
@@ -97,8 +99,8 @@ public class MapEntriesTest {
         configs.add(new VanityPathConfig("/vanityPathOnJcrContent", false));
 
         Collections.sort(configs);
-        vanityBloomFilterFile = new File("src/main/resourcesvanityBloomFilter.txt");
-        when(bundleContext.getDataFile("vanityBloomFilter.txt")).thenReturn(vanityBloomFilterFile);
+        vanityBloomFilterFile = new File("src/main/resourcesvanityBloomFilter.bin");
+        when(bundleContext.getDataFile("vanityBloomFilter.bin")).thenReturn(vanityBloomFilterFile);
         when(resourceResolverFactory.getAdministrativeResourceResolver(null)).thenReturn(resourceResolver);
         when(resourceResolverFactory.isVanityPathEnabled()).thenReturn(true);
         when(resourceResolverFactory.getVanityPathConfig()).thenReturn(configs);
@@ -125,6 +127,49 @@ public class MapEntriesTest {
     @After
     public void tearDown() throws Exception {
         vanityBloomFilterFile.delete();
+        new File(vanityBloomFilterFile.getPath() + ".clean").delete();
+    }
+
+    private CountingBloomFilter getVanityBloomFilter() throws Exception {
+        final Field field = MapEntries.class.getDeclaredField("vanityBloomFilter");
+        field.setAccessible(true);
+        return (CountingBloomFilter) field.get(mapEntries);
+    }
+
+    @Test
+    public void test_bloom_filter_restored_after_clean_shutdown() throws Exception {
+        final CountingBloomFilter filter = CountingBloomFilter.create(1000, 1024 * 1024);
+        filter.add("/stored");
+        filter.write(vanityBloomFilterFile);
+        new File(vanityBloomFilterFile.getPath() + ".clean").createNewFile();
+
+        mapEntries.doInit();
+        mapEntries.initializeVanityPaths();
+        assertTrue(getVanityBloomFilter().probablyContains("/stored"));
+        // the marker is only valid until the filter changes
+        assertFalse(new File(vanityBloomFilterFile.getPath() + ".clean").exists());
+
+        mapEntries.dispose();
+        assertTrue(new File(vanityBloomFilterFile.getPath() + ".clean").exists());
+    }
+
+    @Test
+    public void test_bloom_filter_rebuilt_after_unclean_shutdown() throws Exception {
+        final CountingBloomFilter filter = CountingBloomFilter.create(1000, 1024 * 1024);
+        filter.add("/stored");
+        filter.write(vanityBloomFilterFile);
+        final Field maxBytes = MapEntries.class.getDeclaredField("vanityBloomFilterMaxBytes");
+        maxBytes.setAccessible(true);
+        maxBytes.set(mapEntries, 1024 * 1024);
+        // drop the filter created on construction
+        final Field current = MapEntries.class.getDeclaredField("vanityBloomFilter");
+        current.setAccessible(true);
+        current.set(mapEntries, null);
+
+        mapEntries.doInit();
+        mapEntries.initializeVanityPaths();
+        // rebuilt from the (empty) repository
+        assertFalse(getVanityBloomFilter().probablyContains("/stored"));
     }
 
     @Test
@@ -851,6 +896,7 @@ public class MapEntriesTest {
         when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent/child");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -868,6 +914,7 @@ public class MapEntriesTest {
         when(secondResult.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent/child2");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -885,6 +932,7 @@ public class MapEntriesTest {
         when(jcrContentResult.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "aliasJcrContent"));
 
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -918,6 +966,7 @@ public class MapEntriesTest {
         when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -935,6 +984,7 @@ public class MapEntriesTest {
         when(secondResult.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent2");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -952,6 +1002,7 @@ public class MapEntriesTest {
         when(jcrContentResult.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "aliasJcrContent"));
 
         method.invoke(mapEntries, "/parent/jcr:content");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -989,6 +1040,7 @@ public class MapEntriesTest {
         when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent/child");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1020,6 +1072,7 @@ public class MapEntriesTest {
         when(result.getChild("jcr:content")).thenReturn(jcrContentResult);
 
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1061,6 +1114,7 @@ public class MapEntriesTest {
         when(secondResult.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias2"));
 
         method.invoke(mapEntries, "/parent/child2");
+        publishSnapshot();
         assertEquals(1, aliasMap.size());
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
@@ -1121,6 +1175,7 @@ public class MapEntriesTest {
         when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent/child");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1138,6 +1193,7 @@ public class MapEntriesTest {
 
         //re-add node and test nodeDeletion true
         method.invoke(mapEntries, "/parent/child");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1190,6 +1246,7 @@ public class MapEntriesTest {
         when(result.getChild("jcr:content")).thenReturn(jcrContentResult);
 
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1207,6 +1264,7 @@ public class MapEntriesTest {
 
         //re-add node and test nodeDeletion true
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1250,6 +1308,7 @@ public class MapEntriesTest {
         when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent/child");
+        publishSnapshot();
 
         final Resource jcrContentResult = mock(Resource.class);
         when(resourceResolver.getResource("/parent/child/jcr:content")).thenReturn(jcrContentResult);
@@ -1260,6 +1319,7 @@ public class MapEntriesTest {
         when(result.getChild("jcr:content")).thenReturn(jcrContentResult);
 
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1281,6 +1341,7 @@ public class MapEntriesTest {
 
         // re-add the node and test /parent/child
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1297,6 +1358,7 @@ public class MapEntriesTest {
 
         // re-add the node and test node removal
         method.invoke(mapEntries, "/parent/child");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
         assertNotNull(aliasMapEntry);
@@ -1317,6 +1379,7 @@ public class MapEntriesTest {
         when(resourceResolver.getResource("/parent/child/jcr:content")).thenReturn(jcrContentResult);
         when(result.getChild("jcr:content")).thenReturn(jcrContentResult);
         method.invoke(mapEntries, "/parent/child/jcr:content");
+        publishSnapshot();
 
 
         aliasMapEntry = mapEntries.getAliasMap("/parent");
@@ -1358,6 +1421,7 @@ public class MapEntriesTest {
         when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
 
         method.invoke(mapEntries, "/parent");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -1375,6 +1439,7 @@ public class MapEntriesTest {
 
         //re-add node and test nodeDeletion true
         method.invoke(mapEntries, "/parent");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -1427,6 +1492,7 @@ public class MapEntriesTest {
         when(result.getChild("jcr:content")).thenReturn(jcrContentResult);
 
         method.invoke(mapEntries, "/parent/jcr:content");
+        publishSnapshot();
 
         Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -1444,6 +1510,7 @@ public class MapEntriesTest {
 
         //re-add node and test nodeDeletion true
         method.invoke(mapEntries, "/parent/jcr:content");
+        publishSnapshot();
 
         aliasMapEntry = mapEntries.getAliasMap("/");
         assertNotNull(aliasMapEntry);
@@ -1565,6 +1632,44 @@ public class MapEntriesTest {
         assertEquals(4, counter.longValue());
     }
 
+    @Test
+    public void test_getVanityPaths_published() throws Exception {
+        final Resource justVanityPath = mock(Resource.class, "justVanityPath");
+        when(resourceResolver.getResource("/justVanityPath")).thenReturn(justVanityPath);
+        when(justVanityPath.getPath()).thenReturn("/justVanityPath");
+        when(justVanityPath.getName()).thenReturn("justVanityPath");
+        when(justVanityPath.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:vanityPath", "/target/justVanityPath"));
+
+        final AtomicInteger queries = new AtomicInteger();
+        when(resourceResolver.findResources(anyString(), eq("sql"))).thenAnswer(new Answer<Iterator<Resource>>() {
+
+            @Override
+            public Iterator<Resource> answer(InvocationOnMock invocation) throws Throwable {
+                if (invocation.getArguments()[0].toString().contains("sling:vanityPath =")) {
+                    queries.incrementAndGet();
+                    return Collections.singleton(justVanityPath).iterator();
+                } else {
+                    return Collections.<Resource> emptySet().iterator();
+                }
+            }
+        });
+
+        Field field1 = MapEntries.class.getDeclaredField("maxCachedVanityPathEntries");
+        field1.setAccessible(true);
+        field1.set(mapEntries, 10);
+
+        Method method = MapEntries.class.getDeclaredMethod("getMapEntryList", String.class);
+        method.setAccessible(true);
+        final long generation = mapEntries.getGeneration();
+        assertEquals(2, ((List<?>) method.invoke(mapEntries, "/target/justVanityPath")).size());
+        assertEquals(1, queries.get());
+
+        // the result is published with a new snapshot and not queried again
+        assertEquals(generation + 1, mapEntries.getGeneration());
+        assertEquals(2, ((List<?>) method.invoke(mapEntries, "/target/justVanityPath")).size());
+        assertEquals(1, queries.get());
+    }
+
     @Test
     //SLING-4891
     public void test_getVanityPaths_3() throws Exception {
@@ -1834,6 +1939,91 @@ public class MapEntriesTest {
         assertEquals(2, counter.longValue());
     }
 
+    @Test
+    public void test_getMapEntryList_fromVanityPathIndex() throws Exception {
+        final File indexFile = File.createTempFile("vanityPathIndex", ".bin");
+        indexFile.delete();
+        try {
+            final VanityPathIndex index = new VanityPathIndex(indexFile);
+            index.add(new VanityPathIndex.Entry("/target/justVanityPath", "^" + MapEntries.ANY_SCHEME_HOST + "/target/justVanityPath",
+                    "/justVanityPath", -1, 0));
+            index.compact();
+
+            Field field = MapEntries.class.getDeclaredField("vanityPathIndex");
+            field.setAccessible(true);
+            field.set(mapEntries, index);
+
+            Method method = MapEntries.class.getDeclaredMethod("getMapEntryList", String.class);
+            method.setAccessible(true);
+            method.invoke(mapEntries, "/target/justVanityPath");
+
+            // found without running a query
+            List<MapEntry> entries = mapEntries.getResolveMaps();
+            assertEquals(2, entries.size());
+            assertEquals("/justVanityPath$1", entries.get(0).getRedirect()[0]);
+            assertEquals("/justVanityPath.html", entries.get(1).getRedirect()[0]);
+
+            // removal is reflected in the index
+            Method removeMethod = MapEntries.class.getDeclaredMethod("doRemoveVanity", String.class);
+            removeMethod.setAccessible(true);
+            removeMethod.invoke(mapEntries, "/justVanityPath");
+            assertEquals(0, mapEntries.getResolveMaps().size());
+            assertTrue(index.get("/target/justVanityPath").isEmpty());
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void test_onChange_publishes_single_snapshot() throws Exception {
+        final Resource parent = mock(Resource.class);
+        when(parent.getPath()).thenReturn("/parent");
+
+        final List<ResourceChange> changes = new ArrayList<ResourceChange>();
+        for (int i = 1; i <= 2; i++) {
+            final Resource child = mock(Resource.class);
+            when(resourceResolver.getResource("/parent/child" + i)).thenReturn(child);
+            when(child.getParent()).thenReturn(parent);
+            when(child.getPath()).thenReturn("/parent/child" + i);
+            when(child.getName()).thenReturn("child" + i);
+            when(child.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias" + i));
+            changes.add(new ResourceChange(ResourceChange.ChangeType.ADDED, "/parent/child" + i, false, null, null, null));
+        }
+
+        final long generation = mapEntries.getGeneration();
+        mapEntries.onChange(changes);
+
+        final long end = System.currentTimeMillis() + 10000;
+        while (mapEntries.getPendingChangeCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, mapEntries.getPendingChangeCount());
+        assertEquals(generation + 1, mapEntries.getGeneration());
+
+        final Map<String, String> aliasMapEntry = mapEntries.getAliasMap("/parent");
+        assertNotNull(aliasMapEntry);
+        assertEquals("child1", aliasMapEntry.get("alias1"));
+        assertEquals("child2", aliasMapEntry.get("alias2"));
+    }
+
+    @Test
+    public void test_map_results_invalidated_by_policy_change() throws Exception {
+        when(resourceResolverFactory.getMapCacheMaxEntries()).thenReturn(100);
+        mapEntries.dispose();
+        mapEntries = new MapEntries(resourceResolverFactory, bundleContext, eventAdmin);
+        final MapResultCache cache = mapEntries.getMapResultCache();
+        final String protectedKey = MapResultCache.createKey("/content/a/b.html", 1, "anonymous", null);
+        final String otherKey = MapResultCache.createKey("/content/c.html", 1, "anonymous", null);
+        cache.put(protectedKey, "/a/b.html", cache.getVersion());
+        cache.put(otherKey, "/c.html", cache.getVersion());
+
+        mapEntries.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                "/content/a/rep:policy/allow", false, null, null, null)));
+
+        assertNull(cache.get(protectedKey));
+        assertEquals("/c.html", cache.get(otherKey));
+    }
+
     @Test
     //SLING-4883
     public void test_concutrrent_getResolveMapsIterator() throws Exception {
@@ -1876,6 +2066,12 @@ public class MapEntriesTest {
     }
 
     // -------------------------- private methods ----------
+    private void publishSnapshot() throws Exception {
+        Method method = MapEntries.class.getDeclaredMethod("publishSnapshot");
+        method.setAccessible(true);
+        method.invoke(mapEntries);
+    }
+
     private DataFuture createDataFuture(ExecutorService pool, final MapEntries mapEntries) {
 
         Future<Iterator<?>> future = pool.submit(new Callable<Iterator<?>>() {
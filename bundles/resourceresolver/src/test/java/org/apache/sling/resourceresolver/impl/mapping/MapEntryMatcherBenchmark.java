@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the linear scan over all /etc/map entries with the scan over the
+ * candidates selected by the {@link MapEntryMatcher}.
+ * <p>
+ * Run with <code>mvn -Pbenchmarks clean test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.sling.resourceresolver.impl.mapping.MapEntryMatcherBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapEntryMatcherBenchmark {
+
+    @Param({ "10", "100", "500" })
+    private int hosts;
+
+    private List<MapEntry> entries;
+
+    private MapEntryMatcher matcher;
+
+    private String path;
+
+    @Setup
+    public void setup() {
+        entries = new ArrayList<MapEntry>();
+        for (int i = 0; i < hosts; i++) {
+            entries.add(new MapEntry("^http/www.site" + i + ".example.com.80/", -1, false, 0, "/content/site" + i + "/"));
+            entries.add(new MapEntry("^https/www.site" + i + ".example.com.443/", -1, false, 0, "/content/site" + i + "/"));
+        }
+        entries.add(new MapEntry("^[^/]+/[^/]+/libs/", -1, false, 0, "/libs/"));
+        Collections.sort(entries);
+        matcher = new MapEntryMatcher(entries);
+        path = "http/www.site" + (hosts / 2) + ".example.com.80/en/index.html";
+    }
+
+    @Benchmark
+    public String[] linear() {
+        return firstMatch(entries);
+    }
+
+    @Benchmark
+    public String[] matcher() {
+        return firstMatch(matcher.getCandidates(path));
+    }
+
+    private String[] firstMatch(final List<MapEntry> list) {
+        for (final MapEntry entry : list) {
+            final String[] result = entry.replace(path);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(MapEntryMatcherBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test the selection of candidate map entries.
+ */
+public class MapEntryMatcherTest {
+
+    private static int[] tokens(final String s) {
+        final int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i++) {
+            result[i] = s.charAt(i) == '.' ? -1 : s.charAt(i);
+        }
+        return result;
+    }
+
+    private static int[] literal(final String s) {
+        final int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i++) {
+            result[i] = s.charAt(i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testGetPrefix() {
+        assertArrayEquals(tokens("http/localhost.8080/"), MapEntryMatcher.getPrefix("^http/localhost.8080/"));
+        assertArrayEquals(literal("http/a."), MapEntryMatcher.getPrefix("^http/a\\.b?"));
+        assertArrayEquals(literal("http/a.b"), MapEntryMatcher.getPrefix("^http/a\\.b+"));
+        assertArrayEquals(tokens("/content/"), MapEntryMatcher.getPrefix("^/content/.*"));
+        assertArrayEquals(tokens("/content"), MapEntryMatcher.getPrefix("^/content(/.*)?$"));
+        assertArrayEquals(tokens("/a"), MapEntryMatcher.getPrefix("^/a\\d"));
+        assertArrayEquals(tokens(""), MapEntryMatcher.getPrefix("^" + MapEntries.ANY_SCHEME_HOST + "/content"));
+        assertArrayEquals(tokens(""), MapEntryMatcher.getPrefix("^/a|/b"));
+        assertArrayEquals(tokens("/"), MapEntryMatcher.getPrefix("^/(a|b)"));
+        assertArrayEquals(tokens(""), MapEntryMatcher.getPrefix("/content"));
+    }
+
+    @Test
+    public void testCandidates() {
+        final List<MapEntry> entries = new ArrayList<MapEntry>();
+        entries.add(new MapEntry("^http/localhost.8080/", -1, false, 0, "/content/"));
+        entries.add(new MapEntry("^http/localhost.80/", -1, false, 0, "/content/"));
+        entries.add(new MapEntry("^https/www.example.com.443/", -1, false, 0, "/content/example/"));
+        entries.add(new MapEntry("^http/www\\.example\\.com\\.80/", 302, false, 0, "https://www.example.com/"));
+        entries.add(new MapEntry("^" + MapEntries.ANY_SCHEME_HOST + "/libs/(.*)", -1, false, 0, "/apps/$1"));
+        entries.add(new MapEntry("^http/(www|cdn)\\.example\\.org\\.80/", -1, false, 0, "/content/org/"));
+        entries.add(new MapEntry("^http/[^/]+/$", -1, false, 0, "/index.html"));
+        entries.add(new MapEntry("^http/a.b?c/", -1, false, 0, "/abc/"));
+        Collections.sort(entries);
+
+        final MapEntryMatcher matcher = new MapEntryMatcher(entries);
+        final String[] paths = {
+                "http/localhost.8080/", "http/localhost.8080/content/page.html", "http/localhost.80/",
+                "http/localhost.8081/", "https/www.example.com.443/page", "http/www.example.com.80/page",
+                "http/wwwXexample.com.80/page", "http/www.example.org.80/", "http/cdn.example.org.80/x",
+                "http/host.80/libs/foo", "http/host.80/", "http/axc/", "http/axbc/", "http/ab/", "", "http"
+        };
+        for (final String path : paths) {
+            final List<MapEntry> candidates = matcher.getCandidates(path);
+            // all matching entries are candidates
+            final List<MapEntry> matching = new ArrayList<MapEntry>();
+            for (final MapEntry entry : entries) {
+                if (entry.replace(path) != null) {
+                    matching.add(entry);
+                    assertTrue(entry + " should be a candidate for " + path, candidates.contains(entry));
+                }
+            }
+            // the candidates are in the original order
+            int last = -1;
+            for (final MapEntry candidate : candidates) {
+                final int index = entries.indexOf(candidate);
+                assertTrue(index > last);
+                last = index;
+            }
+            // and the first match does not change
+            MapEntry firstCandidateMatch = null;
+            for (final MapEntry candidate : candidates) {
+                if (candidate.replace(path) != null) {
+                    firstCandidateMatch = candidate;
+                    break;
+                }
+            }
+            assertEquals(matching.isEmpty() ? null : matching.get(0), firstCandidateMatch);
+        }
+
+        // only the entry without a usable prefix is left
+        assertEquals(1, matcher.getCandidates("ftp/other/").size());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(new MapEntryMatcher(Collections.<MapEntry> emptyList()).getCandidates("http/localhost.80/").isEmpty());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+/**
+ * Test the cache for map results.
+ */
+public class MapResultCacheTest {
+
+    private static String key(final String path) {
+        return MapResultCache.createKey(path, 1, "anonymous", null);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final MapResultCache cache = new MapResultCache(100, null);
+        assertNull(cache.get(key("/content/a")));
+        cache.put(key("/content/a"), "/a", cache.getVersion());
+        assertEquals("/a", cache.get(key("/content/a")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testKey() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getScheme()).thenReturn("http");
+        when(request.getServerName()).thenReturn("localhost");
+        when(request.getServerPort()).thenReturn(8080);
+        when(request.getContextPath()).thenReturn("");
+        final String key = MapResultCache.createKey("/content/a", 1, "admin", request);
+
+        assertFalse(key.equals(MapResultCache.createKey("/content/a", 2, "admin", request)));
+        assertFalse(key.equals(MapResultCache.createKey("/content/a", 1, "anonymous", request)));
+        assertFalse(key.equals(MapResultCache.createKey("/content/a", 1, "admin", null)));
+        when(request.getServerPort()).thenReturn(80);
+        assertFalse(key.equals(MapResultCache.createKey("/content/a", 1, "admin", request)));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final MapResultCache cache = new MapResultCache(100, null);
+        cache.put(key("/content/a"), "/a", cache.getVersion());
+        cache.put(key("/content/a.html"), "/a.html", cache.getVersion());
+        cache.put(key("/content/a/b.html"), "/a/b.html", cache.getVersion());
+        cache.put(key("/content/b.html"), "/b.html", cache.getVersion());
+        cache.put(key("/content"), "/", cache.getVersion());
+
+        cache.invalidate("/content/a");
+        assertNull(cache.get(key("/content/a")));
+        assertNull(cache.get(key("/content/a.html")));
+        assertNull(cache.get(key("/content/a/b.html")));
+        assertEquals("/b.html", cache.get(key("/content/b.html")));
+        assertEquals("/", cache.get(key("/content")));
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertNull(cache.get(key("/content")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStaleResultNotAdded() {
+        final MapResultCache cache = new MapResultCache(100, null);
+        final long version = cache.getVersion();
+        // a parent is changed while the result is computed
+        cache.invalidate("/content");
+        cache.put(key("/content/a"), "/a", version);
+        assertNull(cache.get(key("/content/a")));
+    }
+
+    @Test
+    public void testUnrelatedInvalidation() {
+        final MapResultCache cache = new MapResultCache(100, null);
+        final long version = cache.getVersion();
+        // a change of an unrelated path does not prevent caching
+        cache.invalidate("/content/other");
+        cache.put(key("/content/a"), "/a", version);
+        assertEquals("/a", cache.get(key("/content/a")));
+
+        cache.clear();
+        cache.put(key("/content/a"), "/a", version);
+        assertNull(cache.get(key("/content/a")));
+    }
+
+    @Test
+    public void testMaxEntries() {
+        final MapResultCache cache = new MapResultCache(10, null);
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("/content/" + i), "/" + i, cache.getVersion());
+        }
+        assertEquals(10, cache.size());
+        // the least recently used results are evicted
+        assertEquals("/0", cache.get(key("/content/0")));
+        cache.put(key("/content/10"), "/10", cache.getVersion());
+        assertTrue(cache.size() <= 10);
+        assertEquals("/0", cache.get(key("/content/0")));
+        assertNull(cache.get(key("/content/1")));
+        assertEquals("/10", cache.get(key("/content/10")));
+        assertEquals("/9", cache.get(key("/content/9")));
+
+        // the result for /content/10 is in the range
+        final int size = cache.size();
+        cache.invalidate("/content/1");
+        assertEquals(size - 1, cache.size());
+        assertNull(cache.get(key("/content/10")));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final MapResultCache cache = new MapResultCache(100, null);
+        final Thread[] threads = new Thread[4];
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            final String path = "/content/" + (i % 300);
+                            final String result = cache.get(key(path));
+                            if (result == null) {
+                                cache.put(key(path), path.substring(8), cache.getVersion());
+                            } else if (!result.equals(path.substring(8))) {
+                                throw new AssertionError(path + " mapped to " + result);
+                            }
+                            if (i % 1000 == 0) {
+                                cache.invalidate("/content/1");
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test the snapshots derived from a change tracking map.
+ */
+public class SnapshotMapTest {
+
+    @Test
+    public void testUnchangedEntriesAreShared() {
+        final ChangeTrackingMap<String, String> current = new ChangeTrackingMap<String, String>();
+        current.put("/a", "a");
+        current.put("/b", "b");
+        assertNull(current.drainChanges());
+        final SnapshotMap<String, String> first = SnapshotMap.copyOf(current);
+
+        current.put("/c", "c");
+        current.remove("/a");
+        current.put("/b", "b2");
+        final SnapshotMap<String, String> second = first.update(current, current.drainChanges());
+
+        // the first snapshot is not affected
+        assertEquals("a", first.get("/a"));
+        assertEquals("b", first.get("/b"));
+        assertNull(first.get("/c"));
+
+        assertNull(second.get("/a"));
+        assertFalse(second.containsKey("/a"));
+        assertEquals("b2", second.get("/b"));
+        assertEquals("c", second.get("/c"));
+        final Map<String, String> expected = new HashMap<String, String>();
+        expected.put("/b", "b2");
+        expected.put("/c", "c");
+        assertEquals(expected, second);
+
+        // nothing changed
+        assertSame(second, second.update(current, current.drainChanges()));
+    }
+
+    @Test
+    public void testAddedAndRemovedKey() {
+        final ChangeTrackingMap<String, String> current = new ChangeTrackingMap<String, String>();
+        current.drainChanges();
+        final SnapshotMap<String, String> first = SnapshotMap.copyOf(current);
+        current.put("/a", "a");
+        current.remove("/a");
+        final SnapshotMap<String, String> second = first.update(current, current.drainChanges());
+        assertTrue(second.isEmpty());
+    }
+
+    @Test
+    public void testClearCopiesTheMap() {
+        final ChangeTrackingMap<String, String> current = new ChangeTrackingMap<String, String>();
+        current.put("/a", "a");
+        current.drainChanges();
+        SnapshotMap<String, String> snapshot = SnapshotMap.copyOf(current);
+
+        current.clear();
+        current.put("/b", "b");
+        snapshot = snapshot.update(current, current.drainChanges());
+        assertEquals(current, snapshot);
+    }
+
+    @Test
+    public void testManyChanges() {
+        final ChangeTrackingMap<String, String> current = new ChangeTrackingMap<String, String>();
+        for (int i = 0; i < 1000; i++) {
+            current.put("/base" + i, "b" + i);
+        }
+        current.drainChanges();
+        SnapshotMap<String, String> snapshot = SnapshotMap.copyOf(current);
+
+        // more changes than fit into the overlays
+        for (int i = 0; i < 2 * SnapshotMap.MIN_MERGED_CHANGES; i++) {
+            current.put("/" + i, "v" + i);
+            if (i % 3 == 0) {
+                current.remove("/" + (i / 2));
+                current.remove("/base" + (i % 1000));
+            }
+            snapshot = snapshot.update(current, current.drainChanges());
+            if (i % 997 == 0) {
+                assertEquals(current, snapshot);
+            }
+        }
+        assertEquals(current, snapshot);
+    }
+
+    @Test
+    public void testChangesThroughViewsAreTracked() {
+        final ChangeTrackingMap<String, String> current = new ChangeTrackingMap<String, String>();
+        current.put("/a", "a");
+        current.put("/b", "b");
+        current.put("/c", "c");
+        current.drainChanges();
+        final SnapshotMap<String, String> first = SnapshotMap.copyOf(current);
+
+        current.keySet().remove("/a");
+        final Iterator<Map.Entry<String, String>> i = current.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<String, String> entry = i.next();
+            if (entry.getKey().equals("/b")) {
+                entry.setValue("b2");
+            } else {
+                i.remove();
+            }
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("/a", "/b", "/c")),
+                new HashSet<String>(current.drainChanges()));
+        assertEquals(Collections.singletonMap("/b", "b2"), current);
+        assertEquals(3, first.size());
+    }
+}
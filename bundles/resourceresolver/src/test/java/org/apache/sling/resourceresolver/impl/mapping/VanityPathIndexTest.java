@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VanityPathIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setup() {
+        file = new File(folder.getRoot(), "vanityPathIndex.bin");
+    }
+
+    private static VanityPathIndex.Entry entry(final String vanityPath, final String redirect) {
+        return new VanityPathIndex.Entry(vanityPath, "^" + MapEntries.ANY_SCHEME_HOST + vanityPath, redirect, -1, 0);
+    }
+
+    @Test
+    public void test_empty_index() throws Exception {
+        final VanityPathIndex index = new VanityPathIndex(file);
+        assertTrue(index.isEmpty());
+        assertTrue(index.get("/foo").isEmpty());
+
+        index.compact();
+        assertTrue(file.exists());
+        assertFalse(new VanityPathIndex(file).isEmpty());
+    }
+
+    @Test
+    public void test_add_and_persist() throws Exception {
+        VanityPathIndex index = new VanityPathIndex(file);
+        for (int i = 0; i < 1000; i++) {
+            index.add(entry("/vanity" + i, "/content/page" + i));
+        }
+        index.add(entry("/vanity7", "/content/other"));
+        assertEquals(1001, index.getPendingChanges());
+        assertEquals(2, index.get("/vanity7").size());
+
+        index.compact();
+        assertEquals(0, index.getPendingChanges());
+        assertEquals(1001, index.getPersistedSize());
+
+        // reopen
+        index = new VanityPathIndex(file);
+        assertEquals(1001, index.getPersistedSize());
+        final List<VanityPathIndex.Entry> entries = index.get("/vanity7");
+        assertEquals(2, entries.size());
+        assertEquals("/vanity7", entries.get(0).vanityPath);
+        assertEquals("/content/page999", index.get("/vanity999").get(0).redirect);
+        assertTrue(index.get("/vanity1000").isEmpty());
+        assertTrue(index.get("/vanity").isEmpty());
+        assertTrue(index.get("/").isEmpty());
+    }
+
+    @Test
+    public void test_remove_target() throws Exception {
+        final VanityPathIndex index = new VanityPathIndex(file);
+        index.add(entry("/a", "/content/a"));
+        index.add(entry("/b", "/content/a"));
+        index.add(entry("/c", "/content/c"));
+        index.compact();
+
+        index.removeTarget("/content/a");
+        assertTrue(index.get("/a").isEmpty());
+        assertTrue(index.get("/b").isEmpty());
+        assertEquals(1, index.get("/c").size());
+
+        // re-adding after removal
+        index.add(entry("/a", "/content/a"));
+        assertEquals(1, index.get("/a").size());
+        assertTrue(index.get("/b").isEmpty());
+
+        index.compact();
+        assertEquals(2, index.getPersistedSize());
+        assertEquals(1, index.get("/a").size());
+        assertTrue(index.get("/b").isEmpty());
+    }
+
+    @Test
+    public void test_remove_tree() throws Exception {
+        final VanityPathIndex index = new VanityPathIndex(file);
+        index.add(entry("/a", "/content/site"));
+        index.add(entry("/b", "/content/site/child"));
+        index.add(entry("/c", "/content/sitemap"));
+        index.compact();
+        index.add(entry("/d", "/content/site/new"));
+
+        index.removeTree("/content/site");
+        assertTrue(index.get("/a").isEmpty());
+        assertTrue(index.get("/b").isEmpty());
+        assertTrue(index.get("/d").isEmpty());
+        assertEquals(1, index.get("/c").size());
+
+        index.compact();
+        assertEquals(1, index.getPersistedSize());
+    }
+
+    @Test
+    public void test_non_ascii_keys() throws Exception {
+        final VanityPathIndex index = new VanityPathIndex(file);
+        index.add(entry("/\u00e4bc", "/content/umlaut"));
+        index.add(entry("/abc", "/content/ascii"));
+        index.add(entry("/\ud83d\ude00", "/content/emoji"));
+        index.add(entry("/\uffe0", "/content/fullwidth"));
+        index.compact();
+
+        assertEquals("/content/umlaut", index.get("/\u00e4bc").get(0).redirect);
+        assertEquals("/content/ascii", index.get("/abc").get(0).redirect);
+        assertEquals("/content/emoji", index.get("/\ud83d\ude00").get(0).redirect);
+        assertEquals("/content/fullwidth", index.get("/\uffe0").get(0).redirect);
+    }
+
+    @Test
+    public void test_corrupt_file() throws Exception {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        } finally {
+            out.close();
+        }
+        final VanityPathIndex index = new VanityPathIndex(file);
+        assertTrue(index.isEmpty());
+    }
+}
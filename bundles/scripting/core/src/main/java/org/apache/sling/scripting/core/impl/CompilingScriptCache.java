@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.core.impl;
+
+import java.util.concurrent.Callable;
+
+import javax.script.ScriptException;
+
+import org.apache.sling.scripting.api.CachedScript;
+import org.apache.sling.scripting.api.ScriptCache;
+
+/**
+ * Internal extension of the {@link ScriptCache} which compiles missing scripts itself, so that concurrent requests for the same
+ * script only compile it once. Other {@code ScriptCache} implementations are used through {@link ScriptCache#getScript(String)}
+ * and {@link ScriptCache#putScript(CachedScript)}.
+ */
+interface CompilingScriptCache extends ScriptCache {
+
+    /**
+     * Returns the cached script or compiles and caches it if it's not cached. If the same script is requested concurrently it is
+     * only compiled once and all callers wait for this compilation.
+     *
+     * @param scriptPath the path of the script
+     * @param compiler   compiles the script
+     * @return the compiled script
+     * @throws ScriptException if compiling the script fails
+     */
+    CachedScript getScript(String scriptPath, Callable<CachedScript> compiler) throws ScriptException;
+
+}
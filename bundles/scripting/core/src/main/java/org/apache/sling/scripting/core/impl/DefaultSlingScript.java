@@ -45,6 +45,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.script.Bindings;
 import javax.script.Compilable;
@@ -373,15 +374,26 @@ class DefaultSlingScript implements SlingScript, Servlet, ServletConfig {
             // evaluate the script
             final Object result;
             if (method == null && this.scriptEngine instanceof Compilable) {
-                CachedScript cachedScript = scriptCache.getScript(scriptName);
-                if (cachedScript == null) {
-                    ScriptNameAwareReader snReader = new ScriptNameAwareReader(reader, scriptName);
-                    CompiledScript compiledScript = ((Compilable) scriptEngine).compile(snReader);
-                    cachedScript = new CachedScriptImpl(scriptName, compiledScript);
-                    scriptCache.putScript(cachedScript);
-                    LOGGER.debug("Adding {} to the script cache.", scriptName);
+                CachedScript cachedScript;
+                if (scriptCache instanceof CompilingScriptCache) {
+                    // concurrent requests for the same script wait for a single compilation
+                    final Reader scriptReader = reader;
+                    cachedScript = ((CompilingScriptCache) scriptCache).getScript(scriptName, new Callable<CachedScript>() {
+                        @Override
+                        public CachedScript call() throws ScriptException {
+                            LOGGER.debug("Adding {} to the script cache.", scriptName);
+                            return compile(scriptReader);
+                        }
+                    });
                 } else {
-                    LOGGER.debug("Script {} was already cached.", scriptName);
+                    cachedScript = scriptCache.getScript(scriptName);
+                    if (cachedScript == null) {
+                        cachedScript = compile(reader);
+                        scriptCache.putScript(cachedScript);
+                        LOGGER.debug("Adding {} to the script cache.", scriptName);
+                    } else {
+                        LOGGER.debug("Script {} was already cached.", scriptName);
+                    }
                 }
                 result = cachedScript.getCompiledScript().eval(ctx);
             } else {
@@ -568,6 +580,12 @@ class DefaultSlingScript implements SlingScript, Servlet, ServletConfig {
         return new BufferedReader(new InputStreamReader(new LazyInputStream(this.scriptResource), this.scriptEncoding));
     }
 
+    private CachedScript compile(final Reader scriptReader) throws ScriptException {
+        ScriptNameAwareReader snReader = new ScriptNameAwareReader(scriptReader, scriptName);
+        CompiledScript compiledScript = ((Compilable) scriptEngine).compile(snReader);
+        return new CachedScriptImpl(scriptName, compiledScript, this.scriptResource.getResourceMetadata().getContentLength());
+    }
+
     private Reader getWrapperReader(final Reader scriptReader, final String method, final Object... args) {
         final StringBuilder buffer = new StringBuilder(method);
         buffer.append('(');
@@ -85,6 +85,7 @@ public class ScriptCacheConsolePlugin extends AbstractWebConsolePlugin {
             List<String> scripts = new ArrayList<String>(scriptCacheImpl.getCachedScripts());
             StringBuilder sb = new StringBuilder();
             sb.append("<script type='text/javascript' src='").append(RESOURCES).append("/").append(SCRIPTCACHE_JS).append("'></script>");
+            renderStatistics(scriptCacheImpl, scripts.size(), sb);
             sb.append("<div id='cached-scripts' class='ui-widget statline'>");
             if (scripts.size() > 0) {
                 Collections.sort(scripts);
@@ -107,6 +108,31 @@ public class ScriptCacheConsolePlugin extends AbstractWebConsolePlugin {
         }
     }
 
+    private void renderStatistics(ScriptCacheImpl scriptCacheImpl, int size, StringBuilder sb) {
+        long hits = scriptCacheImpl.getHitCount();
+        long misses = scriptCacheImpl.getMissCount();
+        long compilations = scriptCacheImpl.getCompileCount();
+        sb.append("<div id='statistics' class='ui-widget statline'>");
+        sb.append("<p class='ui-widget-header'>Statistics</p>");
+        sb.append("<table class='nicetable ui-widget-content'>");
+        appendRow(sb, 0, "Cached Scripts", size + " / " + scriptCacheImpl.getMaxSize());
+        appendRow(sb, 1, "Estimated Weight", scriptCacheImpl.getWeight() / 1024 + " KB / " + scriptCacheImpl.getMaxWeight() / 1024 + " KB");
+        appendRow(sb, 2, "Hits", String.valueOf(hits));
+        appendRow(sb, 3, "Misses", String.valueOf(misses));
+        appendRow(sb, 4, "Hit Ratio", hits + misses == 0 ? "-" : String.format("%.1f%%", hits * 100.0 / (hits + misses)));
+        appendRow(sb, 5, "Compilations", String.valueOf(compilations));
+        appendRow(sb, 6, "Average Compile Time",
+                compilations == 0 ? "-" : String.format("%.2f ms", scriptCacheImpl.getCompileTime() / 1000000.0 / compilations));
+        appendRow(sb, 7, "Evictions", String.valueOf(scriptCacheImpl.getEvictionCount()));
+        sb.append("</table>");
+        sb.append("</div>");
+    }
+
+    private void appendRow(StringBuilder sb, int row, String name, String value) {
+        sb.append("<tr class='").append(row % 2 == 0 ? "even" : "odd").append(" ui-state-default'><td>").append(name)
+                .append("</td><td>").append(value).append("</td></tr>");
+    }
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if (request.getRequestURI().endsWith(RESOURCES + "/" + SCRIPTCACHE_JS)) {
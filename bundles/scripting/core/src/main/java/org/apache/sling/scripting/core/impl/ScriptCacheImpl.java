@@ -19,7 +19,6 @@
 
 package org.apache.sling.scripting.core.impl;
 
-import java.lang.ref.SoftReference;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashMap;
@@ -28,13 +27,17 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nonnull;
 import javax.script.Compilable;
 import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -57,7 +60,8 @@ import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.apache.sling.scripting.api.CachedScript;
 import org.apache.sling.scripting.api.ScriptCache;
-import org.apache.sling.scripting.core.impl.helper.CachingMap;
+import org.apache.sling.scripting.core.impl.helper.CachedScriptImpl;
+import org.apache.sling.scripting.core.impl.helper.WeightedCache;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
@@ -77,6 +81,15 @@ import org.slf4j.LoggerFactory;
                 description = "The Cache Size defines the maximum number of compiled script references that will be stored in the cache's" +
                         " internal map."
         ),
+        @Property(
+                name = ScriptCacheImpl.PROP_CACHE_MAX_WEIGHT,
+                longValue = ScriptCacheImpl.DEFAULT_CACHE_MAX_WEIGHT,
+                label = "Maximum Weight",
+                description = "The maximum total weight in bytes of the cached scripts. The weight of a compiled script is estimated as" +
+                        " the size of its source plus 4 KB, so the default of 64 MB holds at most about 16000 scripts, fewer than the" +
+                        " default cache size. The least recently used scripts are evicted once either this limit or the cache size is" +
+                        " exceeded."
+        ),
         @Property(
                 name = ScriptCacheImpl.PROP_ADDITIONAL_EXTENSIONS,
                 value = "",
@@ -98,16 +111,21 @@ import org.slf4j.LoggerFactory;
  * The {@code ScriptCache} stores information about {@link CompiledScript} instances evaluated by various {@link ScriptEngine}s that
  * implement the {@link Compilable} interface.
  */
-public class ScriptCacheImpl implements ScriptCache, ResourceChangeListener, ExternalResourceChangeListener {
+public class ScriptCacheImpl implements CompilingScriptCache, ResourceChangeListener, ExternalResourceChangeListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ScriptCacheImpl.class);
 
     public static final int DEFAULT_CACHE_SIZE = 65536;
     public static final String PROP_CACHE_SIZE = "org.apache.sling.scripting.cache.size";
     public static final String PROP_ADDITIONAL_EXTENSIONS = "org.apache.sling.scripting.cache.additional_extensions";
+    public static final long DEFAULT_CACHE_MAX_WEIGHT = 64L * 1024 * 1024;
+    public static final String PROP_CACHE_MAX_WEIGHT = "org.apache.sling.scripting.cache.max_weight";
+
+    /** the estimated weight of a compiled script in addition to its source size */
+    static final long SCRIPT_OVERHEAD = 4096;
 
     private BundleContext bundleContext;
-    private Map<String, SoftReference<CachedScript>> internalMap;
+    private final WeightedCache<CachedScript> internalMap;
     private ServiceRegistration resourceChangeListener = null;
     private Set<String> extensions = new HashSet<>();
     private String[] additionalExtensions = new String[]{};
@@ -122,97 +140,191 @@ public class ScriptCacheImpl implements ScriptCache, ResourceChangeListener, Ext
     private ThreadPoolManager threadPoolManager = null;
 
     private ThreadPool threadPool;
-    private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-    private final Lock readLock = rwl.readLock();
-    private final Lock writeLock = rwl.writeLock();
     boolean active = false;
 
+    /** scripts currently being compiled, so that each script is only compiled once at a time */
+    private final ConcurrentHashMap<String, FutureTask<CachedScript>> compilations = new ConcurrentHashMap<>();
+
+    /** incremented whenever scripts are removed, compilations started before are not cached */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compileCount = new AtomicLong();
+    private final AtomicLong compileTime = new AtomicLong();
+
     public ScriptCacheImpl() {
-        internalMap = new CachingMap<>(DEFAULT_CACHE_SIZE);
+        internalMap = new WeightedCache<>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_MAX_WEIGHT);
     }
 
     @Override
     public CachedScript getScript(String scriptPath) {
-        readLock.lock();
-        SoftReference<CachedScript> reference = null;
+        CachedScript script = internalMap.get(scriptPath);
+        if (script != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return script;
+    }
+
+    @Override
+    public CachedScript getScript(final String scriptPath, final Callable<CachedScript> compiler) throws ScriptException {
+        CachedScript script = getScript(scriptPath);
+        if (script != null) {
+            return script;
+        }
+        final long generation = invalidations.get();
+        FutureTask<CachedScript> compilation = new FutureTask<>(new Callable<CachedScript>() {
+            @Override
+            public CachedScript call() throws Exception {
+                long start = System.nanoTime();
+                CachedScript compiled = compiler.call();
+                compileTime.addAndGet(System.nanoTime() - start);
+                compileCount.incrementAndGet();
+                // the script might have changed while it was compiled
+                if (generation == invalidations.get()) {
+                    putScript(compiled);
+                }
+                return compiled;
+            }
+        });
+        FutureTask<CachedScript> running = compilations.putIfAbsent(scriptPath, compilation);
+        if (running == null) {
+            running = compilation;
+            try {
+                compilation.run();
+            } finally {
+                compilations.remove(scriptPath, compilation);
+            }
+        } else {
+            LOGGER.debug("Waiting for the compilation of script {} by another thread.", scriptPath);
+        }
         try {
-            reference = internalMap.get(scriptPath);
-        } finally {
-            readLock.unlock();
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ScriptException) {
+                throw (ScriptException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ScriptException((Exception) cause);
         }
-        return reference != null ? reference.get() : null;
     }
 
     @Override
     public void putScript(CachedScript script) {
-        writeLock.lock();
-        try {
-            for (String searchPath : searchPaths) {
-                if (script.getScriptPath().startsWith(searchPath)) {
-                    SoftReference<CachedScript> reference = new SoftReference<>(script);
-                    internalMap.put(script.getScriptPath(), reference);
-                    LOGGER.debug("Added script {} to script cache.", script.getScriptPath());
-                    break;
-                }
+        for (String searchPath : searchPaths) {
+            if (script.getScriptPath().startsWith(searchPath)) {
+                internalMap.put(script.getScriptPath(), script, getWeight(script));
+                LOGGER.debug("Added script {} to script cache.", script.getScriptPath());
+                break;
             }
-        } finally {
-            writeLock.unlock();
         }
     }
 
     @Override
     public void clear() {
-        writeLock.lock();
-        try {
-            internalMap.clear();
-            LOGGER.debug("Cleared script cache.");
-        } finally {
-            writeLock.unlock();
-        }
+        invalidations.incrementAndGet();
+        internalMap.clear();
+        LOGGER.debug("Cleared script cache.");
     }
 
     @Override
     public boolean removeScript(String scriptPath) {
-        writeLock.lock();
-        try {
-            SoftReference<CachedScript> reference = internalMap.remove(scriptPath);
-            boolean result = reference != null;
-            if (result) {
-                LOGGER.debug("Removed script {} from script cache.", scriptPath);
-            }
-            return result;
-        } finally {
-            writeLock.unlock();
+        invalidations.incrementAndGet();
+        boolean result = internalMap.remove(scriptPath);
+        if (result) {
+            LOGGER.debug("Removed script {} from script cache.", scriptPath);
         }
+        return result;
+    }
+
+    /**
+     * Removes the script with the given path and all scripts below this path from the cache.
+     *
+     * @param path the path
+     * @return the number of removed scripts
+     */
+    public int removeScripts(String path) {
+        invalidations.incrementAndGet();
+        int removed = internalMap.removeTree(path);
+        if (removed > 0) {
+            LOGGER.debug("Removed {} scripts at or below {} from script cache.", removed, path);
+        }
+        return removed;
     }
 
     @Override
-    public void onChange(@Nonnull List<ResourceChange> list) {
-        for (final ResourceChange change : list) {
-            Runnable eventTask = new Runnable() {
-                @Override
-                public void run() {
+    public void onChange(@Nonnull final List<ResourceChange> list) {
+        Runnable eventTask = new Runnable() {
+            @Override
+            public void run() {
+                for (ResourceChange change : list) {
                     String path = change.getPath();
-                    writeLock.lock();
-                    try {
-                        internalMap.remove(path);
-                        LOGGER.debug("Detected script change for {} - removed entry from the cache.", path);
-                    } finally {
-                        writeLock.unlock();
+                    if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                        removeScripts(path);
+                    } else {
+                        removeScript(path);
                     }
+                    LOGGER.debug("Detected script change for {} - removed entry from the cache.", path);
                 }
-            };
-            threadPool.execute(eventTask);
-        }
+            }
+        };
+        threadPool.execute(eventTask);
     }
 
     protected Set<String> getCachedScripts() {
-        readLock.lock();
-        try {
-            return internalMap.keySet();
-        } finally {
-            readLock.unlock();
+        return internalMap.keySet();
+    }
+
+    private static long getWeight(CachedScript script) {
+        long sourceSize = -1;
+        if (script instanceof CachedScriptImpl) {
+            sourceSize = ((CachedScriptImpl) script).getSourceSize();
         }
+        return SCRIPT_OVERHEAD + Math.max(0, sourceSize);
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getCompileCount() {
+        return compileCount.get();
+    }
+
+    /**
+     * Returns the total time spent compiling scripts in nanoseconds.
+     */
+    long getCompileTime() {
+        return compileTime.get();
+    }
+
+    long getEvictionCount() {
+        return internalMap.getEvictionCount();
+    }
+
+    long getWeight() {
+        return internalMap.getWeight();
+    }
+
+    long getMaxWeight() {
+        return internalMap.getMaxWeight();
+    }
+
+    int getMaxSize() {
+        return internalMap.getMaxEntries();
     }
 
     @Activate
@@ -223,12 +335,8 @@ public class ScriptCacheImpl implements ScriptCache, ResourceChangeListener, Ext
         Dictionary properties = componentContext.getProperties();
         additionalExtensions = PropertiesUtil.toStringArray(properties.get(PROP_ADDITIONAL_EXTENSIONS));
         int newMaxCacheSize = PropertiesUtil.toInteger(properties.get(PROP_CACHE_SIZE), DEFAULT_CACHE_SIZE);
-        if (newMaxCacheSize != DEFAULT_CACHE_SIZE) {
-            // change the map only if there's a configuration change regarding the cache's max size
-            CachingMap<CachedScript> newMap = new CachingMap<>(newMaxCacheSize);
-            newMap.putAll(internalMap);
-            internalMap = newMap;
-        }
+        long newMaxWeight = PropertiesUtil.toLong(properties.get(PROP_CACHE_MAX_WEIGHT), DEFAULT_CACHE_MAX_WEIGHT);
+        internalMap.setBounds(newMaxCacheSize, newMaxWeight);
         ResourceResolver resolver = null;
         try {
             Map<String, Object> authenticationInfo = new HashMap<>(1);
@@ -248,43 +356,38 @@ public class ScriptCacheImpl implements ScriptCache, ResourceChangeListener, Ext
     }
 
     @SuppressWarnings("unchecked")
-    private void configureCache() {
-        writeLock.lock();
-        try {
-            if (resourceChangeListener != null) {
-                resourceChangeListener.unregister();
-                resourceChangeListener = null;
-            }
-            internalMap.clear();
-            extensions.addAll(Arrays.asList(additionalExtensions));
-            if (extensions.size() > 0) {
-                Set<String> globPatterns = new HashSet<>(extensions.size());
-                for (String extension : extensions) {
-                    globPatterns.add("glob:**/*." + extension);
-                }
-                Dictionary resourceChangeListenerProperties = new Hashtable();
-                resourceChangeListenerProperties.put(ResourceChangeListener.PATHS, globPatterns.toArray(new String[globPatterns.size()]));
-                resourceChangeListenerProperties.put(ResourceChangeListener.CHANGES,
-                        new String[]{ResourceChange.ChangeType.CHANGED.name(), ResourceChange.ChangeType.REMOVED.name()});
-                resourceChangeListener =
-                        bundleContext.registerService(
-                                new String[] {
-                                    ResourceChangeListener.class.getName(),
-                                    ExternalResourceChangeListener.class.getName()
-                                },
-                                this,
-                                resourceChangeListenerProperties
-                        );
+    private synchronized void configureCache() {
+        if (resourceChangeListener != null) {
+            resourceChangeListener.unregister();
+            resourceChangeListener = null;
+        }
+        clear();
+        extensions.addAll(Arrays.asList(additionalExtensions));
+        if (extensions.size() > 0) {
+            Set<String> globPatterns = new HashSet<>(extensions.size());
+            for (String extension : extensions) {
+                globPatterns.add("glob:**/*." + extension);
             }
-        } finally {
-            writeLock.unlock();
+            Dictionary resourceChangeListenerProperties = new Hashtable();
+            resourceChangeListenerProperties.put(ResourceChangeListener.PATHS, globPatterns.toArray(new String[globPatterns.size()]));
+            resourceChangeListenerProperties.put(ResourceChangeListener.CHANGES,
+                    new String[]{ResourceChange.ChangeType.CHANGED.name(), ResourceChange.ChangeType.REMOVED.name()});
+            resourceChangeListener =
+                    bundleContext.registerService(
+                            new String[] {
+                                ResourceChangeListener.class.getName(),
+                                ExternalResourceChangeListener.class.getName()
+                            },
+                            this,
+                            resourceChangeListenerProperties
+                    );
         }
     }
 
     @Deactivate
     @SuppressWarnings("unused")
     protected void deactivate(ComponentContext componentContext) {
-        internalMap.clear();
+        clear();
         if (resourceChangeListener != null) {
             resourceChangeListener.unregister();
             resourceChangeListener = null;
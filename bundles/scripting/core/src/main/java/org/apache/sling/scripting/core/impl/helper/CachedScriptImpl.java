@@ -27,10 +27,20 @@ public class CachedScriptImpl implements CachedScript {
 
     private String scriptPath;
     private CompiledScript compiledScript;
+    private long sourceSize;
 
     public CachedScriptImpl(String scriptPath, CompiledScript compiledScript) {
+        this(scriptPath, compiledScript, -1);
+    }
+
+    /**
+     * @param sourceSize the size of the script source in bytes or {@code -1} if unknown; used to estimate the memory needed by
+     *                   the compiled script
+     */
+    public CachedScriptImpl(String scriptPath, CompiledScript compiledScript, long sourceSize) {
         this.scriptPath = scriptPath;
         this.compiledScript = compiledScript;
+        this.sourceSize = sourceSize;
     }
 
     public String getScriptPath() {
@@ -40,4 +50,8 @@ public class CachedScriptImpl implements CachedScript {
     public CompiledScript getCompiledScript() {
         return compiledScript;
     }
+
+    public long getSourceSize() {
+        return sourceSize;
+    }
 }
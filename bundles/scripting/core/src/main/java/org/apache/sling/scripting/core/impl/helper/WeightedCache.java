@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+
+package org.apache.sling.scripting.core.impl.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * The {@code WeightedCache} is a concurrent cache bounded by the number of its entries and by the total weight of its values. The
+ * weight of a value is an estimate of its size given by the caller when adding the value.
+ * </p>
+ * <p>
+ * Reads are lock-free. Once one of the bounds is exceeded, the least recently used entries are evicted until the cache is filled to
+ * 90% of its bounds again, so that eviction does not run on every addition. Only one thread evicts at a time, the others do not wait.
+ * </p>
+ *
+ * @param <V> the type of the cached values
+ */
+public class WeightedCache<V> {
+
+    private static final Comparator<Node<?>> LEAST_RECENTLY_USED = new Comparator<Node<?>>() {
+        @Override
+        public int compare(Node<?> o1, Node<?> o2) {
+            return o1.lastAccess < o2.lastAccess ? -1 : (o1.lastAccess == o2.lastAccess ? 0 : 1);
+        }
+    };
+
+    private final ConcurrentMap<String, Node<V>> map = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private volatile int maxEntries;
+    private volatile long maxWeight;
+
+    /**
+     * Creates a cache with the given bounds.
+     *
+     * @param maxEntries the maximum number of entries; if {@code maxEntries < 1} then nothing is cached
+     * @param maxWeight  the maximum total weight of the values
+     */
+    public WeightedCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Changes the bounds of this cache, evicting entries if the cache exceeds the new bounds.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param maxWeight  the maximum total weight of the values
+     */
+    public void setBounds(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        evictIfNeeded();
+    }
+
+    public V get(String key) {
+        Node<V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        node.lastAccess = System.nanoTime();
+        return node.value;
+    }
+
+    /**
+     * Adds the value to the cache, replacing a previous value for the same key.
+     *
+     * @param key    the key
+     * @param value  the value
+     * @param weight the estimated size of the value
+     */
+    public void put(String key, V value, long weight) {
+        Node<V> node = new Node<>(key, value, weight);
+        Node<V> previous = map.put(key, node);
+        this.weight.addAndGet(previous == null ? weight : weight - previous.weight);
+        evictIfNeeded();
+    }
+
+    public boolean remove(String key) {
+        Node<V> node = map.remove(key);
+        if (node != null) {
+            weight.addAndGet(-node.weight);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the entry for the path and all entries for paths below it.
+     *
+     * @param path the path
+     * @return the number of removed entries
+     */
+    public int removeTree(String path) {
+        String prefix = path.endsWith("/") ? path : path + "/";
+        int removed = 0;
+        for (String key : map.keySet()) {
+            if ((key.equals(path) || key.startsWith(prefix)) && remove(key)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (String key : map.keySet()) {
+            remove(key);
+        }
+    }
+
+    public Set<String> keySet() {
+        return new HashSet<>(map.keySet());
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the total weight of the cached values.
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the number of entries which have been evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private boolean isFull(int entries, long weight) {
+        return map.size() > entries || this.weight.get() > weight;
+    }
+
+    private void evictIfNeeded() {
+        if (!isFull(maxEntries, maxWeight) || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int lowEntries = (int) (maxEntries * 0.9);
+            long lowWeight = (long) (maxWeight * 0.9);
+            List<Node<V>> nodes = new ArrayList<>(map.values());
+            Collections.sort(nodes, LEAST_RECENTLY_USED);
+            for (Node<V> node : nodes) {
+                if (!isFull(lowEntries, lowWeight)) {
+                    break;
+                }
+                // do not remove a value which has been replaced in the meantime
+                if (map.remove(node.key, node)) {
+                    weight.addAndGet(-node.weight);
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<V> {
+
+        private final String key;
+        private final V value;
+        private final long weight;
+        private volatile long lastAccess = System.nanoTime();
+
+        private Node(String key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.ScriptException;
+
+import org.apache.sling.scripting.api.CachedScript;
+import org.apache.sling.scripting.core.impl.helper.CachedScriptImpl;
+import org.junit.Test;
+
+public class ScriptCacheImplTest {
+
+    private static final String SCRIPT = "/apps/test/test.js";
+
+    @Test
+    public void testSingleCompilation() throws Exception {
+        final ScriptCacheImpl cache = new ScriptCacheImpl();
+        final CountDownLatch compiling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger compilations = new AtomicInteger();
+        final Callable<CachedScript> compiler = new Callable<CachedScript>() {
+            @Override
+            public CachedScript call() throws Exception {
+                compilations.incrementAndGet();
+                compiling.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return new CachedScriptImpl(SCRIPT, null, 100);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CachedScript>> results = new ArrayList<>();
+            results.add(executor.submit(getScript(cache, compiler)));
+            compiling.await(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(getScript(cache, compiler)));
+            }
+            // give the other threads some time to wait for the compilation
+            Thread.sleep(100);
+            release.countDown();
+
+            CachedScript script = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<CachedScript> result : results) {
+                assertSame(script, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, compilations.get());
+        assertEquals(1, cache.getCompileCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testCompilationFailure() {
+        ScriptCacheImpl cache = new ScriptCacheImpl();
+        try {
+            cache.getScript(SCRIPT, new Callable<CachedScript>() {
+                @Override
+                public CachedScript call() throws Exception {
+                    throw new ScriptException("syntax error");
+                }
+            });
+            fail("Expected ScriptException");
+        } catch (ScriptException e) {
+            assertEquals("syntax error", e.getMessage());
+        }
+        assertEquals(0, cache.getCompileCount());
+    }
+
+    private static Callable<CachedScript> getScript(final ScriptCacheImpl cache, final Callable<CachedScript> compiler) {
+        return new Callable<CachedScript>() {
+            @Override
+            public CachedScript call() throws Exception {
+                return cache.getScript(SCRIPT, compiler);
+            }
+        };
+    }
+}
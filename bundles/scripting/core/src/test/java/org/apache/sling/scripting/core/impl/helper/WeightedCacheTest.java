@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.scripting.core.impl.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WeightedCacheTest {
+
+    @Test
+    public void testPutGetRemove() {
+        WeightedCache<String> cache = new WeightedCache<>(10, 1000);
+        cache.put("/apps/a.js", "a", 100);
+        cache.put("/apps/b.js", "b", 200);
+        assertEquals("a", cache.get("/apps/a.js"));
+        assertEquals(300, cache.getWeight());
+
+        // replacing adjusts the weight
+        cache.put("/apps/a.js", "a2", 50);
+        assertEquals("a2", cache.get("/apps/a.js"));
+        assertEquals(250, cache.getWeight());
+
+        assertTrue(cache.remove("/apps/a.js"));
+        assertFalse(cache.remove("/apps/a.js"));
+        assertNull(cache.get("/apps/a.js"));
+        assertEquals(200, cache.getWeight());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictionByWeight() throws InterruptedException {
+        WeightedCache<String> cache = new WeightedCache<>(100, 1000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("/apps/" + i, "v" + i, 100);
+            Thread.sleep(1);
+        }
+        assertEquals(10, cache.size());
+        // keep the first script in use
+        cache.get("/apps/0");
+
+        cache.put("/apps/10", "v10", 100);
+        // evicted down to 90% of the max weight
+        assertEquals(900, cache.getWeight());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals("v0", cache.get("/apps/0"));
+        assertNull(cache.get("/apps/1"));
+        assertNull(cache.get("/apps/2"));
+        assertEquals("v10", cache.get("/apps/10"));
+    }
+
+    @Test
+    public void testEvictionByEntries() {
+        WeightedCache<String> cache = new WeightedCache<>(20, Long.MAX_VALUE);
+        for (int i = 0; i < 21; i++) {
+            cache.put("/apps/" + i, "v" + i, 1);
+        }
+        assertEquals(18, cache.size());
+
+        cache.setBounds(5, Long.MAX_VALUE);
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void testRemoveTree() {
+        WeightedCache<String> cache = new WeightedCache<>(10, 1000);
+        cache.put("/apps/site/a.js", "a", 1);
+        cache.put("/apps/site/sub/b.js", "b", 1);
+        cache.put("/apps/site2/c.js", "c", 1);
+        cache.put("/apps/site", "d", 1);
+
+        assertEquals(3, cache.removeTree("/apps/site"));
+        assertEquals(1, cache.size());
+        assertEquals("c", cache.get("/apps/site2/c.js"));
+        assertEquals(1, cache.getWeight());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+}
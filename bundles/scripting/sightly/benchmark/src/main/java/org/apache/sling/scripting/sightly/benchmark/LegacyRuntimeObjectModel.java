@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.sling.scripting.sightly.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.apache.sling.scripting.sightly.render.AbstractRuntimeObjectModel;
+
+/**
+ * Resolves object properties like the runtime object model did before the
+ * property accessors were cached: the method is looked up and invoked
+ * through reflection on every call.
+ */
+public class LegacyRuntimeObjectModel extends AbstractRuntimeObjectModel {
+
+    @Override
+    protected Object getObjectProperty(Object obj, String property) {
+        Object result = getObjectNoArgMethod(obj, property);
+        if (result == null) {
+            result = getLegacyField(obj, property);
+        }
+        return result;
+    }
+
+    @Override
+    protected Object getObjectNoArgMethod(Object obj, String property) {
+        Class<?> cls = obj.getClass();
+        Method method = findMethod(cls, property);
+        if (method != null) {
+            method = extractMethodInheritanceChain(cls, method);
+            try {
+                return method.invoke(obj);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Object getLegacyField(Object obj, String property) {
+        if (obj instanceof Object[] && "length".equals(property)) {
+            return ((Object[]) obj).length;
+        }
+        try {
+            Field field = obj.getClass().getDeclaredField(property);
+            return field.get(obj);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.sling.scripting.sightly.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.scripting.sightly.render.AbstractRuntimeObjectModel;
+import org.apache.sling.scripting.sightly.render.RuntimeObjectModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the property resolution of the {@link AbstractRuntimeObjectModel}
+ * with the uncached {@link LegacyRuntimeObjectModel} for POJOs, maps and
+ * value maps.
+ * <p>
+ * Run with <code>mvn package exec:java
+ * -Dexec.mainClass=org.apache.sling.scripting.sightly.benchmark.RuntimeObjectModelBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuntimeObjectModelBenchmark {
+
+    private static final String[] PROPERTIES = {"title", "visible", "name", "count"};
+
+    private final RuntimeObjectModel cached = new AbstractRuntimeObjectModel() {};
+
+    private final RuntimeObjectModel legacy = new LegacyRuntimeObjectModel();
+
+    private Page pojo;
+
+    private Map<String, Object> map;
+
+    private ValueMap valueMap;
+
+    @Setup
+    public void setup() {
+        pojo = new Page();
+        map = new HashMap<String, Object>();
+        map.put("title", pojo.getTitle());
+        map.put("visible", pojo.isVisible());
+        map.put("name", pojo.name());
+        map.put("count", pojo.count);
+        valueMap = new ValueMapDecorator(new HashMap<String, Object>(map));
+    }
+
+    @Benchmark
+    public void pojoCached(Blackhole blackhole) {
+        resolve(cached, pojo, blackhole);
+    }
+
+    @Benchmark
+    public void pojoLegacy(Blackhole blackhole) {
+        resolve(legacy, pojo, blackhole);
+    }
+
+    @Benchmark
+    public void mapCached(Blackhole blackhole) {
+        resolve(cached, map, blackhole);
+    }
+
+    @Benchmark
+    public void mapLegacy(Blackhole blackhole) {
+        resolve(legacy, map, blackhole);
+    }
+
+    @Benchmark
+    public void valueMapCached(Blackhole blackhole) {
+        resolve(cached, valueMap, blackhole);
+    }
+
+    @Benchmark
+    public void valueMapLegacy(Blackhole blackhole) {
+        resolve(legacy, valueMap, blackhole);
+    }
+
+    private static void resolve(RuntimeObjectModel runtimeObjectModel, Object target, Blackhole blackhole) {
+        for (String property : PROPERTIES) {
+            blackhole.consume(runtimeObjectModel.resolveProperty(target, property));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RuntimeObjectModelBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .build();
+        new Runner(options).run();
+    }
+
+    public static class Page {
+
+        public final int count = 42;
+
+        public String getTitle() {
+            return "title";
+        }
+
+        public boolean isVisible() {
+            return true;
+        }
+
+        public String name() {
+            return "name";
+        }
+    }
+}
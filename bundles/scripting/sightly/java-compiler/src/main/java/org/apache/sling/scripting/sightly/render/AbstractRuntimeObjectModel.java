@@ -291,8 +291,24 @@ public abstract class AbstractRuntimeObjectModel implements RuntimeObjectModel {
             return ((Object[]) obj).length;
         }
         Class<?> cls = obj.getClass();
+        PropertyAccessors accessors = PropertyAccessors.forClass(cls);
+        Field field = accessors.getField(property);
+        if (field == null) {
+            try {
+                field = cls.getDeclaredField(property);
+                if (!Modifier.isPublic(field.getModifiers()) || !Modifier.isPublic(cls.getModifiers())) {
+                    // not accessible through reflection
+                    field = null;
+                }
+            } catch (NoSuchFieldException e) {
+                field = null;
+            }
+            accessors.putField(property, field);
+        }
+        if (field == null || field == PropertyAccessors.NO_FIELD) {
+            return null;
+        }
         try {
-            Field field = cls.getDeclaredField(property);
             return field.get(obj);
         } catch (Exception e) {
             return null;
@@ -301,11 +317,19 @@ public abstract class AbstractRuntimeObjectModel implements RuntimeObjectModel {
 
     protected Object getObjectNoArgMethod(Object obj, String property) {
         Class<?> cls = obj.getClass();
-        Method method = findMethod(cls, property);
-        if (method != null) {
-            method = extractMethodInheritanceChain(cls, method);
+        PropertyAccessors accessors = PropertyAccessors.forClass(cls);
+        PropertyAccessors.Accessor accessor = accessors.getMethod(property);
+        if (accessor == null) {
+            Method method = findMethod(cls, property);
+            if (method != null) {
+                // null if the method is not accessible through a public type
+                method = extractMethodInheritanceChain(cls, method);
+            }
+            accessor = accessors.putMethod(property, method);
+        }
+        if (accessor != PropertyAccessors.NONE) {
             try {
-                return method.invoke(obj);
+                return accessor.invoke(obj);
             } catch (Exception e) {
                 LOGGER.error("Cannot access method " + property + " on object " + obj.toString(), e);
             }
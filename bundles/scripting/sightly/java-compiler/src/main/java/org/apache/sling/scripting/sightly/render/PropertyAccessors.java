@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.sling.scripting.sightly.render;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * Caches the accessors for the properties of a class which are resolved by
+ * the {@link AbstractRuntimeObjectModel}.
+ * <p>
+ * The accessors are stored in a {@link ClassValue}, so they do not prevent
+ * the classes they belong to from being unloaded.
+ */
+final class PropertyAccessors {
+
+    /** Marker for properties without an accessor. */
+    static final Accessor NONE = new Accessor(null, null);
+
+    /** Marker for properties without an accessible field. */
+    static final Field NO_FIELD = markerField();
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<PropertyAccessors> ACCESSORS = new ClassValue<PropertyAccessors>() {
+        @Override
+        protected PropertyAccessors computeValue(Class<?> type) {
+            return new PropertyAccessors();
+        }
+    };
+
+    private final ConcurrentMap<String, Accessor> methods = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Field> fields = new ConcurrentHashMap<>();
+
+    private PropertyAccessors() {
+    }
+
+    static PropertyAccessors forClass(Class<?> cls) {
+        return ACCESSORS.get(cls);
+    }
+
+    /**
+     * @return the cached method accessor, {@link #NONE} if there is none or {@code null} if it is unknown
+     */
+    Accessor getMethod(String property) {
+        return methods.get(property);
+    }
+
+    Accessor putMethod(String property, Method method) {
+        Accessor accessor = method == null ? NONE : new Accessor(method, unreflect(method));
+        methods.put(property, accessor);
+        return accessor;
+    }
+
+    /**
+     * @return the cached field, {@link #NO_FIELD} if there is none or {@code null} if it is unknown
+     */
+    Field getField(String property) {
+        return fields.get(property);
+    }
+
+    void putField(String property, Field field) {
+        fields.put(property, field == null ? NO_FIELD : field);
+    }
+
+    private static Field markerField() {
+        try {
+            return PropertyAccessors.class.getDeclaredField("NO_FIELD");
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            // the method is invoked through reflection, which reports the problem
+            return null;
+        }
+    }
+
+    /**
+     * A no-argument method used as property accessor.
+     */
+    static final class Accessor {
+
+        final Method method;
+
+        private final MethodHandle handle;
+
+        Accessor(Method method, MethodHandle handle) {
+            this.method = method;
+            this.handle = handle;
+        }
+
+        /**
+         * Invokes the method, like reflection anything thrown by the method,
+         * including errors, is wrapped in an {@link InvocationTargetException}.
+         */
+        @IgnoreJRERequirement
+        Object invoke(Object target) throws Exception {
+            if (handle != null) {
+                try {
+                    return (Object) handle.invokeExact(target);
+                } catch (Throwable t) {
+                    throw new InvocationTargetException(t);
+                }
+            }
+            return method.invoke(target);
+        }
+    }
+}
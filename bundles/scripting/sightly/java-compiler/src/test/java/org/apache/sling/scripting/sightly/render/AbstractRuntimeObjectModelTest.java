@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.sling.scripting.sightly.render;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AbstractRuntimeObjectModelTest {
+
+    private final AbstractRuntimeObjectModel runtimeObjectModel = new AbstractRuntimeObjectModel() {};
+
+    @Test
+    public void testPojoProperties() {
+        Bean bean = new Bean();
+        // the second lookup is served from the accessor cache
+        for (int i = 0; i < 2; i++) {
+            assertEquals("title", runtimeObjectModel.resolveProperty(bean, "title"));
+            assertEquals(true, runtimeObjectModel.resolveProperty(bean, "visible"));
+            assertEquals("name", runtimeObjectModel.resolveProperty(bean, "name"));
+            assertEquals(42, runtimeObjectModel.resolveProperty(bean, "count"));
+            assertNull(runtimeObjectModel.resolveProperty(bean, "hidden"));
+            assertNull(runtimeObjectModel.resolveProperty(bean, "missing"));
+        }
+    }
+
+    @Test
+    public void testObjectMethods() {
+        Bean bean = new Bean();
+        assertNull(runtimeObjectModel.resolveProperty(bean, "class"));
+        assertNull(runtimeObjectModel.resolveProperty(bean, "hashCode"));
+        assertEquals("bean", runtimeObjectModel.resolveProperty(bean, "toString"));
+    }
+
+    @Test
+    public void testNonPublicClass() {
+        Object value = new HiddenValue();
+        for (int i = 0; i < 2; i++) {
+            assertEquals("value", runtimeObjectModel.resolveProperty(value, "value"));
+            assertNull(runtimeObjectModel.resolveProperty(value, "missing"));
+        }
+    }
+
+    @Test
+    public void testNonPublicClassWithoutPublicType() {
+        Object bean = new HiddenBean();
+        for (int i = 0; i < 2; i++) {
+            // the method is only declared by the non-public class
+            assertNull(runtimeObjectModel.resolveProperty(bean, "title"));
+        }
+        assertSame(PropertyAccessors.NONE, PropertyAccessors.forClass(HiddenBean.class).getMethod("title"));
+    }
+
+    @Test
+    public void testGetterThrowingError() {
+        Object bean = new FailingBean();
+        for (int i = 0; i < 2; i++) {
+            // like with reflection, the error is logged and the property is missing
+            assertNull(runtimeObjectModel.resolveProperty(bean, "title"));
+        }
+    }
+
+    @Test
+    public void testArrayAndMap() {
+        assertEquals(3, runtimeObjectModel.resolveProperty(new String[] {"a", "b", "c"}, "length"));
+        assertEquals("b", runtimeObjectModel.resolveProperty(Collections.singletonMap("a", "b"), "a"));
+    }
+
+    public static class Bean {
+
+        public final int count = 42;
+
+        @SuppressWarnings("unused")
+        private final String hidden = "hidden";
+
+        public String getTitle() {
+            return "title";
+        }
+
+        public boolean isVisible() {
+            return true;
+        }
+
+        public String name() {
+            return "name";
+        }
+
+        @Override
+        public String toString() {
+            return "bean";
+        }
+    }
+
+    public interface Value {
+
+        String getValue();
+    }
+
+    private static class HiddenValue implements Value {
+
+        @Override
+        public String getValue() {
+            return "value";
+        }
+    }
+
+    public static class FailingBean {
+
+        public String getTitle() {
+            throw new AssertionError("failing getter");
+        }
+    }
+
+    private static class HiddenBean {
+
+        public String getTitle() {
+            return "title";
+        }
+    }
+}
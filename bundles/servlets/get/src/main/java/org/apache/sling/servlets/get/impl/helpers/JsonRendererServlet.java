@@ -62,11 +62,25 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
     public static final int INDENT_SPACES = 2;
 
     private long maximumResults;
+
+    /** Whether the plain format is written while traversing the resources */
+    private final boolean streaming;
     
     private final JSONRenderer renderer = new JSONRenderer();
 
     public JsonRendererServlet(long maximumResults) {
+        this(maximumResults, false);
+    }
+
+    /**
+     * @param maximumResults the maximum number of resources to render
+     * @param streaming whether to write the plain format while traversing
+     *        the resources instead of building the JSON tree in memory first.
+     *        The tidy and harray formats are always rendered from the tree.
+     */
+    public JsonRendererServlet(long maximumResults, boolean streaming) {
         this.maximumResults = maximumResults;
+        this.streaming = streaming;
     }
 
     @Override
@@ -95,9 +109,21 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
         final boolean tidy = isTidy(req);
         final boolean harray = hasSelector(req, HARRAY);
         ResourceTraversor traversor = null;
+        JsonResourceWriter resourceWriter = null;
         try {
-            traversor = new ResourceTraversor(maxRecursionLevels, maximumResults, r, tidy);
-            allowedLevel = traversor.collectResources();
+            if (streaming && !tidy && !harray) {
+                // only a bounded number of resources is visited for the check,
+                // the tree itself is written while traversing it below
+                resourceWriter = new JsonResourceWriter(maxRecursionLevels, maximumResults);
+                allowedLevel = resourceWriter.checkLimits(r);
+                if ( allowedLevel == -1 && !resourceWriter.isStreamable() ) {
+                    resourceWriter = null;
+                }
+            }
+            if ( resourceWriter == null ) {
+                traversor = new ResourceTraversor(maxRecursionLevels, maximumResults, r, tidy);
+                allowedLevel = traversor.collectResources();
+            }
             if ( allowedLevel != -1 ) {
 			    allowDump = false;
             }
@@ -107,7 +133,9 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
         try {
             // Dump the resource if we can
             if (allowDump) {
-                if (tidy || harray) {
+                if (resourceWriter != null) {
+                    resourceWriter.write(resp.getWriter(), r);
+                } else if (tidy || harray) {
                     final JSONRenderer.Options opt = renderer.options()
                             .withIndent(tidy ? INDENT_SPACES : 0)
                             .withArraysForChildren(harray);
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.json.sling.JsonObjectCreator;
+
+/**
+ * The <code>JsonResourceWriter</code> writes a resource tree as JSON while
+ * traversing it, instead of building the complete tree as a
+ * <code>JSONObject</code> first like the
+ * {@link org.apache.sling.commons.json.sling.ResourceTraversor} does.
+ * The output is the same as the one of <code>JSONObject.toString()</code>
+ * on the tree built by the traversor.
+ */
+class JsonResourceWriter {
+
+    /**
+     * Maximum nesting supported by the {@link JSONWriter}, the root object
+     * is on level 0.
+     */
+    static final int MAX_STREAMABLE_LEVEL = 48;
+
+    private final int maxRecursionLevels;
+
+    private final long maxResources;
+
+    private long count;
+
+    private int deepestLevel;
+
+    /**
+     * @param levels recursion levels limit, -1 means no limit
+     * @param maxResources maximum number of resources to write, ignored if levels == 1
+     */
+    JsonResourceWriter(final int levels, final long maxResources) {
+        this.maxRecursionLevels = levels;
+        this.maxResources = maxResources;
+    }
+
+    /**
+     * Checks whether the tree below the resource can be written without
+     * exceeding the maximum number of resources. Like the traversor this walks
+     * the tree breadth first, but it stops as soon as the limit is exceeded and
+     * only keeps the resources of the current and next level.
+     *
+     * @param resource the root resource
+     * @return -1 if the tree can be written, otherwise the level at which the
+     *         maximum number of resources was exceeded
+     */
+    int checkLimits(final Resource resource) {
+        count = 0;
+        deepestLevel = 0;
+        if (maxRecursionLevels == 1) {
+            // SLING-2320: always allow enumeration of one's children
+            deepestLevel = 1;
+            return -1;
+        }
+        LinkedList<Resource> currentQueue = new LinkedList<Resource>();
+        LinkedList<Resource> nextQueue = new LinkedList<Resource>();
+        currentQueue.add(resource);
+        int currentLevel = 0;
+        while (!currentQueue.isEmpty()) {
+            final Resource current = currentQueue.removeFirst();
+            if (maxRecursionLevels == -1 || currentLevel < maxRecursionLevels) {
+                final Iterator<Resource> children = ResourceUtil.listChildren(current);
+                while (children.hasNext()) {
+                    count++;
+                    final Resource child = children.next();
+                    if (count > maxResources) {
+                        return currentLevel;
+                    }
+                    deepestLevel = currentLevel + 1;
+                    nextQueue.addLast(child);
+                }
+            }
+            if (currentQueue.isEmpty()) {
+                currentLevel++;
+                currentQueue = nextQueue;
+                nextQueue = new LinkedList<Resource>();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the tree checked by {@link #checkLimits(Resource)} is
+     *         not too deep to be written by this writer
+     */
+    boolean isStreamable() {
+        return deepestLevel <= MAX_STREAMABLE_LEVEL;
+    }
+
+    /**
+     * Writes the resource and its children depth first. The maximum number of
+     * resources is enforced again while writing, in case the tree changed
+     * since it was checked.
+     *
+     * @param out the writer
+     * @param resource the root resource
+     * @throws JSONException if writing fails
+     */
+    void write(final Writer out, final Resource resource) throws JSONException {
+        count = 0;
+        writeResource(new JSONWriter(out), resource, 0);
+    }
+
+    private void writeResource(final JSONWriter writer, final Resource resource, final int level)
+    throws JSONException {
+        final JSONObject properties = JsonObjectCreator.create(resource, 0);
+        writer.object();
+        final Iterator<String> keys = properties.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            writer.key(key).value(properties.opt(key));
+        }
+        if (maxRecursionLevels == -1 || level < maxRecursionLevels) {
+            final Iterator<Resource> children = ResourceUtil.listChildren(resource);
+            while (children.hasNext()) {
+                count++;
+                if (count > maxResources && maxRecursionLevels != 1) {
+                    break;
+                }
+                final Resource child = children.next();
+                writer.key(ResourceUtil.getName(child));
+                writeResource(writer, child, level + 1);
+            }
+        }
+        writer.endObject();
+    }
+}
@@ -22,10 +22,15 @@ import static org.apache.sling.api.servlets.HttpConstants.HEADER_LAST_MODIFIED;
 
 import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -61,6 +66,16 @@ import org.slf4j.LoggerFactory;
  * {@link org.apache.sling.servlets.get.impl.DefaultGetServlet}. If the current
  * resource cannot be streamed it is rendered using the
  * {@link PlainTextRendererServlet}.
+ * <p>
+ * Resources adapting to a <code>File</code>, for example file system
+ * resources, are delivered through a <code>FileChannel</code> which serves
+ * ranges by position instead of skipping through the stream.
+ * <p>
+ * The <code>ETag</code> of a resource is derived from its path, last
+ * modification time and length, so it is known without reading the
+ * content and full deliveries from a <code>FileChannel</code> are always
+ * zero-copy. Entity tags are checked against the
+ * <code>If-None-Match</code> and <code>If-Range</code> headers.
  */
 public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
@@ -80,6 +95,10 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
     static final int IO_BUFFER_SIZE = 2048;
 
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -142,14 +161,14 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             return;
         }
 
-        // check the last modification time and If-Modified-Since header
-        if (!included) {
-            ResourceMetadata meta = resource.getResourceMetadata();
-            long modifTime = meta.getModificationTime();
-            if (unmodified(request, modifTime)) {
-                response.setStatus(SC_NOT_MODIFIED);
-                return;
-            }
+        // check the last modification time and If-Modified-Since header,
+        // If-None-Match takes precedence if an entity tag is known for the
+        // resource, which is only checked once the stream is known
+        final String ifNoneMatch = included ? null : request.getHeader(HEADER_IF_NONE_MATCH);
+        final long modifTime = resource.getResourceMetadata().getModificationTime();
+        if (!included && ifNoneMatch == null && unmodified(request, modifTime)) {
+            response.setStatus(SC_NOT_MODIFIED);
+            return;
         }
 
         // fall back to plain text rendering if the resource has no stream
@@ -165,16 +184,42 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         }
         InputStream stream = resource.adaptTo(InputStream.class);
         if (stream != null) {
+            final File file = getFile(resource);
+            final long length = (file != null) ? file.length() : resource.getResourceMetadata().getContentLength();
+            final String etag = getETag(resource, length);
+            if (ifNoneMatch != null && etag != null && matches(ifNoneMatch, etag)) {
+                closeSilently(stream);
+                response.setStatus(SC_NOT_MODIFIED);
+                response.setHeader(HEADER_ETAG, etag);
+                return;
+            }
+
             if (isHeadRequest(request)) {
-                setContentLength(response, resource.getResourceMetadata().getContentLength());
+                closeSilently(stream);
+                setContentLength(response, length);
                 setHeaders(resource, response);
+                if (etag != null) {
+                    response.setHeader(HEADER_ETAG, etag);
+                }
                 return;
             }
 
-            streamResource(resource, stream, included, request, response);
+            if (file != null) {
+                // delivered through the file channel
+                closeSilently(stream);
+                stream = null;
+            }
+
+            streamResource(resource, file, length, etag, stream, included, request, response);
 
         } else {
 
+            // no entity tag is known for resources without a stream
+            if (ifNoneMatch != null && unmodified(request, modifTime)) {
+                response.setStatus(SC_NOT_MODIFIED);
+                return;
+            }
+
             // the resource is the root, do not redirect, immediately index
             if (isRootResourceRequest(resource)) {
 
@@ -230,12 +275,67 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         return false;
     }
 
-    private void streamResource(final Resource resource,
-            final InputStream stream, final boolean included,
+    /**
+     * Returns the file the resource adapts to if it can be read or
+     * <code>null</code> otherwise.
+     */
+    private File getFile(final Resource resource) {
+        final File file = resource.adaptTo(File.class);
+        if (file != null && file.isFile() && file.canRead()) {
+            return file;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the entity tag of the resource in its current state or
+     * <code>null</code> if the resource has no modification time. The tag
+     * is derived from the path, the last modification time and the length,
+     * like the entity tags of file based web servers.
+     */
+    static String getETag(final Resource resource, final long length) {
+        final long modifTime = resource.getResourceMetadata().getModificationTime();
+        if (modifTime <= 0) {
+            return null;
+        }
+        return '"' + Integer.toHexString(resource.getPath().hashCode())
+            + '-' + Long.toHexString(modifTime)
+            + '-' + Long.toHexString(length) + '"';
+    }
+
+    /**
+     * Returns <code>true</code> if the header value is <code>*</code> or
+     * contains the entity tag.
+     */
+    static boolean matches(final String header, final String etag) {
+        if (header == null) {
+            return false;
+        }
+        final StringTokenizer tokens = new StringTokenizer(header, ",");
+        while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken().trim();
+            if (token.startsWith("W/")) {
+                // weak comparison
+                token = token.substring(2);
+            }
+            if ("*".equals(token) || etag.equals(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void streamResource(final Resource resource, final File file,
+            final long length, final String etag,
+            InputStream stream, final boolean included,
             final SlingHttpServletRequest request,
             final SlingHttpServletResponse response) throws IOException {
         // finally stream the resource
+        FileChannel channel = null;
         try {
+            if (file != null) {
+                channel = new FileInputStream(file).getChannel();
+            }
 
             final ArrayList<Range> ranges;
             if (included) {
@@ -247,7 +347,7 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
                 // parse optional ranges
                 ranges = parseRange(request, response,
-                    resource.getResourceMetadata());
+                    resource.getResourceMetadata(), length, etag);
                 if (ranges == null) {
                     // there was something wrong, the parseRange has sent a
                     // response and we are done
@@ -256,6 +356,9 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
                 // set various response headers, unless the request is included
                 setHeaders(resource, response);
+                if (etag != null) {
+                    response.setHeader(HEADER_ETAG, etag);
+                }
             }
 
             ServletOutputStream out = response.getOutputStream();
@@ -263,12 +366,15 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             if (ranges == FULL) {
 
                 // return full resource
-                setContentLength(response,
-                    resource.getResourceMetadata().getContentLength());
-                byte[] buf = new byte[IO_BUFFER_SIZE];
-                int rd;
-                while ((rd = stream.read(buf)) >= 0) {
-                    out.write(buf, 0, rd);
+                setContentLength(response, length);
+                if (channel != null) {
+                    transfer(channel, Channels.newChannel(out), 0, channel.size());
+                } else {
+                    byte[] buf = new byte[IO_BUFFER_SIZE];
+                    int rd;
+                    while ((rd = stream.read(buf)) >= 0) {
+                        out.write(buf, 0, rd);
+                    }
                 }
 
             } else {
@@ -283,20 +389,46 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
                         + "-" + range.end + "/" + range.length);
                     setContentLength(response, range.end - range.start + 1);
 
-                    copy(stream, out, range);
+                    if (channel != null) {
+                        transfer(channel, Channels.newChannel(out), range.start, range.end + 1);
+                    } else {
+                        copy(stream, out, range);
+                    }
 
                 } else {
 
                     response.setContentType("multipart/byteranges; boundary="
                         + mimeSeparation);
 
-                    copy(resource, out, ranges.iterator());
+                    if (channel != null) {
+                        copy(resource, channel, out, ranges.iterator());
+                    } else {
+                        stream = copy(resource, stream, out, ranges.iterator());
+                    }
                 }
 
             }
 
         } finally {
             closeSilently(stream);
+            closeSilently(channel);
+        }
+    }
+
+    /**
+     * Transfers the bytes from <code>start</code> (inclusive) to
+     * <code>end</code> (exclusive) of the channel to the output.
+     */
+    static void transfer(final FileChannel channel, final WritableByteChannel out,
+            final long start, final long end) throws IOException {
+        long position = start;
+        while (position < end) {
+            final long transferred = channel.transferTo(position, end - position, out);
+            if (transferred <= 0) {
+                // end of file, the file has been truncated
+                break;
+            }
+            position += transferred;
         }
     }
 
@@ -495,59 +627,84 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
     // http://svn.apache.org/viewvc/tomcat/trunk/java/org/apache/catalina/servlets/DefaultServlet.java?view=markup
 
     /**
-     * Copies a number of ranges from the given resource to the output stream.
-     * Copy the contents of the specified input stream to the specified output
-     * stream, and ensure that both streams are closed before returning (even in
-     * the face of an exception).
+     * Copies a number of ranges from the given stream of the resource to the
+     * output stream. The stream is read sequentially and only reopened if a
+     * range starts before the end of the previous one.
      *
      * @param resource The resource from which to send ranges
+     * @param stream The stream of the resource, positioned at its start
      * @param ostream The output stream to write to
      * @param ranges Iterator of the ranges the client wanted to retrieve
+     * @return The stream last read, which must be closed by the caller
      * @exception IOException if an input/output error occurs
      */
-    private void copy(Resource resource, ServletOutputStream ostream,
-            Iterator<Range> ranges) throws IOException {
+    private InputStream copy(Resource resource, InputStream stream,
+            ServletOutputStream ostream, Iterator<Range> ranges) throws IOException {
 
         String contentType = resource.getResourceMetadata().getContentType();
-        IOException exception = null;
+        InputStream istream = new BufferedInputStream(stream, IO_BUFFER_SIZE);
+        long position = 0;
 
-        while ((exception == null) && (ranges.hasNext())) {
+        while (ranges.hasNext()) {
+            Range currentRange = ranges.next();
+            writeRangeHeader(ostream, contentType, currentRange);
 
-            InputStream resourceInputStream = resource.adaptTo(InputStream.class);
-            InputStream istream = new BufferedInputStream(resourceInputStream,
-                IO_BUFFER_SIZE);
+            if (currentRange.start < position) {
+                // going backwards, start over
+                closeSilently(istream);
+                istream = new BufferedInputStream(resource.adaptTo(InputStream.class),
+                    IO_BUFFER_SIZE);
+                position = 0;
+            }
 
-            try {
-                Range currentRange = ranges.next();
+            // Copy content
+            log.debug("copy: Serving bytes: {}-{}", currentRange.start, currentRange.end + 1);
+            staticCopyRange(istream, ostream, currentRange.start - position,
+                currentRange.end + 1 - position);
+            position = currentRange.end + 1;
+        }
 
-                // Writing MIME header.
-                ostream.println();
-                ostream.println("--" + mimeSeparation);
-                if (contentType != null) {
-                    ostream.println("Content-Type: " + contentType);
-                }
-                ostream.println("Content-Range: bytes " + currentRange.start + "-"
-                    + currentRange.end + "/" + currentRange.length);
-                ostream.println();
+        ostream.println();
+        ostream.print("--" + mimeSeparation + "--");
+        return istream;
+    }
 
-                // Copy content
-                try {
-                    copy(istream, ostream, currentRange);
-                } catch(IOException e) {
-                    exception = e;
-                }
-            } finally {
-                closeSilently(istream);
-            }
+    /**
+     * Copies a number of ranges from the given file channel to the output
+     * stream.
+     *
+     * @param resource The resource from which to send ranges
+     * @param channel The file channel of the resource
+     * @param ostream The output stream to write to
+     * @param ranges Iterator of the ranges the client wanted to retrieve
+     * @exception IOException if an input/output error occurs
+     */
+    private void copy(Resource resource, FileChannel channel,
+            ServletOutputStream ostream, Iterator<Range> ranges) throws IOException {
 
+        String contentType = resource.getResourceMetadata().getContentType();
+        final WritableByteChannel out = Channels.newChannel(ostream);
+
+        while (ranges.hasNext()) {
+            Range currentRange = ranges.next();
+            writeRangeHeader(ostream, contentType, currentRange);
+            transfer(channel, out, currentRange.start, currentRange.end + 1);
         }
 
         ostream.println();
         ostream.print("--" + mimeSeparation + "--");
-        
-        if(exception != null) {
-            throw exception;
+    }
+
+    private void writeRangeHeader(ServletOutputStream ostream, String contentType,
+            Range range) throws IOException {
+        ostream.println();
+        ostream.println("--" + mimeSeparation);
+        if (contentType != null) {
+            ostream.println("Content-Type: " + contentType);
         }
+        ostream.println("Content-Range: bytes " + range.start + "-"
+            + range.end + "/" + range.length);
+        ostream.println();
     }
 
     /**
@@ -606,13 +763,17 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
      *
      * @param request The servlet request we are processing
      * @param response The servlet response we are creating
+     * @param metadata The metadata of the resource
+     * @param fileLength The length of the resource
+     * @param etag The entity tag of the resource or <code>null</code> if unknown
      * @return ArrayList of ranges parsed from the Range header or {@link #FULL}
      *         if the full resource should be returned or <code>null</code> if
      *         an error occurred parsing the header and the request has been
      *         finished sending an error status.
      */
     private ArrayList<Range> parseRange(HttpServletRequest request,
-            HttpServletResponse response, ResourceMetadata metadata)
+            HttpServletResponse response, ResourceMetadata metadata,
+            long fileLength, String etag)
             throws IOException {
 
         // Checking If-Range
@@ -630,8 +791,9 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
                 // If the ETag the client gave does not match the entity
                 // etag, then the entire entity is returned.
-                // Sling: no etag support yet, return full range
-                return FULL;
+                if (etag == null || !etag.equals(headerValue.trim())) {
+                    return FULL;
+                }
 
             } else if (metadata.getModificationTime() > (headerValueTime + 1000)) {
 
@@ -644,7 +806,6 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
         }
 
-        long fileLength = metadata.getContentLength();
         if (fileLength == 0) {
             return FULL;
         }
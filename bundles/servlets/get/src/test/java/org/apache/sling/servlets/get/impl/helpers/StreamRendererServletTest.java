@@ -19,20 +19,37 @@
 package org.apache.sling.servlets.get.impl.helpers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Random;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import junitx.util.PrivateAccessor;
+import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.request.RequestProgressTracker;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceMetadata;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class StreamRendererServletTest {
 
@@ -146,4 +163,197 @@ public class StreamRendererServletTest {
         PrivateAccessor.invoke(streamRendererServlet, "setHeaders", new Class[]{Resource.class, SlingHttpServletResponse.class}, new Object[]{resource, response});
         Mockito.verify(response,Mockito.times(1)).setContentType("application/octet-stream");
     }
+
+    @Test
+    public void testTransfer() throws IOException {
+        final byte[] expected = "0123456789".getBytes();
+        final File file = createFile(expected);
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamRendererServlet.transfer(channel, Channels.newChannel(out), 2, 5);
+            StreamRendererServlet.transfer(channel, Channels.newChannel(out), 8, 20);
+            assertEquals("23489", out.toString());
+        } finally {
+            in.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(StreamRendererServlet.matches("\"a\"", "\"a\""));
+        assertTrue(StreamRendererServlet.matches("\"b\", \"a\"", "\"a\""));
+        assertTrue(StreamRendererServlet.matches("W/\"a\"", "\"a\""));
+        assertTrue(StreamRendererServlet.matches("*", "\"a\""));
+        assertFalse(StreamRendererServlet.matches("\"b\"", "\"a\""));
+        assertFalse(StreamRendererServlet.matches(null, "\"a\""));
+    }
+
+    @Test
+    public void testFileDeliveryWithETag() throws Exception {
+        final byte[] content = "Hello, file world".getBytes();
+        final File file = createFile(content);
+        try {
+            final StreamRendererServlet servlet = createServlet();
+            final Resource resource = mockResource(content, file);
+
+            // the entity tag is known with the first delivery
+            TestResponse response = new TestResponse();
+            servlet.doGet(mockRequest(resource, null, null), response.mock);
+            assertEquals("Hello, file world", response.out.toString());
+            final String etag = response.etag();
+            assertNotNull(etag);
+            assertEquals(etag, StreamRendererServlet.getETag(resource, content.length));
+
+            // conditional request
+            response = new TestResponse();
+            servlet.doGet(mockRequest(resource, "If-None-Match", etag), response.mock);
+            Mockito.verify(response.mock).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            assertEquals("", response.out.toString());
+
+            // a single range from the file channel
+            response = new TestResponse();
+            servlet.doGet(mockRequest(resource, "Range", "bytes=7-10"), response.mock);
+            Mockito.verify(response.mock).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            assertEquals("file", response.out.toString());
+
+            // multiple ranges from the file channel
+            response = new TestResponse();
+            servlet.doGet(mockRequest(resource, "Range", "bytes=7-10,0-4"), response.mock);
+            final String multipart = response.out.toString();
+            assertTrue(multipart.contains("Content-Range: bytes 7-10/17"));
+            assertTrue(multipart.indexOf("file") < multipart.indexOf("Hello"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testETagTakesPrecedenceOverIfModifiedSince() throws Exception {
+        final byte[] content = "0123456789".getBytes();
+        final StreamRendererServlet servlet = createServlet();
+        final Resource resource = mockResource(content, null);
+
+        // the entity tag does not match, the modification time is ignored
+        final TestResponse response = new TestResponse();
+        servlet.doGet(mockConditionalRequest(resource), response.mock);
+        Mockito.verify(response.mock, Mockito.never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals("0123456789", response.out.toString());
+    }
+
+    @Test
+    public void testETagChangesWithResourceState() {
+        final byte[] content = "0123456789".getBytes();
+        final Resource resource = mockResource(content, null);
+        final String etag = StreamRendererServlet.getETag(resource, content.length);
+        assertNotNull(etag);
+        assertEquals(etag, StreamRendererServlet.getETag(resource, content.length));
+        assertFalse(etag.equals(StreamRendererServlet.getETag(resource, content.length + 1)));
+        resource.getResourceMetadata().setModificationTime(5000L);
+        assertFalse(etag.equals(StreamRendererServlet.getETag(resource, content.length)));
+        Mockito.when(resource.getResourceMetadata()).thenReturn(new ResourceMetadata());
+        assertNull(StreamRendererServlet.getETag(resource, content.length));
+    }
+
+    @Test
+    public void testStreamMultipleRanges() throws Exception {
+        final byte[] content = "0123456789".getBytes();
+        final StreamRendererServlet servlet = createServlet();
+        final Resource resource = mockResource(content, null);
+
+        final TestResponse response = new TestResponse();
+        servlet.doGet(mockRequest(resource, "Range", "bytes=1-2,5-6,3-3"), response.mock);
+        final String multipart = response.out.toString();
+        final int first = multipart.indexOf("\r\n12");
+        final int second = multipart.indexOf("\r\n56");
+        final int third = multipart.indexOf("\r\n3");
+        assertTrue(first > 0 && second > first && third > second);
+
+        // sequential ranges are read from the first stream, the third range
+        // starts over
+        Mockito.verify(resource, Mockito.times(2)).adaptTo(InputStream.class);
+    }
+
+    private static File createFile(final byte[] content) throws IOException {
+        final File file = File.createTempFile("stream", ".bin");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static StreamRendererServlet createServlet() {
+        final ServletContext sc = Mockito.mock(ServletContext.class);
+        return new StreamRendererServlet(false, new String[0]) {
+            @Override
+            public ServletContext getServletContext() {
+                return sc;
+            }
+        };
+    }
+
+    private static Resource mockResource(final byte[] content, final File file) {
+        final Resource resource = Mockito.mock(Resource.class);
+        final ResourceMetadata meta = new ResourceMetadata();
+        meta.setModificationTime(1000000L);
+        meta.setContentLength(content.length);
+        meta.setContentType("text/plain");
+        Mockito.when(resource.getResourceMetadata()).thenReturn(meta);
+        Mockito.when(resource.getResourceType()).thenReturn("nt:file");
+        Mockito.when(resource.getPath()).thenReturn("/content/file.txt");
+        Mockito.when(resource.adaptTo(File.class)).thenReturn(file);
+        Mockito.when(resource.adaptTo(InputStream.class)).thenAnswer(new Answer<InputStream>() {
+            public InputStream answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream(content);
+            }
+        });
+        return resource;
+    }
+
+    private static SlingHttpServletRequest mockRequest(final Resource resource, final String header,
+            final String value) {
+        final SlingHttpServletRequest request = Mockito.mock(SlingHttpServletRequest.class);
+        Mockito.when(request.getRequestPathInfo()).thenReturn(Mockito.mock(RequestPathInfo.class));
+        Mockito.when(request.getRequestProgressTracker()).thenReturn(Mockito.mock(RequestProgressTracker.class));
+        Mockito.when(request.getResource()).thenReturn(resource);
+        Mockito.when(request.getMethod()).thenReturn("GET");
+        Mockito.when(request.getDateHeader(Mockito.anyString())).thenReturn(-1L);
+        if (header != null) {
+            Mockito.when(request.getHeader(header)).thenReturn(value);
+        }
+        return request;
+    }
+
+    private static SlingHttpServletRequest mockConditionalRequest(final Resource resource) {
+        final SlingHttpServletRequest request = mockRequest(resource, "If-None-Match", "\"other\"");
+        Mockito.when(request.getDateHeader("If-Modified-Since")).thenReturn(2000000L);
+        return request;
+    }
+
+    private static class TestResponse {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        final SlingHttpServletResponse mock = Mockito.mock(SlingHttpServletResponse.class);
+
+        TestResponse() throws IOException {
+            Mockito.when(mock.getOutputStream()).thenReturn(new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    out.write(b);
+                }
+            });
+        }
+
+        String etag() {
+            final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+            Mockito.verify(mock, Mockito.atLeast(0)).setHeader(Mockito.eq("ETag"), captor.capture());
+            return captor.getAllValues().isEmpty() ? null : captor.getValue();
+        }
+    }
 }
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.servlet.Servlet;
+
+import org.apache.sling.servlets.resolver.internal.helper.AbstractResourceCollector;
+
+/**
+ * The script resolution cache is a segmented LRU cache: new entries are
+ * added to the probation segment and are promoted to the protected segment
+ * on their next hit. If the cache is full, the least recently used entry of
+ * the probation segment is evicted, so entries which are only used once do
+ * not evict the frequently used ones.
+ * <p>
+ * Lookups do not block: the map is concurrent and the access order is only
+ * updated if the lock is available.
+ * <p>
+ * Each entry records the locations which have been searched for it, which
+ * allows to invalidate only the entries affected by a change.
+ */
+class ScriptResolutionCache {
+
+    /** The share of the protected segment in percent. */
+    private static final int PROTECTED_PERCENTAGE = 80;
+
+    private final int maxSize;
+
+    private final int maxProtectedSize;
+
+    private final Map<AbstractResourceCollector, Entry> entries;
+
+    /** Probation segment in access order, guarded by the lock. */
+    private final LinkedHashMap<AbstractResourceCollector, Entry> probation = new LinkedHashMap<AbstractResourceCollector, Entry>();
+
+    /** Protected segment in access order, guarded by the lock. */
+    private final LinkedHashMap<AbstractResourceCollector, Entry> protectedSegment = new LinkedHashMap<AbstractResourceCollector, Entry>();
+
+    /** Entries by searched location, guarded by the lock. */
+    private final TreeMap<String, Set<Entry>> locations = new TreeMap<String, Set<Entry>>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong loadTime = new AtomicLong();
+
+    ScriptResolutionCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.maxProtectedSize = Math.max(1, maxSize * PROTECTED_PERCENTAGE / 100);
+        this.entries = new ConcurrentHashMap<AbstractResourceCollector, Entry>(maxSize);
+    }
+
+    /**
+     * Returns the cached servlet.
+     * @param key The collector
+     * @return The servlet or {@code null}
+     */
+    public Servlet get(final AbstractResourceCollector key) {
+        final Entry entry = this.entries.get(key);
+        if ( entry == null ) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        if ( this.lock.tryLock() ) {
+            try {
+                onAccess(entry);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        return entry.servlet;
+    }
+
+    /**
+     * Adds a servlet to the cache.
+     * @param key The collector
+     * @param servlet The servlet
+     * @param searchedLocations The locations which have been searched for the servlet
+     * @param loadNanos The time it took to resolve the servlet
+     */
+    public void put(final AbstractResourceCollector key,
+            final Servlet servlet,
+            final List<String> searchedLocations,
+            final long loadNanos) {
+        this.loads.incrementAndGet();
+        this.loadTime.addAndGet(loadNanos);
+        final Entry entry = new Entry(key, servlet, searchedLocations);
+        this.lock.lock();
+        try {
+            final Entry old = this.entries.get(key);
+            if ( old != null ) {
+                remove(old);
+            }
+            this.entries.put(key, entry);
+            this.probation.put(key, entry);
+            for (final String location : entry.locations) {
+                Set<Entry> set = this.locations.get(location);
+                if ( set == null ) {
+                    set = new HashSet<Entry>();
+                    this.locations.put(location, set);
+                }
+                set.add(entry);
+            }
+            while ( this.entries.size() > this.maxSize ) {
+                final Iterator<Entry> i = (this.probation.isEmpty() ? this.protectedSegment : this.probation).values().iterator();
+                remove(i.next());
+                this.evictions.incrementAndGet();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries for which a location has been searched which is
+     * the given path, an ancestor or a descendant of it.
+     * @param path The changed path
+     * @return The number of removed entries
+     */
+    public int invalidate(final String path) {
+        final String normalized = normalize(path);
+        final List<Entry> affected = new ArrayList<Entry>();
+        this.lock.lock();
+        try {
+            // locations at or above the path
+            String current = normalized;
+            while ( current != null ) {
+                final Set<Entry> set = this.locations.get(current);
+                if ( set != null ) {
+                    affected.addAll(set);
+                }
+                final int pos = current.lastIndexOf('/');
+                current = pos > 0 ? current.substring(0, pos) : (current.length() > 1 ? "/" : null);
+            }
+            // locations below the path
+            final String prefix = normalized.equals("/") ? "/" : normalized.concat("/");
+            for (final Set<Entry> set : this.locations.subMap(prefix, prefix.concat("\uFFFF")).values()) {
+                affected.addAll(set);
+            }
+            int removed = 0;
+            for (final Entry entry : affected) {
+                if ( this.entries.get(entry.key) == entry ) {
+                    remove(entry);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.entries.clear();
+            this.probation.clear();
+            this.protectedSegment.clear();
+            this.locations.clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return The average time in nanoseconds it took to resolve a cached servlet
+     */
+    public long getAverageLoadTime() {
+        final long count = this.loads.get();
+        return count == 0 ? 0 : this.loadTime.get() / count;
+    }
+
+    private void onAccess(final Entry entry) {
+        if ( this.probation.get(entry.key) == entry ) {
+            this.probation.remove(entry.key);
+            // promote to the protected segment, demoting its least recently used entry
+            this.protectedSegment.put(entry.key, entry);
+            if ( this.protectedSegment.size() > this.maxProtectedSize ) {
+                final Iterator<Entry> i = this.protectedSegment.values().iterator();
+                final Entry demoted = i.next();
+                i.remove();
+                this.probation.put(demoted.key, demoted);
+            }
+        } else if ( this.protectedSegment.get(entry.key) == entry ) {
+            this.protectedSegment.remove(entry.key);
+            this.protectedSegment.put(entry.key, entry);
+        }
+    }
+
+    private void remove(final Entry entry) {
+        this.entries.remove(entry.key);
+        if ( this.probation.get(entry.key) == entry ) {
+            this.probation.remove(entry.key);
+        } else if ( this.protectedSegment.get(entry.key) == entry ) {
+            this.protectedSegment.remove(entry.key);
+        }
+        for (final String location : entry.locations) {
+            final Set<Entry> set = this.locations.get(location);
+            if ( set != null ) {
+                set.remove(entry);
+                if ( set.isEmpty() ) {
+                    this.locations.remove(location);
+                }
+            }
+        }
+    }
+
+    private static String normalize(final String path) {
+        if ( path.length() > 1 && path.endsWith("/") ) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    private static final class Entry {
+
+        public final AbstractResourceCollector key;
+
+        public final Servlet servlet;
+
+        public final Set<String> locations;
+
+        public Entry(final AbstractResourceCollector key, final Servlet servlet, final List<String> searchedLocations) {
+            this.key = key;
+            this.servlet = servlet;
+            this.locations = new HashSet<String>();
+            for (final String location : searchedLocations) {
+                this.locations.add(normalize(location));
+            }
+        }
+    }
+}
@@ -40,7 +40,6 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
@@ -189,14 +188,11 @@ public class SlingServletResolver
     private Servlet fallbackErrorServlet;
 
     /** The script resolution cache. */
-    private Map<AbstractResourceCollector, Servlet> cache;
+    private volatile ScriptResolutionCache cache;
 
     /** The cache size. */
     private int cacheSize;
 
-    /** Flag to log warning if cache size exceed only once. */
-    private volatile boolean logCacheSizeWarning;
-
     /** Registration as event handler. */
     private ServiceRegistration eventHandlerReg;
 
@@ -627,7 +623,8 @@ public class SlingServletResolver
     private Servlet getServletInternal(final AbstractResourceCollector locationUtil,
             final SlingHttpServletRequest request,
             final ResourceResolver resolver) {
-        final Servlet scriptServlet = (this.cache != null ? this.cache.get(locationUtil) : null);
+        final ScriptResolutionCache localCache = this.cache;
+        final Servlet scriptServlet = (localCache != null ? localCache.get(locationUtil) : null);
         if (scriptServlet != null) {
             if ( LOGGER.isDebugEnabled() ) {
                 LOGGER.debug("Using cached servlet {}", RequestUtil.getServletName(scriptServlet));
@@ -635,7 +632,9 @@ public class SlingServletResolver
             return scriptServlet;
         }
 
-        final Collection<Resource> candidates = locationUtil.getServlets(resolver);
+        final long start = System.nanoTime();
+        final List<String> searchedLocations = (localCache != null ? new ArrayList<String>() : null);
+        final Collection<Resource> candidates = locationUtil.getServlets(resolver, searchedLocations);
 
         if (LOGGER.isDebugEnabled()) {
             if (candidates.isEmpty()) {
@@ -657,14 +656,8 @@ public class SlingServletResolver
                 final boolean isOptingServlet = candidate instanceof OptingServlet;
                 boolean servletAcceptsRequest = !isOptingServlet || (request != null && ((OptingServlet) candidate).accepts(request));
                 if (servletAcceptsRequest) {
-                    if (!hasOptingServlet && !isOptingServlet && this.cache != null) {
-                        if ( this.cache.size() < this.cacheSize ) {
-                            this.cache.put(locationUtil, candidate);
-                        } else if ( this.logCacheSizeWarning ) {
-                            this.logCacheSizeWarning = false;
-                            LOGGER.warn("Script cache has reached its limit of {}. You might want to increase the cache size for the servlet resolver.",
-                                    this.cacheSize);
-                        }
+                    if (!hasOptingServlet && !isOptingServlet && localCache != null) {
+                        localCache.put(locationUtil, candidate, searchedLocations, System.nanoTime() - start);
                     }
                     LOGGER.debug("Using servlet provided by candidate resource {}", candidateResource.getPath());
                     return candidate;
@@ -843,8 +836,7 @@ public class SlingServletResolver
         // create cache - if a cache size is configured
         this.cacheSize = OsgiUtil.toInteger(properties.get(PROP_CACHE_SIZE), DEFAULT_CACHE_SIZE);
         if (this.cacheSize > 5) {
-            this.cache = new ConcurrentHashMap<AbstractResourceCollector, Servlet>(cacheSize);
-            this.logCacheSizeWarning = true;
+            this.cache = new ScriptResolutionCache(cacheSize);
         } else {
             this.cacheSize = 0;
         }
@@ -1065,7 +1057,8 @@ public class SlingServletResolver
      */
     @Override
     public void handleEvent(final Event event) {
-        if (this.cache != null) {
+        final ScriptResolutionCache localCache = this.cache;
+        if (localCache != null) {
             boolean flushCache = false;
 
             // we may receive different events
@@ -1084,27 +1077,29 @@ public class SlingServletResolver
                 // this is a resource or resource provider event
 
                 // if the path of the event is a sub path of a search path
-                // we flush the whole cache
+                // we drop the entries for which the path has been searched
                 final String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
                 if ( path != null ) {
-                    int index = 0;
-                    while (!flushCache && index < searchPaths.length) {
-                        if (path.startsWith(this.searchPaths[index])) {
-                            flushCache = true;
+                    for (final String searchPath : this.searchPaths) {
+                        if (path.startsWith(searchPath)) {
+                            final int removed = localCache.invalidate(path);
+                            LOGGER.debug("Removed {} cached servlets after change at {}", removed, path);
+                            break;
                         }
-                        index++;
                     }
                 }
             }
             if (flushCache) {
-                flushCache();
+                localCache.clear();
             }
         }
     }
 
     private void flushCache() {
-        this.cache.clear();
-        this.logCacheSizeWarning = true;
+        final ScriptResolutionCache localCache = this.cache;
+        if (localCache != null) {
+            localCache.clear();
+        }
     }
 
     /** The list of property names checked by {@link #getName(ServiceReference)} */
@@ -1412,5 +1407,36 @@ public class SlingServletResolver
             return cacheSize;
         }
 
+        @Override
+        public long getCacheHits() {
+            final ScriptResolutionCache localCache = cache;
+            return localCache != null ? localCache.getHits() : 0;
+        }
+
+        @Override
+        public long getCacheMisses() {
+            final ScriptResolutionCache localCache = cache;
+            return localCache != null ? localCache.getMisses() : 0;
+        }
+
+        @Override
+        public double getCacheHitRate() {
+            final long hits = getCacheHits();
+            final long total = hits + getCacheMisses();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public long getEvictionCount() {
+            final ScriptResolutionCache localCache = cache;
+            return localCache != null ? localCache.getEvictions() : 0;
+        }
+
+        @Override
+        public long getAverageLoadTime() {
+            final ScriptResolutionCache localCache = cache;
+            return localCache != null ? localCache.getAverageLoadTime() : 0;
+        }
+
     }
 }
@@ -20,6 +20,7 @@ package org.apache.sling.servlets.resolver.internal.helper;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -65,12 +66,29 @@ public abstract class AbstractResourceCollector {
     }
 
     public final Collection<Resource> getServlets(final ResourceResolver resolver) {
+        return getServlets(resolver, null);
+    }
+
+    /**
+     * Returns the servlets and scripts for the request.
+     *
+     * @param resolver The <code>ResourceResolver</code> used to access the
+     *            resources.
+     * @param searchedLocations If not <code>null</code>, each searched location
+     *            is added to this list.
+     * @return The servlet and script resources ordered by priority.
+     */
+    public final Collection<Resource> getServlets(final ResourceResolver resolver,
+            final List<String> searchedLocations) {
 
         final SortedSet<Resource> resources = new TreeSet<Resource>();
         final Iterator<String> locations = new LocationIterator(resourceType, resourceSuperType,
                                                                 baseResourceType, resolver);
         while (locations.hasNext()) {
             final String location = locations.next();
+            if ( searchedLocations != null ) {
+                searchedLocations.add(location);
+            }
 
             // get the location resource, use a synthetic resource if there
             // is no real location. There may still be children at this
@@ -227,8 +227,14 @@ public class LocationIterator implements Iterator<String> {
                                         final String resourceType) {
         // normalize resource type to a path string
         final String rtPath = ResourceUtil.resourceTypeToPath(resourceType);
-        // get the resource type resource and check its super type
-        String resourceSuperType = null;
+        // the resource resolver answers this from its shared resource
+        // super type graph: it returns the super type of the first
+        // existing definition in the search paths. If that one has
+        // a super type, the search below would find the same one.
+        String resourceSuperType = resourceResolver.getParentResourceType(resourceType);
+        if ( resourceSuperType != null ) {
+            return resourceSuperType;
+        }
         // if the path is absolute, use it directly
         if ( rtPath != null && rtPath.startsWith("/") ) {
             final String candidatePath = rtPath;
@@ -18,9 +18,12 @@
  */
 package org.apache.sling.servlets.resolver.jmx;
 
+import aQute.bnd.annotation.ProviderType;
+
 /**
  * This is the management interface for the SlingServletResolver's cache.
  */
+@ProviderType
 public interface SlingServletResolverCacheMBean {
 
     /**
@@ -42,4 +45,39 @@ public interface SlingServletResolverCacheMBean {
      */
     void flushCache();
 
+    /**
+     * Get the number of lookups answered by the cache
+     *
+     * @return the number of cache hits
+     */
+    long getCacheHits();
+
+    /**
+     * Get the number of lookups not answered by the cache
+     *
+     * @return the number of cache misses
+     */
+    long getCacheMisses();
+
+    /**
+     * Get the ratio of cache hits to all lookups
+     *
+     * @return the hit rate between 0 and 1
+     */
+    double getCacheHitRate();
+
+    /**
+     * Get the number of entries evicted because the cache was full
+     *
+     * @return the number of evictions
+     */
+    long getEvictionCount();
+
+    /**
+     * Get the average time it took to resolve a cached servlet
+     *
+     * @return the average load time in nanoseconds
+     */
+    long getAverageLoadTime();
+
 }
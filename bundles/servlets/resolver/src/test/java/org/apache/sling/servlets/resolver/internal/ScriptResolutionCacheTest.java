@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+
+import org.apache.sling.servlets.resolver.internal.helper.AbstractResourceCollector;
+import org.apache.sling.servlets.resolver.internal.helper.NamedScriptResourceCollector;
+import org.junit.Test;
+
+public class ScriptResolutionCacheTest {
+
+    private static AbstractResourceCollector key(final String resourceType) {
+        return new NamedScriptResourceCollector("sling/servlet/default", resourceType, null, "html", "html", null);
+    }
+
+    private static void put(final ScriptResolutionCache cache, final String resourceType, final Servlet servlet) {
+        cache.put(key(resourceType), servlet, Arrays.asList("/apps/" + resourceType + "/",
+                "/libs/" + resourceType + "/", "/apps/sling/servlet/default/"), 1000);
+    }
+
+    @Test
+    public void testGetAndStatistics() {
+        final ScriptResolutionCache cache = new ScriptResolutionCache(10);
+        final Servlet servlet = new HttpServlet() {};
+        assertNull(cache.get(key("a/b")));
+        put(cache, "a/b", servlet);
+        assertSame(servlet, cache.get(key("a/b")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1000, cache.getAverageLoadTime());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEvictionPrefersProbation() {
+        final ScriptResolutionCache cache = new ScriptResolutionCache(10);
+        for (int i = 0; i < 5; i++) {
+            put(cache, "hot/" + i, new HttpServlet() {});
+            // promote to the protected segment
+            cache.get(key("hot/" + i));
+        }
+        for (int i = 0; i < 20; i++) {
+            put(cache, "cold/" + i, new HttpServlet() {});
+        }
+        assertEquals(10, cache.size());
+        assertEquals(15, cache.getEvictions());
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.get(key("hot/" + i)));
+        }
+        assertNull(cache.get(key("cold/0")));
+        assertNotNull(cache.get(key("cold/19")));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final ScriptResolutionCache cache = new ScriptResolutionCache(10);
+        put(cache, "a/b", new HttpServlet() {});
+        put(cache, "a/c", new HttpServlet() {});
+        put(cache, "x/y", new HttpServlet() {});
+
+        // a script added below a location
+        assertEquals(1, cache.invalidate("/apps/a/b/GET.jsp"));
+        assertNull(cache.get(key("a/b")));
+        assertNotNull(cache.get(key("a/c")));
+
+        // an ancestor of a location is removed
+        assertEquals(1, cache.invalidate("/libs/a"));
+        assertNull(cache.get(key("a/c")));
+        assertNotNull(cache.get(key("x/y")));
+
+        // unrelated paths
+        assertEquals(0, cache.invalidate("/apps/x/yz"));
+        assertEquals(0, cache.invalidate("/apps/sling/servlet/other"));
+        assertNotNull(cache.get(key("x/y")));
+
+        // a location shared by all entries
+        assertEquals(1, cache.invalidate("/apps/sling/servlet/default"));
+        assertEquals(0, cache.size());
+    }
+}
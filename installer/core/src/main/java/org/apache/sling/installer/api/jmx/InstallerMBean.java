@@ -44,4 +44,39 @@ public interface InstallerMBean {
      * Determines the time since when the installer is in suspended state
      */
     long getSuspendedSince();
+
+    /**
+     * Time in milliseconds spent reading bundle data ahead of the installation
+     * during the last installer cycle which processed bundles.
+     * @since 1.1.0
+     */
+    long getLastPrepareTime();
+
+    /**
+     * Time in milliseconds spent installing and updating bundles during the
+     * last installer cycle which processed bundles.
+     * @since 1.1.0
+     */
+    long getLastInstallTime();
+
+    /**
+     * Time in milliseconds spent refreshing bundles during the last installer
+     * cycle which processed bundles.
+     * @since 1.1.0
+     */
+    long getLastRefreshTime();
+
+    /**
+     * Time in milliseconds spent starting bundles during the last installer
+     * cycle which processed bundles.
+     * @since 1.1.0
+     */
+    long getLastStartTime();
+
+    /**
+     * Number of waves of parallel bundle starts during the last installer
+     * cycle which processed bundles.
+     * @since 1.1.0
+     */
+    int getLastStartWaveCount();
 }
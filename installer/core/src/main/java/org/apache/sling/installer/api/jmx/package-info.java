@@ -17,7 +17,7 @@
  * under the License.
  */
 
-@Version("1.0.2")
+@Version("1.1.0")
 package org.apache.sling.installer.api.jmx;
 
 import aQute.bnd.annotation.Version;
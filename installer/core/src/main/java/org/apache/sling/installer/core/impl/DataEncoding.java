@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Explicit binary encoding of the values stored in the persistent
+ * resource list. The common value types are written directly, all other
+ * values fall back to Java serialization.
+ * Map and dictionary entries are written sorted by key so that the same
+ * content always results in the same bytes.
+ */
+final class DataEncoding {
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_FLOAT = 6;
+    private static final byte TYPE_SHORT = 7;
+    private static final byte TYPE_BYTE = 8;
+    private static final byte TYPE_CHARACTER = 9;
+    private static final byte TYPE_STRING_ARRAY = 10;
+    private static final byte TYPE_SERIALIZED = 127;
+
+    private DataEncoding() {
+        // static methods only
+    }
+
+    /**
+     * Write a string which might be <code>null</code>.
+     * Unlike {@link DataOutput#writeUTF(String)} this is not limited in length.
+     */
+    static void writeString(final DataOutput out, final String value) throws IOException {
+        if ( value == null ) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if ( length == -1 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    static void writeValue(final DataOutput out, final Object value) throws IOException {
+        if ( value == null ) {
+            out.writeByte(TYPE_NULL);
+        } else if ( value instanceof String ) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String)value);
+        } else if ( value instanceof Boolean ) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        } else if ( value instanceof Integer ) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer)value);
+        } else if ( value instanceof Long ) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long)value);
+        } else if ( value instanceof Double ) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double)value);
+        } else if ( value instanceof Float ) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float)value);
+        } else if ( value instanceof Short ) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short)value);
+        } else if ( value instanceof Byte ) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte)value);
+        } else if ( value instanceof Character ) {
+            out.writeByte(TYPE_CHARACTER);
+            out.writeChar((Character)value);
+        } else if ( value instanceof String[] ) {
+            final String[] array = (String[])value;
+            out.writeByte(TYPE_STRING_ARRAY);
+            out.writeInt(array.length);
+            for(final String s : array) {
+                writeString(out, s);
+            }
+        } else {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+            final byte[] bytes = bos.toByteArray();
+            out.writeByte(TYPE_SERIALIZED);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static Object readValue(final DataInput in) throws IOException {
+        final byte type = in.readByte();
+        switch ( type ) {
+            case TYPE_NULL : return null;
+            case TYPE_STRING : return readString(in);
+            case TYPE_BOOLEAN : return in.readBoolean();
+            case TYPE_INTEGER : return in.readInt();
+            case TYPE_LONG : return in.readLong();
+            case TYPE_DOUBLE : return in.readDouble();
+            case TYPE_FLOAT : return in.readFloat();
+            case TYPE_SHORT : return in.readShort();
+            case TYPE_BYTE : return in.readByte();
+            case TYPE_CHARACTER : return in.readChar();
+            case TYPE_STRING_ARRAY : final String[] array = new String[in.readInt()];
+                                     for(int i = 0; i < array.length; i++) {
+                                         array[i] = readString(in);
+                                     }
+                                     return array;
+            case TYPE_SERIALIZED : final byte[] bytes = new byte[in.readInt()];
+                                   in.readFully(bytes);
+                                   final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                                   try {
+                                       return ois.readObject();
+                                   } catch (final ClassNotFoundException cnfe) {
+                                       throw (IOException)new IOException("Unable to read value").initCause(cnfe);
+                                   } finally {
+                                       ois.close();
+                                   }
+            default : throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Write a dictionary which might be <code>null</code>.
+     */
+    static void writeDictionary(final DataOutput out, final Dictionary<String, Object> dict) throws IOException {
+        if ( dict == null ) {
+            out.writeInt(-1);
+            return;
+        }
+        final SortedSet<String> keys = new TreeSet<String>();
+        final Enumeration<String> e = dict.keys();
+        while ( e.hasMoreElements() ) {
+            keys.add(e.nextElement());
+        }
+        out.writeInt(keys.size());
+        for(final String key : keys) {
+            writeString(out, key);
+            writeValue(out, dict.get(key));
+        }
+    }
+
+    static Dictionary<String, Object> readDictionary(final DataInput in) throws IOException {
+        final int size = in.readInt();
+        if ( size == -1 ) {
+            return null;
+        }
+        final Dictionary<String, Object> dict = new Hashtable<String, Object>();
+        for(int i = 0; i < size; i++) {
+            final String key = readString(in);
+            dict.put(key, readValue(in));
+        }
+        return dict;
+    }
+
+    static void writeMap(final DataOutput out, final Map<String, Object> map) throws IOException {
+        final SortedSet<String> keys = new TreeSet<String>(map.keySet());
+        out.writeInt(keys.size());
+        for(final String key : keys) {
+            writeString(out, key);
+            writeValue(out, map.get(key));
+        }
+    }
+
+    static void readMap(final DataInput in, final Map<String, Object> map) throws IOException {
+        final int size = in.readInt();
+        for(int i = 0; i < size; i++) {
+            final String key = readString(in);
+            map.put(key, readValue(in));
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.sling.installer.core.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -65,6 +67,9 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
     /** The listener. */
     private transient InstallationListener listener;
 
+    /** Has the group changed since it has been persisted? */
+    private transient boolean modified = true;
+
     public EntityResourceList(final String resourceId, final InstallationListener listener) {
         this.resourceId = resourceId;
         this.listener = listener;
@@ -110,6 +115,59 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
         }
     }
 
+    /**
+     * Write the group in the format of the {@link ResourceListJournal}.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+        DataEncoding.writeString(out, this.resourceId);
+        DataEncoding.writeString(out, this.alias);
+        out.writeInt(this.resources.size());
+        for(final RegisteredResourceImpl rr : this.resources) {
+            rr.writeTo(out);
+        }
+    }
+
+    /**
+     * Read a group written by {@link #writeTo(DataOutput)}.
+     * @param in The input
+     * @param version The format version of the data
+     */
+    static EntityResourceList readFrom(final DataInput in, final int version) throws IOException {
+        final EntityResourceList erl = new EntityResourceList(DataEncoding.readString(in), null);
+        erl.alias = DataEncoding.readString(in);
+        final int size = in.readInt();
+        for(int i = 0; i < size; i++) {
+            erl.resources.add(RegisteredResourceImpl.readFrom(in, version));
+        }
+        return erl;
+    }
+
+    /**
+     * Has the group or one of its resources changed since
+     * {@link #setPersisted()} has been called?
+     */
+    boolean isModified() {
+        if ( this.modified ) {
+            return true;
+        }
+        for(final RegisteredResourceImpl rr : this.resources) {
+            if ( rr.isModified() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark the group and its resources as persisted.
+     */
+    void setPersisted() {
+        this.modified = false;
+        for(final RegisteredResourceImpl rr : this.resources) {
+            rr.setPersisted();
+        }
+    }
+
     /**
      * The resource list is empty if it contains no resources.
      */
@@ -187,7 +245,10 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
      * Set the resource id
      */
     public void setResourceId(final String id) {
-        this.resourceId = id;
+        if ( id == null ? this.resourceId != null : !id.equals(this.resourceId) ) {
+            this.resourceId = id;
+            this.modified = true;
+        }
     }
 
     /**
@@ -288,6 +349,7 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
      */
     public void setFinishState(final ResourceState state, final String alias) {
         this.alias = alias;
+        this.modified = true;
         this.setFinishState(state);
     }
 
@@ -329,6 +391,7 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
                         LOGGER.debug("Cleanup obsolete resource: {}", rr);
                         taskIter.remove();
                         this.cleanup(rr);
+                        this.modified = true;
                     }
                 }
                 break;
@@ -337,6 +400,7 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
         }
         if ( add ) {
             resources.add(r);
+            this.modified = true;
         }
     }
 
@@ -355,6 +419,7 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
                     LOGGER.debug("Removing unused: {}", r);
                     i.remove();
                     this.cleanup(r);
+                    this.modified = true;
                 }
             }
             first = false;
@@ -389,6 +454,7 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
             }
             resources.clear();
             resources.addAll(copy);
+            this.modified = true;
             if ( !this.isEmpty() ) {
                 startNewCycle = true;
             }
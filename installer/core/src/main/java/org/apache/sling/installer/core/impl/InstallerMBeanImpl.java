@@ -23,14 +23,17 @@ import org.apache.sling.installer.api.event.InstallationEvent;
 import org.apache.sling.installer.api.event.InstallationListener;
 import org.apache.sling.installer.api.info.InfoProvider;
 import org.apache.sling.installer.api.jmx.InstallerMBean;
+import org.apache.sling.installer.core.impl.TaskStatistics.Phase;
 
 public class InstallerMBeanImpl implements InstallationListener, InstallerMBean {
     private final InfoProvider infoProvider;
+    private final TaskStatistics statistics;
     private volatile boolean active;
     private volatile long lastEventTime;
 
-    public InstallerMBeanImpl(InfoProvider infoProvider) {
+    public InstallerMBeanImpl(InfoProvider infoProvider, TaskStatistics statistics) {
         this.infoProvider = infoProvider;
+        this.statistics = statistics;
     }
 
     //~---------------------------------------< InstallationListener >
@@ -64,4 +67,24 @@ public class InstallerMBeanImpl implements InstallationListener, InstallerMBean
     public long getSuspendedSince() {
         return active ? -1 : lastEventTime;
     }
+
+    public long getLastPrepareTime() {
+        return statistics.getLastTime(Phase.PREPARE);
+    }
+
+    public long getLastInstallTime() {
+        return statistics.getLastTime(Phase.INSTALL);
+    }
+
+    public long getLastRefreshTime() {
+        return statistics.getLastTime(Phase.REFRESH);
+    }
+
+    public long getLastStartTime() {
+        return statistics.getLastTime(Phase.START);
+    }
+
+    public int getLastStartWaveCount() {
+        return statistics.getLastStartWaves();
+    }
 }
@@ -35,6 +35,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.sling.commons.osgi.PropertiesUtil;
@@ -57,7 +63,13 @@ import org.apache.sling.installer.api.tasks.RetryHandler;
 import org.apache.sling.installer.api.tasks.TaskResource;
 import org.apache.sling.installer.api.tasks.TaskResourceGroup;
 import org.apache.sling.installer.api.tasks.TransformationResult;
+import org.apache.sling.installer.core.impl.TaskStatistics.Phase;
+import org.apache.sling.installer.core.impl.tasks.AbstractBundleTask;
+import org.apache.sling.installer.core.impl.tasks.BundleInstallTask;
+import org.apache.sling.installer.core.impl.tasks.BundleStartTask;
 import org.apache.sling.installer.core.impl.tasks.BundleUpdateTask;
+import org.apache.sling.installer.core.impl.tasks.RefreshBundlesTask;
+import org.apache.sling.installer.core.impl.tasks.StartWavePlanner;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -84,6 +96,16 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
      */
     private static final String START_LEVEL_HANDLING = "sling.installer.switchstartlevel";
 
+    /**
+     * The name of the bundle context property defining the number of threads
+     * used to read bundle data and to start bundles. A value of 1 disables
+     * the parallel processing.
+     */
+    private static final String PARALLELISM = "sling.installer.parallelism";
+
+    /** The maximum amount of bundle data read ahead of the installation. */
+    private static final long MAX_PREFETCH_BYTES = 64 * 1024 * 1024;
+
     /** The logger */
     private final Logger logger =  LoggerFactory.getLogger(this.getClass());
 
@@ -135,6 +157,12 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
     /** Switch start level on bundle update? */
     private final boolean switchStartLevel;
 
+    /** Executor for parallel bundle processing, <code>null</code> if disabled. */
+    private final ExecutorService executor;
+
+    /** Times spent processing bundles. */
+    private final TaskStatistics statistics = new TaskStatistics();
+
     /**
      *  Constructor
      *
@@ -148,6 +176,32 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
         this.listener = new InstallListener(ctx, logger);
         this.persistentList = new PersistentResourceList(f, listener);
         this.switchStartLevel = PropertiesUtil.toBoolean(ctx.getProperty(START_LEVEL_HANDLING), false);
+        final int parallelism = PropertiesUtil.toInteger(ctx.getProperty(PARALLELISM),
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+        if ( parallelism > 1 ) {
+            final AtomicLong threadCounter = new AtomicLong();
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+
+                        public Thread newThread(final Runnable r) {
+                            final Thread t = new Thread(r, "OsgiInstallerWorker" + threadCounter.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Times spent processing bundles.
+     */
+    public TaskStatistics getStatistics() {
+        return this.statistics;
     }
 
     /**
@@ -196,6 +250,10 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
             logger.debug("Done waiting for background thread");
         }
 
+        if ( this.executor != null ) {
+            this.executor.shutdownNow();
+        }
+
         // remove file util
         FileDataStore.SHARED = null;
 
@@ -742,6 +800,8 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
      */
     private ACTION doExecuteTasks(final SortedSet<InstallTask> tasks) {
         if ( !tasks.isEmpty() ) {
+            this.statistics.startCycle();
+            this.prefetchBundleData(tasks);
 
             final InstallationContext ctx = new InstallationContext() {
 
@@ -842,13 +902,18 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
                     t.start();
                     return ACTION.SHUTDOWN;
                 }
-                try {
-                    logger.debug("Executing task: {}", task);
-                    task.execute(ctx);
-                } catch (final Throwable t) {
-                    logger.error("Uncaught exception during task execution!", t);
+                if ( task instanceof BundleStartTask && this.executor != null ) {
+                    this.startBundles((BundleStartTask)task, tasks, ctx);
+                    continue;
+                }
+                final long start = System.nanoTime();
+                this.executeTask(task, ctx);
+                final Phase phase = getPhase(task);
+                if ( phase != null ) {
+                    this.statistics.record(phase, System.nanoTime() - start);
                 }
             }
+            this.statistics.finishCycle();
             // save new state
             final boolean newCycle = this.cleanupInstallableResources();
             if ( newCycle ) {
@@ -859,6 +924,155 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
         return ACTION.SLEEP;
     }
 
+    /**
+     * Execute a single task.
+     */
+    private void executeTask(final InstallTask task, final InstallationContext ctx) {
+        try {
+            logger.debug("Executing task: {}", task);
+            task.execute(ctx);
+        } catch (final Throwable t) {
+            logger.error("Uncaught exception during task execution!", t);
+        }
+    }
+
+    /**
+     * Get the phase of a bundle task for the statistics.
+     * @return The phase or <code>null</code> for other tasks.
+     */
+    private static Phase getPhase(final InstallTask task) {
+        if ( task instanceof BundleInstallTask || task instanceof BundleUpdateTask ) {
+            return Phase.INSTALL;
+        } else if ( task instanceof RefreshBundlesTask ) {
+            return Phase.REFRESH;
+        } else if ( task instanceof BundleStartTask ) {
+            return Phase.START;
+        }
+        return null;
+    }
+
+    /**
+     * Planning phase: read the data of all bundles to install or update in parallel,
+     * the framework then only has to consume the data from memory.
+     */
+    private void prefetchBundleData(final SortedSet<InstallTask> tasks) {
+        if ( this.executor == null ) {
+            return;
+        }
+        final List<Callable<Boolean>> prefetches = new ArrayList<Callable<Boolean>>();
+        final AtomicLong budget = new AtomicLong(MAX_PREFETCH_BYTES);
+        synchronized ( tasks ) {
+            for(final InstallTask task : tasks) {
+                if ( task.isAsynchronousTask() ) {
+                    // the cycle ends with the async task
+                    return;
+                }
+                if ( task instanceof BundleInstallTask || task instanceof BundleUpdateTask ) {
+                    final AbstractBundleTask bundleTask = (AbstractBundleTask)task;
+                    prefetches.add(new Callable<Boolean>() {
+
+                        public Boolean call() {
+                            try {
+                                return bundleTask.prefetch(budget);
+                            } catch (final IOException ioe) {
+                                // the task will report the problem on execution
+                                logger.debug("Unable to prefetch data for " + bundleTask, ioe);
+                                return false;
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        if ( prefetches.size() > 1 ) {
+            final long start = System.nanoTime();
+            try {
+                this.executor.invokeAll(prefetches);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            this.statistics.record(Phase.PREPARE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Start all bundles of the current cycle: the start tasks are grouped into waves
+     * based on the wiring of the bundles and the bundles of a wave are started in parallel.
+     * All start tasks are removed from the tasks and executed here, unless the installer
+     * is deactivated. If the thread is interrupted, the remaining bundles are started
+     * one after the other.
+     * @param first The first start task, already removed from the tasks
+     * @param tasks The remaining tasks
+     * @param ctx The installation context
+     */
+    private void startBundles(final BundleStartTask first,
+            final SortedSet<InstallTask> tasks,
+            final InstallationContext ctx) {
+        final long start = System.nanoTime();
+        final List<BundleStartTask> startTasks = new ArrayList<BundleStartTask>();
+        startTasks.add(first);
+        synchronized ( tasks ) {
+            // start tasks are the last tasks of a cycle
+            final Iterator<InstallTask> i = tasks.iterator();
+            while ( i.hasNext() ) {
+                final InstallTask task = i.next();
+                if ( task instanceof BundleStartTask ) {
+                    startTasks.add((BundleStartTask)task);
+                    i.remove();
+                }
+            }
+        }
+        List<List<BundleStartTask>> waves;
+        try {
+            waves = StartWavePlanner.plan(this.ctx, startTasks);
+        } catch (final Throwable t) {
+            // wiring API not available (pre 4.3 framework), start bundles one after the other
+            logger.debug("Unable to plan parallel bundle starts", t);
+            waves = new ArrayList<List<BundleStartTask>>();
+            for(final BundleStartTask task : startTasks) {
+                waves.add(Collections.singletonList(task));
+            }
+        }
+        boolean interrupted = false;
+        for(final List<BundleStartTask> wave : waves) {
+            if ( !this.active ) {
+                break;
+            }
+            this.statistics.startWave();
+            if ( wave.size() == 1 || interrupted ) {
+                for(final BundleStartTask task : wave) {
+                    this.executeTask(task, ctx);
+                }
+            } else {
+                logger.debug("Starting {} bundles in parallel", wave.size());
+                final List<Callable<Object>> starts = new ArrayList<Callable<Object>>();
+                for(final BundleStartTask task : wave) {
+                    starts.add(new Callable<Object>() {
+
+                        public Object call() {
+                            executeTask(task, ctx);
+                            return null;
+                        }
+                    });
+                }
+                try {
+                    this.executor.invokeAll(starts);
+                } catch (final InterruptedException ie) {
+                    // starting a bundle twice is harmless, the tasks of the wave
+                    // which have been started already are skipped by the bundle state
+                    interrupted = true;
+                    for(final BundleStartTask task : wave) {
+                        this.executeTask(task, ctx);
+                    }
+                }
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+        this.statistics.record(Phase.START, System.nanoTime() - start);
+    }
+
     /**
      * Clean up and compact.
      * @return <code>true</code> if another cycle should be started.
@@ -19,13 +19,10 @@
 package org.apache.sling.installer.core.impl;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -43,11 +40,13 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Persistent list of RegisteredResource, used by installer to
- * keep track of all registered resources
+ * keep track of all registered resources.
+ * The list is stored through a {@link ResourceListJournal}, a data file
+ * written with Java serialization by older versions is migrated.
  */
 public class PersistentResourceList {
 
-    /** Serialization version. */
+    /** Serialization version of the migrated data file. */
     private static final int VERSION = 2;
 
     /** Entity id for restart active bundles. */
@@ -66,8 +65,8 @@ public class PersistentResourceList {
      */
     private final Map<String, EntityResourceList> data;
 
-    /** The persistence file. */
-    private final File dataFile;
+    /** The storage. */
+    private final ResourceListJournal journal;
 
     /** All untransformed resources. */
     private final List<RegisteredResource> untransformedResources;
@@ -76,12 +75,28 @@ public class PersistentResourceList {
 
     @SuppressWarnings("unchecked")
     public PersistentResourceList(final File dataFile, final InstallationListener listener) {
-        this.dataFile = dataFile;
         this.listener = listener;
+        String baseName = dataFile.getName();
+        if ( baseName.endsWith(".ser") ) {
+            baseName = baseName.substring(0, baseName.length() - 4);
+        }
+        this.journal = new ResourceListJournal(dataFile.getAbsoluteFile().getParentFile(), baseName);
 
-        Map<String, EntityResourceList> restoredData = null;
-        List<RegisteredResource> unknownList = null;
-        if ( dataFile.exists() ) {
+        Map<String, EntityResourceList> restoredData = new HashMap<String, EntityResourceList>();
+        List<RegisteredResource> unknownList = new ArrayList<RegisteredResource>();
+        boolean restored = false;
+        try {
+            restored = this.journal.load(restoredData, unknownList);
+            logger.debug("Restored resource list: {}", restoredData);
+            logger.debug("Restored unknown resource list: {}", unknownList);
+        } catch (final Exception e) {
+            logger.warn("Unable to restore data, starting with empty list (" + e.getMessage() + ")", e);
+            restoredData = null;
+            unknownList = null;
+        }
+        boolean migrate = false;
+        if ( !restored && dataFile.exists() ) {
+            migrate = true;
             ObjectInputStream ois = null;
             try {
                 ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
@@ -90,6 +105,8 @@ public class PersistentResourceList {
                     restoredData = (Map<String, EntityResourceList>)ois.readObject();
                     if ( version == VERSION ) {
                         unknownList = (List<RegisteredResource>)ois.readObject();
+                    } else {
+                        unknownList = null;
                     }
                 } else {
                     logger.warn("Unknown version for persistent resource list: {}", version);
@@ -135,6 +152,16 @@ public class PersistentResourceList {
             result.setResourceType(RESTART_ACTIVE_BUNDLES_TYPE);
             this.transform(rr, new TransformationResult[] {result});
         }
+
+        if ( migrate ) {
+            // write the new format and remove the old data file
+            if ( this.persist() ) {
+                logger.info("Migrated persistent resource list from {}", dataFile);
+                if ( !dataFile.delete() ) {
+                    logger.warn("Unable to remove migrated data file {}", dataFile);
+                }
+            }
+        }
     }
 
     /**
@@ -159,21 +186,31 @@ public class PersistentResourceList {
      * Persist the current state
      */
     public void save() {
+        this.persist();
+    }
+
+    /**
+     * Persist the current state
+     * @return <code>true</code> if the state has been persisted
+     */
+    private boolean persist() {
         try {
-            final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
-            try {
-                oos.writeInt(VERSION);
-                oos.writeObject(data);
-                oos.writeObject(untransformedResources);
-                logger.debug("Persisted resource list.");
-            } finally {
-                oos.close();
-            }
+            this.journal.save(this.data, this.untransformedResources);
+            logger.debug("Persisted resource list.");
+            return true;
         } catch (final Exception e) {
             logger.warn("Unable to save persistent list: " + e.getMessage(), e);
+            return false;
         }
     }
 
+    /**
+     * The storage, for testing.
+     */
+    ResourceListJournal getJournal() {
+        return this.journal;
+    }
+
     public Collection<String> getEntityIds() {
         return this.data.keySet();
     }
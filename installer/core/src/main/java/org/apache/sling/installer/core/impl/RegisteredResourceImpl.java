@@ -19,6 +19,8 @@
 package org.apache.sling.installer.core.impl;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -88,6 +90,9 @@ public class RegisteredResourceImpl
     /** When was the last status change? */
     private long lastChange = -1;
 
+    /** Has this resource changed since it has been persisted? */
+    private transient boolean modified = true;
+
     /**
      * Serialize the object
      * - write version id
@@ -153,6 +158,52 @@ public class RegisteredResourceImpl
         }
     }
 
+    /**
+     * Write the resource in the format of the {@link ResourceListJournal}.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+        DataEncoding.writeString(out, this.url);
+        DataEncoding.writeString(out, this.urlScheme);
+        DataEncoding.writeString(out, this.digest);
+        DataEncoding.writeString(out, this.entity);
+        DataEncoding.writeDictionary(out, this.dictionary);
+        DataEncoding.writeMap(out, this.attributes);
+        DataEncoding.writeString(out, this.dataFile == null ? null : this.dataFile.getName());
+        DataEncoding.writeString(out, this.resourceType);
+        out.writeInt(this.priority);
+        DataEncoding.writeString(out, this.state.toString());
+        out.writeLong(this.lastChange);
+        DataEncoding.writeString(out, this.dataUri);
+    }
+
+    /**
+     * Read a resource written by {@link #writeTo(DataOutput)}.
+     * @param in The input
+     * @param version The format version of the data
+     */
+    static RegisteredResourceImpl readFrom(final DataInput in, final int version) throws IOException {
+        final String url = DataEncoding.readString(in);
+        final String urlScheme = DataEncoding.readString(in);
+        final String digest = DataEncoding.readString(in);
+        final String entity = DataEncoding.readString(in);
+        final Dictionary<String, Object> dict = DataEncoding.readDictionary(in);
+        final RegisteredResourceImpl rr = new RegisteredResourceImpl(url.substring(url.indexOf(':') + 1),
+                null, null, dict, null, digest, 0, urlScheme);
+        rr.url = url;
+        rr.entity = entity;
+        DataEncoding.readMap(in, rr.attributes);
+        final String dataFileName = DataEncoding.readString(in);
+        if ( dataFileName != null ) {
+            rr.dataFile = FileDataStore.SHARED.getDataFile(dataFileName);
+        }
+        rr.resourceType = DataEncoding.readString(in);
+        rr.priority = in.readInt();
+        rr.state = ResourceState.valueOf(DataEncoding.readString(in));
+        rr.lastChange = in.readLong();
+        rr.dataUri = DataEncoding.readString(in);
+        return rr;
+    }
+
     /**
      * Try to create a registered resource.
      */
@@ -247,6 +298,7 @@ public class RegisteredResourceImpl
             dataFile.delete();
         }
         this.dataUri = null;
+        this.modified = true;
 	}
 
 	/**
@@ -333,9 +385,10 @@ public class RegisteredResourceImpl
     @Override
     public void setAttribute(final String key, final Object value) {
         if ( value == null ) {
-            this.attributes.remove(key);
+            this.modified |= this.attributes.remove(key) != null;
         } else {
             this.attributes.put(key, value);
+            this.modified = true;
         }
     }
 
@@ -369,6 +422,21 @@ public class RegisteredResourceImpl
     public void setState(final ResourceState s) {
         this.lastChange = System.currentTimeMillis();
         this.state = s;
+        this.modified = true;
+    }
+
+    /**
+     * Has this resource changed since {@link #setPersisted()} has been called?
+     */
+    boolean isModified() {
+        return this.modified;
+    }
+
+    /**
+     * Mark the resource as persisted.
+     */
+    void setPersisted() {
+        this.modified = false;
     }
 
     /**
@@ -573,6 +641,7 @@ public class RegisteredResourceImpl
      * Update the resource uri - if provided.
      */
     public void update(final InternalResource rsrc) {
+        this.modified = true;
         if ( rsrc.getResourceUri() != null ) {
             FileDataStore.SHARED.removeFromDigestCache(this.url, this.digest);
             this.removeDataFile();
@@ -639,6 +708,7 @@ public class RegisteredResourceImpl
         this.url = url;
         final int pos = url.indexOf(':');
         this.urlScheme = url.substring(0, pos);
+        this.modified = true;
     }
 
     /**
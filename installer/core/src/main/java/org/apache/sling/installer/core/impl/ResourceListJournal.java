@@ -0,0 +1,519 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.sling.installer.api.tasks.RegisteredResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage for the state of the {@link PersistentResourceList}.
+ * <p>
+ * The state is stored in a snapshot file and a journal file. A save only
+ * appends the resource groups which changed since the last save to the
+ * journal. Once the journal is larger than the snapshot, a new snapshot is
+ * written together with an empty journal. Snapshot and journal share a
+ * generation number which is part of the file names, so a journal is never
+ * applied to a snapshot of a different generation; files of older
+ * generations are removed.
+ * <p>
+ * Both files start with a header (magic number, format version, generation)
+ * followed by records. Each record consists of the payload length, a CRC32
+ * checksum, the record type and the payload. Reading stops at the first
+ * incomplete or corrupt record, which can only be the tail of the journal
+ * after a crash. Files are memory mapped for loading.
+ */
+class ResourceListJournal {
+
+    /** Magic number at the start of each file. */
+    private static final int MAGIC = 0x534c5249;
+
+    /** The format version written by this implementation. */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_LENGTH = 16;
+
+    /** A resource group has been added or changed. */
+    private static final byte RECORD_PUT_GROUP = 1;
+
+    /** A resource group has been removed. */
+    private static final byte RECORD_REMOVE_GROUP = 2;
+
+    /** The list of untransformed resources. */
+    private static final byte RECORD_UNTRANSFORMED = 3;
+
+    /** The minimum journal size before a new snapshot is written. */
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File directory;
+
+    private final String baseName;
+
+    /** The current generation, 0 if nothing has been stored yet. */
+    private long generation;
+
+    private long snapshotSize;
+
+    private long journalSize;
+
+    /** Force a new snapshot with the next save. */
+    private boolean compactionNeeded;
+
+    /** The ids of the persisted groups. */
+    private final Set<String> persistedGroups = new HashSet<String>();
+
+    /** The persisted untransformed resources. */
+    private final List<RegisteredResource> persistedUntransformed = new ArrayList<RegisteredResource>();
+
+    public ResourceListJournal(final File directory, final String baseName) {
+        this.directory = directory;
+        this.baseName = baseName;
+    }
+
+    /**
+     * Load the stored state.
+     * @param data The map to fill with the resource groups
+     * @param untransformed The list to fill with the untransformed resources
+     * @return <code>true</code> if a stored state has been found
+     * @throws IOException If the stored state can't be read
+     */
+    public boolean load(final Map<String, EntityResourceList> data,
+            final List<RegisteredResource> untransformed)
+    throws IOException {
+        // find the latest generation and remove temporary files
+        long latest = 0;
+        final File[] files = this.directory.listFiles();
+        if ( files != null ) {
+            for(final File f : files) {
+                if ( f.getName().startsWith(this.baseName + '.') && f.getName().endsWith(TEMP_SUFFIX) ) {
+                    f.delete();
+                } else {
+                    latest = Math.max(latest, this.getGeneration(f, SNAPSHOT_SUFFIX));
+                }
+            }
+        }
+        if ( latest == 0 ) {
+            return false;
+        }
+        // if loading fails, the next save starts a new generation
+        this.generation = latest;
+        this.compactionNeeded = true;
+        final File snapshot = this.getFile(latest, SNAPSHOT_SUFFIX);
+        final ByteBuffer snapshotBuffer = map(snapshot);
+        checkHeader(snapshotBuffer, latest, snapshot);
+        if ( this.readRecords(snapshotBuffer, data, untransformed) ) {
+            throw new IOException("Corrupt snapshot " + snapshot);
+        }
+        this.snapshotSize = snapshot.length();
+
+        final File journal = this.getFile(latest, JOURNAL_SUFFIX);
+        this.journalSize = 0;
+        if ( journal.length() >= HEADER_LENGTH ) {
+            final ByteBuffer journalBuffer = map(journal);
+            checkHeader(journalBuffer, latest, journal);
+            final boolean incomplete = this.readRecords(journalBuffer, data, untransformed);
+            if ( incomplete ) {
+                logger.warn("Ignoring incomplete tail of {}", journal);
+            }
+            this.journalSize = journal.length();
+            this.compactionNeeded = incomplete;
+        }
+        for(final EntityResourceList group : data.values()) {
+            group.setPersisted();
+        }
+        this.setUntransformedPersisted(untransformed);
+        this.removeOtherGenerations();
+        logger.debug("Loaded generation {} ({} bytes snapshot, {} bytes journal)",
+                new Object[] {latest, this.snapshotSize, this.journalSize});
+        return true;
+    }
+
+    /**
+     * Store the state. Only groups which changed since the last save are
+     * encoded and appended to the journal, see {@link EntityResourceList#isModified()}.
+     * @param data The resource groups
+     * @param untransformed The untransformed resources
+     * @throws IOException If writing fails
+     */
+    public void save(final Map<String, EntityResourceList> data,
+            final List<RegisteredResource> untransformed)
+    throws IOException {
+        if ( this.generation == 0 || this.compactionNeeded ) {
+            this.writeSnapshot(data, untransformed);
+            return;
+        }
+        final ByteArrayOutputStream changes = new ByteArrayOutputStream();
+        final List<EntityResourceList> changedGroups = new ArrayList<EntityResourceList>();
+
+        for(final Map.Entry<String, EntityResourceList> entry : data.entrySet()) {
+            if ( entry.getValue().isModified() || !this.persistedGroups.contains(entry.getKey()) ) {
+                writeRecord(changes, RECORD_PUT_GROUP, encodeGroup(entry.getKey(), entry.getValue()));
+                changedGroups.add(entry.getValue());
+            }
+        }
+        final List<String> removedGroups = new ArrayList<String>();
+        for(final String key : this.persistedGroups) {
+            if ( !data.containsKey(key) ) {
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                final DataOutputStream dos = new DataOutputStream(bos);
+                DataEncoding.writeString(dos, key);
+                dos.flush();
+                writeRecord(changes, RECORD_REMOVE_GROUP, bos.toByteArray());
+                removedGroups.add(key);
+            }
+        }
+        final boolean untransformedChanged = this.isUntransformedModified(untransformed);
+        if ( untransformedChanged ) {
+            writeRecord(changes, RECORD_UNTRANSFORMED, encodeUntransformed(untransformed));
+        }
+
+        if ( this.journalSize + changes.size() > Math.max(MIN_COMPACTION_SIZE, this.snapshotSize) ) {
+            this.writeSnapshot(data, untransformed);
+            return;
+        }
+        if ( changes.size() > 0 ) {
+            this.append(changes.toByteArray());
+        }
+        for(final EntityResourceList group : changedGroups) {
+            group.setPersisted();
+        }
+        this.persistedGroups.removeAll(removedGroups);
+        this.persistedGroups.addAll(data.keySet());
+        if ( untransformedChanged ) {
+            this.setUntransformedPersisted(untransformed);
+        }
+    }
+
+    /**
+     * Check whether resources have been added to, removed from or changed
+     * in the list of untransformed resources since the last save.
+     */
+    private boolean isUntransformedModified(final List<RegisteredResource> untransformed) {
+        if ( untransformed.size() != this.persistedUntransformed.size() ) {
+            return true;
+        }
+        for(int i = 0; i < untransformed.size(); i++) {
+            final RegisteredResource rr = untransformed.get(i);
+            if ( rr != this.persistedUntransformed.get(i) || ((RegisteredResourceImpl)rr).isModified() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setUntransformedPersisted(final List<RegisteredResource> untransformed) {
+        this.persistedUntransformed.clear();
+        this.persistedUntransformed.addAll(untransformed);
+        for(final RegisteredResource rr : untransformed) {
+            ((RegisteredResourceImpl)rr).setPersisted();
+        }
+    }
+
+    /**
+     * Append the records to the journal. The records are written at the end
+     * of the last complete write, so a torn write is overwritten. If writing
+     * fails, the journal is truncated to its previous size, or a new snapshot
+     * is forced if even that fails.
+     */
+    private void append(final byte[] records) throws IOException {
+        final RandomAccessFile journal = new RandomAccessFile(this.getFile(this.generation, JOURNAL_SUFFIX), "rw");
+        try {
+            try {
+                journal.seek(this.journalSize);
+                this.write(journal, records);
+                journal.setLength(this.journalSize + records.length);
+            } catch (final IOException ioe) {
+                try {
+                    journal.setLength(this.journalSize);
+                } catch (final IOException truncateFailure) {
+                    logger.warn("Unable to truncate journal after failed write", truncateFailure);
+                    this.compactionNeeded = true;
+                }
+                throw ioe;
+            }
+        } finally {
+            journal.close();
+        }
+        this.journalSize += records.length;
+        logger.debug("Appended {} bytes to journal", records.length);
+    }
+
+    /**
+     * Write the records to the journal, overridden by tests to simulate failures.
+     */
+    void write(final RandomAccessFile journal, final byte[] records) throws IOException {
+        journal.write(records);
+    }
+
+    /**
+     * Write a new generation with the snapshot of the state and an empty journal.
+     * Both files are synced to disk before the snapshot becomes visible under
+     * its final name, and older generations are removed only afterwards. This
+     * way a crash leaves either the complete new or the old generation.
+     */
+    private void writeSnapshot(final Map<String, EntityResourceList> data,
+            final List<RegisteredResource> untransformed)
+    throws IOException {
+        final long newGeneration = this.generation + 1;
+        final File snapshot = this.getFile(newGeneration, SNAPSHOT_SUFFIX);
+        final File temp = new File(this.directory, snapshot.getName() + TEMP_SUFFIX);
+        final File journal = this.getFile(newGeneration, JOURNAL_SUFFIX);
+        boolean written = false;
+        try {
+            final FileOutputStream fos = new FileOutputStream(temp);
+            try {
+                final OutputStream out = new BufferedOutputStream(fos);
+                out.write(header(newGeneration));
+                for(final Map.Entry<String, EntityResourceList> entry : data.entrySet()) {
+                    writeRecord(out, RECORD_PUT_GROUP, encodeGroup(entry.getKey(), entry.getValue()));
+                }
+                writeRecord(out, RECORD_UNTRANSFORMED, encodeUntransformed(untransformed));
+                out.flush();
+                this.sync(fos);
+            } finally {
+                fos.close();
+            }
+            final FileOutputStream journalOut = new FileOutputStream(journal);
+            try {
+                journalOut.write(header(newGeneration));
+                this.sync(journalOut);
+            } finally {
+                journalOut.close();
+            }
+            if ( !temp.renameTo(snapshot) ) {
+                throw new IOException("Unable to rename " + temp + " to " + snapshot);
+            }
+            written = true;
+        } finally {
+            if ( !written ) {
+                temp.delete();
+                journal.delete();
+            }
+        }
+        this.generation = newGeneration;
+        this.snapshotSize = snapshot.length();
+        this.journalSize = HEADER_LENGTH;
+        this.compactionNeeded = false;
+        this.persistedGroups.clear();
+        this.persistedGroups.addAll(data.keySet());
+        for(final EntityResourceList group : data.values()) {
+            group.setPersisted();
+        }
+        this.setUntransformedPersisted(untransformed);
+        this.removeOtherGenerations();
+        logger.debug("Wrote snapshot generation {} ({} bytes)", newGeneration, this.snapshotSize);
+    }
+
+    /**
+     * Force the written data to disk, overridden by tests to simulate failures.
+     */
+    void sync(final FileOutputStream out) throws IOException {
+        out.getFD().sync();
+    }
+
+    private static byte[] encodeGroup(final String key, final EntityResourceList group) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(bos);
+        DataEncoding.writeString(dos, key);
+        group.writeTo(dos);
+        dos.flush();
+        return bos.toByteArray();
+    }
+
+    private static byte[] encodeUntransformed(final List<RegisteredResource> untransformed) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(untransformed.size());
+        for(final RegisteredResource rr : untransformed) {
+            ((RegisteredResourceImpl)rr).writeTo(dos);
+        }
+        dos.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Read all records from the buffer and apply them.
+     * @return <code>true</code> if an incomplete or corrupt record has been found
+     */
+    private boolean readRecords(final ByteBuffer buffer,
+            final Map<String, EntityResourceList> data,
+            final List<RegisteredResource> untransformed)
+    throws IOException {
+        final CRC32 crc = new CRC32();
+        while ( buffer.hasRemaining() ) {
+            if ( buffer.remaining() < 9 ) {
+                return true;
+            }
+            final int length = buffer.getInt();
+            final int checksum = buffer.getInt();
+            final byte type = buffer.get();
+            if ( length < 0 || length > buffer.remaining() ) {
+                return true;
+            }
+            final byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+            if ( (int)crc.getValue() != checksum ) {
+                return true;
+            }
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            if ( type == RECORD_PUT_GROUP ) {
+                final String key = DataEncoding.readString(in);
+                data.put(key, EntityResourceList.readFrom(in, FORMAT_VERSION));
+                this.persistedGroups.add(key);
+            } else if ( type == RECORD_REMOVE_GROUP ) {
+                final String key = DataEncoding.readString(in);
+                data.remove(key);
+                this.persistedGroups.remove(key);
+            } else if ( type == RECORD_UNTRANSFORMED ) {
+                untransformed.clear();
+                final int size = in.readInt();
+                for(int i = 0; i < size; i++) {
+                    untransformed.add(RegisteredResourceImpl.readFrom(in, FORMAT_VERSION));
+                }
+            } else {
+                throw new IOException("Unknown record type " + type);
+            }
+        }
+        return false;
+    }
+
+    private static void writeRecord(final OutputStream out, final byte type, final byte[] payload)
+    throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        final DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(payload.length);
+        dos.writeInt((int)crc.getValue());
+        dos.writeByte(type);
+        dos.write(payload);
+        dos.flush();
+    }
+
+    private static byte[] header(final long generation) {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putLong(generation);
+        return buffer.array();
+    }
+
+    private static void checkHeader(final ByteBuffer buffer, final long generation, final File file)
+    throws IOException {
+        if ( buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC ) {
+            throw new IOException("Invalid file " + file);
+        }
+        final int version = buffer.getInt();
+        if ( version < 1 || version > FORMAT_VERSION ) {
+            throw new IOException("Unknown format version " + version + " of " + file);
+        }
+        if ( buffer.getLong() != generation ) {
+            throw new IOException("Generation mismatch in " + file);
+        }
+    }
+
+    private static ByteBuffer map(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private File getFile(final long generation, final String suffix) {
+        return new File(this.directory, this.baseName + '.' + generation + suffix);
+    }
+
+    /**
+     * Get the generation from the file name.
+     * @return The generation or 0 if the file does not match the suffix
+     */
+    private long getGeneration(final File file, final String suffix) {
+        final String name = file.getName();
+        if ( name.startsWith(this.baseName + '.') && name.endsWith(suffix) ) {
+            try {
+                return Long.parseLong(name.substring(this.baseName.length() + 1, name.length() - suffix.length()));
+            } catch (final NumberFormatException ignore) {
+                // not one of our files
+            }
+        }
+        return 0;
+    }
+
+    private void removeOtherGenerations() {
+        final File[] files = this.directory.listFiles();
+        if ( files != null ) {
+            for(final File f : files) {
+                long g = this.getGeneration(f, SNAPSHOT_SUFFIX);
+                if ( g == 0 ) {
+                    g = this.getGeneration(f, JOURNAL_SUFFIX);
+                }
+                if ( g != 0 && g != this.generation && !f.delete() ) {
+                    logger.debug("Unable to remove {}", f);
+                }
+            }
+        }
+    }
+
+    /** Size of the current snapshot, for testing. */
+    long getSnapshotSize() {
+        return this.snapshotSize;
+    }
+
+    /** Size of the current journal, for testing. */
+    long getJournalSize() {
+        return this.journalSize;
+    }
+
+    /** The current generation, for testing. */
+    long getGeneration() {
+        return this.generation;
+    }
+}
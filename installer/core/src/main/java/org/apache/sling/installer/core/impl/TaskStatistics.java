@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in the different phases of the bundle processing.
+ * The times are collected by the installer thread during a cycle and
+ * published at the end of each cycle which processed bundles.
+ */
+public class TaskStatistics {
+
+    public enum Phase {
+        /** Reading the bundle data ahead of the installation. */
+        PREPARE,
+        /** Installing and updating bundles. */
+        INSTALL,
+        /** Refreshing bundles. */
+        REFRESH,
+        /** Starting bundles. */
+        START
+    }
+
+    /** Times of the current cycle in nanoseconds, only used by the installer thread. */
+    private final long[] current = new long[Phase.values().length];
+
+    private int currentStartWaves;
+
+    /** Times of the last cycle in nanoseconds. */
+    private volatile long[] last = new long[Phase.values().length];
+
+    private volatile int lastStartWaves;
+
+    /**
+     * Start a new cycle.
+     */
+    void startCycle() {
+        for(int i = 0; i < this.current.length; i++) {
+            this.current[i] = 0;
+        }
+        this.currentStartWaves = 0;
+    }
+
+    /**
+     * Add the time spent in a phase.
+     */
+    void record(final Phase phase, final long nanos) {
+        this.current[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Count a wave of bundle starts.
+     */
+    void startWave() {
+        this.currentStartWaves++;
+    }
+
+    /**
+     * Finish the cycle and publish its times if bundles have been processed.
+     */
+    void finishCycle() {
+        for(final long time : this.current) {
+            if ( time > 0 ) {
+                this.lastStartWaves = this.currentStartWaves;
+                this.last = this.current.clone();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Time in milliseconds spent in the phase during the last cycle
+     * which processed bundles.
+     */
+    public long getLastTime(final Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(this.last[phase.ordinal()]);
+    }
+
+    /**
+     * Number of start waves during the last cycle which processed bundles.
+     */
+    public int getLastStartWaves() {
+        return this.lastStartWaves;
+    }
+}
@@ -18,6 +18,12 @@
  */
 package org.apache.sling.installer.core.impl.tasks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.sling.installer.api.InstallableResource;
 import org.apache.sling.installer.api.tasks.TaskResourceGroup;
 import org.apache.sling.installer.core.impl.AbstractInstallTask;
@@ -31,6 +37,55 @@ public abstract class AbstractBundleTask extends AbstractInstallTask {
         super(erl, support);
     }
 
+    /** The bundle data read ahead of the execution of this task. */
+    private volatile byte[] prefetchedData;
+
+    /**
+     * Read the data of the resource ahead of the execution of this task.
+     * This is invoked in parallel for all bundles of an installer cycle,
+     * the bundle data is kept in memory until the task is executed.
+     * @param budget The number of bytes which may still be kept in memory,
+     *               shared between all tasks of the cycle.
+     * @return <code>true</code> if the data has been read, <code>false</code>
+     *         if there is no data or the budget is exceeded.
+     * @throws IOException If the data can't be read.
+     */
+    public boolean prefetch(final AtomicLong budget) throws IOException {
+        final InputStream is = this.getResource().getInputStream();
+        if ( is == null ) {
+            return false;
+        }
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ( (count = is.read(buffer)) != -1 ) {
+                if ( budget.addAndGet(-count) < 0 ) {
+                    // not enough memory left, this bundle is streamed on execution
+                    budget.addAndGet(bos.size() + count);
+                    return false;
+                }
+                bos.write(buffer, 0, count);
+            }
+            this.prefetchedData = bos.toByteArray();
+            return true;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Get the bundle data, either the prefetched data or the resource stream.
+     */
+    protected InputStream getBundleInputStream() throws IOException {
+        final byte[] data = this.prefetchedData;
+        if ( data != null ) {
+            this.prefetchedData = null;
+            return new ByteArrayInputStream(data);
+        }
+        return this.getResource().getInputStream();
+    }
+
     /**
      * Detect the start level for the resource.
      */
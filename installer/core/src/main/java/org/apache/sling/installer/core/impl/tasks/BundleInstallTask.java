@@ -44,7 +44,7 @@ public class BundleInstallTask extends AbstractBundleTask {
     public void execute(final InstallationContext ctx) {
         final int startLevel = this.getBundleStartLevel();
         try {
-            final Bundle b = this.getBundleContext().installBundle(getResource().getURL(), getResource().getInputStream());
+            final Bundle b = this.getBundleContext().installBundle(getResource().getURL(), this.getBundleInputStream());
             ctx.log("Installed bundle {} from resource {}", b, getResource());
             // optionally set the start level
             if ( startLevel > 0 ) {
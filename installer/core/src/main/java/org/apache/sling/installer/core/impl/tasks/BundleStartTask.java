@@ -45,6 +45,13 @@ public class BundleStartTask extends AbstractBundleTask {
         this.sortKey = BUNDLE_START_ORDER + new DecimalFormat("00000").format(bundleId);
     }
 
+    /**
+     * The id of the bundle to start.
+     */
+    public long getBundleId() {
+        return this.bundleId;
+    }
+
     @Override
     public String getSortKey() {
         return sortKey;
@@ -90,7 +90,7 @@ public class BundleUpdateTask extends AbstractBundleTask {
             }
 
             // update bundle
-            b.update(getResource().getInputStream());
+            b.update(this.getBundleInputStream());
             ctx.log("Updated bundle {} from resource {}", b, getResource());
 
             // start level handling - after update to avoid starting the bundle
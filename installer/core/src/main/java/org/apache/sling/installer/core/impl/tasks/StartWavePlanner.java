@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Groups bundle start tasks into waves based on the wiring of the bundles.
+ * All bundles of a wave only depend on bundles started in previous waves
+ * (or on bundles which are not started by the installer at all), therefore
+ * the bundles of a wave can be started in parallel.
+ */
+public class StartWavePlanner {
+
+    private StartWavePlanner() {
+        // static methods only
+    }
+
+    /**
+     * Resolve the bundles to start and group the tasks into waves.
+     * Each task is contained in exactly one wave.
+     * @param bundleContext The bundle context
+     * @param tasks The start tasks in execution order
+     * @return The waves in execution order
+     */
+    public static List<List<BundleStartTask>> plan(final BundleContext bundleContext,
+            final Collection<BundleStartTask> tasks) {
+        final Map<Long, BundleStartTask> tasksById = new LinkedHashMap<Long, BundleStartTask>();
+        final List<BundleStartTask> duplicates = new ArrayList<BundleStartTask>();
+        final List<Bundle> bundles = new ArrayList<Bundle>();
+        for(final BundleStartTask task : tasks) {
+            if ( tasksById.containsKey(task.getBundleId()) ) {
+                // started after all other bundles
+                duplicates.add(task);
+                continue;
+            }
+            tasksById.put(task.getBundleId(), task);
+            final Bundle b = bundleContext.getBundle(task.getBundleId());
+            if ( b != null ) {
+                bundles.add(b);
+            }
+        }
+
+        // resolve all bundles in one go instead of once per start
+        final Bundle systemBundle = bundleContext.getBundle(0);
+        final FrameworkWiring frameworkWiring = (systemBundle == null ? null : systemBundle.adapt(FrameworkWiring.class));
+        if ( frameworkWiring != null ) {
+            frameworkWiring.resolveBundles(bundles);
+        }
+
+        final Map<Long, Set<Long>> dependencies = new LinkedHashMap<Long, Set<Long>>();
+        for(final Long id : tasksById.keySet()) {
+            dependencies.put(id, new HashSet<Long>());
+        }
+        for(final Bundle b : bundles) {
+            final BundleWiring wiring = b.adapt(BundleWiring.class);
+            if ( wiring == null ) {
+                // not resolved, the start will fail anyway
+                continue;
+            }
+            final List<BundleWire> wires = wiring.getRequiredWires(null);
+            if ( wires == null ) {
+                continue;
+            }
+            for(final BundleWire wire : wires) {
+                if ( BundleRevision.HOST_NAMESPACE.equals(wire.getCapability().getNamespace()) ) {
+                    continue;
+                }
+                final long providerId = wire.getProviderWiring().getBundle().getBundleId();
+                if ( providerId != b.getBundleId() ) {
+                    dependencies.get(b.getBundleId()).add(providerId);
+                }
+            }
+        }
+
+        final List<List<BundleStartTask>> result = new ArrayList<List<BundleStartTask>>();
+        for(final List<Long> wave : computeWaves(dependencies)) {
+            final List<BundleStartTask> waveTasks = new ArrayList<BundleStartTask>();
+            for(final Long id : wave) {
+                waveTasks.add(tasksById.get(id));
+            }
+            result.add(waveTasks);
+        }
+        for(final BundleStartTask task : duplicates) {
+            final List<BundleStartTask> single = new ArrayList<BundleStartTask>();
+            single.add(task);
+            result.add(single);
+        }
+        return result;
+    }
+
+    /**
+     * Compute the waves for a dependency graph.
+     * Dependencies to bundles which are not part of the graph are ignored.
+     * Bundles in a dependency cycle are started one after the other in
+     * the original order after all other bundles.
+     * @param dependencies The bundle ids in execution order with the ids
+     *                     of the bundles they depend on.
+     * @return The waves
+     */
+    static List<List<Long>> computeWaves(final Map<Long, Set<Long>> dependencies) {
+        final List<List<Long>> waves = new ArrayList<List<Long>>();
+        final Map<Long, Set<Long>> remaining = new LinkedHashMap<Long, Set<Long>>(dependencies);
+        while ( !remaining.isEmpty() ) {
+            final List<Long> wave = new ArrayList<Long>();
+            for(final Map.Entry<Long, Set<Long>> entry : remaining.entrySet()) {
+                boolean ready = true;
+                for(final Long dependency : entry.getValue()) {
+                    if ( !dependency.equals(entry.getKey()) && remaining.containsKey(dependency) ) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if ( ready ) {
+                    wave.add(entry.getKey());
+                }
+            }
+            if ( wave.isEmpty() ) {
+                // cycle
+                for(final Long id : remaining.keySet()) {
+                    final List<Long> single = new ArrayList<Long>();
+                    single.add(id);
+                    waves.add(single);
+                }
+                break;
+            }
+            for(final Long id : wave) {
+                remaining.remove(id);
+            }
+            waves.add(wave);
+        }
+        return waves;
+    }
+}
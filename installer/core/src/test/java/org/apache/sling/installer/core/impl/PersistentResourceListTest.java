@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.event.InstallationListener;
+import org.apache.sling.installer.api.tasks.RegisteredResource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.apache.sling.installer.api.tasks.TaskResource;
+import org.apache.sling.installer.api.tasks.TransformationResult;
+import org.apache.sling.installer.core.impl.mocks.MockFileDataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+public class PersistentResourceListTest {
+
+    private static final InstallationListener LISTENER = new InstallationListener() {
+
+        public void onEvent(final InstallationEvent event) {
+            // nothing to do
+        }
+    };
+
+    private File directory;
+
+    private File dataFile;
+
+    @Before public void setup() throws Exception {
+        MockFileDataStore.set();
+        directory = File.createTempFile("installer", "test");
+        directory.delete();
+        directory.mkdirs();
+        dataFile = new File(directory, "RegisteredResourceList.ser");
+    }
+
+    @After public void cleanup() {
+        MockFileDataStore.unset();
+        for(final File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    private RegisteredResource addConfig(final PersistentResourceList list, final String pid, final Object value)
+    throws Exception {
+        final Hashtable<String, Object> dict = new Hashtable<String, Object>();
+        dict.put("value", value);
+        final RegisteredResource rr = list.addOrUpdate(InternalResource.create("test",
+                new InstallableResource("configuration:" + pid, null, dict, null, null, null)));
+        final TransformationResult result = new TransformationResult();
+        result.setId(pid);
+        result.setResourceType(InstallableResource.TYPE_CONFIG);
+        result.setAttributes(Collections.singletonMap(Constants.SERVICE_PID, (Object)pid));
+        list.transform(rr, new TransformationResult[] {result});
+        return rr;
+    }
+
+    private TaskResource getResource(final PersistentResourceList list, final String pid) {
+        final EntityResourceList erl = list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ':' + pid);
+        return erl == null ? null : erl.getFirstResource();
+    }
+
+    @Test public void testRoundTrip() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        addConfig(list, "a", "text");
+        addConfig(list, "b", new String[] {"x", "y"});
+        addConfig(list, "c", 42L);
+        addConfig(list, "d", new Integer[] {1, 2});
+        list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":a").setFinishState(ResourceState.INSTALLED);
+        list.save();
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals(list.getEntityIds(), restored.getEntityIds());
+        assertEquals("text", getResource(restored, "a").getDictionary().get("value"));
+        assertEquals(ResourceState.INSTALLED, getResource(restored, "a").getState());
+        assertEquals("a", getResource(restored, "a").getAttribute(Constants.SERVICE_PID));
+        assertArrayEquals(new String[] {"x", "y"}, (String[])getResource(restored, "b").getDictionary().get("value"));
+        assertEquals(42L, getResource(restored, "c").getDictionary().get("value"));
+        assertArrayEquals(new Integer[] {1, 2}, (Integer[])getResource(restored, "d").getDictionary().get("value"));
+        assertEquals(ResourceState.INSTALL, getResource(restored, "d").getState());
+        assertEquals(getResource(list, "d").getDigest(), getResource(restored, "d").getDigest());
+        assertEquals(getResource(list, "d").getURL(), getResource(restored, "d").getURL());
+    }
+
+    @Test public void testIncrementalSave() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        for(int i = 0; i < 100; i++) {
+            addConfig(list, "pid" + i, "value" + i);
+        }
+        list.save();
+        final ResourceListJournal journal = list.getJournal();
+        final long generation = journal.getGeneration();
+        final long journalSize = journal.getJournalSize();
+
+        // saving without changes does not write anything
+        list.save();
+        assertEquals(journalSize, journal.getJournalSize());
+
+        // a single change only appends this group
+        list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":pid7").setFinishState(ResourceState.INSTALLED);
+        list.save();
+        assertEquals(generation, journal.getGeneration());
+        assertTrue(journal.getJournalSize() > journalSize);
+        assertTrue(journal.getJournalSize() - journalSize < journal.getSnapshotSize() / 20);
+
+        // removal
+        list.remove("test:configuration:pid8");
+        list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":pid8").setFinishState(ResourceState.UNINSTALLED);
+        list.compact();
+        assertNull(list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":pid8"));
+        list.save();
+        assertEquals(generation, journal.getGeneration());
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals(ResourceState.INSTALLED, getResource(restored, "pid7").getState());
+        assertEquals(ResourceState.INSTALL, getResource(restored, "pid6").getState());
+        assertNull(restored.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":pid8"));
+        assertEquals(list.getEntityIds(), restored.getEntityIds());
+    }
+
+    @Test public void testOnlyModifiedGroupsAreSaved() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        for(int i = 0; i < 10; i++) {
+            addConfig(list, "pid" + i, "value" + i);
+        }
+        list.save();
+        for(final String id : list.getEntityIds()) {
+            assertFalse(list.getEntityResourceList(id).isModified());
+        }
+
+        // changing a resource marks its group
+        final EntityResourceList group = list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":pid3");
+        group.getFirstResource().setAttribute("changed", "yes");
+        assertTrue(group.isModified());
+        assertFalse(list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":pid4").isModified());
+        final long journalSize = list.getJournal().getJournalSize();
+        list.save();
+        assertFalse(group.isModified());
+        assertTrue(list.getJournal().getJournalSize() > journalSize);
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals("yes", getResource(restored, "pid3").getAttribute("changed"));
+    }
+
+    @Test public void testFailedSnapshotKeepsGeneration() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        addConfig(list, "a", "value");
+        list.save();
+        // an incomplete journal forces a new snapshot with the next save
+        final RandomAccessFile raf = new RandomAccessFile(new File(directory,
+                "RegisteredResourceList." + list.getJournal().getGeneration() + ".journal"), "rw");
+        try {
+            raf.seek(raf.length());
+            raf.write(new byte[] {1, 2, 3});
+        } finally {
+            raf.close();
+        }
+
+        // a journal which can't sync the next generation
+        final ResourceListJournal journal = new ResourceListJournal(directory, "RegisteredResourceList") {
+            @Override
+            void sync(final FileOutputStream out) throws IOException {
+                throw new IOException("sync failed");
+            }
+        };
+        final Map<String, EntityResourceList> data = new HashMap<String, EntityResourceList>();
+        final List<RegisteredResource> untransformed = new ArrayList<RegisteredResource>();
+        assertTrue(journal.load(data, untransformed));
+        final long generation = journal.getGeneration();
+        final String[] files = directory.list();
+        try {
+            journal.save(data, untransformed);
+            fail("Save should fail");
+        } catch (final IOException expected) {
+            // expected
+        }
+        assertEquals(generation, journal.getGeneration());
+        final String[] remaining = directory.list();
+        Arrays.sort(files);
+        Arrays.sort(remaining);
+        assertArrayEquals(files, remaining);
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals(generation, restored.getJournal().getGeneration());
+        assertEquals("value", getResource(restored, "a").getDictionary().get("value"));
+    }
+
+    @Test public void testCompaction() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        addConfig(list, "a", "value");
+        list.save();
+        final long generation = list.getJournal().getGeneration();
+        for(int i = 0; list.getJournal().getGeneration() == generation; i++) {
+            addConfig(list, "a", "value" + i);
+            list.compact();
+            list.save();
+        }
+        // only the files of the current generation remain
+        assertEquals(2, directory.listFiles().length);
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals(getResource(list, "a").getDigest(), getResource(restored, "a").getDigest());
+    }
+
+    @Test public void testIncompleteJournal() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        addConfig(list, "a", "value");
+        addConfig(list, "b", "value");
+        list.save();
+        list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":a").setFinishState(ResourceState.INSTALLED);
+        list.save();
+        list.getEntityResourceList(InstallableResource.TYPE_CONFIG + ":b").setFinishState(ResourceState.INSTALLED);
+        list.save();
+
+        // cut the last record
+        final File journalFile = new File(directory, "RegisteredResourceList." + list.getJournal().getGeneration() + ".journal");
+        final RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        try {
+            raf.setLength(raf.length() - 5);
+        } finally {
+            raf.close();
+        }
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals(ResourceState.INSTALLED, getResource(restored, "a").getState());
+        assertEquals(ResourceState.INSTALL, getResource(restored, "b").getState());
+
+        // the next save starts a new generation
+        final long generation = restored.getJournal().getGeneration();
+        restored.save();
+        assertEquals(generation + 1, restored.getJournal().getGeneration());
+        assertFalse(journalFile.exists());
+    }
+
+    @Test public void testFailedAppend() throws Exception {
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        addConfig(list, "a", "value");
+        addConfig(list, "b", "value");
+        list.save();
+
+        // a journal which writes only half of the records once
+        final boolean[] failing = new boolean[] {false};
+        final ResourceListJournal journal = new ResourceListJournal(directory, "RegisteredResourceList") {
+            @Override
+            void write(final RandomAccessFile file, final byte[] records) throws IOException {
+                if ( failing[0] ) {
+                    file.write(records, 0, records.length / 2);
+                    throw new IOException("disk full");
+                }
+                super.write(file, records);
+            }
+        };
+        final Map<String, EntityResourceList> data = new HashMap<String, EntityResourceList>();
+        final List<RegisteredResource> untransformed = new ArrayList<RegisteredResource>();
+        assertTrue(journal.load(data, untransformed));
+        for(final EntityResourceList erl : data.values()) {
+            erl.setListener(LISTENER);
+        }
+        final long generation = journal.getGeneration();
+        final long journalSize = journal.getJournalSize();
+
+        data.get(InstallableResource.TYPE_CONFIG + ":a").setFinishState(ResourceState.INSTALLED);
+        failing[0] = true;
+        try {
+            journal.save(data, untransformed);
+            fail("Save should fail");
+        } catch (final IOException expected) {
+            // expected
+        }
+        assertEquals(journalSize, journal.getJournalSize());
+
+        // the next append replaces the torn bytes
+        failing[0] = false;
+        data.get(InstallableResource.TYPE_CONFIG + ":b").setFinishState(ResourceState.INSTALLED);
+        journal.save(data, untransformed);
+        assertEquals(generation, journal.getGeneration());
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals(ResourceState.INSTALLED, getResource(restored, "a").getState());
+        assertEquals(ResourceState.INSTALLED, getResource(restored, "b").getState());
+        assertEquals(generation, restored.getJournal().getGeneration());
+    }
+
+    @Test public void testMigration() throws Exception {
+        final Hashtable<String, Object> dict = new Hashtable<String, Object>();
+        dict.put("value", "migrated");
+        final RegisteredResourceImpl rr = RegisteredResourceImpl.create(InternalResource.create("test",
+                new InstallableResource("configuration:m", null, dict, null, null, null)));
+        final TransformationResult result = new TransformationResult();
+        result.setId("m");
+        result.setResourceType(InstallableResource.TYPE_CONFIG);
+        final RegisteredResourceImpl config = (RegisteredResourceImpl)rr.clone(result);
+        final EntityResourceList erl = new EntityResourceList(config.getEntityId(), LISTENER);
+        erl.addOrUpdate(config);
+        final Map<String, EntityResourceList> data = new HashMap<String, EntityResourceList>();
+        data.put(config.getEntityId(), erl);
+
+        final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(dataFile));
+        try {
+            oos.writeInt(2);
+            oos.writeObject(data);
+            oos.writeObject(new ArrayList<RegisteredResource>());
+        } finally {
+            oos.close();
+        }
+
+        final PersistentResourceList list = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals("migrated", getResource(list, "m").getDictionary().get("value"));
+        assertFalse(dataFile.exists());
+        assertNotNull(list.getEntityResourceList(PersistentResourceList.RESTART_ACTIVE_BUNDLES_ENTITY_ID));
+
+        final PersistentResourceList restored = new PersistentResourceList(dataFile, LISTENER);
+        assertEquals("migrated", getResource(restored, "m").getDictionary().get("value"));
+    }
+}
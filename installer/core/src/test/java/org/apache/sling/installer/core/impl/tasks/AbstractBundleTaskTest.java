@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl.tasks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.installer.api.tasks.TaskResource;
+import org.apache.sling.installer.api.tasks.TaskResourceGroup;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Test;
+
+public class AbstractBundleTaskTest {
+
+    private final Mockery jmock = new Mockery();
+
+    private AbstractBundleTask createTask(final String name, final byte[] data) throws IOException {
+        final TaskResourceGroup group = jmock.mock(TaskResourceGroup.class, name);
+        final TaskResource resource = jmock.mock(TaskResource.class, name + "Resource");
+        jmock.checking(new Expectations() {{
+            allowing(group).getActiveResource();
+            will(returnValue(resource));
+            allowing(resource).getInputStream();
+            will(new CustomAction("open stream") {
+                public Object invoke(final Invocation invocation) {
+                    return new ByteArrayInputStream(data);
+                }
+            });
+        }});
+        return new BundleStartTask(group, 1, null);
+    }
+
+    private static byte[] createData(final int size) {
+        final byte[] data = new byte[size];
+        for(int i = 0; i < size; i++) {
+            data[i] = (byte)i;
+        }
+        return data;
+    }
+
+    private static byte[] read(final InputStream is) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int count;
+        while ( (count = is.read(buffer)) != -1 ) {
+            bos.write(buffer, 0, count);
+        }
+        is.close();
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        final byte[] data = createData(20000);
+        final AbstractBundleTask task = createTask("task", data);
+        final AtomicLong budget = new AtomicLong(100000);
+
+        assertTrue(task.prefetch(budget));
+        assertEquals(80000, budget.get());
+        assertArrayEquals(data, read(task.getBundleInputStream()));
+        // the prefetched data is only used once, then the resource is streamed
+        assertArrayEquals(data, read(task.getBundleInputStream()));
+    }
+
+    @Test
+    public void testBudgetOverflowFallsBackToStreaming() throws IOException {
+        final byte[] data = createData(20000);
+        final AbstractBundleTask first = createTask("first", data);
+        final AbstractBundleTask second = createTask("second", data);
+        final AtomicLong budget = new AtomicLong(30000);
+
+        assertTrue(first.prefetch(budget));
+        // the budget is exceeded while reading, the memory of the second task is given back
+        assertFalse(second.prefetch(budget));
+        assertEquals(10000, budget.get());
+
+        assertArrayEquals(data, read(first.getBundleInputStream()));
+        assertArrayEquals(data, read(second.getBundleInputStream()));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.wiring.BundleWiring;
+
+public class StartWavePlannerTest {
+
+    private final Map<Long, Set<Long>> dependencies = new LinkedHashMap<Long, Set<Long>>();
+
+    private void bundle(final long id, final Long... dependsOn) {
+        dependencies.put(id, new HashSet<Long>(Arrays.asList(dependsOn)));
+    }
+
+    @Test
+    public void testIndependentBundles() {
+        bundle(3);
+        bundle(1);
+        bundle(2);
+        final List<List<Long>> waves = StartWavePlanner.computeWaves(dependencies);
+        assertEquals(1, waves.size());
+        assertEquals(Arrays.asList(3L, 1L, 2L), waves.get(0));
+    }
+
+    @Test
+    public void testDependencies() {
+        // 4 -> 2 -> 1, 3 -> 1, 5 -> 99 (not started by the installer)
+        bundle(1);
+        bundle(2, 1L);
+        bundle(3, 1L);
+        bundle(4, 2L, 3L);
+        bundle(5, 99L);
+        final List<List<Long>> waves = StartWavePlanner.computeWaves(dependencies);
+        assertEquals(3, waves.size());
+        assertEquals(Arrays.asList(1L, 5L), waves.get(0));
+        assertEquals(Arrays.asList(2L, 3L), waves.get(1));
+        assertEquals(Arrays.asList(4L), waves.get(2));
+    }
+
+    @Test
+    public void testCycle() {
+        bundle(1);
+        bundle(2, 3L);
+        bundle(3, 2L);
+        bundle(4, 3L);
+        final List<List<Long>> waves = StartWavePlanner.computeWaves(dependencies);
+        assertEquals(4, waves.size());
+        assertEquals(Arrays.asList(1L), waves.get(0));
+        assertEquals(Arrays.asList(2L), waves.get(1));
+        assertEquals(Arrays.asList(3L), waves.get(2));
+        assertEquals(Arrays.asList(4L), waves.get(3));
+    }
+
+    @Test
+    public void testPlanContainsAllTasks() {
+        final Mockery jmock = new Mockery();
+        final BundleContext bundleContext = jmock.mock(BundleContext.class);
+        final Bundle unresolved = jmock.mock(Bundle.class);
+        jmock.checking(new Expectations() {{
+            // no framework wiring
+            allowing(bundleContext).getBundle(0);
+            will(returnValue(null));
+            allowing(bundleContext).getBundle(1);
+            will(returnValue(unresolved));
+            allowing(bundleContext).getBundle(2);
+            will(returnValue(null));
+            allowing(unresolved).getBundleId();
+            will(returnValue(1L));
+            allowing(unresolved).adapt(BundleWiring.class);
+            will(returnValue(null));
+        }});
+
+        // an unresolved bundle, an uninstalled bundle and two tasks for the same bundle
+        final List<BundleStartTask> tasks = new ArrayList<BundleStartTask>();
+        tasks.add(new BundleStartTask(null, 1, null));
+        tasks.add(new BundleStartTask(null, 2, null));
+        tasks.add(new BundleStartTask(null, 2, null));
+
+        final List<BundleStartTask> planned = new ArrayList<BundleStartTask>();
+        for(final List<BundleStartTask> wave : StartWavePlanner.plan(bundleContext, tasks)) {
+            planned.addAll(wave);
+        }
+        assertEquals(tasks.size(), planned.size());
+        for(final BundleStartTask task : tasks) {
+            boolean found = false;
+            for(final BundleStartTask p : planned) {
+                found |= (p == task);
+            }
+            assertTrue(task.toString(), found);
+        }
+    }
+}